@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import compiler.abstr.PassManager;
+import compiler.abstr.tree.AbsTree;
+import compiler.lexan.LexAn;
+import compiler.seman.NameChecker;
+import compiler.synan.SynAn;
+
+/**
+ * Merjenje hitrosti preverjanja imen.
+ * <p>
+ * Generates PINS programs with deeply nested {@code where} blocks, every
+ * level declaring a variable and a function whose body holds the next level
+ * and using names of its own and of enclosing levels. Each program is parsed
+ * once, then name checked by the same pass walk as the compiler uses. Time
+ * per level should stay constant as nesting grows.
+ * <p>
+ * Usage: {@code java benchmark.NameCheckBenchmark [levels]}
+ */
+public class NameCheckBenchmark {
+
+	/** Number of repetitions of every measurement; the best time is reported. */
+	private static final int REPEAT = 5;
+
+	/** Stack size of the measuring thread, the walks recurse per level. */
+	private static final long STACK_SIZE = 1L << 30;
+
+	public static void main(String[] args) throws InterruptedException {
+		int levels = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		Thread thread = new Thread(null, () -> {
+			try {
+				measure(levels);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}, "benchmark", STACK_SIZE);
+		thread.start();
+		thread.join();
+	}
+
+	private static void measure(int levels) throws IOException {
+		// warm up
+		run(parse(levels / 4));
+
+		System.out.println("levels\ttime [ms]\tns/level");
+		for (int n = levels / 4; n <= levels; n *= 2) {
+			AbsTree source = parse(n);
+			long best = Long.MAX_VALUE;
+			for (int r = 0; r < REPEAT; r++)
+				best = Math.min(best, run(source));
+			System.out.printf("%d\t%.2f\t\t%d\n", n, best / 1e6, best / n);
+		}
+	}
+
+	/**
+	 * Name check the program.
+	 *
+	 * @return elapsed time in nanoseconds
+	 */
+	private static long run(AbsTree source) {
+		long start = System.nanoTime();
+		source.accept(new PassManager(new NameChecker()));
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Generate and parse a program with n nested levels.
+	 */
+	private static AbsTree parse(int n) throws IOException {
+		Path file = Files.createTempFile("nested", ".pins");
+		try {
+			Files.write(file, source(n).getBytes(StandardCharsets.UTF_8));
+			return new SynAn(new LexAn(file.toString(), false), false).parse();
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Level i is {@code (v_i + f_i(v_{i/2})) {where var v_i; fun f_i = level i+1}}.
+	 */
+	private static String source(int n) {
+		StringBuilder source = new StringBuilder("fun main(i : integer) : integer = ");
+		for (int i = 0; i < n; i++)
+			source.append("(v").append(i).append(" + f").append(i)
+					.append("(v").append(i / 2).append(")) {where var v").append(i)
+					.append(" : integer; fun f").append(i)
+					.append("(x : integer) : integer = ");
+		source.append('i');
+		for (int i = 0; i < n; i++)
+			source.append('}');
+		source.append('\n');
+		return source.toString();
+	}
+
+}
@@ -1,6 +1,11 @@
 package compiler;
 
+import java.io.File;
+import java.util.LinkedList;
+import java.util.Map;
+
 import compiler.lincode.CodeGenerator;
+import compiler.lincode.StreamingCodeGenerator;
 import compiler.lexan.*;
 import compiler.synan.*;
 import compiler.abstr.*;
@@ -9,6 +14,7 @@ import compiler.seman.*;
 import compiler.frames.*;
 import compiler.imcode.*;
 import compiler.interpreter.Interpreter;
+import compiler.optimizer.Optimizer;
 
 /**
  * Osnovni razred prevajalnika, ki vodi izvajanje celotnega procesa prevajanja.
@@ -21,7 +27,7 @@ public class Main {
 	private static String sourceFileName;
 
 	/** Seznam vseh faz prevajalnika. */
-	private static String allPhases = "(lexan|synan|ast|seman|frames|imcode|interpret)";
+	private static String allPhases = "(lexan|synan|ast|seman|frames|imcode|optimizer|interpret)";
 
 	/** Doloca zadnjo fazo prevajanja, ki se bo se izvedla. */
 	private static String execPhase = "interpret";
@@ -29,6 +35,24 @@ public class Main {
 	/** Doloca faze, v katerih se bodo izpisali vmesni rezultati. */
 	private static String dumpPhases = "interpret";
 
+	/** Ali leksikalni analizator tece v lastni niti. */
+	private static boolean pipelinedLexer = false;
+
+	/** Ali se definicije na najvisjem nivoju razclenjujejo vzporedno. */
+	private static boolean parallelParser = false;
+
+	/** Ali se telesa funkcij semanticno preverjajo vzporedno. */
+	private static boolean parallelSeman = false;
+
+	/** Ali se koda funkcij generira sele ob prvem klicu. */
+	private static boolean lazy = false;
+
+	/** Ali se funkcije prevajajo ena za drugo s sproscanjem njihovih jeder. */
+	private static boolean streaming = false;
+
+	/** Ali se izpise statistika prevajanja. */
+	private static boolean stats = false;
+
 	/**
 	 * Metoda, ki izvede celotni proces prevajanja.
 	 * 
@@ -63,6 +87,62 @@ public class Main {
 					Interpreter.debug = debug.equals("true"); 
 					continue;
 				}
+				if (args[argc].startsWith("--pipelined_lexer=")) {
+					String pipelined = args[argc].substring("--pipelined_lexer=".length());
+					pipelinedLexer = pipelined.equals("true");
+					continue;
+				}
+				if (args[argc].startsWith("--parallel_parse=")) {
+					String parallel = args[argc].substring("--parallel_parse=".length());
+					parallelParser = parallel.equals("true");
+					continue;
+				}
+				if (args[argc].startsWith("--parallel_seman=")) {
+					String parallel = args[argc].substring("--parallel_seman=".length());
+					parallelSeman = parallel.equals("true");
+					continue;
+				}
+				if (args[argc].startsWith("--lazy=")) {
+					lazy = args[argc].substring("--lazy=".length()).equals("true");
+					continue;
+				}
+				if (args[argc].startsWith("--interfaces=")) {
+					String interfaces = args[argc].substring("--interfaces=".length());
+					ModuleInterface.enabled = interfaces.equals("true");
+					continue;
+				}
+				if (args[argc].startsWith("--module_path=")) {
+					String path = args[argc].substring("--module_path=".length());
+					NameChecker.modulePath.clear();
+					for (String dir : path.split(File.pathSeparator))
+						if (!dir.isEmpty())
+							NameChecker.modulePath.add(dir);
+					continue;
+				}
+				if (args[argc].startsWith("--streaming=")) {
+					streaming = args[argc].substring("--streaming=".length()).equals("true");
+					continue;
+				}
+				if (args[argc].startsWith("--stats=")) {
+					stats = args[argc].substring("--stats=".length()).equals("true");
+					continue;
+				}
+				if (args[argc].startsWith("--opt=")) {
+					String level = args[argc].substring("--opt=".length());
+					if (level.matches("[012]"))
+						Optimizer.level = Integer.parseInt(level);
+					else
+						Report.warning("Unknown optimization level '" + level + "' ignored.");
+					continue;
+				}
+				if (args[argc].startsWith("--unroll=")) {
+					String factor = args[argc].substring("--unroll=".length());
+					if (factor.matches("[1-9][0-9]?"))
+						Optimizer.unrollFactor = Integer.parseInt(factor);
+					else
+						Report.warning("Unknown unroll factor '" + factor + "' ignored.");
+					continue;
+				}
 				if (args[argc].startsWith("--stack_size=")) {
 					String size = args[argc].substring("--stack_size=".length());
 					try {
@@ -94,25 +174,36 @@ public class Main {
 		// Izvajanje faz prevajanja.
 		while (true) {
 			// Leksikalna analiza.
-			LexAn lexAn = new LexAn(sourceFileName, dumpPhases.contains("lexan"));
+			LexAn lexAn = pipelinedLexer
+					? new PipelinedLexAn(sourceFileName, dumpPhases.contains("lexan"))
+					: new LexAn(sourceFileName, dumpPhases.contains("lexan"));
 			if (execPhase.equals("lexan")) {
-				while (lexAn.lexAn().token != Token.EOF) {
+				TokenStream tokens = lexAn.tokens();
+				while (tokens.token(tokens.next()) != Token.EOF) {
 				}
 				break;
 			}
 			// Sintaksna analiza.
-			SynAn synAn = new SynAn(lexAn, dumpPhases.contains("synan"));
+			SynAn synAn = new SynAn(lexAn, dumpPhases.contains("synan"),
+					parallelParser && !dumpPhases.contains("lexan"));
 			AbsTree source = synAn.parse();
 			if (execPhase.equals("synan")) break;
 			// Abstraktna sintaksa.
 			Abstr ast = new Abstr(dumpPhases.contains("ast"));
 			ast.dump(source);
 			if (execPhase.equals("ast")) break;
-			// Semanticna analiza.
+			// Semanticna analiza in izracun klicnih zapisov v enem obhodu.
 			SemAn semAn = new SemAn(dumpPhases.contains("seman"));
 			NameChecker nc = new NameChecker();
-			source.accept(nc);
-			source.accept(new TypeChecker());
+			PassManager passes = new PassManager(parallelSeman,
+					nc, new TypeChecker(), new FrmEvaluator());
+			source.accept(passes);
+			if (stats)
+				System.out.printf("Semantic analysis: %d node visits, %d nodes\n",
+						passes.visits(), AbsTree.numNodes());
+			if (stats && ModuleInterface.enabled)
+				System.out.printf("Module interfaces: %d loaded, %d written\n",
+						ModuleInterface.numLoaded(), ModuleInterface.numWritten());
 			AbsFunDef mainFunction = nc.getMain();
 			if (mainFunction == null || 
 				mainFunction.numPars() > 1 || 
@@ -120,28 +211,88 @@ public class Main {
 				Report.error(mainFunction.position, "Undefined reference to _main(i:integer)");
 			semAn.dump(source);
 			if (execPhase.equals("seman")) break;
+			// Dosegljivost definicij iz glavne funkcije.
+			Reachability reachability = new Reachability((AbsDefs) source, mainFunction);
+			if (stats)
+				System.out.printf("Reachability: %d of %d definitions pruned\n",
+						reachability.numPruned(), reachability.numDefs());
 			// Klicni zapisi.
 			Frames frames = new Frames(dumpPhases.contains("frames"));
-			source.accept(new FrmEvaluator());
 			frames.dump(source);
 			if (execPhase.equals("frames")) break;
 			// Vmesna koda.
 			ImCode imcode = new ImCode(dumpPhases.contains("imcode"));
-			ImcCodeGen imcodegen = new ImcCodeGen();
-			source.accept(imcodegen);
-			imcode.dump(imcodegen.chunks);
-			if (execPhase.equals("imcode")) break;
-			// Linearizacija vmesne kode
-			ImcCodeChunk mainFrame = CodeGenerator.linearize(imcodegen.chunks);
+			ImcCodeChunk mainFrame;
+			LinkedList<ImcChunk> chunks;
+			if (streaming && execPhase.equals("interpret")
+					&& !dumpPhases.contains("imcode") && !dumpPhases.contains("optimizer")) {
+				// Vmesna koda in linearizacija po funkcijah.
+				StreamingCodeGenerator codegen = new StreamingCodeGenerator(reachability);
+				mainFrame = codegen.compile((AbsDefs) source);
+				chunks = codegen.chunks;
+			}
+			else {
+				ImcCodeGen imcodegen = new ImcCodeGen(reachability);
+				if (lazy)
+					imcodegen.deferred = new LinkedList<AbsFunDef>();
+				source.accept(imcodegen);
+				imcode.dump(imcodegen.chunks);
+				if (execPhase.equals("imcode")) break;
+				// Optimizacija vmesne kode.
+				Optimizer.optimize(imcodegen.chunks);
+				new ImCode(dumpPhases.contains("optimizer")).dump(imcodegen.chunks);
+				if (execPhase.equals("optimizer")) break;
+				// Linearizacija vmesne kode
+				mainFrame = CodeGenerator.linearize(imcodegen.chunks);
+				if (lazy)
+					CodeGenerator.defer(imcodegen.deferred, reachability);
+				chunks = imcodegen.chunks;
+			}
 			imcode = new ImCode(dumpPhases.contains("interpret"));
-			imcode.dump(imcodegen.chunks);
+			imcode.dump(chunks);
 
 			System.out.printf(":-) Done.\n");
 			System.out.printf("----- Executing file %s -----\n", sourceFileName);
 			
 			// Izvajanje linearizirane vmesne kode
 			Interpreter.stM(Interpreter.getFP() + 4, 0);
-			new Interpreter(mainFrame.frame, mainFrame.imcode.linear());
+			new Interpreter(mainFrame.frame, (ImcSEQ) mainFrame.lincode);
+			if (stats && Optimizer.level > 0)
+				System.out.printf("Optimizer: %d IMC nodes before, %d after\n",
+						Optimizer.numNodesBefore(), Optimizer.numNodesAfter());
+			if (stats && Optimizer.level >= 2)
+				System.out.printf("Inlining: %d calls inlined, %d of them with their frame in temporaries\n",
+						Optimizer.inlining().numInlined, Optimizer.inlining().numPromoted);
+			if (stats && Optimizer.level >= 2)
+				System.out.printf("Unrolling: %d loops unrolled fully, %d partially\n",
+						Optimizer.unrolling().numFull, Optimizer.unrolling().numPartial);
+			if (stats && Optimizer.level > 0)
+				System.out.printf("Control flow: %d jumps threaded, %d unreachable blocks removed, %d jumps to next block removed\n",
+						Optimizer.simplifier().numThreaded, Optimizer.simplifier().numRemoved,
+						Optimizer.simplifier().numFallThroughs);
+			if (stats && Optimizer.level >= 2)
+				System.out.printf("SSA: %d phis, %d constant uses, %d branches folded, %d blocks and %d statements removed\n",
+						Optimizer.numPhis(), Optimizer.constPropagation().numConstants,
+						Optimizer.constPropagation().numBranches, Optimizer.constPropagation().numRemoved,
+						Optimizer.deadCode().numRemoved);
+			if (stats && Optimizer.level >= 2)
+				System.out.printf("Value numbering: %d computations reused from %d new temporaries\n",
+						Optimizer.valueNumbering().numReused, Optimizer.valueNumbering().numTemps);
+			if (stats && Optimizer.level >= 2)
+				System.out.printf("Loops: %d invariant computations hoisted, %d multiplications reduced\n",
+						Optimizer.loopOptimizer().numHoisted, Optimizer.loopOptimizer().numReduced);
+			if (stats && Optimizer.level > 0) {
+				System.out.printf("Move elimination: %d moves removed\n",
+						Optimizer.moveElimination().numRemoved());
+				for (Map.Entry<String, Integer> removed : Optimizer.moveElimination().numRemoved.entrySet())
+					System.out.printf("  %s: %d\n", removed.getKey(), removed.getValue());
+			}
+			if (stats && Optimizer.level > 0)
+				System.out.printf("Shifts: %d multiplications and divisions by powers of two replaced\n",
+						Optimizer.shifts().numShifts);
+			if (stats && lazy)
+				System.out.printf("Lazy compilation: %d of %d deferred functions compiled\n",
+						CodeGenerator.numCompiledLazily(), CodeGenerator.numDeferred());
 			
 			if (execPhase.equals("interpret")) break;
 			
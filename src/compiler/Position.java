@@ -64,6 +64,34 @@ public class Position {
 		this.endColumn = endPos.endColumn;
 	}
 
+	/**
+	 * @return Vrstica zacetka dela besedila.
+	 */
+	public int begLine() {
+		return begLine;
+	}
+
+	/**
+	 * @return Stolpec zacetka dela besedila.
+	 */
+	public int begColumn() {
+		return begColumn;
+	}
+
+	/**
+	 * @return Vrstica konca dela besedila.
+	 */
+	public int endLine() {
+		return endLine;
+	}
+
+	/**
+	 * @return Stolpec konca dela besedila.
+	 */
+	public int endColumn() {
+		return endColumn;
+	}
+
 	@Override
 	public String toString() {
 		return (begLine + ":" + begColumn + "-" + endLine + ":" + endColumn);
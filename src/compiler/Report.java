@@ -85,6 +85,35 @@ public class Report {
 		warning(new Position(line, column), message);
 	}
 
+	/** Ali se obvestila o napakah na trenutni niti zadrzijo. */
+	private static final ThreadLocal<Boolean> deferErrors = new ThreadLocal<Boolean>();
+
+	/**
+	 * Napaka, ki se namesto izpisa sprozi na niti z zadrzanimi obvestili o
+	 * napakah. Klicatelj jo prestreze in kasneje izpise z
+	 * {@link #error(DeferredError)}.
+	 */
+	@SuppressWarnings("serial")
+	public static class DeferredError extends RuntimeException {
+
+		public DeferredError(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	/**
+	 * Doloci, ali se obvestila o napakah na trenutni niti zadrzijo.
+	 * 
+	 * @param defer
+	 *            Ali se obvestila zadrzijo.
+	 */
+	public static void deferErrors(boolean defer) {
+		if (defer)
+			deferErrors.set(Boolean.TRUE);
+		else
+			deferErrors.remove();
+	}
+
 	/**
 	 * Izpise obvestilo o napaki in konca prevajanje.
 	 * 
@@ -95,10 +124,23 @@ public class Report {
 		if (fileName != null)
 			message = fileName + ":" + message;
 		
+		if (deferErrors.get() != null)
+			throw new DeferredError(message);
 		System.err.println(":-( " + message);
 		System.exit(1);
 	}
 
+	/**
+	 * Izpise zadrzano obvestilo o napaki in konca prevajanje.
+	 * 
+	 * @param error
+	 *            Zadrzana napaka.
+	 */
+	public static void error(DeferredError error) {
+		System.err.println(":-( " + error.getMessage());
+		System.exit(1);
+	}
+
 	/**
 	 * Izpise obvestilo o napaki, ki je vezana na del izvorne kode, in konca
 	 * prevajanje.
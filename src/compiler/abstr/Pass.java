@@ -0,0 +1,62 @@
+package compiler.abstr;
+
+import compiler.abstr.tree.*;
+
+/**
+ * Analiza, ki se izvaja v skupnem obhodu abstraktnega sintaksnega drevesa.
+ * <p>
+ * A pass does not walk the tree itself; it declares what to do on each node
+ * and {@link PassManager} runs the actions of all passes in a single walk.
+ * Before the definitions of a nesting level are walked, every pass is given
+ * the chance to collect their signatures, so names and types of all
+ * definitions on that level are known when function bodies are visited.
+ */
+public interface Pass {
+
+	/**
+	 * Obdela podpise definicij enega nivoja gnezdenja.
+	 *
+	 * @param defs
+	 *            Definicije.
+	 */
+	public void signatures(AbsDefs defs);
+
+	/**
+	 * Akcija pred obiskom otrok vozlisca.
+	 *
+	 * @param node
+	 *            Vozlisce.
+	 */
+	public void enter(AbsTree node);
+
+	/**
+	 * Akcija po obisku otrok vozlisca.
+	 *
+	 * @param node
+	 *            Vozlisce.
+	 */
+	public void leave(AbsTree node);
+
+	/**
+	 * Ustvari analizo za vzporedni obhod dela definicij.
+	 * <p>
+	 * The returned pass sees the results of the signature stage of this
+	 * pass but must not change anything shared with it. Forks are created
+	 * on the thread running the walk before they are handed to worker
+	 * threads, so this is the place to prepare shared tables for
+	 * concurrent updates of different nodes.
+	 *
+	 * @return Analiza za vzporedni obhod.
+	 */
+	public Pass fork();
+
+	/**
+	 * Zakljuci analizo, ki jo je vrnil {@link #fork()}.
+	 * <p>
+	 * Called on the thread running the walk after all forks are done, in the
+	 * order of the definitions they walked. Results that depend on the order
+	 * of the walk, such as numbering, are completed here.
+	 */
+	public void join();
+
+}
@@ -0,0 +1,340 @@
+package compiler.abstr;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import compiler.Report;
+import compiler.abstr.tree.*;
+
+/**
+ * Izvajanje vec analiz v enem obhodu drevesa.
+ * <p>
+ * Every node is visited once: the enter actions of all passes run in the
+ * order the passes were given, then the children are visited, then the
+ * leave actions run. On each nesting level imports are walked first, as
+ * the definitions of a module may refer to them, followed by the
+ * signatures of all passes and finally by the definitions themselves;
+ * the signature stage takes the place of enter and leave actions on
+ * {@link AbsDefs}.
+ * Types are not walked; they are handled by the signature stage.
+ * <p>
+ * In parallel mode, bodies of top-level functions are walked on the common
+ * fork-join pool once the signatures of the top level are known; see
+ * {@link #walkParallel(AbsDefs)}.
+ */
+public class PassManager implements Visitor {
+
+	/** Stevilo funkcij, ki jih obdela eno opravilo. */
+	private static final int FUNCTIONS_PER_TASK = 16;
+
+	/** Analize, ki se izvajajo v obhodu. */
+	private final Pass[] passes;
+
+	/** Ali se telesa funkcij na najvisjem nivoju obdelajo vzporedno. */
+	private final boolean parallel;
+
+	/** Globina gnezdenja trenutnega seznama definicij. */
+	private int depth = 0;
+
+	/** Stevilo obiskanih vozlisc. */
+	private long visits = 0;
+
+	/**
+	 * Ustvari nov obhod.
+	 *
+	 * @param passes
+	 *            Analize, ki se izvajajo v obhodu.
+	 */
+	public PassManager(Pass... passes) {
+		this(false, passes);
+	}
+
+	/**
+	 * Ustvari nov obhod.
+	 *
+	 * @param parallel
+	 *            Ali se telesa funkcij na najvisjem nivoju obdelajo vzporedno.
+	 * @param passes
+	 *            Analize, ki se izvajajo v obhodu.
+	 */
+	public PassManager(boolean parallel, Pass... passes) {
+		this.parallel = parallel;
+		this.passes = passes;
+	}
+
+	/**
+	 * Vrne stevilo obiskov vozlisc v doslej izvedenih obhodih.
+	 *
+	 * @return Stevilo obiskov.
+	 */
+	public long visits() {
+		return visits;
+	}
+
+	private void enter(AbsTree node) {
+		visits++;
+		for (Pass pass : passes)
+			pass.enter(node);
+	}
+
+	private void leave(AbsTree node) {
+		for (Pass pass : passes)
+			pass.leave(node);
+	}
+
+	private void node(AbsTree node) {
+		enter(node);
+		leave(node);
+	}
+
+	@Override
+	public void visit(AbsArrType acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsPtrType acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsStructType acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsAtomConst acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsAtomType acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsBinExpr acceptor) {
+		enter(acceptor);
+		acceptor.expr1.accept(this);
+		acceptor.expr2.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsDefs acceptor) {
+		visits++;
+		depth++;
+		for (int def = 0; def < acceptor.numDefs(); def++)
+			if (acceptor.def(def) instanceof AbsImportDef)
+				acceptor.def(def).accept(this);
+		for (Pass pass : passes)
+			pass.signatures(acceptor);
+		if (parallel && depth == 1)
+			walkParallel(acceptor);
+		else
+			for (int def = 0; def < acceptor.numDefs(); def++)
+				if (!(acceptor.def(def) instanceof AbsImportDef))
+					acceptor.def(def).accept(this);
+		depth--;
+	}
+
+	/**
+	 * Obdela definicije najvisjega nivoja, telesa funkcij vzporedno.
+	 * <p>
+	 * Functions are split into chunks, each walked by its own forked passes.
+	 * Errors are deferred on the worker threads and every chunk stops at its
+	 * first error. The error of the earliest failing chunk is reported, which
+	 * is the error a sequential walk would have reported. The forks are then
+	 * joined in the order of the chunks.
+	 *
+	 * @param defs
+	 *            Definicije najvisjega nivoja.
+	 */
+	private void walkParallel(AbsDefs defs) {
+		ArrayList<AbsFunDef> functions = new ArrayList<>();
+		for (int def = 0; def < defs.numDefs(); def++) {
+			AbsDef definition = defs.def(def);
+			if (definition instanceof AbsFunDef)
+				functions.add((AbsFunDef) definition);
+			else if (!(definition instanceof AbsImportDef))
+				definition.accept(this);
+		}
+
+		int chunks = (functions.size() + FUNCTIONS_PER_TASK - 1) / FUNCTIONS_PER_TASK;
+		PassManager[] managers = new PassManager[chunks];
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			Pass[] forks = new Pass[passes.length];
+			for (int pass = 0; pass < passes.length; pass++)
+				forks[pass] = passes[pass].fork();
+			managers[chunk] = new PassManager(forks);
+			managers[chunk].depth = depth;
+		}
+
+		RuntimeException[] errors = new RuntimeException[chunks];
+		ForkJoinPool.commonPool().invoke(
+				new WalkFunctions(functions, managers, errors, 0, chunks));
+
+		for (int chunk = 0; chunk < chunks; chunk++)
+			visits += managers[chunk].visits;
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			if (errors[chunk] instanceof Report.DeferredError)
+				Report.error((Report.DeferredError) errors[chunk]);
+			else if (errors[chunk] != null)
+				throw errors[chunk];
+		}
+		for (int chunk = 0; chunk < chunks; chunk++)
+			for (Pass pass : managers[chunk].passes)
+				pass.join();
+	}
+
+	/**
+	 * Task walking a range of chunks of top-level functions.
+	 */
+	@SuppressWarnings("serial")
+	private static class WalkFunctions extends RecursiveAction {
+
+		private final ArrayList<AbsFunDef> functions;
+		private final PassManager[] managers;
+		private final RuntimeException[] errors;
+		private final int from, to;
+
+		WalkFunctions(ArrayList<AbsFunDef> functions, PassManager[] managers,
+				RuntimeException[] errors, int from, int to) {
+			this.functions = functions;
+			this.managers = managers;
+			this.errors = errors;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new WalkFunctions(functions, managers, errors, from, mid),
+						new WalkFunctions(functions, managers, errors, mid, to));
+				return;
+			}
+			int end = Math.min(functions.size(), (from + 1) * FUNCTIONS_PER_TASK);
+			Report.deferErrors(true);
+			try {
+				for (int fun = from * FUNCTIONS_PER_TASK; fun < end; fun++)
+					functions.get(fun).accept(managers[from]);
+			} catch (RuntimeException e) {
+				errors[from] = e;
+			} finally {
+				Report.deferErrors(false);
+			}
+		}
+	}
+
+	@Override
+	public void visit(AbsExprs acceptor) {
+		enter(acceptor);
+		for (int expr = 0; expr < acceptor.numExprs(); expr++)
+			acceptor.expr(expr).accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsFor acceptor) {
+		enter(acceptor);
+		acceptor.count.accept(this);
+		acceptor.lo.accept(this);
+		acceptor.hi.accept(this);
+		acceptor.step.accept(this);
+		acceptor.body.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsFunCall acceptor) {
+		enter(acceptor);
+		for (int arg = 0; arg < acceptor.numArgs(); arg++)
+			acceptor.arg(arg).accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsFunDef acceptor) {
+		enter(acceptor);
+		acceptor.expr.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsIfThen acceptor) {
+		enter(acceptor);
+		acceptor.cond.accept(this);
+		acceptor.thenBody.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsIfThenElse acceptor) {
+		enter(acceptor);
+		acceptor.cond.accept(this);
+		acceptor.thenBody.accept(this);
+		acceptor.elseBody.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsPar acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsTypeDef acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsTypeName acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsUnExpr acceptor) {
+		enter(acceptor);
+		acceptor.expr.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsVarDef acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsVarName acceptor) {
+		node(acceptor);
+	}
+
+	@Override
+	public void visit(AbsWhere acceptor) {
+		enter(acceptor);
+		acceptor.defs.accept(this);
+		acceptor.expr.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsWhile acceptor) {
+		enter(acceptor);
+		acceptor.cond.accept(this);
+		acceptor.body.accept(this);
+		leave(acceptor);
+	}
+
+	@Override
+	public void visit(AbsImportDef acceptor) {
+		// enter loads the imported definitions
+		enter(acceptor);
+		if (acceptor.imports != null)
+			acceptor.imports.accept(this);
+		leave(acceptor);
+	}
+
+}
@@ -21,8 +21,8 @@ public class AbsFunDef extends AbsDef {
 	/** Opis tipa rezultata funkcije. */
 	public final AbsType type;
 	
-	/** Jedro funkcije. */
-	public final AbsExpr expr;
+	/** Jedro funkcije; null, ko je jedro ze prevedeno in sprosceno. */
+	public AbsExpr expr;
 
 	/**
 	 * Ustvari novo definicijo funckije.
@@ -1,5 +1,7 @@
 package compiler.abstr.tree;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import compiler.*;
 import compiler.abstr.*;
 
@@ -10,8 +12,17 @@ import compiler.abstr.*;
  */
 public abstract class AbsTree {
 
+	/** Stevec vozlisc; vozlisca so lahko ustvarjena na vec nitih. */
+	private static final AtomicInteger nodes = new AtomicInteger();
+
 	public final Position position;
 
+	/**
+	 * Enolicna oznaka vozlisca. Oznake so zaporedna stevila od 0 naprej, zato
+	 * se atributi vozlisc lahko hranijo v tabelah, indeksiranih z oznako.
+	 */
+	public final int id;
+
 	/**
 	 * Ustvari novo abstraktno sintaksno drevo.
 	 * 
@@ -20,6 +31,16 @@ public abstract class AbsTree {
 	 */
 	public AbsTree(Position pos) {
 		this.position = pos;
+		this.id = nodes.getAndIncrement();
+	}
+
+	/**
+	 * Vrne stevilo doslej ustvarjenih vozlisc.
+	 * 
+	 * @return Stevilo vozlisc.
+	 */
+	public static int numNodes() {
+		return nodes.get();
 	}
 
 	public abstract void accept(Visitor visitor);
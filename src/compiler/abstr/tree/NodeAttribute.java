@@ -0,0 +1,71 @@
+package compiler.abstr.tree;
+
+import java.util.Arrays;
+
+/**
+ * Atribut vozlisc abstraktnega sintaksnega drevesa.
+ * <p>
+ * Values are stored in an array indexed by {@link AbsTree#id}, so reading an
+ * attribute is a single array load. The array grows on demand; if attributes
+ * are set from several threads, the table has to be sized with
+ * {@link #ensureCapacity(int)} beforehand.
+ * 
+ * @param <T>
+ *            Tip vrednosti atributa.
+ */
+public class NodeAttribute<T> {
+
+	/** Vrednosti atributa. */
+	private Object[] values;
+
+	/**
+	 * Ustvari nov atribut.
+	 */
+	public NodeAttribute() {
+		values = new Object[Math.max(64, AbsTree.numNodes())];
+	}
+
+	/**
+	 * Doloci vrednost atributa vozlisca.
+	 * 
+	 * @param node
+	 *            Vozlisce drevesa; ce je null, se nic ne zgodi.
+	 * @param value
+	 *            Vrednost atributa.
+	 */
+	public void set(AbsTree node, T value) {
+		if (node == null)
+			return;
+		if (node.id >= values.length)
+			ensureCapacity(node.id + 1);
+		values[node.id] = value;
+	}
+
+	/**
+	 * Vrne vrednost atributa vozlisca.
+	 * 
+	 * @param node
+	 *            Vozlisce drevesa ali null.
+	 * @return Vrednost atributa ali null, ce ni dolocena.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(AbsTree node) {
+		if (node == null || node.id >= values.length)
+			return null;
+		return (T) values[node.id];
+	}
+
+	/**
+	 * Poveca tabelo, da lahko hrani atribute vozlisc z oznakami, manjsimi od
+	 * capacity.
+	 * 
+	 * @param capacity
+	 *            Najmanjsa velikost tabele.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > values.length)
+			values = Arrays.copyOf(values,
+					Math.max(capacity, 2 * values.length));
+	}
+
+}
@@ -0,0 +1,53 @@
+package compiler.cfg;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import compiler.frames.FrmLabel;
+import compiler.imcode.ImcStmt;
+
+/**
+ * Osnovni blok linearizirane vmesne kode.
+ * <p>
+ * A block starts with its labels, holds straight-line statements and ends
+ * with a jump, or falls through to the next block of the layout if it has
+ * none. The interpreter jumps on both branches of a conditional jump, so a
+ * conditional jump never falls through.
+ */
+public class CfgBlock {
+
+	/** Oznake bloka. */
+	public final LinkedList<FrmLabel> labels = new LinkedList<>();
+
+	/** Stavki bloka brez oznak in koncnega skoka. */
+	public final LinkedList<ImcStmt> stmts = new LinkedList<>();
+
+	/** Koncni skok (JUMP ali CJUMP) ali null. */
+	public ImcStmt jump = null;
+
+	/** Predhodniki bloka. */
+	public final ArrayList<CfgBlock> preds = new ArrayList<>();
+
+	/** Nasledniki bloka. */
+	public final ArrayList<CfgBlock> succs = new ArrayList<>();
+
+	/** Indeks bloka v razporedu grafa. */
+	public int index;
+
+	/**
+	 * Vrne prvo oznako bloka; blok brez oznake dobi novo oznako.
+	 *
+	 * @return Oznaka bloka.
+	 */
+	public FrmLabel label() {
+		if (labels.isEmpty())
+			labels.add(FrmLabel.newLabel());
+		return labels.getFirst();
+	}
+
+	@Override
+	public String toString() {
+		return "BLOCK(" + index + (labels.isEmpty() ? "" : "," + labels.getFirst().name()) + ")";
+	}
+
+}
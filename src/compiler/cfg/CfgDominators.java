@@ -0,0 +1,164 @@
+package compiler.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Drevo dominatorjev grafa pretoka.
+ * <p>
+ * Immediate dominators are computed iteratively over the reverse postorder
+ * of reachable blocks, intersecting the dominators of processed
+ * predecessors until nothing changes (Cooper, Harvey and Kennedy).
+ * Unreachable blocks have no dominators.
+ */
+public class CfgDominators {
+
+	/** Graf pretoka. */
+	private final CfgGraph graph;
+
+	/** Dosegljivi bloki v obratnem poobhodnem vrstnem redu. */
+	private final ArrayList<CfgBlock> order = new ArrayList<>();
+
+	/** Polozaji blokov v obratnem poobhodnem vrstnem redu ali -1. */
+	private final int[] position;
+
+	/** Neposredni dominatorji blokov. */
+	private final CfgBlock[] idom;
+
+	/** Otroci blokov v drevesu dominatorjev. */
+	private final ArrayList<ArrayList<CfgBlock>> children = new ArrayList<>();
+
+	/**
+	 * Izracuna dominatorje blokov grafa.
+	 *
+	 * @param graph
+	 *            Graf pretoka.
+	 */
+	public CfgDominators(CfgGraph graph) {
+		this.graph = graph;
+		int size = graph.blocks.size();
+		position = new int[size];
+		Arrays.fill(position, -1);
+		idom = new CfgBlock[size];
+
+		boolean[] visited = new boolean[size];
+		postorder(graph.entry(), visited);
+		Collections.reverse(order);
+		for (int pos = 0; pos < order.size(); pos++)
+			position[order.get(pos).index] = pos;
+
+		CfgBlock entry = graph.entry();
+		idom[entry.index] = entry;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (CfgBlock block : order) {
+				if (block == entry)
+					continue;
+				CfgBlock dom = null;
+				for (CfgBlock pred : block.preds)
+					if (idom[pred.index] != null)
+						dom = dom == null ? pred : intersect(pred, dom);
+				if (idom[block.index] != dom) {
+					idom[block.index] = dom;
+					changed = true;
+				}
+			}
+		}
+
+		for (int block = 0; block < size; block++)
+			children.add(new ArrayList<CfgBlock>());
+		for (CfgBlock block : order)
+			if (block != entry)
+				children.get(idom[block.index].index).add(block);
+	}
+
+	private void postorder(CfgBlock entry, boolean[] visited) {
+		// iterative, functions of generated programs can be long
+		ArrayList<CfgBlock> stack = new ArrayList<>();
+		ArrayList<Integer> next = new ArrayList<>();
+		visited[entry.index] = true;
+		stack.add(entry);
+		next.add(0);
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			CfgBlock block = stack.get(top);
+			int succ = next.get(top);
+			if (succ < block.succs.size()) {
+				next.set(top, succ + 1);
+				CfgBlock child = block.succs.get(succ);
+				if (!visited[child.index]) {
+					visited[child.index] = true;
+					stack.add(child);
+					next.add(0);
+				}
+			} else {
+				order.add(block);
+				stack.remove(top);
+				next.remove(top);
+			}
+		}
+	}
+
+	private CfgBlock intersect(CfgBlock b1, CfgBlock b2) {
+		while (b1 != b2) {
+			while (position[b1.index] > position[b2.index])
+				b1 = idom[b1.index];
+			while (position[b2.index] > position[b1.index])
+				b2 = idom[b2.index];
+		}
+		return b1;
+	}
+
+	/**
+	 * Vrne neposredni dominator bloka; vstopni blok nima dominatorja.
+	 *
+	 * @param block
+	 *            Blok.
+	 * @return Neposredni dominator ali null.
+	 */
+	public CfgBlock idom(CfgBlock block) {
+		return block == graph.entry() ? null : idom[block.index];
+	}
+
+	/**
+	 * Ali blok a dominira blok b.
+	 *
+	 * @param a
+	 *            Blok a.
+	 * @param b
+	 *            Blok b.
+	 * @return Ali vsaka pot od vstopa do b gre skozi a.
+	 */
+	public boolean dominates(CfgBlock a, CfgBlock b) {
+		if (idom[b.index] == null)
+			return false;
+		while (b != a && b != graph.entry())
+			b = idom[b.index];
+		return b == a;
+	}
+
+	/**
+	 * Vrne otroke bloka v drevesu dominatorjev.
+	 */
+	public List<CfgBlock> children(CfgBlock block) {
+		return children.get(block.index);
+	}
+
+	/**
+	 * Vrne dosegljive bloke v obratnem poobhodnem vrstnem redu.
+	 */
+	public List<CfgBlock> reversePostorder() {
+		return order;
+	}
+
+	/**
+	 * Ali je blok dosegljiv iz vstopa.
+	 */
+	public boolean isReachable(CfgBlock block) {
+		return position[block.index] >= 0;
+	}
+
+}
@@ -0,0 +1,209 @@
+package compiler.cfg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import compiler.frames.FrmLabel;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+
+/**
+ * Graf pretoka linearizirane kode ene funkcije.
+ * <p>
+ * Blocks are kept in layout order, the first block is the entry. Labels
+ * are matched by name, as the interpreter matches them. Statements are
+ * copied into the graph, as linearized code may share subtrees between
+ * statements and passes rewrite them in place. After blocks,
+ * jumps or the layout are changed, {@link #connect()} recomputes indices,
+ * predecessors and successors.
+ */
+public class CfgGraph {
+
+	/** Bloki v vrstnem redu izvajanja brez skokov. */
+	public final ArrayList<CfgBlock> blocks = new ArrayList<>();
+
+	/** Bloki po imenih oznak. */
+	private final HashMap<String, CfgBlock> blocksByLabel = new HashMap<>();
+
+	/**
+	 * Zgradi graf pretoka iz linearne kode.
+	 *
+	 * @param code
+	 *            Linearna koda funkcije.
+	 */
+	public CfgGraph(ImcSEQ code) {
+		CfgBlock block = new CfgBlock();
+		blocks.add(block);
+		for (ImcStmt stmt : code.stmts) {
+			if (stmt instanceof ImcLABEL) {
+				if (!block.stmts.isEmpty() || block.jump != null) {
+					block = new CfgBlock();
+					blocks.add(block);
+				}
+				block.labels.add(((ImcLABEL) stmt).label);
+			} else if (stmt instanceof ImcJUMP || stmt instanceof ImcCJUMP) {
+				block.jump = ImcTree.copyOf(stmt);
+				block = new CfgBlock();
+				blocks.add(block);
+			} else {
+				if (block.jump != null) {
+					block = new CfgBlock();
+					blocks.add(block);
+				}
+				block.stmts.add(ImcTree.copyOf(stmt));
+			}
+		}
+		if (blocks.size() > 1 && block.labels.isEmpty() && block.stmts.isEmpty())
+			blocks.remove(blocks.size() - 1);
+		connect();
+	}
+
+	/**
+	 * Vrne vstopni blok.
+	 */
+	public CfgBlock entry() {
+		return blocks.get(0);
+	}
+
+	/**
+	 * Vrne blok z dano oznako ali null.
+	 */
+	public CfgBlock block(FrmLabel label) {
+		return blocksByLabel.get(label.name());
+	}
+
+	/**
+	 * Vrne blok, ki v razporedu sledi danemu, ali null.
+	 */
+	public CfgBlock next(CfgBlock block) {
+		return block.index + 1 < blocks.size() ? blocks.get(block.index + 1) : null;
+	}
+
+	/**
+	 * Ponovno izracuna indekse, predhodnike in naslednike blokov.
+	 */
+	public void connect() {
+		blocksByLabel.clear();
+		for (int index = 0; index < blocks.size(); index++) {
+			CfgBlock block = blocks.get(index);
+			block.index = index;
+			block.preds.clear();
+			block.succs.clear();
+			for (FrmLabel label : block.labels)
+				blocksByLabel.put(label.name(), block);
+		}
+		for (CfgBlock block : blocks) {
+			if (block.jump instanceof ImcJUMP)
+				edge(block, block(((ImcJUMP) block.jump).label));
+			else if (block.jump instanceof ImcCJUMP) {
+				edge(block, block(((ImcCJUMP) block.jump).trueLabel));
+				edge(block, block(((ImcCJUMP) block.jump).falseLabel));
+			} else
+				edge(block, next(block));
+		}
+	}
+
+	private void edge(CfgBlock from, CfgBlock to) {
+		if (to == null || from.succs.contains(to))
+			return;
+		from.succs.add(to);
+		to.preds.add(from);
+	}
+
+	/**
+	 * Vrne linearno kodo grafa; oznake, na katere ne skace noben skok, so
+	 * izpuscene.
+	 *
+	 * @return Linearna koda.
+	 */
+	public ImcSEQ linear() {
+		HashSet<String> targets = new HashSet<>();
+		for (CfgBlock block : blocks) {
+			if (block.jump instanceof ImcJUMP)
+				targets.add(((ImcJUMP) block.jump).label.name());
+			else if (block.jump instanceof ImcCJUMP) {
+				targets.add(((ImcCJUMP) block.jump).trueLabel.name());
+				targets.add(((ImcCJUMP) block.jump).falseLabel.name());
+			}
+		}
+
+		ImcSEQ code = new ImcSEQ();
+		for (CfgBlock block : blocks) {
+			for (FrmLabel label : block.labels)
+				if (targets.contains(label.name()))
+					code.stmts.add(new ImcLABEL(label));
+			code.stmts.addAll(block.stmts);
+			if (block.jump != null)
+				code.stmts.add(block.jump);
+		}
+		return code;
+	}
+
+	/**
+	 * Vrne stavke, ki so lahko zadnji izvedeni stavki funkcije; vrednost
+	 * zadnjega izvedenega stavka je rezultat klica.
+	 */
+	public ArrayList<ImcStmt> resultStmts() {
+		ArrayList<ImcStmt> stmts = new ArrayList<>();
+		CfgBlock last = blocks.get(blocks.size() - 1);
+		if (last.jump != null)
+			return stmts;
+		// the code may end with blocks without statements
+		HashSet<CfgBlock> visited = new HashSet<>();
+		ArrayList<CfgBlock> pending = new ArrayList<>();
+		pending.add(last);
+		visited.add(last);
+		while (!pending.isEmpty()) {
+			CfgBlock block = pending.remove(pending.size() - 1);
+			if (!block.stmts.isEmpty())
+				stmts.add(block.stmts.getLast());
+			else
+				for (CfgBlock pred : block.preds)
+					if (visited.add(pred))
+						pending.add(pred);
+		}
+		return stmts;
+	}
+
+	/**
+	 * Vrne zacasno spremenljivko, ki jo stavek definira, ali null.
+	 */
+	public static FrmTemp def(ImcStmt stmt) {
+		if (stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP)
+			return ((ImcTEMP) ((ImcMOVE) stmt).dst).temp;
+		return null;
+	}
+
+	/**
+	 * Doda zacasne spremenljivke, ki jih stavek ali izraz uporablja.
+	 *
+	 * @param code
+	 *            Stavek ali izraz linearizirane kode.
+	 * @param uses
+	 *            Seznam uporab.
+	 */
+	public static void uses(ImcCode code, List<FrmTemp> uses) {
+		if (code instanceof ImcTEMP)
+			uses.add(((ImcTEMP) code).temp);
+		else if (code instanceof ImcMOVE) {
+			ImcMOVE move = (ImcMOVE) code;
+			if (move.dst instanceof ImcMEM)
+				uses(((ImcMEM) move.dst).expr, uses);
+			uses(move.src, uses);
+		} else if (code instanceof ImcEXP)
+			uses(((ImcEXP) code).expr, uses);
+		else if (code instanceof ImcCJUMP)
+			uses(((ImcCJUMP) code).cond, uses);
+		else if (code instanceof ImcBINOP) {
+			uses(((ImcBINOP) code).limc, uses);
+			uses(((ImcBINOP) code).rimc, uses);
+		} else if (code instanceof ImcMEM)
+			uses(((ImcMEM) code).expr, uses);
+		else if (code instanceof ImcCALL)
+			for (ImcExpr arg : ((ImcCALL) code).args)
+				uses(arg, uses);
+	}
+
+}
@@ -0,0 +1,40 @@
+package compiler.cfg;
+
+import java.util.LinkedHashSet;
+
+/**
+ * Naravna zanka grafa pretoka.
+ */
+public class CfgLoop {
+
+	/** Glava zanke, ki dominira vse bloke zanke. */
+	public final CfgBlock header;
+
+	/** Bloki zanke, vkljucno z glavo in bloki gnezdenih zank. */
+	public final LinkedHashSet<CfgBlock> blocks = new LinkedHashSet<>();
+
+	/** Najblizja zanka, v katero je zanka gnezdena, ali null. */
+	public CfgLoop parent = null;
+
+	/** Globina gnezdenja; zunanje zanke imajo globino 1. */
+	public int depth = 1;
+
+	/**
+	 * Ustvari zanko z dano glavo.
+	 *
+	 * @param header
+	 *            Glava zanke.
+	 */
+	public CfgLoop(CfgBlock header) {
+		this.header = header;
+		blocks.add(header);
+	}
+
+	/**
+	 * Ali je blok v zanki.
+	 */
+	public boolean contains(CfgBlock block) {
+		return blocks.contains(block);
+	}
+
+}
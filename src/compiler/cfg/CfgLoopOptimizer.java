@@ -0,0 +1,913 @@
+package compiler.cfg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.ListIterator;
+
+import compiler.frames.FrmFrame;
+import compiler.frames.FrmLabel;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+import compiler.optimizer.OptTreePass;
+import compiler.optimizer.Optimizer;
+
+/**
+ * Premikanje nespremenljivih izracunov iz zank in zmanjsevanje moci.
+ * <p>
+ * Loops are visited from the innermost out. A computation or load whose
+ * value cannot change within the loop is computed once in a preheader, a
+ * block that runs just before the loop is entered. Then a product of an
+ * induction variable, which the loop only changes by adding constants to
+ * it, and a constant, possibly added to an invariant value, is kept in a
+ * temporary of its own that is advanced after every change of the
+ * variable, so array addresses are bumped instead of recomputed; this is
+ * only done if the additions evaluate fewer nodes than the products. The
+ * counter of a {@code for} loop lives in the frame and the loop header
+ * loads it into a temporary; the temporary stands for the word wherever no
+ * store to the word can come between the load and the use.
+ * <p>
+ * Words of the frame are treated as variables if the function uses their
+ * addresses only to load and store them: nothing else can then reach them,
+ * so only stores to the same word change them. Other loads are invariant
+ * only in loops without calls and without stores that may write the loaded
+ * word. The preheader runs even if the loop body never does, and the
+ * interpreter stops on arithmetic with a word that was never stored, so
+ * computations outside the loop header are only moved if the words they
+ * load are parameters or were already used on the way to the loop.
+ */
+public class CfgLoopOptimizer {
+
+	/** Stevilo izracunov, premaknjenih iz zank. */
+	public int numHoisted = 0;
+
+	/** Stevilo izracunov, nadomescenih s sestevanjem. */
+	public int numReduced = 0;
+
+	/** Stevilo vozlisc posodobitve zacasne spremenljivke. */
+	private static final int UPDATE_COST = 5;
+
+	private CfgGraph graph;
+
+	/** Kazalec FP funkcije. */
+	private FrmTemp fp;
+
+	/** Zacasne spremenljivke, ki hranijo naslov besede klicnega zapisa. */
+	private HashMap<FrmTemp, Integer> addresses;
+
+	/** Ali so besede klicnega zapisa dostopne le z branji in pisanji. */
+	private boolean wordsPrivate;
+
+	private CfgLoop loop;
+
+	/** Zacasne spremenljivke, definirane v zanki. */
+	private HashSet<FrmTemp> defined;
+
+	/** Besede klicnega zapisa, v katere zanka pise. */
+	private HashSet<Integer> storedWords;
+
+	/** Ostali naslovi, na katere zanka pise. */
+	private ArrayList<ImcExpr> stores;
+
+	/** Bloki notranjih zank. */
+	private HashSet<CfgBlock> inner;
+
+	/** Ali zanka vsebuje klic. */
+	private boolean hasCall;
+
+	/** Besede klicnega zapisa, ki imajo ob vstopu v zanko vrednost. */
+	private HashSet<Integer> initialized;
+
+	/** Zacasne spremenljivke, definirane pred vstopom v zanko. */
+	private HashSet<FrmTemp> initializedTemps;
+
+	/**
+	 * Optimizira zanke funkcije.
+	 *
+	 * @param graph
+	 *            Graf pretoka funkcije.
+	 * @param frame
+	 *            Klicni zapis funkcije.
+	 * @return Ali se je graf spremenil.
+	 */
+	public boolean optimize(CfgGraph graph, FrmFrame frame) {
+		this.graph = graph;
+		fp = frame.FP;
+		analyzeFrame();
+
+		HashSet<CfgBlock> done = new HashSet<>();
+		CfgDominators dominators = null;
+		CfgLoops loops = null;
+		boolean changed = true;
+		boolean optimized = false;
+		while (true) {
+			if (changed) {
+				dominators = new CfgDominators(graph);
+				loops = new CfgLoops(graph, dominators);
+			}
+			// innermost loops first
+			loop = null;
+			for (int index = loops.loops.size() - 1; index >= 0 && loop == null; index--)
+				if (!done.contains(loops.loops.get(index).header))
+					loop = loops.loops.get(index);
+			if (loop == null)
+				break;
+			done.add(loop.header);
+			changed = optimize(dominators, loops);
+			optimized |= changed;
+		}
+		return optimized;
+	}
+
+	/**
+	 * Poisce zacasne spremenljivke z naslovi besed klicnega zapisa in
+	 * preveri, ali se naslovi uporabljajo le za branja in pisanja.
+	 */
+	private void analyzeFrame() {
+		addresses = new HashMap<>();
+		wordsPrivate = true;
+		HashMap<FrmTemp, Integer> numDefs = new HashMap<>();
+		for (CfgBlock block : graph.blocks)
+			for (ImcStmt stmt : block.stmts) {
+				FrmTemp def = CfgGraph.def(stmt);
+				if (def == null)
+					continue;
+				numDefs.put(def, numDefs.getOrDefault(def, 0) + 1);
+				Integer offset = word(((ImcMOVE) stmt).src);
+				if (offset != null)
+					addresses.put(def, offset);
+			}
+		addresses.keySet().removeIf(temp -> numDefs.get(temp) != 1);
+
+		for (CfgBlock block : graph.blocks) {
+			for (ImcStmt stmt : block.stmts)
+				if (escapes(stmt))
+					wordsPrivate = false;
+			if (escapes(block.jump))
+				wordsPrivate = false;
+		}
+	}
+
+	/**
+	 * Ali koda uporabi naslov besede klicnega zapisa drugace kot za branje
+	 * ali pisanje.
+	 */
+	private boolean escapes(ImcCode code) {
+		if (code instanceof ImcTEMP)
+			return ((ImcTEMP) code).temp == fp || addresses.containsKey(((ImcTEMP) code).temp);
+		if (code instanceof ImcMEM && word(((ImcMEM) code).expr) != null)
+			return false;
+		if (code instanceof ImcMOVE) {
+			ImcMOVE move = (ImcMOVE) code;
+			if (CfgGraph.def(move) != null && addresses.containsKey(CfgGraph.def(move)))
+				return false;
+			return escapes(move.dst instanceof ImcMEM ? move.dst : null) || escapes(move.src);
+		}
+		if (code instanceof ImcEXP)
+			return escapes(((ImcEXP) code).expr);
+		if (code instanceof ImcCJUMP)
+			return escapes(((ImcCJUMP) code).cond);
+		if (code instanceof ImcBINOP)
+			return escapes(((ImcBINOP) code).limc) || escapes(((ImcBINOP) code).rimc);
+		if (code instanceof ImcMEM)
+			return escapes(((ImcMEM) code).expr);
+		if (code instanceof ImcCALL)
+			for (ImcExpr arg : ((ImcCALL) code).args)
+				if (escapes(arg))
+					return true;
+		return false;
+	}
+
+	/**
+	 * Vrne odmik besede klicnega zapisa, katere naslov je izraz, ali null.
+	 */
+	private Integer word(ImcExpr addr) {
+		if (addr instanceof ImcTEMP) {
+			FrmTemp temp = ((ImcTEMP) addr).temp;
+			return temp == fp ? Integer.valueOf(0) : addresses.get(temp);
+		}
+		if (!(addr instanceof ImcBINOP) || ((ImcBINOP) addr).op != ImcBINOP.ADD)
+			return null;
+		ImcBINOP binop = (ImcBINOP) addr;
+		if (binop.rimc instanceof ImcCONST && word(binop.limc) != null
+				&& binop.limc instanceof ImcTEMP)
+			return word(binop.limc) + ((ImcCONST) binop.rimc).value;
+		if (binop.limc instanceof ImcCONST && word(binop.rimc) != null
+				&& binop.rimc instanceof ImcTEMP)
+			return word(binop.rimc) + ((ImcCONST) binop.limc).value;
+		return null;
+	}
+
+	/**
+	 * Vrne odmik besede, ki jo nalaga izraz, ce so besede zasebne, ali null.
+	 */
+	private Integer loadedWord(ImcExpr expr) {
+		if (!wordsPrivate || !(expr instanceof ImcMEM))
+			return null;
+		return word(((ImcMEM) expr).expr);
+	}
+
+	/**
+	 * Optimizira trenutno zanko.
+	 *
+	 * @return Ali se je graf spremenil.
+	 */
+	private boolean optimize(CfgDominators dominators, CfgLoops loops) {
+		// statements added at the end of the function would change its result
+		HashSet<CfgBlock> ending = ending();
+		for (CfgBlock block : loop.header.preds)
+			if (ending.contains(block))
+				return false;
+		for (CfgBlock block : loop.blocks)
+			if (ending.contains(block))
+				return false;
+
+		inner = new HashSet<>();
+		for (CfgBlock block : loop.blocks)
+			if (loops.loopOf(block) != loop)
+				inner.add(block);
+		collect();
+		initialized = new HashSet<>();
+		initializedTemps = new HashSet<>();
+		for (CfgBlock block = loop.header; block != null; block = dominators.idom(block)) {
+			for (ImcStmt stmt : block.stmts) {
+				initialize(stmt, false);
+				if (block != loop.header && CfgGraph.def(stmt) != null)
+					initializedTemps.add(CfgGraph.def(stmt));
+			}
+			initialize(block.jump, false);
+		}
+
+		// invariant computations, outermost ones
+		LinkedHashMap<String, ImcExpr> invariants = new LinkedHashMap<>();
+		for (CfgBlock block : loop.blocks) {
+			for (ImcStmt stmt : block.stmts)
+				for (ImcExpr expr : exprs(stmt))
+					findInvariants(expr, block == loop.header, invariants);
+			for (ImcExpr expr : exprs(block.jump))
+				findInvariants(expr, block == loop.header, invariants);
+		}
+
+		CfgBlock preheader = null;
+		if (!invariants.isEmpty()) {
+			preheader = preheader();
+			if (preheader == null)
+				return false;
+			HashMap<String, FrmTemp> temps = new HashMap<>();
+			for (String key : invariants.keySet()) {
+				FrmTemp temp = new FrmTemp();
+				temps.put(key, temp);
+				preheader.stmts.add(new ImcMOVE(new ImcTEMP(temp), ImcTree.copyOf(invariants.get(key))));
+				numHoisted++;
+			}
+			for (CfgBlock block : loop.blocks)
+				replace(block, expr -> temps.containsKey(key(expr)) ? new ImcTEMP(temps.get(key(expr))) : null);
+			collect();
+		}
+
+		boolean reduced = reduce(preheader);
+		if (preheader != null || reduced)
+			graph.connect();
+		return preheader != null || reduced;
+	}
+
+	/**
+	 * Vrne bloke, ki vsebujejo zadnji izvedeni stavek funkcije, in prazne
+	 * bloke za njimi.
+	 */
+	private HashSet<CfgBlock> ending() {
+		HashSet<CfgBlock> ending = new HashSet<>();
+		CfgBlock last = graph.blocks.get(graph.blocks.size() - 1);
+		if (last.jump != null)
+			return ending;
+		ArrayList<CfgBlock> pending = new ArrayList<>();
+		pending.add(last);
+		ending.add(last);
+		while (!pending.isEmpty()) {
+			CfgBlock block = pending.remove(pending.size() - 1);
+			if (block.stmts.isEmpty())
+				for (CfgBlock pred : block.preds)
+					if (ending.add(pred))
+						pending.add(pred);
+		}
+		return ending;
+	}
+
+	/**
+	 * Zbere definicije, pisanja in klice zanke.
+	 */
+	private void collect() {
+		defined = new HashSet<>();
+		storedWords = new HashSet<>();
+		stores = new ArrayList<>();
+		hasCall = false;
+		for (CfgBlock block : loop.blocks)
+			for (ImcStmt stmt : block.stmts) {
+				if (CfgGraph.def(stmt) != null)
+					defined.add(CfgGraph.def(stmt));
+				else if (stmt instanceof ImcMOVE) {
+					ImcMEM dst = (ImcMEM) ((ImcMOVE) stmt).dst;
+					if (loadedWord(dst) != null)
+						storedWords.add(loadedWord(dst));
+					else
+						stores.add(dst.expr);
+				}
+				for (ImcExpr expr : exprs(stmt))
+					hasCall |= hasCall(expr);
+			}
+	}
+
+	private static boolean hasCall(ImcExpr expr) {
+		if (expr instanceof ImcCALL)
+			return true;
+		if (expr instanceof ImcBINOP)
+			return hasCall(((ImcBINOP) expr).limc) || hasCall(((ImcBINOP) expr).rimc);
+		if (expr instanceof ImcMEM)
+			return hasCall(((ImcMEM) expr).expr);
+		return false;
+	}
+
+	/**
+	 * Zabelezi besede, ki jih stavek shrani ali uporabi v racunu.
+	 */
+	private void initialize(ImcCode code, boolean operand) {
+		if (code instanceof ImcMOVE) {
+			ImcMOVE move = (ImcMOVE) code;
+			if (loadedWord(move.dst) != null)
+				initialized.add(loadedWord(move.dst));
+			else if (move.dst instanceof ImcMEM)
+				initialize(((ImcMEM) move.dst).expr, false);
+			initialize(move.src, false);
+		} else if (code instanceof ImcEXP)
+			initialize(((ImcEXP) code).expr, false);
+		else if (code instanceof ImcCJUMP)
+			initialize(((ImcCJUMP) code).cond, false);
+		else if (code instanceof ImcBINOP) {
+			initialize(((ImcBINOP) code).limc, true);
+			initialize(((ImcBINOP) code).rimc, true);
+		} else if (code instanceof ImcMEM) {
+			if (operand && loadedWord((ImcMEM) code) != null)
+				initialized.add(loadedWord((ImcMEM) code));
+			initialize(((ImcMEM) code).expr, false);
+		} else if (code instanceof ImcCALL)
+			for (ImcExpr arg : ((ImcCALL) code).args)
+				initialize(arg, false);
+	}
+
+	/**
+	 * Vrne izraze stavka, ki se izracunajo; cilj premika ni med njimi.
+	 */
+	private static ArrayList<ImcExpr> exprs(ImcStmt stmt) {
+		ArrayList<ImcExpr> exprs = new ArrayList<>();
+		if (stmt instanceof ImcMOVE) {
+			if (((ImcMOVE) stmt).dst instanceof ImcMEM)
+				exprs.add(((ImcMEM) ((ImcMOVE) stmt).dst).expr);
+			exprs.add(((ImcMOVE) stmt).src);
+		} else if (stmt instanceof ImcEXP)
+			exprs.add(((ImcEXP) stmt).expr);
+		else if (stmt instanceof ImcCJUMP)
+			exprs.add(((ImcCJUMP) stmt).cond);
+		return exprs;
+	}
+
+	private void findInvariants(ImcExpr expr, boolean inHeader, LinkedHashMap<String, ImcExpr> invariants) {
+		if (expr instanceof ImcBINOP || expr instanceof ImcMEM) {
+			if (word(expr) == null && OptTreePass.pure(expr) && invariant(expr)
+					&& (inHeader || speculable(expr))) {
+				invariants.putIfAbsent(key(expr), expr);
+				return;
+			}
+		}
+		if (expr instanceof ImcBINOP) {
+			findInvariants(((ImcBINOP) expr).limc, inHeader, invariants);
+			findInvariants(((ImcBINOP) expr).rimc, inHeader, invariants);
+		} else if (expr instanceof ImcMEM)
+			findInvariants(((ImcMEM) expr).expr, inHeader, invariants);
+		else if (expr instanceof ImcCALL)
+			for (ImcExpr arg : ((ImcCALL) expr).args)
+				findInvariants(arg, inHeader, invariants);
+	}
+
+	/**
+	 * Ali je vrednost izraza v zanki nespremenljiva.
+	 */
+	private boolean invariant(ImcExpr expr) {
+		if (expr instanceof ImcCONST || expr instanceof ImcNAME)
+			return true;
+		if (expr instanceof ImcTEMP)
+			return !defined.contains(((ImcTEMP) expr).temp);
+		if (expr instanceof ImcBINOP)
+			return invariant(((ImcBINOP) expr).limc) && invariant(((ImcBINOP) expr).rimc);
+		if (expr instanceof ImcMEM) {
+			ImcExpr addr = ((ImcMEM) expr).expr;
+			if (!invariant(addr))
+				return false;
+			if (loadedWord(expr) != null)
+				return !storedWords.contains(loadedWord(expr));
+			if (hasCall)
+				return false;
+			for (ImcExpr store : stores)
+				if (mayAlias(store, addr))
+					return false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Ali lahko pisanje na prvi naslov spremeni besedo na drugem; naslova z
+	 * isto osnovo in razlicnima konstantnima odmikoma se ne prekrivata.
+	 */
+	private static boolean mayAlias(ImcExpr addr1, ImcExpr addr2) {
+		int offset1 = 0, offset2 = 0;
+		if (addr1 instanceof ImcBINOP && ((ImcBINOP) addr1).op == ImcBINOP.ADD
+				&& ((ImcBINOP) addr1).rimc instanceof ImcCONST) {
+			offset1 = ((ImcCONST) ((ImcBINOP) addr1).rimc).value;
+			addr1 = ((ImcBINOP) addr1).limc;
+		}
+		if (addr2 instanceof ImcBINOP && ((ImcBINOP) addr2).op == ImcBINOP.ADD
+				&& ((ImcBINOP) addr2).rimc instanceof ImcCONST) {
+			offset2 = ((ImcCONST) ((ImcBINOP) addr2).rimc).value;
+			addr2 = ((ImcBINOP) addr2).limc;
+		}
+		return !key(addr1).equals(key(addr2)) || offset1 == offset2;
+	}
+
+	/**
+	 * Ali se izraz lahko izracuna, preden se telo zanke izvede: besede, s
+	 * katerimi racuna, morajo imeti vrednost.
+	 */
+	private boolean speculable(ImcExpr expr) {
+		if (expr instanceof ImcBINOP) {
+			for (ImcExpr operand : new ImcExpr[] { ((ImcBINOP) expr).limc, ((ImcBINOP) expr).rimc }) {
+				if (operand instanceof ImcMEM) {
+					Integer word = loadedWord(operand);
+					if (word == null || (word <= 0 && !initialized.contains(word)))
+						return false;
+				}
+				if (!speculable(operand))
+					return false;
+			}
+			return true;
+		}
+		if (expr instanceof ImcMEM)
+			return speculable(((ImcMEM) expr).expr);
+		return true;
+	}
+
+	/**
+	 * Nadomesti racune z zacasnimi spremenljivkami z indukcijskimi
+	 * spremenljivkami pomnozenih konstant.
+	 *
+	 * @return Ali se je koda spremenila.
+	 */
+	private boolean reduce(CfgBlock preheader) {
+		// induction variables and their increments; a temporary advanced in
+		// an inner loop would cost more than the computations it replaces
+		HashSet<String> variables = new HashSet<>();
+		HashSet<String> rejected = new HashSet<>();
+		for (CfgBlock block : loop.blocks)
+			for (ImcStmt stmt : block.stmts) {
+				String variable = variable(stmt);
+				if (variable == null)
+					continue;
+				if (step((ImcMOVE) stmt) == null || inner.contains(block) || rejected.contains(variable)) {
+					rejected.add(variable);
+					variables.remove(variable);
+				} else
+					variables.add(variable);
+			}
+		if (variables.isEmpty())
+			return false;
+
+		// products of temporaries loaded from induction words load the words
+		// themselves, so they are found as products of the words
+		HashMap<ImcBINOP, ImcTEMP> copied = copyProducts(variables);
+
+		// products to reduce and their uses
+		LinkedHashMap<String, ImcExpr> products = new LinkedHashMap<>();
+		HashMap<String, Integer> uses = new HashMap<>();
+		for (CfgBlock block : loop.blocks) {
+			for (ImcStmt stmt : block.stmts)
+				for (ImcExpr expr : exprs(stmt))
+					findProducts(expr, block == loop.header, variables, products, uses);
+			for (ImcExpr expr : exprs(block.jump))
+				findProducts(expr, block == loop.header, variables, products, uses);
+		}
+		HashMap<String, Integer> numDefs = new HashMap<>();
+		for (CfgBlock block : loop.blocks)
+			for (ImcStmt stmt : block.stmts)
+				if (variable(stmt) != null)
+					numDefs.put(variable(stmt), numDefs.getOrDefault(variable(stmt), 0) + 1);
+		HashSet<String> added = new HashSet<>();
+		for (String key : products.keySet()) {
+			ImcBINOP product = (ImcBINOP) products.get(key);
+			if (product.op == ImcBINOP.ADD && uses.get(key).equals(uses.get(key(mul(product)))))
+				added.add(key(mul(product)));
+		}
+		products.keySet().removeIf(key -> ((ImcBINOP) products.get(key)).op == ImcBINOP.ADD
+				? !added.contains(key(mul(products.get(key)))) : added.contains(key));
+		// a loaded temporary is evaluated instead of the load of the word
+		products.keySet().removeIf(key -> (Optimizer.size(products.get(key)) - 1
+				- (copied.containsKey(mul(products.get(key))) ? 1 : 0)) * uses.get(key)
+				<= UPDATE_COST * numDefs.get(variable(variable(mul(products.get(key))))));
+		if (products.isEmpty()) {
+			restore(copied);
+			return false;
+		}
+
+		if (preheader == null)
+			preheader = preheader();
+		if (preheader == null) {
+			restore(copied);
+			return false;
+		}
+		HashMap<String, FrmTemp> temps = new HashMap<>();
+		for (String key : products.keySet()) {
+			FrmTemp temp = new FrmTemp();
+			temps.put(key, temp);
+			preheader.stmts.add(new ImcMOVE(new ImcTEMP(temp), ImcTree.copyOf(products.get(key))));
+			numReduced++;
+		}
+		for (CfgBlock block : loop.blocks)
+			replace(block, expr -> temps.containsKey(key(expr)) ? new ImcTEMP(temps.get(key(expr))) : null);
+
+		// advance the temporaries with their variables
+		for (CfgBlock block : loop.blocks) {
+			ListIterator<ImcStmt> stmts = block.stmts.listIterator();
+			while (stmts.hasNext()) {
+				ImcStmt stmt = stmts.next();
+				String variable = variable(stmt);
+				if (variable == null)
+					continue;
+				for (String key : products.keySet()) {
+					ImcBINOP mul = mul(products.get(key));
+					if (!variable.equals(variable(variable(mul))))
+						continue;
+					int step = step((ImcMOVE) stmt) * factor(mul);
+					FrmTemp temp = temps.get(key);
+					stmts.add(new ImcMOVE(new ImcTEMP(temp),
+							new ImcBINOP(ImcBINOP.ADD, new ImcTEMP(temp), new ImcCONST(step))));
+				}
+			}
+		}
+		restore(copied);
+		return true;
+	}
+
+	/**
+	 * V produktih zacasnih spremenljivk, nalozenih iz indukcijskih besed v
+	 * glavi zanke, nadomesti zacasno spremenljivko z nalaganjem besede, kjer
+	 * se beseda od nalaganja ni mogla spremeniti.
+	 *
+	 * @return Spremenjeni produkti in zacasne spremenljivke, ki so jih
+	 *         uporabljali.
+	 */
+	private HashMap<ImcBINOP, ImcTEMP> copyProducts(HashSet<String> variables) {
+		HashMap<ImcBINOP, ImcTEMP> copied = new HashMap<>();
+
+		// temporaries the header loads from induction words before it stores
+		// them or uses the temporaries, and that the loop sets nowhere else
+		HashMap<FrmTemp, ImcMEM> copies = new HashMap<>();
+		HashMap<FrmTemp, Integer> loads = new HashMap<>();
+		HashSet<String> stored = new HashSet<>();
+		ArrayList<FrmTemp> used = new ArrayList<>();
+		for (int i = 0; i < loop.header.stmts.size(); i++) {
+			ImcStmt stmt = loop.header.stmts.get(i);
+			FrmTemp def = CfgGraph.def(stmt);
+			ImcExpr src = def == null ? null : ((ImcMOVE) stmt).src;
+			if (src != null && loadedWord(src) != null && variables.contains(variable(src))
+					&& !stored.contains(variable(src)) && !used.contains(def) && invariant(((ImcMEM) src).expr)) {
+				copies.put(def, (ImcMEM) src);
+				loads.put(def, i);
+			}
+			CfgGraph.uses(stmt, used);
+			if (def == null && variable(stmt) != null)
+				stored.add(variable(stmt));
+		}
+		for (CfgBlock block : loop.blocks)
+			for (int i = 0; i < block.stmts.size(); i++) {
+				FrmTemp def = CfgGraph.def(block.stmts.get(i));
+				if (def != null && (block != loop.header || !loads.containsKey(def) || loads.get(def) != i))
+					copies.remove(def);
+			}
+		if (copies.isEmpty())
+			return copied;
+
+		for (CfgBlock block : loop.blocks) {
+			// words that may have been stored since the header loaded them
+			HashSet<String> changed = new HashSet<>();
+			for (ImcMEM load : copies.values())
+				if (storedBefore(block, variable(load)))
+					changed.add(variable(load));
+			ArrayList<ImcCode> codes = new ArrayList<>(block.stmts);
+			codes.add(block.jump);
+			for (int i = 0; i < codes.size(); i++) {
+				ImcCode code = codes.get(i);
+				for (ImcExpr expr : exprs((ImcStmt) code))
+					copyProducts(expr, copies, changed, block == loop.header ? loads : null, i, copied);
+				if (code instanceof ImcStmt && variable((ImcStmt) code) != null
+						&& CfgGraph.def((ImcStmt) code) == null)
+					changed.add(variable((ImcStmt) code));
+			}
+		}
+		return copied;
+	}
+
+	private void copyProducts(ImcExpr expr, HashMap<FrmTemp, ImcMEM> copies, HashSet<String> changed,
+			HashMap<FrmTemp, Integer> loads, int index, HashMap<ImcBINOP, ImcTEMP> copied) {
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			if (binop.op == ImcBINOP.MUL && (binop.limc instanceof ImcCONST || binop.rimc instanceof ImcCONST)
+					&& variable(binop) instanceof ImcTEMP) {
+				ImcTEMP temp = (ImcTEMP) variable(binop);
+				ImcMEM load = copies.get(temp.temp);
+				if (load != null && !changed.contains(variable(load))
+						&& (loads == null || loads.get(temp.temp) < index)) {
+					copied.put(binop, temp);
+					if (binop.limc == temp)
+						binop.limc = ImcTree.copyOf(load);
+					else
+						binop.rimc = ImcTree.copyOf(load);
+				}
+				return;
+			}
+			copyProducts(binop.limc, copies, changed, loads, index, copied);
+			copyProducts(binop.rimc, copies, changed, loads, index, copied);
+		} else if (expr instanceof ImcMEM)
+			copyProducts(((ImcMEM) expr).expr, copies, changed, loads, index, copied);
+		else if (expr instanceof ImcCALL)
+			for (ImcExpr arg : ((ImcCALL) expr).args)
+				copyProducts(arg, copies, changed, loads, index, copied);
+	}
+
+	/**
+	 * Ali se beseda v isti ponovitvi zanke lahko spremeni, preden se izvede
+	 * blok.
+	 */
+	private boolean storedBefore(CfgBlock block, String word) {
+		HashSet<CfgBlock> visited = new HashSet<>();
+		ArrayList<CfgBlock> pending = new ArrayList<>();
+		if (block != loop.header)
+			pending.add(block);
+		while (!pending.isEmpty()) {
+			CfgBlock pred = pending.remove(pending.size() - 1);
+			for (CfgBlock prev : pred.preds) {
+				if (!loop.contains(prev) || !visited.add(prev))
+					continue;
+				for (ImcStmt stmt : prev.stmts)
+					if (CfgGraph.def(stmt) == null && word.equals(variable(stmt)))
+						return true;
+				if (prev != loop.header)
+					pending.add(prev);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Produktom, ki niso bili nadomesceni, vrne nalozene zacasne
+	 * spremenljivke.
+	 */
+	private static void restore(HashMap<ImcBINOP, ImcTEMP> copied) {
+		for (ImcBINOP mul : copied.keySet())
+			if (mul.limc instanceof ImcCONST)
+				mul.rimc = copied.get(mul);
+			else
+				mul.limc = copied.get(mul);
+	}
+
+	/**
+	 * Vrne kljuc spremenljivke, ki jo stavek spremeni, ali null.
+	 */
+	private String variable(ImcStmt stmt) {
+		if (CfgGraph.def(stmt) != null)
+			return variable(((ImcMOVE) stmt).dst);
+		if (stmt instanceof ImcMOVE && loadedWord(((ImcMOVE) stmt).dst) != null)
+			return variable(((ImcMOVE) stmt).dst);
+		return null;
+	}
+
+	/**
+	 * Vrne kljuc spremenljivke (zacasne spremenljivke ali besede klicnega
+	 * zapisa) ali null.
+	 */
+	private String variable(ImcExpr expr) {
+		if (expr instanceof ImcTEMP)
+			return ((ImcTEMP) expr).temp.name();
+		if (loadedWord(expr) != null)
+			return "[" + loadedWord(expr) + "]";
+		return null;
+	}
+
+	/**
+	 * Vrne indukcijsko spremenljivko produkta.
+	 */
+	private static ImcExpr variable(ImcBINOP mul) {
+		return mul.limc instanceof ImcCONST ? mul.rimc : mul.limc;
+	}
+
+	/**
+	 * Vrne mnozenje produkta, ki mu je morda pristeta nespremenljiva
+	 * vrednost.
+	 */
+	private static ImcBINOP mul(ImcExpr product) {
+		ImcBINOP binop = (ImcBINOP) product;
+		return binop.op == ImcBINOP.ADD ? (ImcBINOP) binop.rimc : binop;
+	}
+
+	/**
+	 * Vrne konstanto, ki jo stavek pristeje spremenljivki, ali null.
+	 */
+	private Integer step(ImcMOVE move) {
+		if (!(move.src instanceof ImcBINOP))
+			return null;
+		ImcBINOP binop = (ImcBINOP) move.src;
+		String variable = variable(move.dst);
+		if (binop.op == ImcBINOP.ADD) {
+			if (binop.rimc instanceof ImcCONST && variable.equals(variable(binop.limc)))
+				return ((ImcCONST) binop.rimc).value;
+			if (binop.limc instanceof ImcCONST && variable.equals(variable(binop.rimc)))
+				return ((ImcCONST) binop.limc).value;
+		} else if (binop.op == ImcBINOP.SUB && binop.rimc instanceof ImcCONST
+				&& variable.equals(variable(binop.limc)))
+			return -((ImcCONST) binop.rimc).value;
+		return null;
+	}
+
+	/**
+	 * Poisce produkte indukcijskih spremenljivk s konstantami, morda
+	 * pristete nespremenljivim vrednostim.
+	 */
+	private void findProducts(ImcExpr expr, boolean inHeader, HashSet<String> variables,
+			LinkedHashMap<String, ImcExpr> products, HashMap<String, Integer> uses) {
+		ImcExpr product = null;
+		if (isProduct(expr, variables))
+			product = expr;
+		else if (expr instanceof ImcBINOP && ((ImcBINOP) expr).op == ImcBINOP.ADD) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			if (isProduct(binop.limc, variables) && invariant(binop.rimc) && OptTreePass.pure(binop.rimc))
+				product = new ImcBINOP(ImcBINOP.ADD, binop.rimc, binop.limc);
+			else if (isProduct(binop.rimc, variables) && invariant(binop.limc) && OptTreePass.pure(binop.limc))
+				product = expr;
+			if (product != null && !inHeader && !speculable(((ImcBINOP) product).limc))
+				product = null;
+		}
+		if (product != null && (inHeader || initialVariable(product))) {
+			String key = key(expr);
+			products.putIfAbsent(key, product);
+			uses.put(key, uses.getOrDefault(key, 0) + 1);
+			if (((ImcBINOP) product).op == ImcBINOP.ADD) {
+				// the multiplication alone may be worth reducing if it is
+				// also added to other values
+				ImcBINOP mul = mul(product);
+				products.putIfAbsent(key(mul), mul);
+				uses.put(key(mul), uses.getOrDefault(key(mul), 0) + 1);
+			}
+			return;
+		}
+		if (expr instanceof ImcBINOP) {
+			findProducts(((ImcBINOP) expr).limc, inHeader, variables, products, uses);
+			findProducts(((ImcBINOP) expr).rimc, inHeader, variables, products, uses);
+		} else if (expr instanceof ImcMEM)
+			findProducts(((ImcMEM) expr).expr, inHeader, variables, products, uses);
+		else if (expr instanceof ImcCALL)
+			for (ImcExpr arg : ((ImcCALL) expr).args)
+				findProducts(arg, inHeader, variables, products, uses);
+	}
+
+	/**
+	 * Ali ima indukcijska spremenljivka produkta vrednost ob vstopu v zanko.
+	 */
+	private boolean initialVariable(ImcExpr product) {
+		ImcExpr variable = variable(mul(product));
+		if (variable instanceof ImcTEMP)
+			return initializedTemps.contains(((ImcTEMP) variable).temp);
+		return speculable(mul(product));
+	}
+
+	private boolean isProduct(ImcExpr expr, HashSet<String> variables) {
+		if (!(expr instanceof ImcBINOP) || ((ImcBINOP) expr).op != ImcBINOP.MUL)
+			return false;
+		ImcBINOP binop = (ImcBINOP) expr;
+		if (!(binop.rimc instanceof ImcCONST) && !(binop.limc instanceof ImcCONST))
+			return false;
+		ImcExpr variable = variable(binop);
+		String key = variable instanceof ImcTEMP || loadedWord(variable) != null ? variable(variable) : null;
+		return key != null && variables.contains(key)
+				&& (variable instanceof ImcTEMP || invariant(((ImcMEM) variable).expr));
+	}
+
+	/**
+	 * Vrne konstanto, s katero produkt mnozi indukcijsko spremenljivko.
+	 */
+	private static int factor(ImcBINOP mul) {
+		return mul.rimc instanceof ImcCONST ? ((ImcCONST) mul.rimc).value : ((ImcCONST) mul.limc).value;
+	}
+
+	/**
+	 * Vrne predglavo zanke; po potrebi jo vstavi pred glavo.
+	 *
+	 * @return Predglava ali null, ce v zanko ni mogoce vstopiti.
+	 */
+	private CfgBlock preheader() {
+		CfgBlock header = loop.header;
+		ArrayList<CfgBlock> outside = new ArrayList<>();
+		for (CfgBlock pred : header.preds)
+			if (!loop.contains(pred))
+				outside.add(pred);
+		if (header != graph.entry()) {
+			if (outside.isEmpty())
+				return null;
+			if (outside.size() == 1 && outside.get(0).succs.size() == 1)
+				return outside.get(0);
+		}
+
+		FrmLabel label = header.label();
+		CfgBlock preheader = new CfgBlock();
+		preheader.labels.add(FrmLabel.newLabel());
+		CfgBlock prev = header.index > 0 ? graph.blocks.get(header.index - 1) : null;
+		if (prev != null && prev.jump == null && loop.contains(prev))
+			prev.jump = new ImcJUMP(label);
+		for (CfgBlock pred : outside)
+			retarget(pred, header, preheader.labels.getFirst());
+		graph.blocks.add(header.index, preheader);
+		graph.connect();
+		return preheader;
+	}
+
+	private static void retarget(CfgBlock block, CfgBlock from, FrmLabel to) {
+		HashSet<String> names = new HashSet<>();
+		for (FrmLabel label : from.labels)
+			names.add(label.name());
+		if (block.jump instanceof ImcJUMP && names.contains(((ImcJUMP) block.jump).label.name()))
+			block.jump = new ImcJUMP(to);
+		else if (block.jump instanceof ImcCJUMP) {
+			ImcCJUMP cjump = (ImcCJUMP) block.jump;
+			block.jump = new ImcCJUMP(cjump.cond,
+					names.contains(cjump.trueLabel.name()) ? to : cjump.trueLabel,
+					names.contains(cjump.falseLabel.name()) ? to : cjump.falseLabel);
+		}
+	}
+
+	/** Zamenjava izrazov. */
+	private interface Replacement {
+
+		/** Vrne nadomestni izraz ali null. */
+		ImcExpr replace(ImcExpr expr);
+
+	}
+
+	private static void replace(CfgBlock block, Replacement replacement) {
+		for (ImcStmt stmt : block.stmts) {
+			if (stmt instanceof ImcMOVE) {
+				ImcMOVE move = (ImcMOVE) stmt;
+				if (move.dst instanceof ImcMEM)
+					((ImcMEM) move.dst).expr = replace(((ImcMEM) move.dst).expr, replacement);
+				move.src = replace(move.src, replacement);
+			} else if (stmt instanceof ImcEXP)
+				((ImcEXP) stmt).expr = replace(((ImcEXP) stmt).expr, replacement);
+		}
+		if (block.jump instanceof ImcCJUMP)
+			((ImcCJUMP) block.jump).cond = replace(((ImcCJUMP) block.jump).cond, replacement);
+	}
+
+	private static ImcExpr replace(ImcExpr expr, Replacement replacement) {
+		ImcExpr replaced = replacement.replace(expr);
+		if (replaced != null)
+			return replaced;
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			binop.limc = replace(binop.limc, replacement);
+			binop.rimc = replace(binop.rimc, replacement);
+		} else if (expr instanceof ImcMEM)
+			((ImcMEM) expr).expr = replace(((ImcMEM) expr).expr, replacement);
+		else if (expr instanceof ImcCALL) {
+			ListIterator<ImcExpr> args = ((ImcCALL) expr).args.listIterator();
+			while (args.hasNext())
+				args.set(replace(args.next(), replacement));
+		}
+		return expr;
+	}
+
+	/**
+	 * Vrne kljuc strukture izraza.
+	 */
+	private static String key(ImcExpr expr) {
+		if (expr instanceof ImcCONST)
+			return "#" + ((ImcCONST) expr).value;
+		if (expr instanceof ImcNAME)
+			return "@" + ((ImcNAME) expr).label.name();
+		if (expr instanceof ImcTEMP)
+			return ((ImcTEMP) expr).temp.name();
+		if (expr instanceof ImcMEM)
+			return "[" + key(((ImcMEM) expr).expr) + "]";
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			return "(" + binop.op + " " + key(binop.limc) + " " + key(binop.rimc) + ")";
+		}
+		return expr.toString();
+	}
+
+}
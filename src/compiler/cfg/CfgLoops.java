@@ -0,0 +1,86 @@
+package compiler.cfg;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Gnezdenje naravnih zank grafa pretoka.
+ * <p>
+ * Every edge to a block that dominates its source is a back edge. The loop
+ * of a header consists of the blocks that reach one of its back edges
+ * without passing the header; back edges to the same header form a single
+ * loop. A loop is nested in the smallest other loop containing its header.
+ */
+public class CfgLoops {
+
+	/** Zanke, urejene od zunanjih proti notranjim. */
+	public final ArrayList<CfgLoop> loops = new ArrayList<>();
+
+	/** Najbolj notranje zanke blokov. */
+	private final CfgLoop[] innermost;
+
+	/**
+	 * Poisce zanke grafa.
+	 *
+	 * @param graph
+	 *            Graf pretoka.
+	 * @param dominators
+	 *            Dominatorji blokov grafa.
+	 */
+	public CfgLoops(CfgGraph graph, CfgDominators dominators) {
+		LinkedHashMap<CfgBlock, CfgLoop> headers = new LinkedHashMap<>();
+		for (CfgBlock block : dominators.reversePostorder())
+			for (CfgBlock succ : block.succs)
+				if (dominators.dominates(succ, block)) {
+					CfgLoop loop = headers.get(succ);
+					if (loop == null)
+						headers.put(succ, loop = new CfgLoop(succ));
+					collect(loop, block, dominators);
+				}
+
+		loops.addAll(headers.values());
+		loops.sort((l1, l2) -> l2.blocks.size() - l1.blocks.size());
+		for (int inner = 0; inner < loops.size(); inner++) {
+			CfgLoop loop = loops.get(inner);
+			for (int outer = inner - 1; outer >= 0; outer--)
+				if (loops.get(outer).contains(loop.header)) {
+					loop.parent = loops.get(outer);
+					loop.depth = loop.parent.depth + 1;
+					break;
+				}
+		}
+
+		innermost = new CfgLoop[graph.blocks.size()];
+		for (CfgLoop loop : loops)
+			for (CfgBlock block : loop.blocks)
+				innermost[block.index] = loop;
+	}
+
+	private void collect(CfgLoop loop, CfgBlock tail, CfgDominators dominators) {
+		ArrayList<CfgBlock> pending = new ArrayList<>();
+		if (loop.blocks.add(tail))
+			pending.add(tail);
+		while (!pending.isEmpty()) {
+			CfgBlock block = pending.remove(pending.size() - 1);
+			for (CfgBlock pred : block.preds)
+				if (dominators.isReachable(pred) && loop.blocks.add(pred))
+					pending.add(pred);
+		}
+	}
+
+	/**
+	 * Vrne najbolj notranjo zanko, ki vsebuje blok, ali null.
+	 */
+	public CfgLoop loopOf(CfgBlock block) {
+		return innermost[block.index];
+	}
+
+	/**
+	 * Vrne globino gnezdenja bloka v zankah.
+	 */
+	public int depth(CfgBlock block) {
+		CfgLoop loop = innermost[block.index];
+		return loop == null ? 0 : loop.depth;
+	}
+
+}
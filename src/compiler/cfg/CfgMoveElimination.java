@@ -0,0 +1,396 @@
+package compiler.cfg;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.ListIterator;
+
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+import compiler.optimizer.OptTreePass;
+
+/**
+ * Odstranjevanje odvecnih premikov v zacasne spremenljivke.
+ * <p>
+ * Linearization passes every call argument, every call result and the
+ * result of a function through a temporary of its own. A temporary that is
+ * defined and used once within a block is replaced at its use by the
+ * expression it was assigned, if nothing in between changes what the
+ * expression reads; a call whose result is only copied to another temporary
+ * stores it there directly. Copies of temporaries and constants are then
+ * propagated to the uses they reach, and moves to temporaries that are not
+ * live afterwards are removed.
+ */
+public class CfgMoveElimination {
+
+	/** Stevilo odstranjenih premikov po funkcijah. */
+	public final LinkedHashMap<String, Integer> numRemoved = new LinkedHashMap<>();
+
+	/** Stavki, katerih vrednost je lahko rezultat funkcije. */
+	private HashSet<ImcStmt> results;
+
+	/** Stevilo odstranjenih premikov trenutne funkcije. */
+	private int removed;
+
+	/**
+	 * Odstrani odvecne premike funkcije.
+	 *
+	 * @param graph
+	 *            Graf pretoka funkcije.
+	 * @param name
+	 *            Ime funkcije za porocilo.
+	 */
+	public void eliminate(CfgGraph graph, String name) {
+		results = new HashSet<>(graph.resultStmts());
+		removed = 0;
+		substitute(graph);
+		propagateCopies(graph);
+		removeDeadStores(graph);
+		if (removed > 0)
+			numRemoved.put(name, numRemoved.getOrDefault(name, 0) + removed);
+	}
+
+	/**
+	 * Vrne skupno stevilo odstranjenih premikov.
+	 */
+	public int numRemoved() {
+		int total = 0;
+		for (int removed : numRemoved.values())
+			total += removed;
+		return total;
+	}
+
+	private void substitute(CfgGraph graph) {
+		HashMap<FrmTemp, Integer> numUses = new HashMap<>();
+		HashMap<FrmTemp, Integer> numDefs = new HashMap<>();
+		ArrayList<FrmTemp> uses = new ArrayList<>();
+		for (CfgBlock block : graph.blocks) {
+			for (ImcStmt stmt : block.stmts)
+				CfgGraph.uses(stmt, uses);
+			CfgGraph.uses(block.jump, uses);
+			for (ImcStmt stmt : block.stmts)
+				if (CfgGraph.def(stmt) != null)
+					numDefs.merge(CfgGraph.def(stmt), 1, Integer::sum);
+		}
+		for (FrmTemp use : uses)
+			numUses.merge(use, 1, Integer::sum);
+
+		for (CfgBlock block : graph.blocks) {
+			ArrayList<ImcStmt> stmts = new ArrayList<>(block.stmts);
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (int def = 0; def < stmts.size(); def++) {
+					ImcStmt stmt = stmts.get(def);
+					FrmTemp temp = CfgGraph.def(stmt);
+					if (temp == null || results.contains(stmt)
+							|| numDefs.get(temp) != 1 || numUses.getOrDefault(temp, 0) != 1)
+						continue;
+					int use = def + 1;
+					while (use < stmts.size() && !uses(stmts.get(use), temp))
+						use++;
+					if (use == stmts.size() && !uses(block.jump, temp))
+						continue;
+
+					ImcExpr src = ((ImcMOVE) stmt).src;
+					if (OptTreePass.pure(src)) {
+						if (!transparent(stmts, def + 1, use, src))
+							continue;
+						if (use < stmts.size())
+							replace(stmts.get(use), temp, src);
+						else
+							replace(block.jump, temp, src);
+						stmts.remove(def);
+					} else {
+						// a call or a division stays where it is
+						if (use == stmts.size() || !isCopy(stmts.get(use), temp))
+							continue;
+						ImcTEMP dst = (ImcTEMP) ((ImcMOVE) stmts.get(use)).dst;
+						if (!untouched(stmts, def + 1, use, dst.temp))
+							continue;
+						if (use != def + 1 && results.contains(stmts.get(use)))
+							continue;
+						if (results.remove(stmts.get(use)))
+							results.add(stmt);
+						((ImcMOVE) stmt).dst = dst;
+						stmts.remove(use);
+					}
+					numUses.put(temp, 0);
+					numDefs.put(temp, 0);
+					removed++;
+					changed = true;
+					def--;
+				}
+			}
+			block.stmts.clear();
+			block.stmts.addAll(stmts);
+		}
+	}
+
+	private static boolean uses(ImcCode code, FrmTemp temp) {
+		ArrayList<FrmTemp> uses = new ArrayList<>();
+		CfgGraph.uses(code, uses);
+		return uses.contains(temp);
+	}
+
+	private static boolean isCopy(ImcStmt stmt, FrmTemp temp) {
+		return CfgGraph.def(stmt) != null && ((ImcMOVE) stmt).src instanceof ImcTEMP
+				&& ((ImcTEMP) ((ImcMOVE) stmt).src).temp == temp;
+	}
+
+	/**
+	 * Ali stavki med danima ne spremenijo vrednosti izraza.
+	 */
+	private static boolean transparent(ArrayList<ImcStmt> stmts, int from, int to, ImcExpr expr) {
+		ArrayList<FrmTemp> uses = new ArrayList<>();
+		CfgGraph.uses(expr, uses);
+		boolean readsMemory = readsMemory(expr);
+		for (int stmt = from; stmt < to; stmt++) {
+			if (uses.contains(CfgGraph.def(stmts.get(stmt))))
+				return false;
+			if (readsMemory && writesMemory(stmts.get(stmt)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Ali stavki med danima ne uporabljajo in ne definirajo zacasne
+	 * spremenljivke.
+	 */
+	private static boolean untouched(ArrayList<ImcStmt> stmts, int from, int to, FrmTemp temp) {
+		for (int stmt = from; stmt < to; stmt++)
+			if (CfgGraph.def(stmts.get(stmt)) == temp || uses(stmts.get(stmt), temp))
+				return false;
+		return true;
+	}
+
+	private static boolean readsMemory(ImcExpr expr) {
+		if (expr instanceof ImcMEM)
+			return true;
+		if (expr instanceof ImcBINOP)
+			return readsMemory(((ImcBINOP) expr).limc) || readsMemory(((ImcBINOP) expr).rimc);
+		return false;
+	}
+
+	private static boolean writesMemory(ImcStmt stmt) {
+		if (stmt instanceof ImcMOVE)
+			return ((ImcMOVE) stmt).dst instanceof ImcMEM || ((ImcMOVE) stmt).src instanceof ImcCALL;
+		return stmt instanceof ImcEXP && ((ImcEXP) stmt).expr instanceof ImcCALL;
+	}
+
+	/**
+	 * Nadomesti uporabe zacasne spremenljivke v stavku z izrazom.
+	 */
+	private static void replace(ImcStmt stmt, FrmTemp temp, ImcExpr expr) {
+		if (stmt instanceof ImcMOVE) {
+			ImcMOVE move = (ImcMOVE) stmt;
+			if (move.dst instanceof ImcMEM)
+				((ImcMEM) move.dst).expr = replace(((ImcMEM) move.dst).expr, temp, expr);
+			move.src = replace(move.src, temp, expr);
+		} else if (stmt instanceof ImcEXP)
+			((ImcEXP) stmt).expr = replace(((ImcEXP) stmt).expr, temp, expr);
+		else if (stmt instanceof ImcCJUMP)
+			((ImcCJUMP) stmt).cond = replace(((ImcCJUMP) stmt).cond, temp, expr);
+	}
+
+	private static ImcExpr replace(ImcExpr code, FrmTemp temp, ImcExpr expr) {
+		if (code instanceof ImcTEMP) {
+			if (((ImcTEMP) code).temp != temp)
+				return code;
+			return expr instanceof ImcTEMP || expr instanceof ImcCONST ? ImcTree.copyOf(expr) : expr;
+		}
+		if (code instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) code;
+			binop.limc = replace(binop.limc, temp, expr);
+			binop.rimc = replace(binop.rimc, temp, expr);
+		} else if (code instanceof ImcMEM)
+			((ImcMEM) code).expr = replace(((ImcMEM) code).expr, temp, expr);
+		else if (code instanceof ImcCALL) {
+			ListIterator<ImcExpr> args = ((ImcCALL) code).args.listIterator();
+			while (args.hasNext())
+				args.set(replace(args.next(), temp, expr));
+		}
+		return code;
+	}
+
+	private void propagateCopies(CfgGraph graph) {
+		// copies of temporaries and constants and the copies each temporary
+		// takes part in
+		ArrayList<ImcMOVE> copies = new ArrayList<>();
+		ArrayList<ImcExpr> sources = new ArrayList<>();
+		HashMap<FrmTemp, BitSet> mentions = new HashMap<>();
+		for (CfgBlock block : graph.blocks)
+			for (ImcStmt stmt : block.stmts) {
+				FrmTemp dst = CfgGraph.def(stmt);
+				if (dst == null)
+					continue;
+				ImcExpr src = ((ImcMOVE) stmt).src;
+				if (src instanceof ImcTEMP && ((ImcTEMP) src).temp != dst) {
+					mention(mentions, ((ImcTEMP) src).temp, copies.size());
+				} else if (!(src instanceof ImcCONST))
+					continue;
+				mention(mentions, dst, copies.size());
+				copies.add((ImcMOVE) stmt);
+				sources.add(src);
+			}
+		if (copies.isEmpty())
+			return;
+
+		HashMap<ImcStmt, Integer> copyIndex = new HashMap<>();
+		for (int copy = 0; copy < copies.size(); copy++)
+			copyIndex.put(copies.get(copy), copy);
+		int size = graph.blocks.size();
+		BitSet[] in = new BitSet[size];
+		BitSet[] out = new BitSet[size];
+		for (int block = 0; block < size; block++) {
+			in[block] = new BitSet();
+			out[block] = new BitSet();
+			if (block != graph.entry().index)
+				out[block].set(0, copies.size());
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (CfgBlock block : graph.blocks) {
+				BitSet avail = new BitSet();
+				if (block != graph.entry()) {
+					avail.set(0, copies.size());
+					for (CfgBlock pred : block.preds)
+						avail.and(out[pred.index]);
+				}
+				in[block.index] = (BitSet) avail.clone();
+				for (ImcStmt stmt : block.stmts) {
+					FrmTemp def = CfgGraph.def(stmt);
+					if (def != null && mentions.containsKey(def))
+						avail.andNot(mentions.get(def));
+					if (copyIndex.containsKey(stmt))
+						avail.set(copyIndex.get(stmt));
+				}
+				if (!avail.equals(out[block.index])) {
+					out[block.index] = avail;
+					changed = true;
+				}
+			}
+		}
+
+		// copies may be rewritten below, their original sources stay valid
+		for (CfgBlock block : graph.blocks) {
+			HashMap<FrmTemp, ImcExpr> avail = new HashMap<>();
+			for (int copy = in[block.index].nextSetBit(0); copy >= 0; copy = in[block.index].nextSetBit(copy + 1))
+				avail.put(CfgGraph.def(copies.get(copy)), sources.get(copy));
+			for (ImcStmt stmt : block.stmts) {
+				for (FrmTemp use : usesOf(stmt))
+					if (avail.containsKey(use))
+						replace(stmt, use, avail.get(use));
+				FrmTemp def = CfgGraph.def(stmt);
+				if (def != null) {
+					avail.remove(def);
+					Iterator<ImcExpr> srcs = avail.values().iterator();
+					while (srcs.hasNext()) {
+						ImcExpr src = srcs.next();
+						if (src instanceof ImcTEMP && ((ImcTEMP) src).temp == def)
+							srcs.remove();
+					}
+				}
+				if (copyIndex.containsKey(stmt))
+					avail.put(def, sources.get(copyIndex.get(stmt)));
+			}
+			for (FrmTemp use : usesOf(block.jump))
+				if (avail.containsKey(use))
+					replace(block.jump, use, avail.get(use));
+		}
+	}
+
+	private static void mention(HashMap<FrmTemp, BitSet> mentions, FrmTemp temp, int copy) {
+		if (!mentions.containsKey(temp))
+			mentions.put(temp, new BitSet());
+		mentions.get(temp).set(copy);
+	}
+
+	private static ArrayList<FrmTemp> usesOf(ImcCode code) {
+		ArrayList<FrmTemp> uses = new ArrayList<>();
+		CfgGraph.uses(code, uses);
+		return uses;
+	}
+
+	private void removeDeadStores(CfgGraph graph) {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			ArrayList<HashSet<FrmTemp>> liveOut = liveness(graph);
+			for (CfgBlock block : graph.blocks) {
+				HashSet<FrmTemp> live = new HashSet<>(liveOut.get(block.index));
+				live.addAll(usesOf(block.jump));
+				Iterator<ImcStmt> stmts = block.stmts.descendingIterator();
+				while (stmts.hasNext()) {
+					ImcStmt stmt = stmts.next();
+					FrmTemp def = CfgGraph.def(stmt);
+					if (!results.contains(stmt) && dead(stmt, live)) {
+						stmts.remove();
+						if (def != null)
+							removed++;
+						changed = true;
+						continue;
+					}
+					if (def != null)
+						live.remove(def);
+					live.addAll(usesOf(stmt));
+				}
+			}
+		}
+	}
+
+	private static boolean dead(ImcStmt stmt, HashSet<FrmTemp> live) {
+		if (stmt instanceof ImcEXP)
+			return OptTreePass.pure(((ImcEXP) stmt).expr);
+		FrmTemp def = CfgGraph.def(stmt);
+		if (def == null)
+			return false;
+		ImcExpr src = ((ImcMOVE) stmt).src;
+		if (src instanceof ImcTEMP && ((ImcTEMP) src).temp == def)
+			return true;
+		return !live.contains(def) && OptTreePass.pure(src);
+	}
+
+	/**
+	 * Vrne zacasne spremenljivke, zive na koncih blokov.
+	 */
+	private static ArrayList<HashSet<FrmTemp>> liveness(CfgGraph graph) {
+		int size = graph.blocks.size();
+		ArrayList<HashSet<FrmTemp>> liveIn = new ArrayList<>();
+		ArrayList<HashSet<FrmTemp>> liveOut = new ArrayList<>();
+		for (int block = 0; block < size; block++) {
+			liveIn.add(new HashSet<FrmTemp>());
+			liveOut.add(new HashSet<FrmTemp>());
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int index = size - 1; index >= 0; index--) {
+				CfgBlock block = graph.blocks.get(index);
+				HashSet<FrmTemp> live = liveOut.get(index);
+				for (CfgBlock succ : block.succs)
+					live.addAll(liveIn.get(succ.index));
+				live = new HashSet<>(live);
+				live.addAll(usesOf(block.jump));
+				Iterator<ImcStmt> stmts = block.stmts.descendingIterator();
+				while (stmts.hasNext()) {
+					ImcStmt stmt = stmts.next();
+					if (CfgGraph.def(stmt) != null)
+						live.remove(CfgGraph.def(stmt));
+					live.addAll(usesOf(stmt));
+				}
+				if (!live.equals(liveIn.get(index))) {
+					liveIn.set(index, live);
+					changed = true;
+				}
+			}
+		}
+		return liveOut;
+	}
+
+}
@@ -0,0 +1,118 @@
+package compiler.cfg;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import compiler.imcode.*;
+
+/**
+ * Poenostavljanje grafa pretoka.
+ * <p>
+ * Jumps to blocks that only pass control on, such as the chains of jumps
+ * linearization leaves behind nested conditionals, are redirected to the
+ * final target. Blocks that are no longer reachable from the entry are
+ * removed, and jumps to the next block of the layout become fall-throughs.
+ * Every jump the interpreter does not take saves it a search for the label.
+ */
+public class CfgSimplifier {
+
+	/** Stevilo preusmerjenih ciljev skokov. */
+	public int numThreaded = 0;
+
+	/** Stevilo odstranjenih nedosegljivih blokov. */
+	public int numRemoved = 0;
+
+	/** Stevilo odstranjenih skokov na naslednji blok. */
+	public int numFallThroughs = 0;
+
+	/**
+	 * Poenostavi graf pretoka.
+	 *
+	 * @param graph
+	 *            Graf pretoka.
+	 */
+	public void simplify(CfgGraph graph) {
+		threadJumps(graph);
+		removeUnreachable(graph);
+		removeFallThroughJumps(graph);
+	}
+
+	private void threadJumps(CfgGraph graph) {
+		for (CfgBlock block : graph.blocks) {
+			if (block.jump instanceof ImcJUMP) {
+				ImcJUMP jump = (ImcJUMP) block.jump;
+				CfgBlock target = forward(graph, graph.block(jump.label));
+				if (target != graph.block(jump.label)) {
+					jump.label = target.label();
+					numThreaded++;
+				}
+			} else if (block.jump instanceof ImcCJUMP) {
+				ImcCJUMP cjump = (ImcCJUMP) block.jump;
+				CfgBlock target = forward(graph, graph.block(cjump.trueLabel));
+				if (target != graph.block(cjump.trueLabel)) {
+					cjump.trueLabel = target.label();
+					numThreaded++;
+				}
+				target = forward(graph, graph.block(cjump.falseLabel));
+				if (target != graph.block(cjump.falseLabel)) {
+					cjump.falseLabel = target.label();
+					numThreaded++;
+				}
+			}
+		}
+		graph.connect();
+	}
+
+	/**
+	 * Vrne blok, v katerem se izvajanje nadaljuje po praznih blokih.
+	 */
+	private CfgBlock forward(CfgGraph graph, CfgBlock block) {
+		HashSet<CfgBlock> visited = new HashSet<>();
+		while (block != null && block.stmts.isEmpty() && visited.add(block)) {
+			CfgBlock next;
+			if (block.jump == null)
+				next = graph.next(block);
+			else if (block.jump instanceof ImcJUMP)
+				next = graph.block(((ImcJUMP) block.jump).label);
+			else
+				break;
+			if (next == null || visited.contains(next))
+				break;
+			block = next;
+		}
+		return block;
+	}
+
+	private void removeUnreachable(CfgGraph graph) {
+		boolean[] reachable = new boolean[graph.blocks.size()];
+		ArrayList<CfgBlock> pending = new ArrayList<>();
+		reachable[0] = true;
+		pending.add(graph.entry());
+		while (!pending.isEmpty())
+			for (CfgBlock succ : pending.remove(pending.size() - 1).succs)
+				if (!reachable[succ.index]) {
+					reachable[succ.index] = true;
+					pending.add(succ);
+				}
+
+		ArrayList<CfgBlock> blocks = new ArrayList<>();
+		for (CfgBlock block : graph.blocks)
+			if (reachable[block.index])
+				blocks.add(block);
+		numRemoved += graph.blocks.size() - blocks.size();
+		graph.blocks.clear();
+		graph.blocks.addAll(blocks);
+		graph.connect();
+	}
+
+	private void removeFallThroughJumps(CfgGraph graph) {
+		for (CfgBlock block : graph.blocks)
+			if (block.jump instanceof ImcJUMP
+					&& graph.block(((ImcJUMP) block.jump).label) == graph.next(block)) {
+				block.jump = null;
+				numFallThroughs++;
+			}
+		graph.connect();
+	}
+
+}
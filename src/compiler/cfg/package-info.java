@@ -0,0 +1,4 @@
+/**
+ * Graf pretoka linearizirane vmesne kode.
+ */
+package compiler.cfg;
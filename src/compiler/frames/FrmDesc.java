@@ -1,7 +1,5 @@
 package compiler.frames;
 
-import java.util.*;
-
 import compiler.abstr.tree.*;
 
 /**
@@ -12,7 +10,7 @@ import compiler.abstr.tree.*;
 public class FrmDesc {
 
 	/** Klicni zapisi. */
-	private static HashMap<AbsFunDef, FrmFrame> frames = new HashMap<AbsFunDef, FrmFrame>();
+	private static NodeAttribute<FrmFrame> frames = new NodeAttribute<FrmFrame>();
 
 	/**
 	 * Poveze funkcijo s klicnim zapisom.
@@ -21,7 +19,7 @@ public class FrmDesc {
 	 * @param frame Klicni zapis.
 	 */
 	public static void setFrame(AbsFunDef fun, FrmFrame frame) {
-		FrmDesc.frames.put(fun, frame);
+		FrmDesc.frames.set(fun, frame);
 	}
 	
 	/**
@@ -35,7 +33,7 @@ public class FrmDesc {
 	}
 
 	/** Opisi dostopa. */
-	private static HashMap<AbsDef, FrmAccess> acceses = new HashMap<AbsDef, FrmAccess>();
+	private static NodeAttribute<FrmAccess> acceses = new NodeAttribute<FrmAccess>();
 
 	/**
 	 * Poveze spremenljivko, parameter ali komponento z opisom dostopa.
@@ -44,7 +42,7 @@ public class FrmDesc {
 	 * @param access Opis dostopa.
 	 */
 	public static void setAccess(AbsDef var, FrmAccess access) {
-		FrmDesc.acceses.put(var, access);
+		FrmDesc.acceses.set(var, access);
 	}
 	
 	/**
@@ -57,4 +55,15 @@ public class FrmDesc {
 		return FrmDesc.acceses.get(var);
 	}
 
+	/**
+	 * Pripravi opise za dano stevilo vozlisc. Dokler ni ustvarjenih vec
+	 * vozlisc, se opisi razlicnih vozlisc lahko dolocajo na vec nitih hkrati.
+	 * 
+	 * @param nodes Stevilo vozlisc.
+	 */
+	public static void ensureCapacity(int nodes) {
+		frames.ensureCapacity(nodes);
+		acceses.ensureCapacity(nodes);
+	}
+
 }
@@ -1,14 +1,87 @@
 package compiler.frames;
 
+import java.util.ArrayList;
+import java.util.Stack;
+
+import compiler.abstr.Pass;
 import compiler.abstr.Visitor;
 import compiler.abstr.tree.*;
 import compiler.seman.SymbDesc;
 
-public class FrmEvaluator implements Visitor {
+/**
+ * Izracun klicnih zapisov.
+ * <p>
+ * As a {@link Pass}, frames and accesses are created on entering function
+ * and variable definitions; sizes of outgoing arguments are computed on
+ * leaving function calls, once the types of the arguments are known.
+ */
+public class FrmEvaluator implements Visitor, Pass {
 
 	private int currentLevel = 1;
 	private FrmFrame currentFrame = null;
 
+	/** Klicni zapisi funkcij, ki obdajajo trenutno funkcijo. */
+	private final Stack<FrmFrame> enclosingFrames = new Stack<>();
+
+	/**
+	 * Klicni zapisi, ki se ostevilcijo ob koncu vzporednega obhoda, ali null,
+	 * ce se ostevilcijo takoj.
+	 */
+	private final ArrayList<FrmFrame> unnumbered;
+
+	public FrmEvaluator() {
+		unnumbered = null;
+	}
+
+	/**
+	 * Ustvari izracun klicnih zapisov za vzporedni obhod.
+	 * <p>
+	 * Workers would number labels and temporaries in the order they happen
+	 * to run. Frames are numbered by {@link #join()} instead, which runs the
+	 * forks in the order of the definitions, so the names are the same as in
+	 * a sequential walk.
+	 */
+	private FrmEvaluator(ArrayList<FrmFrame> unnumbered) {
+		this.unnumbered = unnumbered;
+	}
+
+	@Override
+	public Pass fork() {
+		FrmDesc.ensureCapacity(AbsTree.numNodes());
+		return new FrmEvaluator(new ArrayList<FrmFrame>());
+	}
+
+	@Override
+	public void join() {
+		for (FrmFrame frame : unnumbered)
+			frame.number();
+		unnumbered.clear();
+	}
+
+	@Override
+	public void signatures(AbsDefs defs) {
+	}
+
+	@Override
+	public void enter(AbsTree node) {
+		node.accept(this);
+	}
+
+	@Override
+	public void leave(AbsTree node) {
+		if (node instanceof AbsFunDef) {
+			currentFrame = enclosingFrames.pop();
+			currentLevel--;
+		} else if (node instanceof AbsFunCall) {
+			AbsFunCall call = (AbsFunCall) node;
+			int parSize = 4;
+			for (int i = 0; i < call.numArgs(); i++)
+				parSize += SymbDesc.getType(call.arg(i)).size();
+
+			currentFrame.sizeArgs = Math.max(currentFrame.sizeArgs, parSize);
+		}
+	}
+
 	@Override
 	public void visit(AbsArrType acceptor) {
 
@@ -36,68 +109,46 @@ public class FrmEvaluator implements Visitor {
 
 	@Override
 	public void visit(AbsBinExpr acceptor) {
-		acceptor.expr1.accept(this);
-		acceptor.expr2.accept(this);
 	}
 
 	@Override
 	public void visit(AbsDefs acceptor) {
-		for (int def = 0; def < acceptor.numDefs(); def++)
-			acceptor.def(def).accept(this);
 	}
 
 	@Override
 	public void visit(AbsExprs acceptor) {
-		for (int i = 0; i < acceptor.numExprs(); i++)
-			acceptor.expr(i).accept(this);
 	}
 
 	@Override
 	public void visit(AbsFor acceptor) {
-		acceptor.lo.accept(this);
-		acceptor.hi.accept(this);
-		acceptor.body.accept(this);
 	}
 
 	@Override
 	public void visit(AbsFunCall acceptor) {
-		int parSize = 4;
-		for (int i = 0; i < acceptor.numArgs(); i++)
-			parSize += SymbDesc.getType(acceptor.arg(i)).size();
-
-		currentFrame.sizeArgs = Math.max(currentFrame.sizeArgs, parSize);
 	}
 
 	@Override
 	public void visit(AbsFunDef acceptor) {
-		FrmFrame frame = new FrmFrame(acceptor, currentLevel);
+		FrmFrame frame = new FrmFrame(acceptor, currentLevel, unnumbered == null);
+		if (unnumbered != null)
+			unnumbered.add(frame);
 		FrmDesc.setFrame(acceptor, frame);
 
-		FrmFrame tmp = currentFrame;
+		enclosingFrames.push(currentFrame);
 		currentFrame = frame;
 
 		for (int i = 0; i < acceptor.numPars(); i++)
 			acceptor.par(i).accept(this);
 
 		currentLevel++;
-
-		acceptor.expr.accept(this);
-
-		currentFrame = tmp;
-		currentLevel--;
 	}
 
 	@Override
 	public void visit(AbsIfThen acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.thenBody.accept(this);
 	}
 
 	@Override
 	public void visit(AbsIfThenElse acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.thenBody.accept(this);
-		acceptor.elseBody.accept(this);
 	}
 
 	@Override
@@ -117,7 +168,6 @@ public class FrmEvaluator implements Visitor {
 
 	@Override
 	public void visit(AbsUnExpr acceptor) {
-		acceptor.expr.accept(this);
 	}
 
 	@Override
@@ -136,19 +186,15 @@ public class FrmEvaluator implements Visitor {
 
 	@Override
 	public void visit(AbsWhere acceptor) {
-		acceptor.defs.accept(this);
-		acceptor.expr.accept(this);
 	}
 
 	@Override
 	public void visit(AbsWhile acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.body.accept(this);
 	}
 
 	@Override
 	public void visit(AbsImportDef importDef) {
-		importDef.imports.accept(this);
+
 	}
 
 }
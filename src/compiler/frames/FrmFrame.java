@@ -57,9 +57,18 @@ public class FrmFrame {
 	 * @param level Staticni nivo funkcije.
 	 */
 	public FrmFrame(AbsFunDef fun, int level) {
+		this(fun, level, true);
+	}
+
+	/**
+	 * Ustvari nov klicni zapis funkcije, katerega anonimna labela in zacasne
+	 * spremenljivke se ostevilcijo takoj ali sele z {@link #number()}.
+	 */
+	FrmFrame(AbsFunDef fun, int level, boolean numbered) {
 		this.fun = fun;
 		this.level = level;
-		this.label = (level == 1 ? FrmLabel.newLabel(fun.name) : FrmLabel.newLabel());
+		this.label = level == 1 ? FrmLabel.newLabel(fun.name)
+				: numbered ? FrmLabel.newLabel() : FrmLabel.newUnnumberedLabel();
 		this.numPars = 0;
 		this.sizePars = 4;
 		this.locVars = new LinkedList<FrmLocAccess> ();
@@ -68,8 +77,18 @@ public class FrmFrame {
 		this.sizeTmps = 0;
 		this.sizeRegs = 0;
 		this.sizeArgs = 0;
-		FP = new FrmTemp();
-		RV = new FrmTemp();
+		FP = new FrmTemp(numbered);
+		RV = new FrmTemp(numbered);
+	}
+
+	/**
+	 * Ostevilci labelo in zacasne spremenljivke v vrstnem redu, v katerem bi
+	 * jih ostevilcil konstruktor.
+	 */
+	void number() {
+		label.number();
+		FP.number();
+		RV.number();
 	}
 
 	/** Velikost klicnega zapisa.  */
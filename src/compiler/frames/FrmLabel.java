@@ -1,5 +1,7 @@
 package compiler.frames;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Opis labele v programu.
  * 
@@ -33,8 +35,8 @@ public class FrmLabel {
 		return name;
 	}
 
-	/** Stevec anonimnih label.  */
-	private static int label_count = 0;
+	/** Stevec anonimnih label; labele se lahko ustvarjajo na vec nitih.  */
+	private static final AtomicInteger label_count = new AtomicInteger();
 
 	/** 
 	 * Vrne novo anonimno labelo.
@@ -42,7 +44,23 @@ public class FrmLabel {
 	 * @return Nova anonimna labela.
 	 */
 	public static FrmLabel newLabel() {
-		return new FrmLabel("L" + (label_count++));
+		return new FrmLabel("L" + label_count.getAndIncrement());
+	}
+
+	/**
+	 * Vrne novo anonimno labelo brez imena; ime dobi sele z
+	 * {@link #number()}.
+	 */
+	static FrmLabel newUnnumberedLabel() {
+		return new FrmLabel(null);
+	}
+
+	/**
+	 * Poimenuje anonimno labelo, ustvarjeno brez imena.
+	 */
+	void number() {
+		if (name == null)
+			name = "L" + label_count.getAndIncrement();
 	}
 
 	/**
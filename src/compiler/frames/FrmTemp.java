@@ -1,5 +1,7 @@
 package compiler.frames;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Opis zacasne spremenljivke v programu.
  * 
@@ -7,8 +9,8 @@ package compiler.frames;
  */
 public class FrmTemp {
 
-	/** Stevec zacasnih spremenljivk.  */
-	private static int count = 0;
+	/** Stevec zacasnih spremenljivk; ustvarjajo se lahko na vec nitih.  */
+	private static final AtomicInteger count = new AtomicInteger();
 
 	/** Ime te zacasne spremenljivke.  */
 	private int num;
@@ -17,7 +19,23 @@ public class FrmTemp {
 	 * Ustvari novo zacasno spremenljivko.
 	 */
 	public FrmTemp() {
-		num = count++;
+		this(true);
+	}
+
+	/**
+	 * Ustvari novo zacasno spremenljivko, ki se ostevilci takoj ali sele z
+	 * {@link #number()}.
+	 */
+	FrmTemp(boolean numbered) {
+		num = numbered ? count.getAndIncrement() : -1;
+	}
+
+	/**
+	 * Ostevilci zacasno spremenljivko, ustvarjeno brez stevilke.
+	 */
+	void number() {
+		if (num < 0)
+			num = count.getAndIncrement();
 	}
 
 	/**
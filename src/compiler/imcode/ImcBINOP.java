@@ -24,6 +24,9 @@ public class ImcBINOP extends ImcExpr {
 	public static final int DOT = 13;
 	public static final int ARR = 14;
 	public static final int ASSIGN = 15;
+	public static final int SHL = 16;
+	public static final int SHR = 17;
+	public static final int BITAND = 18;
 
 	/** Operator.  */
 	public int op;
@@ -47,6 +50,24 @@ public class ImcBINOP extends ImcExpr {
 		this.rimc = rimc;
 	}
 
+	/**
+	 * Vrne primerjavo, ki velja natanko takrat, ko dana ne velja.
+	 * 
+	 * @param op Operator primerjave.
+	 * @return Obratni operator ali -1, ce operator ni primerjava.
+	 */
+	public static int inverse(int op) {
+		switch (op) {
+		case EQU: return NEQ;
+		case NEQ: return EQU;
+		case LEQ: return GTH;
+		case GEQ: return LTH;
+		case LTH: return GEQ;
+		case GTH: return LEQ;
+		}
+		return -1;
+	}
+
 	@Override
 	public void dump(int indent) {
 		String op = null;
@@ -55,6 +76,10 @@ public class ImcBINOP extends ImcExpr {
 		case SUB: op = "-" ; break;
 		case MUL: op = "*" ; break;
 		case DIV: op = "/" ; break;
+		case MOD: op = "%" ; break;
+		case SHL: op = "<<"; break;
+		case SHR: op = ">>"; break;
+		case BITAND: op = "and"; break;
 		case EQU: op = "=="; break;
 		case NEQ: op = "!="; break;
 		case LTH: op = "<" ; break;
@@ -35,8 +35,12 @@ import compiler.frames.FrmLocAccess;
 import compiler.frames.FrmParAccess;
 import compiler.frames.FrmTemp;
 import compiler.frames.FrmVarAccess;
+import compiler.seman.ModuleInterface;
+import compiler.seman.Reachability;
 import compiler.seman.SymbDesc;
 import compiler.seman.type.SemArrType;
+import compiler.seman.type.SemLayout;
+import compiler.seman.type.SemPtrType;
 import compiler.seman.type.SemStructType;
 import compiler.seman.type.SemType;
 
@@ -45,8 +49,29 @@ public class ImcCodeGen implements Visitor {
 	public LinkedList<ImcChunk> chunks;
 	private FrmFrame currentFrame = null;
 
+	/**
+	 * Ce ni null, se koda funkcij na najvisjem nivoju razen glavne ne
+	 * generira, funkcije pa se dodajo v ta seznam.
+	 */
+	public LinkedList<AbsFunDef> deferred = null;
+
+	/** Dosegljivost definicij; null, ce se koda generira za vse definicije. */
+	private final Reachability reachability;
+
 	public ImcCodeGen() {
+		this(null);
+	}
+
+	/**
+	 * Generator vmesne kode, ki preskoci definicije, nedosegljive iz glavne
+	 * funkcije.
+	 * 
+	 * @param reachability
+	 *            Dosegljivost definicij.
+	 */
+	public ImcCodeGen(Reachability reachability) {
 		chunks = new LinkedList<ImcChunk>();
+		this.reachability = reachability;
 	}
 
 	@Override
@@ -111,7 +136,18 @@ public class ImcCodeGen implements Visitor {
 
 		ImcCode code = null;
 
-		if (acceptor.oper >= 0 && acceptor.oper <= 11)
+		if ((acceptor.oper == AbsBinExpr.IOR || acceptor.oper == AbsBinExpr.AND) && !safe(e2)) {
+			// the right operand is evaluated only if the left does not decide
+			ImcTEMP value = new ImcTEMP(new FrmTemp());
+			FrmLabel t = FrmLabel.newLabel(), f = FrmLabel.newLabel();
+			ImcSEQ statements = new ImcSEQ();
+			statements.stmts.add(new ImcMOVE(value, new ImcCONST(0)));
+			branch(statements, acceptor, t, f);
+			statements.stmts.add(new ImcLABEL(t));
+			statements.stmts.add(new ImcMOVE(new ImcTEMP(value.temp), new ImcCONST(1)));
+			statements.stmts.add(new ImcLABEL(f));
+			code = new ImcESEQ(statements, new ImcTEMP(value.temp));
+		} else if (acceptor.oper >= 0 && acceptor.oper <= 12)
 			code = new ImcBINOP(acceptor.oper, e1, e2);
 		else if (acceptor.oper == AbsBinExpr.ASSIGN) {
 			SemType p = SymbDesc.getType(acceptor.expr2).actualType();
@@ -129,31 +165,26 @@ public class ImcCodeGen implements Visitor {
 					e2 = temp;
 				}
 				
-				int offset = 0;				
-				for (Map.Entry<String, SemType> entry : t.getMembers().entrySet()) {
-					ImcMEM dst = new ImcMEM(new ImcBINOP(ImcBINOP.ADD, e1, new ImcCONST(offset)));
-					ImcMEM src = new ImcMEM(new ImcBINOP(ImcBINOP.ADD, e2, new ImcCONST(offset)));
-					
-					ImcMOVE move = new ImcMOVE(dst, src);
-					((ImcSEQ) code).stmts.add(move);
-					
-					offset += entry.getValue().actualType().size();
-				}
+				copy((ImcSEQ) code, e1, e2, t.layout());
+			}
+			// copy content of one array into another
+			else if (p instanceof SemArrType) {
+				code = new ImcSEQ();
+				copy((ImcSEQ) code, e1, e2, ((SemArrType) p).layout());
 			}
 			else
 				code = new ImcMOVE(e1, e2);
 		} else if (acceptor.oper == AbsBinExpr.ARR) {
-			// TODO 
-			// zrihtej da bo zaznalo velikost spremenljivke
-			// trenutno je hardcodano not 4
-			int size = 4;
-			code = new ImcMEM(new ImcBINOP(ImcBINOP.ADD, e1, new ImcBINOP(
-					ImcBINOP.MUL, e2, new ImcCONST(size))));
-		} else if (acceptor.oper == ImcBINOP.MOD) {
-			ImcBINOP div = new ImcBINOP(ImcBINOP.DIV, e1, e2);
-			ImcBINOP mul = new ImcBINOP(ImcBINOP.MUL, div, e2);
-			ImcBINOP sub = new ImcBINOP(ImcBINOP.SUB, e1, mul);
-			code = sub;
+			SemType t = SymbDesc.getType(acceptor.expr1).actualType();
+			int size = t instanceof SemArrType ? ((SemArrType) t).layout().elementSize
+					: ((SemPtrType) t).type.size();
+			ImcExpr element = new ImcBINOP(ImcBINOP.ADD, e1, new ImcBINOP(
+					ImcBINOP.MUL, e2, new ImcCONST(size)));
+			// nested arrays are accessed by address, like array variables
+			if (SymbDesc.getType(acceptor).actualType() instanceof SemArrType)
+				code = element;
+			else
+				code = new ImcMEM(element);
 		} else if (acceptor.oper == AbsBinExpr.DOT) {
 			SemType t = SymbDesc.getType(acceptor.expr1).actualType();
 			SemStructType type = null;
@@ -174,6 +205,89 @@ public class ImcCodeGen implements Visitor {
 		ImcDesc.setImcCode(acceptor, code);
 	}
 
+	/**
+	 * Doda skoke, ki glede na vrednost pogoja skocijo na eno od oznak.
+	 * <p>
+	 * Conditions joined by {@code &} and {@code |} are translated into a
+	 * chain of conditional jumps, so the right operand is not evaluated
+	 * when the left one already decides where to jump. A negated condition
+	 * jumps to the same targets swapped.
+	 * 
+	 * @param code
+	 *            sequence to which jumps are appended
+	 * @param cond
+	 *            condition, its code must already be generated
+	 * @param trueLabel
+	 *            target if the condition holds
+	 * @param falseLabel
+	 *            target if it does not
+	 */
+	private void branch(ImcSEQ code, AbsExpr cond, FrmLabel trueLabel, FrmLabel falseLabel) {
+		if (cond instanceof AbsExprs && ((AbsExprs) cond).numExprs() == 1) {
+			branch(code, ((AbsExprs) cond).expr(0), trueLabel, falseLabel);
+			return;
+		}
+		if (cond instanceof AbsUnExpr && ((AbsUnExpr) cond).oper == AbsUnExpr.NOT) {
+			branch(code, ((AbsUnExpr) cond).expr, falseLabel, trueLabel);
+			return;
+		}
+		if (cond instanceof AbsBinExpr && (((AbsBinExpr) cond).oper == AbsBinExpr.AND
+				|| ((AbsBinExpr) cond).oper == AbsBinExpr.IOR)) {
+			AbsBinExpr binExpr = (AbsBinExpr) cond;
+			FrmLabel next = FrmLabel.newLabel();
+			if (binExpr.oper == AbsBinExpr.AND)
+				branch(code, binExpr.expr1, next, falseLabel);
+			else
+				branch(code, binExpr.expr1, trueLabel, next);
+			code.stmts.add(new ImcLABEL(next));
+			branch(code, binExpr.expr2, trueLabel, falseLabel);
+			return;
+		}
+		ImcCode imc = ImcDesc.getImcCode(cond);
+		ImcExpr expr = imc instanceof ImcEXP ? ((ImcEXP) imc).expr : (ImcExpr) imc;
+		code.stmts.add(new ImcCJUMP(expr, trueLabel, falseLabel));
+	}
+
+	/**
+	 * Ali je izraz mogoce izracunati, tudi ce njegova vrednost ni potrebna:
+	 * nima klicev, deljenj in dostopov do pomnilnika razen do spremenljivk.
+	 */
+	private static boolean safe(ImcExpr expr) {
+		if (expr instanceof ImcCONST || expr instanceof ImcTEMP || expr instanceof ImcNAME)
+			return true;
+		if (expr instanceof ImcMEM) {
+			ImcExpr addr = ((ImcMEM) expr).expr;
+			return addr instanceof ImcNAME || addr instanceof ImcBINOP
+					&& ((ImcBINOP) addr).op == ImcBINOP.ADD
+					&& ((ImcBINOP) addr).limc instanceof ImcTEMP
+					&& ((ImcBINOP) addr).rimc instanceof ImcCONST;
+		}
+		if (expr instanceof ImcBINOP)
+			return ((ImcBINOP) expr).op != ImcBINOP.DIV && ((ImcBINOP) expr).op != ImcBINOP.MOD
+					&& safe(((ImcBINOP) expr).limc) && safe(((ImcBINOP) expr).rimc);
+		return false;
+	}
+
+	/**
+	 * Copy value word by word from one address to another.
+	 * 
+	 * @param code
+	 *            sequence to which moves are appended
+	 * @param dst
+	 *            destination address
+	 * @param src
+	 *            source address
+	 * @param layout
+	 *            layout of copied value
+	 */
+	private void copy(ImcSEQ code, ImcExpr dst, ImcExpr src, SemLayout layout) {
+		for (int offset = 0; offset < layout.size; offset += SemLayout.WORD) {
+			ImcMEM to = new ImcMEM(new ImcBINOP(ImcBINOP.ADD, dst, new ImcCONST(offset)));
+			ImcMEM from = new ImcMEM(new ImcBINOP(ImcBINOP.ADD, src, new ImcCONST(offset)));
+			code.stmts.add(new ImcMOVE(to, from));
+		}
+	}
+
 	@Override
 	public void visit(AbsDefs acceptor) {
 		for (int i = 0; i < acceptor.numDefs(); i++)
@@ -280,7 +394,15 @@ public class ImcCodeGen implements Visitor {
 
 	@Override
 	public void visit(AbsFunDef acceptor) {
+		if (reachability != null && !reachability.isReachable(acceptor))
+			return;
+
 		FrmFrame frame = FrmDesc.getFrame(acceptor);
+		if (deferred != null && currentFrame == null
+				&& !frame.label.name().equals("_main")) {
+			deferred.add(acceptor);
+			return;
+		}
 		FrmFrame tmpFr = currentFrame;
 		currentFrame = frame;
 
@@ -335,11 +457,10 @@ public class ImcCodeGen implements Visitor {
 		else
 			expr = (ImcStmt) thenBody;
 
-		ImcExpr cond = (ImcExpr) ImcDesc.getImcCode(acceptor.cond);
 		FrmLabel l1 = FrmLabel.newLabel(), l2 = FrmLabel.newLabel();
 
 		ImcSEQ statements = new ImcSEQ();
-		statements.stmts.add(new ImcCJUMP(cond, l1, l2));
+		branch(statements, acceptor.cond, l1, l2);
 		statements.stmts.add(new ImcLABEL(l1));
 		statements.stmts.add(expr);
 		statements.stmts.add(new ImcLABEL(l2));
@@ -356,7 +477,6 @@ public class ImcCodeGen implements Visitor {
 		ImcCode e1 = ImcDesc.getImcCode(acceptor.thenBody);
 		ImcCode e2 = ImcDesc.getImcCode(acceptor.elseBody);
 
-		ImcExpr cond = (ImcExpr) ImcDesc.getImcCode(acceptor.cond);
 		ImcStmt expr1 = (e1 instanceof ImcStmt) ? (ImcStmt) e1 : new ImcEXP(
 				(ImcExpr) e1);
 		ImcStmt expr2 = (e2 instanceof ImcStmt) ? (ImcStmt) e2 : new ImcEXP(
@@ -367,7 +487,7 @@ public class ImcCodeGen implements Visitor {
 				 l3 = FrmLabel.newLabel();
 
 		ImcSEQ statements = new ImcSEQ();
-		statements.stmts.add(new ImcCJUMP(cond, l1, l2));
+		branch(statements, acceptor.cond, l1, l2);
 		statements.stmts.add(new ImcLABEL(l1));
 		statements.stmts.add(expr1);
 		statements.stmts.add(new ImcJUMP(l3));
@@ -403,16 +523,9 @@ public class ImcCodeGen implements Visitor {
 			ImcDesc.setImcCode(acceptor, new ImcBINOP(ImcBINOP.SUB,
 					new ImcCONST(0), (ImcExpr) expr));
 		} else if (acceptor.oper == AbsUnExpr.NOT) {
-			AbsExpr e2 = new AbsAtomConst(null, AbsAtomConst.INT, "0");
-			AbsExpr cond = new AbsBinExpr(null, AbsBinExpr.EQU, acceptor.expr,
-					e2);
-			AbsExpr thenBody = new AbsAtomConst(null, AbsAtomConst.LOG, "true");
-			AbsExpr elseBody = new AbsAtomConst(null, AbsAtomConst.LOG, "false");
-			AbsIfThenElse not = new AbsIfThenElse(null, cond, thenBody,
-					elseBody);
-			not.accept(this);
-
-			ImcDesc.setImcCode(acceptor, ImcDesc.getImcCode(not));
+			// in conditions, branch() swaps the targets instead
+			ImcDesc.setImcCode(acceptor, new ImcBINOP(ImcBINOP.EQU,
+					expr instanceof ImcEXP ? ((ImcEXP) expr).expr : (ImcExpr) expr, new ImcCONST(0)));
 		} else if (acceptor.oper == AbsUnExpr.MEM) {
 			if (expr instanceof ImcStmt)
 				Report.error(acceptor.position, "Error");
@@ -430,6 +543,8 @@ public class ImcCodeGen implements Visitor {
 		FrmAccess x = FrmDesc.getAccess(acceptor);
 		SemType y = SymbDesc.getType(acceptor);
 
+		if (reachability != null && !reachability.isReachable(acceptor))
+			return;
 		if (x instanceof FrmVarAccess)
 			chunks.add(new ImcDataChunk(((FrmVarAccess) x).label, y.size()));
 	}
@@ -489,8 +604,7 @@ public class ImcCodeGen implements Visitor {
 
 		ImcSEQ statements = new ImcSEQ();
 		statements.stmts.add(new ImcLABEL(l1));
-		statements.stmts.add(new ImcCJUMP((ImcExpr) ImcDesc
-				.getImcCode(acceptor.cond), l2, l3));
+		branch(statements, acceptor.cond, l2, l3);
 		statements.stmts.add(new ImcLABEL(l2));
 		statements.stmts.add((ImcStmt) ImcDesc.getImcCode(acceptor.body));
 		statements.stmts.add(new ImcJUMP(l1));
@@ -501,7 +615,10 @@ public class ImcCodeGen implements Visitor {
 
 	@Override
 	public void visit(AbsImportDef importDef) {
-		importDef.imports.accept(this);
+		if (importDef.imports != null)
+			importDef.imports.accept(this);
+		else if (ModuleInterface.get(importDef) != null)
+			chunks.addAll(ModuleInterface.get(importDef).chunks(reachability));
 	}
 
 }
@@ -1,14 +1,13 @@
 package compiler.imcode;
 
-import java.util.HashMap;
-
 import compiler.abstr.tree.AbsTree;
+import compiler.abstr.tree.NodeAttribute;
 
 public class ImcDesc {
 	/**
 	 * 
 	 */
-	public static HashMap<AbsTree, ImcCode> imcMap = new HashMap<>();
+	public static NodeAttribute<ImcCode> imcMap = new NodeAttribute<>();
 	
 	/**
 	 * 
@@ -16,7 +15,7 @@ public class ImcDesc {
 	 * @param imc
 	 */
 	public static void setImcCode(AbsTree node, ImcCode imc) {
-		imcMap.put(node, imc);
+		imcMap.set(node, imc);
 	}
 	
 	/**
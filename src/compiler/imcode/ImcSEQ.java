@@ -14,6 +14,9 @@ public class ImcSEQ extends ImcStmt {
 	/* Stavki.  */
 	public LinkedList<ImcStmt> stmts;
 
+	/** Opomba optimizacije, ki se izpise z zaporedjem, ali null. */
+	public String note = null;
+
 	/**
 	 * Ustvari zaporedje stavkov.
 	 */
@@ -23,7 +26,7 @@ public class ImcSEQ extends ImcStmt {
 
 	@Override
 	public void dump(int indent) {
-		Report.dump(indent, "SEQ");
+		Report.dump(indent, note == null ? "SEQ" : "SEQ " + note);
 		Iterator<ImcStmt> stmts = this.stmts.iterator();
 		while (stmts.hasNext()) {
 			ImcStmt stmt = stmts.next();
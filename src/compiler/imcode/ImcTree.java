@@ -0,0 +1,162 @@
+package compiler.imcode;
+
+import java.util.ArrayList;
+
+import compiler.frames.FrmLabel;
+import compiler.frames.FrmTemp;
+
+/**
+ * Kopiranje in primerjanje dreves vmesne kode.
+ * <p>
+ * Copies share no nodes with the original, as passes rewrite trees in
+ * place. A plain copy keeps labels and temporaries; a pass that copies code
+ * into another place overrides {@link #label(FrmLabel)},
+ * {@link #temp(FrmTemp)} or {@link #replace(ImcExpr)} to rename them or to
+ * substitute whole subexpressions.
+ */
+public class ImcTree {
+
+	/** Kopiranje brez preimenovanj. */
+	private static final ImcTree plain = new ImcTree();
+
+	/**
+	 * Vrne kopijo stavka.
+	 */
+	public static ImcStmt copyOf(ImcStmt stmt) {
+		return plain.copy(stmt);
+	}
+
+	/**
+	 * Vrne kopijo izraza.
+	 */
+	public static ImcExpr copyOf(ImcExpr expr) {
+		return plain.copy(expr);
+	}
+
+	/**
+	 * Vrne neposredne podstavke in podizraze kode.
+	 */
+	public static ArrayList<ImcCode> children(ImcCode code) {
+		ArrayList<ImcCode> children = new ArrayList<>();
+		if (code instanceof ImcSEQ)
+			children.addAll(((ImcSEQ) code).stmts);
+		else if (code instanceof ImcMOVE) {
+			children.add(((ImcMOVE) code).dst);
+			children.add(((ImcMOVE) code).src);
+		} else if (code instanceof ImcCJUMP)
+			children.add(((ImcCJUMP) code).cond);
+		else if (code instanceof ImcEXP)
+			children.add(((ImcEXP) code).expr);
+		else if (code instanceof ImcBINOP) {
+			children.add(((ImcBINOP) code).limc);
+			children.add(((ImcBINOP) code).rimc);
+		} else if (code instanceof ImcMEM)
+			children.add(((ImcMEM) code).expr);
+		else if (code instanceof ImcCALL)
+			children.addAll(((ImcCALL) code).args);
+		else if (code instanceof ImcESEQ) {
+			children.add(((ImcESEQ) code).stmt);
+			children.add(((ImcESEQ) code).expr);
+		}
+		return children;
+	}
+
+	/**
+	 * Ali sta izraza brez klicev enaka po zgradbi.
+	 */
+	public static boolean same(ImcExpr expr1, ImcExpr expr2) {
+		if (expr1 instanceof ImcCONST && expr2 instanceof ImcCONST)
+			return ((ImcCONST) expr1).value == ((ImcCONST) expr2).value;
+		if (expr1 instanceof ImcTEMP && expr2 instanceof ImcTEMP)
+			return ((ImcTEMP) expr1).temp == ((ImcTEMP) expr2).temp;
+		if (expr1 instanceof ImcNAME && expr2 instanceof ImcNAME)
+			return ((ImcNAME) expr1).label.equals(((ImcNAME) expr2).label);
+		if (expr1 instanceof ImcMEM && expr2 instanceof ImcMEM)
+			return same(((ImcMEM) expr1).expr, ((ImcMEM) expr2).expr);
+		if (expr1 instanceof ImcBINOP && expr2 instanceof ImcBINOP) {
+			ImcBINOP binop1 = (ImcBINOP) expr1;
+			ImcBINOP binop2 = (ImcBINOP) expr2;
+			return binop1.op == binop2.op && same(binop1.limc, binop2.limc) && same(binop1.rimc, binop2.rimc);
+		}
+		return false;
+	}
+
+	/**
+	 * Vrne kopijo stavka.
+	 */
+	public ImcStmt copy(ImcStmt stmt) {
+		if (stmt instanceof ImcSEQ) {
+			ImcSEQ seq = new ImcSEQ();
+			seq.note = ((ImcSEQ) stmt).note;
+			for (ImcStmt sub : ((ImcSEQ) stmt).stmts)
+				seq.stmts.add(copy(sub));
+			return seq;
+		}
+		if (stmt instanceof ImcMOVE)
+			return new ImcMOVE(copy(((ImcMOVE) stmt).dst), copy(((ImcMOVE) stmt).src));
+		if (stmt instanceof ImcEXP)
+			return new ImcEXP(copy(((ImcEXP) stmt).expr));
+		if (stmt instanceof ImcLABEL)
+			return new ImcLABEL(label(((ImcLABEL) stmt).label));
+		if (stmt instanceof ImcJUMP)
+			return new ImcJUMP(label(((ImcJUMP) stmt).label));
+		if (stmt instanceof ImcCJUMP) {
+			ImcCJUMP cjump = (ImcCJUMP) stmt;
+			return new ImcCJUMP(copy(cjump.cond), label(cjump.trueLabel), label(cjump.falseLabel));
+		}
+		return stmt;
+	}
+
+	/**
+	 * Vrne kopijo izraza.
+	 */
+	public ImcExpr copy(ImcExpr expr) {
+		ImcExpr replaced = replace(expr);
+		if (replaced != null)
+			return replaced;
+		if (expr instanceof ImcTEMP)
+			return new ImcTEMP(temp(((ImcTEMP) expr).temp));
+		if (expr instanceof ImcCONST)
+			return new ImcCONST(((ImcCONST) expr).value);
+		if (expr instanceof ImcNAME)
+			return new ImcNAME(((ImcNAME) expr).label);
+		if (expr instanceof ImcMEM)
+			return new ImcMEM(copy(((ImcMEM) expr).expr));
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			return new ImcBINOP(binop.op, copy(binop.limc), copy(binop.rimc));
+		}
+		if (expr instanceof ImcCALL) {
+			ImcCALL call = new ImcCALL(((ImcCALL) expr).label);
+			for (ImcExpr arg : ((ImcCALL) expr).args)
+				call.args.add(copy(arg));
+			return call;
+		}
+		if (expr instanceof ImcESEQ)
+			return new ImcESEQ(copy(((ImcESEQ) expr).stmt), copy(((ImcESEQ) expr).expr));
+		return expr;
+	}
+
+	/**
+	 * Vrne oznako, ki jo uporablja kopija.
+	 */
+	protected FrmLabel label(FrmLabel label) {
+		return label;
+	}
+
+	/**
+	 * Vrne zacasno spremenljivko, ki jo uporablja kopija.
+	 */
+	protected FrmTemp temp(FrmTemp temp) {
+		return temp;
+	}
+
+	/**
+	 * Vrne izraz, ki v kopiji nadomesti dani izraz, ali null, ce se izraz
+	 * kopira.
+	 */
+	protected ImcExpr replace(ImcExpr expr) {
+		return null;
+	}
+
+}
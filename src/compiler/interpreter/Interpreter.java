@@ -113,6 +113,17 @@ public class Interpreter {
 		}
 	}
 	
+	private static boolean compare(int op, int fstSubValue, int sndSubValue) {
+		switch (op) {
+		case ImcBINOP.EQU: return fstSubValue == sndSubValue;
+		case ImcBINOP.NEQ: return fstSubValue != sndSubValue;
+		case ImcBINOP.LTH: return fstSubValue < sndSubValue;
+		case ImcBINOP.GTH: return fstSubValue > sndSubValue;
+		case ImcBINOP.LEQ: return fstSubValue <= sndSubValue;
+		default: return fstSubValue >= sndSubValue;
+		}
+	}
+
 	public Object execute(ImcCode instruction) {
 		if (instruction instanceof ImcBINOP) {
 			ImcBINOP instr = (ImcBINOP) instruction;
@@ -145,6 +156,12 @@ public class Interpreter {
 				return (((Integer) fstSubValue).intValue() / ((Integer) sndSubValue).intValue());
 			case ImcBINOP.MOD:
 				return (((Integer) fstSubValue).intValue() % ((Integer) sndSubValue).intValue());
+			case ImcBINOP.SHL:
+				return (((Integer) fstSubValue).intValue() << ((Integer) sndSubValue).intValue());
+			case ImcBINOP.SHR:
+				return (((Integer) fstSubValue).intValue() >> ((Integer) sndSubValue).intValue());
+			case ImcBINOP.BITAND:
+				return (((Integer) fstSubValue).intValue() & ((Integer) sndSubValue).intValue());
 			}
 			Report.error("Internal error.");
 			return null;
@@ -188,6 +205,13 @@ public class Interpreter {
 		
 		if (instruction instanceof ImcCJUMP) {
 			ImcCJUMP instr = (ImcCJUMP) instruction;
+			// a comparison decides the jump without computing its 0/1 value
+			if (instr.cond instanceof ImcBINOP && ImcBINOP.inverse(((ImcBINOP) instr.cond).op) >= 0) {
+				ImcBINOP cond = (ImcBINOP) instr.cond;
+				int fstSubValue = (Integer) execute(cond.limc);
+				int sndSubValue = (Integer) execute(cond.rimc);
+				return compare(cond.op, fstSubValue, sndSubValue) ? instr.trueLabel : instr.falseLabel;
+			}
 			Object cond = execute(instr.cond);
 			if (cond instanceof Integer) {
 				if (((Integer) cond).intValue() != 0)
@@ -1,43 +1,40 @@
 package compiler.lexan;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
 
 import compiler.*;
 
 /**
  * Leksikalni analizator.
- * 
+ *
  * @author sliva
  * @implementation Toni Kocjan
  */
 public class LexAn {
 
 	/** Ali se izpisujejo vmesni rezultati. */
-	private boolean dump;
+	protected boolean dump;
 
 	/**
-	 * File which is being parsed.
+	 * Contents of the file which is being parsed.
 	 */
-	private FileInputStream file = null;
+	protected byte[] source = null;
 
 	/**
-	 * Buffer containg current word / symbol which is being processed.
+	 * Offset of the next character to be read from source.
 	 */
-	private StringBuilder word = null;
+	private int offset = 0;
 
 	/**
-	 * Map containing all reserved keywords.
+	 * All reserved keywords; keyword at index i has token i + 30.
 	 */
 	private static final String[] keywords = new String[] { "logical",
 			"integer", "string", "arr", "else", "for", "fun", "if", "then",
 			"typ", "var", "where", "while", "ptr", "struct", "import" };
-	private static Map<String, Integer> keywordsMap = null;
 
 	/**
 	 * Current caracter.
@@ -50,17 +47,34 @@ public class LexAn {
 	private int startCol = 1, startRow = 1;
 
 	/**
-	 * 
+	 * Length of the last word / symbol which has been processed.
+	 */
+	private int wordLength = 0;
+
+	/**
+	 *
 	 */
 	private boolean dontRead = false;
 
+	/**
+	 * Whether lexical errors are thrown back to the caller instead of being
+	 * reported immediately.
+	 */
+	private boolean deferErrors = false;
+
+	/**
+	 * Lexeme and position of the last scanned symbol.
+	 */
+	private int lexemeBegin, lexemeEnd;
+	private long begin, end;
+
 	/**
 	 * -----------------------------
 	 */
 
 	/**
 	 * Ustvari nov leksikalni analizator.
-	 * 
+	 *
 	 * @param sourceFileName
 	 *            Ime izvorne datoteke.
 	 * @param dump
@@ -74,17 +88,8 @@ public class LexAn {
 			System.out.println("Working dir: "
 					+ current.toAbsolutePath().toString());
 			System.out.println("  Opening file: " + sourceFileName);
-			this.file = new FileInputStream(sourceFileName);
-			word = new StringBuilder();
-
-			/**
-			 * Construct keyword map.
-			 */
-			keywordsMap = new HashMap<>();
-			for (int i = 0; i < keywords.length; i++)
-				keywordsMap.put(keywords[i], i + 30);
-
-		} catch (FileNotFoundException e) {
+			this.source = Files.readAllBytes(Paths.get(sourceFileName));
+		} catch (IOException e) {
 			Report.error("File [ " + sourceFileName
 					+ " ] does not exist! Exiting.");
 		}
@@ -93,56 +98,126 @@ public class LexAn {
 	/**
 	 * Vrne naslednji simbol iz izvorne datoteke. Preden vrne simbol, ga izpise
 	 * v datoteko z vmesnimi rezultati.
-	 * 
+	 *
 	 * @return Naslednji simbol iz izvorne datoteke.
 	 */
 	public Symbol lexAn() {
-		if (file == null)
+		if (source == null)
 			return null;
 
-		try {
-			Symbol s = parseSymbol();
-			if (s == null)
-				s = new Symbol(Token.EOF, "$", startRow, startCol, startRow,
-						startCol + 1);
+		int token = parseSymbol();
+		Symbol s = new Symbol(token, token == Token.EOF ? "$" : new String(
+				source, lexemeBegin, lexemeEnd - lexemeBegin,
+				StandardCharsets.ISO_8859_1),
+				TokenStream.line(begin), TokenStream.column(begin),
+				TokenStream.line(end), TokenStream.column(end));
+		dump(s);
+		return s;
+	}
 
-			dump(s);
+	/**
+	 * Vrne vse simbole izvorne datoteke. Symbols are dumped as they are read
+	 * from the returned stream.
+	 *
+	 * @return Zaporedje simbolov izvorne datoteke.
+	 */
+	public TokenStream tokens() {
+		if (source == null)
+			return null;
 
-			return s;
+		TokenBuffer tokens = new TokenBuffer(source, dump);
+		tokenize(tokens);
+		return tokens;
+	}
 
-		} catch (IOException e) {
-			Report.error("Error while parsing input file! Exiting ...");
+	/**
+	 * Scan the rest of the file into the given token stream. A lexical error
+	 * ends the stream with an error token.
+	 *
+	 * @param tokens
+	 *            token stream
+	 */
+	void tokenize(TokenStream tokens) {
+		deferErrors = true;
+		try {
+			int token;
+			do {
+				token = parseSymbol();
+				tokens.add(token, lexemeBegin, lexemeEnd, begin, end);
+			} while (token != Token.EOF);
+		} catch (LexicalError e) {
+			tokens.addError(e.position, e.getMessage());
 		}
+	}
 
-		return null;
+	/**
+	 * Report lexical error at given position.
+	 *
+	 * @param pos
+	 *            position of the error
+	 * @param message
+	 *            error message
+	 */
+	private void error(Position pos, String message) {
+		if (deferErrors)
+			throw new LexicalError(pos, message);
+		Report.error(pos, message);
+	}
+
+	/**
+	 * @return next character in file or -1 at the end of file
+	 */
+	private int read() {
+		if (offset >= source.length) {
+			offset++;
+			return -1;
+		}
+		return source[offset++] & 0xFF;
+	}
+
+	/**
+	 * Store lexeme and position of the symbol which begins at startRow,
+	 * startCol.
+	 *
+	 * @param length
+	 *            width of the symbol in columns
+	 * @return token
+	 */
+	private int symbol(int token, int length) {
+		lexemeEnd = lexemeBegin + length;
+		begin = TokenStream.pack(startRow, startCol);
+		end = TokenStream.pack(startRow, startCol + length);
+		return token;
 	}
 
 	/**
 	 * Parse next symbol in file. If symbol is not lexically correct, report
-	 * error.
-	 * 
-	 * @return next symbol in file or null, if error detected
-	 * @throws IOException
+	 * error. Lexeme and position of the symbol are stored into lexemeBegin,
+	 * lexemeEnd, begin and end.
+	 *
+	 * @return kind of next symbol in file
 	 */
-	private Symbol parseSymbol() throws IOException {
+	private int parseSymbol() {
 		while (true) {
-			startCol += word.length();
-			word = new StringBuilder();
+			startCol += wordLength;
+			wordLength = 0;
 
 			if (!dontRead)
-				nxtCh = file.read();
+				nxtCh = read();
 			else
 				dontRead = false;
 
+			lexemeBegin = offset - 1;
+
 			/**
 			 * Skip characters after '#'.
 			 */
 			if (nxtCh == '#')
 				while (nxtCh != -1 && nxtCh != 10) {
-					nxtCh = file.read();
+					nxtCh = read();
 					if ((nxtCh < 32 || nxtCh > 126) && !isWhiteSpace(nxtCh)
 							&& nxtCh != -1)
-						Report.error(new Position(startRow, startCol),
+						error(new Position(startRow, startCol),
 								"Invalid token in comment");
 				}
 
@@ -150,8 +225,7 @@ public class LexAn {
 			 * Handle EOF.
 			 */
 			if (nxtCh == -1)
-				return new Symbol(Token.EOF, "$", startRow, startCol, startRow,
-						startCol);
+				return symbol(Token.EOF, 0);
 
 			/**
 			 * Handle whitespaces.
@@ -171,25 +245,20 @@ public class LexAn {
 			 * Parse string.
 			 */
 			if (nxtCh == '\'') {
-				word.append('\'');
 				boolean strClosed = false;
 				while (true) {
-					nxtCh = file.read();
+					nxtCh = read();
 					if (nxtCh < 32 || nxtCh > 126) {
 						if (isWhiteSpace(nxtCh) || nxtCh == -1)
 							break;
-						Report.error(new Position(startRow, startCol, startRow,
-								startCol + word.length() + 1),
+						error(new Position(startRow, startCol, startRow,
+								startCol + wordLength() + 1),
 								"Invalid token in string constant");
 					}
 
-					word.append((char) nxtCh);
-
 					if (nxtCh == '\'') {
-						nxtCh = file.read();
-						if (nxtCh == '\'')
-							word.append((char) nxtCh);
-						else {
+						nxtCh = read();
+						if (nxtCh != '\'') {
 							dontRead = true;
 							strClosed = true;
 							break;
@@ -199,27 +268,25 @@ public class LexAn {
 				// if last character of the word isn't single-quote, report
 				// error
 				if (!strClosed) {
-					Report.error(new Position(startRow, startCol, startRow,
-							startCol + word.length()),
+					error(new Position(startRow, startCol, startRow,
+							startCol + wordLength()),
 							"String literal not properly closed");
 				}
 
-				return new Symbol(Token.STR_CONST, word.toString(), startRow,
-						startCol, startRow, startCol + word.length());
+				wordLength = wordLength();
+				return symbol(Token.STR_CONST, wordLength);
 			}
 
 			/**
 			 * Parse int const.
 			 */
 			if (isNumeric(nxtCh)) {
-				while (isNumeric(nxtCh)) {
-					word.append((char) nxtCh);
-					nxtCh = file.read();
-				}
+				while (isNumeric(nxtCh))
+					nxtCh = read();
 				dontRead = true;
 
-				return new Symbol(Token.INT_CONST, word.toString(), startRow,
-						startCol, startRow, startCol + word.length());
+				wordLength = wordLength();
+				return symbol(Token.INT_CONST, wordLength);
 			}
 
 			/**
@@ -227,35 +294,35 @@ public class LexAn {
 			 */
 			if (isLegalId(nxtCh)) {
 				while (true) {
-					word.append((char) nxtCh);
-					nxtCh = file.read();
+					nxtCh = read();
 
 					/**
 					 * Delemiters for identifier are: - whitespaces - EOF -
 					 * operator - single-quote
 					 */
-					if (isOperator(nxtCh) != null || isWhiteSpace(nxtCh)
+					if (isOperator(nxtCh) >= 0 || isWhiteSpace(nxtCh)
 							|| nxtCh == -1 || nxtCh == '\'') {
 						dontRead = true;
+						wordLength = wordLength();
 						int token = Token.IDENTIFIER;
 
 						// Check if word is keyword
-						if (keywordsMap.containsKey(word.toString()))
-							token = keywordsMap.get(word.toString());
+						int keyword = keyword(lexemeBegin, wordLength);
+						if (keyword >= 0)
+							token = keyword;
 						// Check if word is log const
-						if (word.toString().equals("true")
-								|| word.toString().equals("false"))
+						if (isWord("true", lexemeBegin, wordLength)
+								|| isWord("false", lexemeBegin, wordLength))
 							token = Token.LOG_CONST;
 
-						return new Symbol(token, word.toString(), startRow,
-								startCol, startRow, startCol + word.length());
+						return symbol(token, wordLength);
 					}
 					/**
 					 * If this is not legal identifier character, report error.
 					 */
 					if (!isLegalId(nxtCh))
-						Report.error(new Position(startRow, startCol, startRow,
-								startCol + word.length() + 1),
+						error(new Position(startRow, startCol, startRow,
+								startCol + wordLength() + 1),
 								"Invalid token \"" + (char) nxtCh
 										+ "\" in identifier");
 				}
@@ -264,20 +331,22 @@ public class LexAn {
 			/**
 			 * Parse operator.
 			 */
-			Symbol op = isOperator(nxtCh);
-			if (op != null) {
+			int op = isOperator(nxtCh);
+			if (op >= 0) {
 				/**
 				 * Also check if this character + next character is an operator.
 				 */
-				int tmpCh = file.read();
-				Symbol op2 = isOperator2(nxtCh, tmpCh);
-				if (op2 != null) {
+				int tmpCh = read();
+				int op2 = isOperator2(nxtCh, tmpCh);
+				if (op2 >= 0) {
+					symbol(op2, 2);
 					startCol += 2;
 					return op2;
 				}
 
 				dontRead = true;
 				nxtCh = tmpCh;
+				symbol(op, 1);
 				startCol++;
 				return op;
 			}
@@ -285,111 +354,101 @@ public class LexAn {
 			/**
 			 * Unknown character. Report error.
 			 */
-			Report.error(new Position(startRow, startCol, startRow, startCol
-					+ word.length() + 1), "Unknown token \"" + (char) nxtCh
-					+ "\", delete this token");
+			error(new Position(startRow, startCol, startRow, startCol + 1),
+					"Unknown token \"" + (char) nxtCh + "\", delete this token");
 		}
 	}
 
+	/**
+	 * @return length of the word / symbol which is being processed, not
+	 *         including the current character
+	 */
+	private int wordLength() {
+		return offset - 1 - lexemeBegin;
+	}
+
+	/**
+	 * Check if characters in source are a keyword.
+	 *
+	 * @param begin
+	 *            offset of the word
+	 * @param length
+	 *            length of the word
+	 * @return keyword token or -1, if word is not a keyword
+	 */
+	private int keyword(int begin, int length) {
+		for (int i = 0; i < keywords.length; i++)
+			if (isWord(keywords[i], begin, length))
+				return i + 30;
+		return -1;
+	}
+
+	/**
+	 * @return true if characters in source are equal to the given word
+	 */
+	private boolean isWord(String word, int begin, int length) {
+		if (word.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (source[begin + i] != word.charAt(i))
+				return false;
+		return true;
+	}
+
 	/**
 	 * Check if character is an operator.
-	 * 
+	 *
 	 * @param ch
-	 * @return detected operator or null, if no operator is detected
+	 * @return detected operator or -1, if no operator is detected
 	 */
-	private Symbol isOperator(int ch) {
-		if (ch == '+')
-			return new Symbol(Token.ADD, "+", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '-')
-			return new Symbol(Token.SUB, "-", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '*')
-			return new Symbol(Token.MUL, "*", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '/')
-			return new Symbol(Token.DIV, "/", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '%')
-			return new Symbol(Token.MOD, "%", startRow, startCol, startRow,
-					startCol + 1);
-
-		if (ch == '&')
-			return new Symbol(Token.AND, "&", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '|')
-			return new Symbol(Token.IOR, "|", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '!')
-			return new Symbol(Token.NOT, "!", startRow, startCol, startRow,
-					startCol + 1);
-
-		if (ch == '(')
-			return new Symbol(Token.LPARENT, "(", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == ')')
-			return new Symbol(Token.RPARENT, ")", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '{')
-			return new Symbol(Token.LBRACE, "{", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '}')
-			return new Symbol(Token.RBRACE, "}", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '[')
-			return new Symbol(Token.LBRACKET, "[", startRow, startCol,
-					startRow, startCol + 1);
-		if (ch == ']')
-			return new Symbol(Token.RBRACKET, "]", startRow, startCol,
-					startRow, startCol + 1);
-
-		if (ch == '<')
-			return new Symbol(Token.LTH, "<", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '>')
-			return new Symbol(Token.GTH, ">", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == '=')
-			return new Symbol(Token.ASSIGN, "=", startRow, startCol, startRow,
-					startCol + 1);
-
-		if (ch == '.')
-			return new Symbol(Token.DOT, ".", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == ':')
-			return new Symbol(Token.COLON, ":", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == ';')
-			return new Symbol(Token.SEMIC, ";", startRow, startCol, startRow,
-					startCol + 1);
-		if (ch == ',')
-			return new Symbol(Token.COMMA, ",", startRow, startCol, startRow,
-					startCol + 1);
-
-		return null;
+	private int isOperator(int ch) {
+		switch (ch) {
+		case '+': return Token.ADD;
+		case '-': return Token.SUB;
+		case '*': return Token.MUL;
+		case '/': return Token.DIV;
+		case '%': return Token.MOD;
+
+		case '&': return Token.AND;
+		case '|': return Token.IOR;
+		case '!': return Token.NOT;
+
+		case '(': return Token.LPARENT;
+		case ')': return Token.RPARENT;
+		case '{': return Token.LBRACE;
+		case '}': return Token.RBRACE;
+		case '[': return Token.LBRACKET;
+		case ']': return Token.RBRACKET;
+
+		case '<': return Token.LTH;
+		case '>': return Token.GTH;
+		case '=': return Token.ASSIGN;
+
+		case '.': return Token.DOT;
+		case ':': return Token.COLON;
+		case ';': return Token.SEMIC;
+		case ',': return Token.COMMA;
+		}
+		return -1;
 	}
 
 	/**
 	 * Check if this two characters are an operator.
-	 * 
+	 *
 	 * @param ch1
 	 * @param ch2
-	 * @return detected operator or null, if no operator is detected
+	 * @return detected operator or -1, if no operator is detected
 	 */
-	private Symbol isOperator2(int ch1, int ch2) {
+	private int isOperator2(int ch1, int ch2) {
 		if (ch1 == '=' && ch2 == '=')
-			return new Symbol(Token.EQU, "==", startRow, startCol, startRow,
-					startCol + 2);
+			return Token.EQU;
 		if (ch1 == '!' && ch2 == '=')
-			return new Symbol(Token.NEQ, "!=", startRow, startCol, startRow,
-					startCol + 2);
+			return Token.NEQ;
 		if (ch1 == '>' && ch2 == '=')
-			return new Symbol(Token.GEQ, ">=", startRow, startCol, startRow,
-					startCol + 2);
+			return Token.GEQ;
 		if (ch1 == '<' && ch2 == '=')
-			return new Symbol(Token.LEQ, "<=", startRow, startCol, startRow,
-					startCol + 2);
-		return null;
+			return Token.LEQ;
+		return -1;
 	}
 
 	/**
@@ -423,7 +482,7 @@ public class LexAn {
 
 	/**
 	 * Izpise simbol v datoteko z vmesnimi rezultati.
-	 * 
+	 *
 	 * @param symb
 	 *            Simbol, ki naj bo izpisan.
 	 */
@@ -438,4 +497,19 @@ public class LexAn {
 			Report.dumpFile().println(
 					"[" + symb.position.toString() + "] " + symb.toString());
 	}
+
+	/**
+	 * Lexical error detected while scanning into a token stream.
+	 */
+	@SuppressWarnings("serial")
+	static class LexicalError extends RuntimeException {
+
+		/** Position of the error. */
+		final Position position;
+
+		LexicalError(Position position, String message) {
+			super(message);
+			this.position = position;
+		}
+	}
 }
@@ -0,0 +1,57 @@
+package compiler.lexan;
+
+/**
+ * Leksikalni analizator, ki tece v lastni niti.
+ * <p>
+ * Symbols are produced on a separate thread and handed over to the parser
+ * through a {@link TokenRing}, so lexing and parsing of large source files
+ * overlap. Lexical errors are not reported by the producer thread; they are
+ * passed through the ring and reported once the parser reaches them, so
+ * diagnostics are the same as with {@link LexAn}. Any other exception of
+ * the producer thread ends the ring and is rethrown by the parser.
+ */
+public class PipelinedLexAn extends LexAn {
+
+	/** Capacity of the token ring. */
+	private static final int BUFFER_SIZE = 4096;
+
+	/**
+	 * Ustvari nov leksikalni analizator.
+	 *
+	 * @param sourceFileName
+	 *            Ime izvorne datoteke.
+	 * @param dump
+	 *            Ali se izpisujejo vmesni rezultati.
+	 */
+	public PipelinedLexAn(String sourceFileName, boolean dump) {
+		super(sourceFileName, dump);
+	}
+
+	/**
+	 * Zazene nit leksikalnega analizatorja.
+	 *
+	 * @return Zaporedje simbolov, ki ga polni nit leksikalnega analizatorja.
+	 */
+	@Override
+	public TokenStream tokens() {
+		if (source == null)
+			return null;
+
+		final TokenRing ring = new TokenRing(source, dump, BUFFER_SIZE);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tokenize(ring);
+				} catch (Throwable t) {
+					// the parser would otherwise wait for symbols forever
+					ring.fail(t);
+				}
+			}
+		}, "lexan");
+		producer.setDaemon(true);
+		producer.start();
+		return ring;
+	}
+
+}
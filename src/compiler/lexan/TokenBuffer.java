@@ -0,0 +1,129 @@
+package compiler.lexan;
+
+import java.util.Arrays;
+
+/**
+ * Zaporedje vseh simbolov izvorne datoteke.
+ * <p>
+ * Struct-of-arrays buffer holding every token of the file; tokens are
+ * addressed by their position in the file.
+ */
+public class TokenBuffer extends TokenStream {
+
+	/** Initial capacity of the buffer. */
+	private static final int INITIAL_SIZE = 1024;
+
+	/** Vrste simbolov. */
+	private int[] tokens = new int[INITIAL_SIZE];
+
+	/** Offsets of the first characters of lexemes. */
+	private int[] lexemeBegins = new int[INITIAL_SIZE];
+
+	/** Offsets past the last characters of lexemes. */
+	private int[] lexemeEnds = new int[INITIAL_SIZE];
+
+	/** Packed beginning positions. */
+	private long[] begins = new long[INITIAL_SIZE];
+
+	/** Packed end positions. */
+	private long[] ends = new long[INITIAL_SIZE];
+
+	/** Stevilo simbolov. */
+	private int size = 0;
+
+	/** Index of the current token. */
+	private int current = -1;
+
+	/**
+	 * Ustvari novo zaporedje simbolov.
+	 *
+	 * @param source
+	 *            Izvorna datoteka.
+	 * @param dump
+	 *            Ali se izpisujejo vmesni rezultati.
+	 */
+	TokenBuffer(byte[] source, boolean dump) {
+		super(source, dump);
+	}
+
+	/**
+	 * Create a stream sharing all symbols with this stream, whose next symbol
+	 * is the symbol at the given index. The returned stream does not dump
+	 * symbols and may be read from another thread once the file is scanned.
+	 *
+	 * @param index
+	 *            index of the next symbol of the returned stream
+	 * @return new token stream
+	 */
+	public TokenBuffer from(int index) {
+		TokenBuffer buffer = new TokenBuffer(source, false);
+		buffer.tokens = tokens;
+		buffer.lexemeBegins = lexemeBegins;
+		buffer.lexemeEnds = lexemeEnds;
+		buffer.begins = begins;
+		buffer.ends = ends;
+		buffer.size = size;
+		buffer.current = index - 1;
+		return buffer;
+	}
+
+	@Override
+	void add(int token, int lexemeBegin, int lexemeEnd, long begin, long end) {
+		if (size == tokens.length) {
+			int capacity = 2 * size;
+			tokens = Arrays.copyOf(tokens, capacity);
+			lexemeBegins = Arrays.copyOf(lexemeBegins, capacity);
+			lexemeEnds = Arrays.copyOf(lexemeEnds, capacity);
+			begins = Arrays.copyOf(begins, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+		}
+		tokens[size] = token;
+		lexemeBegins[size] = lexemeBegin;
+		lexemeEnds[size] = lexemeEnd;
+		begins[size] = begin;
+		ends[size] = end;
+		size++;
+	}
+
+	@Override
+	protected int advance() {
+		if (current + 1 < size)
+			current++;
+		return current;
+	}
+
+	/**
+	 * Vrne stevilo simbolov.
+	 *
+	 * @return Stevilo simbolov.
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int token(int index) {
+		return tokens[index];
+	}
+
+	@Override
+	protected int lexemeBegin(int index) {
+		return lexemeBegins[index];
+	}
+
+	@Override
+	protected int lexemeEnd(int index) {
+		return lexemeEnds[index];
+	}
+
+	@Override
+	public long begin(int index) {
+		return begins[index];
+	}
+
+	@Override
+	public long end(int index) {
+		return ends[index];
+	}
+
+}
@@ -0,0 +1,161 @@
+package compiler.lexan;
+
+/**
+ * Omejen medpomnilnik simbolov med leksikalnim in sintaksnim analizatorjem.
+ * <p>
+ * Lock-free struct-of-arrays ring buffer for exactly one producer and one
+ * consumer thread. The producer publishes a token by advancing {@code tail},
+ * the consumer releases slots by advancing {@code head}; both indices are only
+ * ever written by their owner, so volatile reads and writes are sufficient for
+ * synchronization. The consumer keeps the current and the previous token, so
+ * their indices stay valid until the next call of {@link #next()}.
+ */
+public class TokenRing extends TokenStream {
+
+	/** Vrste simbolov. */
+	private final int[] tokens;
+
+	/** Offsets of the first characters of lexemes. */
+	private final int[] lexemeBegins;
+
+	/** Offsets past the last characters of lexemes. */
+	private final int[] lexemeEnds;
+
+	/** Packed beginning positions. */
+	private final long[] begins;
+
+	/** Packed end positions. */
+	private final long[] ends;
+
+	/** Mask for mapping indices onto slots (capacity is a power of two). */
+	private final int mask;
+
+	/** Oldest index still used by the consumer (written by consumer only). */
+	private volatile long head = 0;
+
+	/** Index of the next slot to be written (written by producer only). */
+	private volatile long tail = 0;
+
+	/** Producer's last seen value of head. */
+	private long cachedHead = 0;
+
+	/** Consumer's last seen value of tail. */
+	private long cachedTail = 0;
+
+	/** Index of the current token (consumer only). */
+	private long current = -1;
+
+	/** Exception of the producer thread, published with its error token. */
+	private Throwable failure = null;
+
+	/**
+	 * Ustvari nov medpomnilnik simbolov.
+	 *
+	 * @param source
+	 *            Izvorna datoteka.
+	 * @param dump
+	 *            Ali se izpisujejo vmesni rezultati.
+	 * @param capacity
+	 *            Minimal capacity of the buffer, rounded up to a power of two.
+	 */
+	TokenRing(byte[] source, boolean dump, int capacity) {
+		super(source, dump);
+		int size = 2;
+		while (size < capacity)
+			size <<= 1;
+		tokens = new int[size];
+		lexemeBegins = new int[size];
+		lexemeEnds = new int[size];
+		begins = new long[size];
+		ends = new long[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Append token to the buffer, waiting while the buffer is full. May only be
+	 * called from the producer thread.
+	 */
+	@Override
+	void add(int token, int lexemeBegin, int lexemeEnd, long begin, long end) {
+		long t = tail;
+		while (t - cachedHead == tokens.length) {
+			cachedHead = head;
+			if (t - cachedHead == tokens.length)
+				Thread.yield();
+		}
+		int slot = (int) (t & mask);
+		tokens[slot] = token;
+		lexemeBegins[slot] = lexemeBegin;
+		lexemeEnds[slot] = lexemeEnd;
+		begins[slot] = begin;
+		ends[slot] = end;
+		tail = t + 1;
+	}
+
+	/**
+	 * End the stream after the producer thread failed. The exception is
+	 * rethrown on the consumer thread once it reaches the end of the stream.
+	 * May only be called from the producer thread.
+	 */
+	void fail(Throwable failure) {
+		this.failure = failure;
+		add(ERROR, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Move to the next token, waiting while the buffer is empty. May only be
+	 * called from the consumer thread.
+	 */
+	@Override
+	protected int advance() {
+		if (current >= 0) {
+			int token = tokens[(int) (current & mask)];
+			if (token == Token.EOF || token == ERROR)
+				return (int) (current & mask);
+		}
+
+		long next = current + 1;
+		while (next == cachedTail) {
+			cachedTail = tail;
+			if (next == cachedTail)
+				Thread.yield();
+		}
+		current = next;
+		if (current > 0)
+			head = current - 1;
+		if (failure != null && tokens[(int) (current & mask)] == ERROR) {
+			if (failure instanceof Error)
+				throw (Error) failure;
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			throw new IllegalStateException(failure);
+		}
+		return (int) (current & mask);
+	}
+
+	@Override
+	public int token(int index) {
+		return tokens[index];
+	}
+
+	@Override
+	protected int lexemeBegin(int index) {
+		return lexemeBegins[index];
+	}
+
+	@Override
+	protected int lexemeEnd(int index) {
+		return lexemeEnds[index];
+	}
+
+	@Override
+	public long begin(int index) {
+		return begins[index];
+	}
+
+	@Override
+	public long end(int index) {
+		return ends[index];
+	}
+
+}
@@ -0,0 +1,227 @@
+package compiler.lexan;
+
+import java.nio.charset.StandardCharsets;
+
+import compiler.*;
+
+/**
+ * Zaporedje leksikalnih simbolov v strnjeni obliki.
+ * <p>
+ * Tokens are stored as primitives: token kind, offsets of the lexeme in the
+ * source buffer and line/column pairs packed into a {@code long}. Tokens are
+ * addressed by an index returned from {@link #next()}; {@link Symbol} and
+ * {@link Position} objects are only created on request, i.e. for the abstract
+ * syntax tree, error reports and dumps.
+ * <p>
+ * Lexical errors are stored as a special token at the point where they were
+ * detected and reported once the parser reaches them.
+ */
+public abstract class TokenStream {
+
+	/** Vrsta simbola: leksikalna napaka. */
+	static final int ERROR = -1;
+
+	/** Izvorna datoteka. */
+	protected final byte[] source;
+
+	/** Ali se izpisujejo vmesni rezultati. */
+	private final boolean dump;
+
+	/** Description of the lexical error, if any. */
+	private String errorMessage = null;
+
+	/**
+	 * Ustvari novo zaporedje simbolov.
+	 *
+	 * @param source
+	 *            Izvorna datoteka.
+	 * @param dump
+	 *            Ali se izpisujejo vmesni rezultati.
+	 */
+	protected TokenStream(byte[] source, boolean dump) {
+		this.source = source;
+		this.dump = dump;
+	}
+
+	/**
+	 * Premakne se na naslednji simbol in ga izpise v datoteko z vmesnimi
+	 * rezultati. Reading past the end of file returns the last symbol again.
+	 *
+	 * @return Indeks naslednjega simbola.
+	 */
+	public final int next() {
+		int index = advance();
+		if (token(index) == ERROR)
+			Report.error(position(index), errorMessage);
+		dump(index);
+		return index;
+	}
+
+	/**
+	 * Append token to the stream.
+	 *
+	 * @param token
+	 *            kind of the token
+	 * @param lexemeBegin
+	 *            offset of the first character of the lexeme
+	 * @param lexemeEnd
+	 *            offset past the last character of the lexeme
+	 * @param begin
+	 *            packed position of the first character
+	 * @param end
+	 *            packed position past the last character
+	 */
+	abstract void add(int token, int lexemeBegin, int lexemeEnd, long begin,
+			long end);
+
+	/**
+	 * Append lexical error to the stream. No tokens may follow an error.
+	 *
+	 * @param position
+	 *            position of the error
+	 * @param message
+	 *            error message
+	 */
+	void addError(Position position, String message) {
+		errorMessage = message;
+		add(ERROR, 0, 0, pack(position.begLine(), position.begColumn()),
+				pack(position.endLine(), position.endColumn()));
+	}
+
+	/**
+	 * Advance to the next token without reporting or dumping it.
+	 *
+	 * @return index of the next token
+	 */
+	protected abstract int advance();
+
+	/**
+	 * Vrne vrsto simbola.
+	 *
+	 * @param index
+	 *            Indeks simbola.
+	 * @return Vrsta simbola.
+	 */
+	public abstract int token(int index);
+
+	/**
+	 * @param index
+	 *            index of the token
+	 * @return offset of the first character of the lexeme in source
+	 */
+	protected abstract int lexemeBegin(int index);
+
+	/**
+	 * @param index
+	 *            index of the token
+	 * @return offset past the last character of the lexeme in source
+	 */
+	protected abstract int lexemeEnd(int index);
+
+	/**
+	 * @param index
+	 *            index of the token
+	 * @return packed position of the first character of the token
+	 */
+	public abstract long begin(int index);
+
+	/**
+	 * @param index
+	 *            index of the token
+	 * @return packed position past the last character of the token
+	 */
+	public abstract long end(int index);
+
+	/**
+	 * Vrne znakovno predstavitev simbola.
+	 *
+	 * @param index
+	 *            Indeks simbola.
+	 * @return Znakovna predstavitev simbola.
+	 */
+	public String lexeme(int index) {
+		int token = token(index);
+		if (token == Token.EOF)
+			return "$";
+		if (token == ERROR)
+			return errorMessage;
+		int begin = lexemeBegin(index);
+		return new String(source, begin, lexemeEnd(index) - begin,
+				StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Vrne polozaj simbola v izvorni datoteki.
+	 *
+	 * @param index
+	 *            Indeks simbola.
+	 * @return Polozaj simbola v izvorni datoteki.
+	 */
+	public Position position(int index) {
+		long begin = begin(index);
+		long end = end(index);
+		return new Position(line(begin), column(begin), line(end), column(end));
+	}
+
+	/**
+	 * Vrne leksikalni simbol.
+	 *
+	 * @param index
+	 *            Indeks simbola.
+	 * @return Leksikalni simbol.
+	 */
+	public Symbol symbol(int index) {
+		return new Symbol(token(index), lexeme(index), position(index));
+	}
+
+	/**
+	 * Izpise simbol v datoteko z vmesnimi rezultati.
+	 *
+	 * @param index
+	 *            Indeks simbola, ki naj bo izpisan.
+	 */
+	private void dump(int index) {
+		if (!dump)
+			return;
+		if (Report.dumpFile() == null)
+			return;
+		Symbol symb = symbol(index);
+		if (symb.token == Token.EOF)
+			Report.dumpFile().println(symb.toString());
+		else
+			Report.dumpFile().println(
+					"[" + symb.position.toString() + "] " + symb.toString());
+	}
+
+	/**
+	 * Pack line and column into a single value.
+	 *
+	 * @param line
+	 *            line
+	 * @param column
+	 *            column
+	 * @return packed position
+	 */
+	public static long pack(int line, int column) {
+		return ((long) line << 32) | (column & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param position
+	 *            packed position
+	 * @return line of the packed position
+	 */
+	public static int line(long position) {
+		return (int) (position >>> 32);
+	}
+
+	/**
+	 * @param position
+	 *            packed position
+	 * @return column of the packed position
+	 */
+	public static int column(long position) {
+		return (int) position;
+	}
+
+}
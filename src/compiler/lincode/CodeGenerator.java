@@ -3,24 +3,44 @@ package compiler.lincode;
 import java.util.HashMap;
 import java.util.LinkedList;
 
+import compiler.abstr.tree.AbsFunDef;
+import compiler.frames.FrmDesc;
 import compiler.frames.FrmFrame;
 import compiler.frames.FrmLabel;
 import compiler.imcode.ImcChunk;
 import compiler.imcode.ImcCode;
 import compiler.imcode.ImcCodeChunk;
+import compiler.imcode.ImcCodeGen;
 import compiler.imcode.ImcDataChunk;
 import compiler.interpreter.Interpreter;
+import compiler.optimizer.Optimizer;
+import compiler.seman.Reachability;
 
 public class CodeGenerator {
 	
 	private static HashMap<FrmLabel, ImcCodeChunk> dict = new HashMap<>();
 
+	/** Funkcije, katerih koda se generira ob prvem klicu. */
+	private static HashMap<FrmLabel, AbsFunDef> deferred = new HashMap<>();
+
+	/** Dosegljivost definicij za generiranje odlozenih funkcij. */
+	private static Reachability reachability = null;
+
+	/** Naslednji prosti naslov za podatke. */
+	private static int dataOffset = 0;
+
+	/** Stevilo odlozenih funkcij. */
+	private static int numDeferred = 0;
+
+	/** Stevilo odlozenih funkcij, ki so bile prevedene ob prvem klicu. */
+	private static int numCompiledLazily = 0;
+
 	public static FrmFrame framesByFrmLabel(FrmLabel label) {
-		return dict.get(label).frame;
+		return chunkByFrmLabel(label).frame;
 	}
 	
 	public static ImcCode codesByFrmLabel(FrmLabel label) {
-		return dict.get(label).lincode;
+		return chunkByFrmLabel(label).lincode;
 	}
 	
 	public static void insertCode(FrmLabel label, ImcCodeChunk code) {
@@ -31,13 +51,59 @@ public class CodeGenerator {
 		return null;
 	}
 
+	/**
+	 * Odlozi generiranje kode funkcij do njihovega prvega klica.
+	 *
+	 * @param functions
+	 *            Funkcije na najvisjem nivoju.
+	 * @param reachability
+	 *            Dosegljivost definicij ali null.
+	 */
+	public static void defer(LinkedList<AbsFunDef> functions,
+			Reachability reachability) {
+		CodeGenerator.reachability = reachability;
+		for (AbsFunDef fun : functions)
+			deferred.put(FrmDesc.getFrame(fun).label, fun);
+		numDeferred += functions.size();
+	}
+
+	public static int numDeferred() {
+		return numDeferred;
+	}
+
+	public static int numCompiledLazily() {
+		return numCompiledLazily;
+	}
+
+	/**
+	 * Vrne kodo funkcije; koda odlozene funkcije se ob prvem klicu generira,
+	 * linearizira in shrani.
+	 */
+	private static ImcCodeChunk chunkByFrmLabel(FrmLabel label) {
+		ImcCodeChunk chunk = dict.get(label);
+		if (chunk == null) {
+			AbsFunDef fun = deferred.remove(label);
+			if (fun != null) {
+				ImcCodeGen imcodegen = new ImcCodeGen(reachability);
+				fun.accept(imcodegen);
+				Optimizer.optimize(imcodegen.chunks);
+				linearize(imcodegen.chunks);
+				numCompiledLazily++;
+				chunk = dict.get(label);
+			}
+		}
+		return chunk;
+	}
+
 	public static ImcCodeChunk linearize(LinkedList<ImcChunk> chunks) {
 		ImcCodeChunk mainFrame = null;
-		int offset = 0;
 		for (ImcChunk chnk : chunks) {
 			if (chnk instanceof ImcCodeChunk) {
 				ImcCodeChunk fn = (ImcCodeChunk) chnk;
-				fn.lincode = fn.imcode.linear();
+				// chunks from module interfaces are already linear, but not optimized
+				if (fn.lincode == null)
+					fn.lincode = fn.imcode.linear();
+				Optimizer.optimizeLinear(fn);
 				if (fn.frame.label.name().equals("_main")) {
 					mainFrame = fn;
 					
@@ -46,13 +112,13 @@ public class CodeGenerator {
 			}
 			else {
 				ImcDataChunk data = (ImcDataChunk) chnk;
-				Interpreter.locations.put(data.label, offset);
+				Interpreter.locations.put(data.label, dataOffset);
 				if (data.data != null)
-					Interpreter.stM(offset, data.data);
+					Interpreter.stM(dataOffset, data.data);
 				else
-					Interpreter.stM(offset, 0);
+					Interpreter.stM(dataOffset, 0);
 					
-				offset += data.size;
+				dataOffset += data.size;
 			}
 		}
 		return mainFrame;
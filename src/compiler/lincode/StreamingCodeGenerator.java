@@ -0,0 +1,136 @@
+package compiler.lincode;
+
+import java.util.LinkedList;
+
+import compiler.abstr.Pass;
+import compiler.abstr.PassManager;
+import compiler.abstr.tree.*;
+import compiler.frames.FrmDesc;
+import compiler.imcode.ImcChunk;
+import compiler.imcode.ImcCodeChunk;
+import compiler.imcode.ImcCodeGen;
+import compiler.imcode.ImcDesc;
+import compiler.optimizer.Optimizer;
+import compiler.seman.Reachability;
+import compiler.seman.SymbDesc;
+
+/**
+ * Prevajanje funkcij na najvisjem nivoju eno za drugo.
+ * <p>
+ * Once global declarations are known, every top-level function goes through
+ * code generation and linearization on its own and is linked into the chunk
+ * registry of {@link CodeGenerator}. Afterwards its non-linear code, the
+ * attributes of its body and the body itself are released, so only the
+ * linear code and the headers of functions stay alive while the rest of the
+ * program is compiled.
+ */
+public class StreamingCodeGenerator {
+
+	/** Dosegljivost definicij ali null. */
+	private final Reachability reachability;
+
+	/** Obhod, ki sprosti atribute jedra funkcije. */
+	private final PassManager release = new PassManager(new Release());
+
+	/** Vsi prevedeni kosi z linearno kodo. */
+	public final LinkedList<ImcChunk> chunks = new LinkedList<ImcChunk>();
+
+	/**
+	 * Ustvari nov generator.
+	 *
+	 * @param reachability
+	 *            Dosegljivost definicij ali null.
+	 */
+	public StreamingCodeGenerator(Reachability reachability) {
+		this.reachability = reachability;
+	}
+
+	/**
+	 * Prevede program.
+	 *
+	 * @param source
+	 *            Definicije programa.
+	 * @return Koda glavne funkcije.
+	 */
+	public ImcCodeChunk compile(AbsDefs source) {
+		// global data and main
+		ImcCodeGen imcodegen = new ImcCodeGen(reachability);
+		imcodegen.deferred = new LinkedList<AbsFunDef>();
+		source.accept(imcodegen);
+		ImcCodeChunk mainFrame = link(imcodegen.chunks);
+		release(mainFrame.frame.fun);
+
+		LinkedList<AbsFunDef> functions = imcodegen.deferred;
+		imcodegen = null;
+		while (!functions.isEmpty()) {
+			AbsFunDef fun = functions.removeFirst();
+			ImcCodeGen funcodegen = new ImcCodeGen(reachability);
+			fun.accept(funcodegen);
+			link(funcodegen.chunks);
+			release(fun);
+		}
+		return mainFrame;
+	}
+
+	/**
+	 * Optimizira, linearizira in poveze kose kode ter zavrze njihovo
+	 * nelinearno kodo.
+	 */
+	private ImcCodeChunk link(LinkedList<ImcChunk> funChunks) {
+		Optimizer.optimize(funChunks);
+		ImcCodeChunk mainFrame = CodeGenerator.linearize(funChunks);
+		for (ImcChunk chunk : funChunks) {
+			if (chunk instanceof ImcCodeChunk)
+				((ImcCodeChunk) chunk).imcode = null;
+			chunks.add(chunk);
+		}
+		return mainFrame;
+	}
+
+	/**
+	 * Sprosti jedro prevedene funkcije na najvisjem nivoju; glava funkcije
+	 * in njen klicni zapis ostaneta za klice iz ostalih funkcij.
+	 */
+	private void release(AbsFunDef fun) {
+		fun.expr.accept(release);
+		ImcDesc.setImcCode(fun, null);
+		fun.expr = null;
+	}
+
+	/**
+	 * Sprostitev atributov vozlisc jedra funkcije.
+	 */
+	private static class Release implements Pass {
+
+		@Override
+		public void signatures(AbsDefs defs) {
+		}
+
+		@Override
+		public void enter(AbsTree node) {
+			ImcDesc.setImcCode(node, null);
+			SymbDesc.setNameDef(node, null);
+			SymbDesc.setType(node, null);
+			if (node instanceof AbsDef)
+				FrmDesc.setAccess((AbsDef) node, null);
+		}
+
+		@Override
+		public void leave(AbsTree node) {
+			if (node instanceof AbsFunDef) {
+				FrmDesc.setFrame((AbsFunDef) node, null);
+				((AbsFunDef) node).expr = null;
+			}
+		}
+
+		@Override
+		public Pass fork() {
+			return new Release();
+		}
+
+		@Override
+		public void join() {
+		}
+	}
+
+}
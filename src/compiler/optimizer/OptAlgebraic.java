@@ -0,0 +1,129 @@
+package compiler.optimizer;
+
+import compiler.imcode.*;
+
+/**
+ * Poenostavljanje izrazov z algebraicnimi identitetami.
+ * <p>
+ * Constants of commutative operations are moved to the right operand, and
+ * subtraction of a constant becomes addition of its negation. Chains of
+ * additions and multiplications with constants, such as address arithmetic
+ * of nested components and elements, are then reassociated into a single
+ * constant. A negated comparison becomes the inverse comparison, so a
+ * negated condition still branches on a single comparison. Operands are
+ * dropped only if they have no side effects.
+ */
+public class OptAlgebraic extends OptTreePass {
+
+	@Override
+	protected ImcExpr rewrite(ImcExpr expr) {
+		if (!(expr instanceof ImcBINOP))
+			return expr;
+		ImcExpr simplified = simplify((ImcBINOP) expr);
+		if (simplified != expr)
+			changed = true;
+		return simplified;
+	}
+
+	private ImcExpr simplify(ImcBINOP binop) {
+		if (commutative(binop.op) && binop.limc instanceof ImcCONST
+				&& !(binop.rimc instanceof ImcCONST)) {
+			ImcExpr limc = binop.limc;
+			binop.limc = binop.rimc;
+			binop.rimc = limc;
+			changed = true;
+		}
+		ImcExpr l = binop.limc;
+		ImcExpr r = binop.rimc;
+
+		switch (binop.op) {
+		case ImcBINOP.ADD:
+			if (isConst(r, 0))
+				return l;
+			if (r instanceof ImcCONST && l instanceof ImcBINOP
+					&& ((ImcBINOP) l).op == ImcBINOP.ADD
+					&& ((ImcBINOP) l).rimc instanceof ImcCONST)
+				return new ImcBINOP(ImcBINOP.ADD, ((ImcBINOP) l).limc,
+						new ImcCONST(((ImcCONST) ((ImcBINOP) l).rimc).value
+								+ ((ImcCONST) r).value));
+			break;
+		case ImcBINOP.SUB:
+			if (isConst(r, 0))
+				return l;
+			if (r instanceof ImcCONST)
+				return new ImcBINOP(ImcBINOP.ADD, l, new ImcCONST(
+						-((ImcCONST) r).value));
+			// double negation
+			if (isConst(l, 0) && r instanceof ImcBINOP
+					&& ((ImcBINOP) r).op == ImcBINOP.SUB
+					&& isConst(((ImcBINOP) r).limc, 0))
+				return ((ImcBINOP) r).rimc;
+			break;
+		case ImcBINOP.MUL:
+			if (isConst(r, 1))
+				return l;
+			if (isConst(r, 0) && pure(l))
+				return r;
+			if (isConst(r, -1))
+				return new ImcBINOP(ImcBINOP.SUB, new ImcCONST(0), l);
+			if (r instanceof ImcCONST && l instanceof ImcBINOP
+					&& ((ImcBINOP) l).op == ImcBINOP.MUL
+					&& ((ImcBINOP) l).rimc instanceof ImcCONST)
+				return new ImcBINOP(ImcBINOP.MUL, ((ImcBINOP) l).limc,
+						new ImcCONST(((ImcCONST) ((ImcBINOP) l).rimc).value
+								* ((ImcCONST) r).value));
+			break;
+		case ImcBINOP.DIV:
+			if (isConst(r, 1))
+				return l;
+			break;
+		case ImcBINOP.MOD:
+			if (isConst(r, 1) && pure(l))
+				return new ImcCONST(0);
+			break;
+		case ImcBINOP.EQU:
+			// negated comparison
+			if (isConst(r, 0) && l instanceof ImcBINOP
+					&& ImcBINOP.inverse(((ImcBINOP) l).op) >= 0)
+				return new ImcBINOP(ImcBINOP.inverse(((ImcBINOP) l).op),
+						((ImcBINOP) l).limc, ((ImcBINOP) l).rimc);
+			if (isConst(r, 1) && logical(l))
+				return l;
+			break;
+		case ImcBINOP.NEQ:
+			if (isConst(r, 0) && logical(l))
+				return l;
+			break;
+		case ImcBINOP.AND:
+			if (isConst(r, 1) && logical(l))
+				return l;
+			if (isConst(r, 0) && pure(l))
+				return r;
+			break;
+		case ImcBINOP.OR:
+			if (isConst(r, 0) && logical(l))
+				return l;
+			if (isConst(r, 1) && pure(l))
+				return r;
+			break;
+		}
+		return binop;
+	}
+
+	private static boolean commutative(int op) {
+		return op == ImcBINOP.ADD || op == ImcBINOP.MUL || op == ImcBINOP.EQU
+				|| op == ImcBINOP.NEQ || op == ImcBINOP.AND || op == ImcBINOP.OR
+				|| op == ImcBINOP.BITAND;
+	}
+
+	/**
+	 * Ali je vrednost izraza 1 ali 0.
+	 */
+	private static boolean logical(ImcExpr expr) {
+		if (expr instanceof ImcCONST)
+			return isConst(expr, 0) || isConst(expr, 1);
+		return expr instanceof ImcBINOP && ((ImcBINOP) expr).op >= ImcBINOP.OR
+				&& ((ImcBINOP) expr).op <= ImcBINOP.GTH;
+	}
+
+}
@@ -0,0 +1,62 @@
+package compiler.optimizer;
+
+import compiler.imcode.*;
+
+/**
+ * Izracun operacij nad konstantami med prevajanjem.
+ * <p>
+ * Operations are evaluated exactly as the interpreter would evaluate them,
+ * in 32-bit integer arithmetic with logical results 1 and 0. Division and
+ * remainder by zero are left for the run time.
+ */
+public class OptConstFolding extends OptTreePass {
+
+	@Override
+	protected ImcExpr rewrite(ImcExpr expr) {
+		if (!(expr instanceof ImcBINOP))
+			return expr;
+		ImcBINOP binop = (ImcBINOP) expr;
+		if (!(binop.limc instanceof ImcCONST && binop.rimc instanceof ImcCONST))
+			return expr;
+		Integer value = fold(binop.op, ((ImcCONST) binop.limc).value,
+				((ImcCONST) binop.rimc).value);
+		if (value == null)
+			return expr;
+		changed = true;
+		return new ImcCONST(value);
+	}
+
+	/**
+	 * Izracuna binarno operacijo nad konstantama.
+	 *
+	 * @param op
+	 *            Operacija.
+	 * @param l
+	 *            Levi operand.
+	 * @param r
+	 *            Desni operand.
+	 * @return Vrednost ali null, ce operacije ni mogoce izracunati.
+	 */
+	public static Integer fold(int op, int l, int r) {
+		switch (op) {
+		case ImcBINOP.OR: return l != 0 || r != 0 ? 1 : 0;
+		case ImcBINOP.AND: return l != 0 && r != 0 ? 1 : 0;
+		case ImcBINOP.EQU: return l == r ? 1 : 0;
+		case ImcBINOP.NEQ: return l != r ? 1 : 0;
+		case ImcBINOP.LEQ: return l <= r ? 1 : 0;
+		case ImcBINOP.GEQ: return l >= r ? 1 : 0;
+		case ImcBINOP.LTH: return l < r ? 1 : 0;
+		case ImcBINOP.GTH: return l > r ? 1 : 0;
+		case ImcBINOP.ADD: return l + r;
+		case ImcBINOP.SUB: return l - r;
+		case ImcBINOP.MUL: return l * r;
+		case ImcBINOP.DIV: return r == 0 ? null : l / r;
+		case ImcBINOP.MOD: return r == 0 ? null : l % r;
+		case ImcBINOP.SHL: return l << r;
+		case ImcBINOP.SHR: return l >> r;
+		case ImcBINOP.BITAND: return l & r;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,104 @@
+package compiler.optimizer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+
+/**
+ * Sirjenje konstant skozi zacasne spremenljivke.
+ * <p>
+ * Temporaries of the generated code that are assigned exactly once, and
+ * with a constant, hold that constant wherever they are read. Their uses
+ * are replaced with the constant and the assignment is removed. The
+ * result temporary of the frame is kept, since its last assignment is the
+ * value the function returns.
+ */
+public class OptConstPropagation extends OptTreePass {
+
+	/** Stevilo prirejanj posameznim zacasnim spremenljivkam. */
+	private final HashMap<FrmTemp, Integer> defs = new HashMap<>();
+
+	/** Konstantne zacasne spremenljivke in njihove vrednosti. */
+	private final HashMap<FrmTemp, Integer> constants = new HashMap<>();
+
+	/** Prirejanja konstantnim zacasnim spremenljivkam. */
+	private final HashSet<ImcMOVE> moves = new HashSet<>();
+
+	@Override
+	public boolean optimize(ImcCodeChunk chunk) {
+		defs.clear();
+		constants.clear();
+		moves.clear();
+		count(chunk.imcode);
+		constants.remove(chunk.frame.RV);
+		constants.remove(chunk.frame.FP);
+		for (FrmTemp temp : defs.keySet())
+			if (defs.get(temp) > 1)
+				constants.remove(temp);
+		if (constants.isEmpty())
+			return false;
+		return super.optimize(chunk);
+	}
+
+	@Override
+	protected ImcStmt rewrite(ImcStmt stmt) {
+		if (stmt instanceof ImcMOVE && moves.contains(stmt)
+				&& constants.containsKey(((ImcTEMP) ((ImcMOVE) stmt).dst).temp)) {
+			changed = true;
+			return new ImcSEQ();
+		}
+		return stmt;
+	}
+
+	@Override
+	protected ImcExpr rewrite(ImcExpr expr) {
+		if (expr instanceof ImcTEMP) {
+			Integer value = constants.get(((ImcTEMP) expr).temp);
+			if (value != null) {
+				changed = true;
+				return new ImcCONST(value);
+			}
+		}
+		return expr;
+	}
+
+	/**
+	 * Presteje prirejanja zacasnim spremenljivkam.
+	 */
+	private void count(ImcCode code) {
+		if (code instanceof ImcSEQ) {
+			for (ImcStmt stmt : ((ImcSEQ) code).stmts)
+				count(stmt);
+		} else if (code instanceof ImcMOVE) {
+			ImcMOVE move = (ImcMOVE) code;
+			if (move.dst instanceof ImcTEMP) {
+				FrmTemp temp = ((ImcTEMP) move.dst).temp;
+				defs.merge(temp, 1, Integer::sum);
+				if (move.src instanceof ImcCONST) {
+					constants.put(temp, ((ImcCONST) move.src).value);
+					moves.add(move);
+				}
+			} else
+				count(move.dst);
+			count(move.src);
+		} else if (code instanceof ImcCJUMP) {
+			count(((ImcCJUMP) code).cond);
+		} else if (code instanceof ImcEXP) {
+			count(((ImcEXP) code).expr);
+		} else if (code instanceof ImcBINOP) {
+			count(((ImcBINOP) code).limc);
+			count(((ImcBINOP) code).rimc);
+		} else if (code instanceof ImcCALL) {
+			for (ImcExpr arg : ((ImcCALL) code).args)
+				count(arg);
+		} else if (code instanceof ImcMEM) {
+			count(((ImcMEM) code).expr);
+		} else if (code instanceof ImcESEQ) {
+			count(((ImcESEQ) code).stmt);
+			count(((ImcESEQ) code).expr);
+		}
+	}
+
+}
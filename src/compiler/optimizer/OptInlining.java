@@ -0,0 +1,337 @@
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+import compiler.frames.FrmFrame;
+import compiler.frames.FrmLabel;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+
+/**
+ * Vstavljanje klicev majhnih funkcij.
+ * <p>
+ * Functions are visited callees first, so the code that is inlined already
+ * contains the calls its function inlined itself. A call is replaced by the
+ * code of a function of at most {@link #MAX_SIZE} nodes that is not part of
+ * a recursive cycle and does not nest inlined code more than
+ * {@link #MAX_DEPTH} levels deep; functions that have grown beyond
+ * {@link #MAX_CALLER_SIZE} nodes inline no more calls.
+ * <p>
+ * The inlined code keeps addressing its frame relative to its frame
+ * pointer, which now points into a block appended to the locals of the
+ * caller. The static link and the arguments are stored where the call
+ * would have stored them, so outer variables are reached through the same
+ * chain of static links, and functions nested in the inlined one still get
+ * its frame pointer as their static link. If the inlined code accesses its
+ * frame only by loading and storing words at constant offsets, the words
+ * become temporaries instead. Temporaries and labels of the inlined code are
+ * renamed at every call.
+ */
+public class OptInlining extends OptTreePass {
+
+	/** Najvecje stevilo vozlisc funkcije, ki se vstavi. */
+	private static final int MAX_SIZE = 60;
+
+	/** Najvecja globina vgnezdenih vstavljanj. */
+	private static final int MAX_DEPTH = 3;
+
+	/** Najvecje stevilo vozlisc funkcije, v katero se se vstavlja. */
+	private static final int MAX_CALLER_SIZE = 2000;
+
+	/** Stevilo vstavljenih klicev. */
+	public int numInlined = 0;
+
+	/** Stevilo vstavljenih klicev, katerih klicni zapis je v zacasnih spremenljivkah. */
+	public int numPromoted = 0;
+
+	/** Funkcije po imenih oznak. */
+	private LinkedHashMap<String, ImcCodeChunk> functions;
+
+	/** Funkcije, ki so del rekurzivnega cikla. */
+	private HashSet<String> recursive;
+
+	/** Globine vgnezdenih vstavljanj po funkcijah. */
+	private HashMap<String, Integer> depths;
+
+	/** Funkcija, v katero se vstavlja. */
+	private ImcCodeChunk caller;
+
+	/** Velikost funkcije, v katero se vstavlja. */
+	private int callerSize;
+
+	/** Klici, ki se v kodi funkcije pojavijo natanko enkrat. */
+	private HashSet<ImcCALL> single;
+
+	/** Preimenovane zacasne spremenljivke vstavljene kode. */
+	private HashMap<FrmTemp, FrmTemp> temps;
+
+	/** Preimenovane oznake vstavljene kode. */
+	private HashMap<FrmLabel, FrmLabel> labels;
+
+	/** Zacasne spremenljivke besed klicnega zapisa po odmikih ali null. */
+	private HashMap<Integer, FrmTemp> words;
+
+	/** Kazalec FP vstavljene funkcije. */
+	private FrmTemp fp;
+
+	/** Kopiranje kode s preimenovanimi zacasnimi spremenljivkami in oznakami. */
+	private final ImcTree copier = new ImcTree() {
+		@Override
+		protected FrmTemp temp(FrmTemp temp) {
+			return OptInlining.this.temp(temp);
+		}
+
+		@Override
+		protected FrmLabel label(FrmLabel label) {
+			return OptInlining.this.label(label);
+		}
+
+		@Override
+		protected ImcExpr replace(ImcExpr expr) {
+			if (words == null || !(expr instanceof ImcMEM))
+				return null;
+			Integer offset = offset(((ImcMEM) expr).expr);
+			return offset == null ? null : new ImcTEMP(word(offset));
+		}
+	};
+
+	/**
+	 * Vstavi klice majhnih funkcij.
+	 *
+	 * @param chunks
+	 *            Fragmenti vmesne kode.
+	 */
+	public void inline(LinkedList<ImcChunk> chunks) {
+		functions = new LinkedHashMap<>();
+		for (ImcChunk chunk : chunks)
+			if (chunk instanceof ImcCodeChunk && ((ImcCodeChunk) chunk).imcode != null)
+				functions.put(((ImcCodeChunk) chunk).frame.label.name(), (ImcCodeChunk) chunk);
+		HashMap<String, ArrayList<String>> callees = new HashMap<>();
+		for (String name : functions.keySet()) {
+			ArrayList<String> called = new ArrayList<>();
+			calls(functions.get(name).imcode, called);
+			callees.put(name, called);
+		}
+
+		recursive = new HashSet<>();
+		depths = new HashMap<>();
+		for (ArrayList<String> component : components(callees)) {
+			String first = component.get(0);
+			if (component.size() > 1 || callees.get(first).contains(first))
+				recursive.addAll(component);
+			for (String name : component) {
+				caller = functions.get(name);
+				callerSize = Optimizer.size(caller.imcode);
+				depths.put(name, 0);
+				HashMap<ImcCALL, Integer> occurrences = new HashMap<>();
+				count(caller.imcode, occurrences);
+				single = new HashSet<>();
+				for (ImcCALL call : occurrences.keySet())
+					if (occurrences.get(call) == 1)
+						single.add(call);
+				optimize(caller);
+			}
+		}
+	}
+
+	/**
+	 * Doda imena funkcij, ki jih koda klice.
+	 */
+	private void calls(ImcCode code, ArrayList<String> called) {
+		if (code instanceof ImcCALL) {
+			String name = ((ImcCALL) code).label.name();
+			if (functions.containsKey(name) && !called.contains(name))
+				called.add(name);
+		}
+		for (ImcCode sub : ImcTree.children(code))
+			calls(sub, called);
+	}
+
+	/**
+	 * Presteje pojavitve klicev; koda si lahko deli poddrevesa.
+	 */
+	private static void count(ImcCode code, HashMap<ImcCALL, Integer> occurrences) {
+		if (code instanceof ImcCALL)
+			occurrences.put((ImcCALL) code, occurrences.getOrDefault(code, 0) + 1);
+		for (ImcCode sub : ImcTree.children(code))
+			count(sub, occurrences);
+	}
+
+	/**
+	 * Vrne krepko povezane komponente klicnega grafa (Tarjan), klicane
+	 * funkcije pred klicocimi.
+	 */
+	private ArrayList<ArrayList<String>> components(HashMap<String, ArrayList<String>> callees) {
+		ArrayList<ArrayList<String>> components = new ArrayList<>();
+		HashMap<String, Integer> index = new HashMap<>();
+		HashMap<String, Integer> lowlink = new HashMap<>();
+		HashSet<String> onStack = new HashSet<>();
+		ArrayList<String> stack = new ArrayList<>();
+
+		// iterative depth-first search, call chains can be long
+		ArrayList<String> path = new ArrayList<>();
+		ArrayList<Integer> next = new ArrayList<>();
+		for (String root : functions.keySet()) {
+			if (index.containsKey(root))
+				continue;
+			path.add(root);
+			next.add(0);
+			while (!path.isEmpty()) {
+				int top = path.size() - 1;
+				String name = path.get(top);
+				if (next.get(top) == 0 && !index.containsKey(name)) {
+					index.put(name, index.size());
+					lowlink.put(name, index.get(name));
+					stack.add(name);
+					onStack.add(name);
+				}
+				ArrayList<String> called = callees.get(name);
+				if (next.get(top) < called.size()) {
+					String callee = called.get(next.get(top));
+					next.set(top, next.get(top) + 1);
+					if (!index.containsKey(callee)) {
+						path.add(callee);
+						next.add(0);
+					} else if (onStack.contains(callee))
+						lowlink.put(name, Math.min(lowlink.get(name), index.get(callee)));
+					continue;
+				}
+				path.remove(top);
+				next.remove(top);
+				if (top > 0) {
+					String parent = path.get(top - 1);
+					lowlink.put(parent, Math.min(lowlink.get(parent), lowlink.get(name)));
+				}
+				if (lowlink.get(name).equals(index.get(name))) {
+					ArrayList<String> component = new ArrayList<>();
+					String member;
+					do {
+						member = stack.remove(stack.size() - 1);
+						onStack.remove(member);
+						component.add(member);
+					} while (!member.equals(name));
+					components.add(component);
+				}
+			}
+		}
+		return components;
+	}
+
+	@Override
+	protected ImcExpr rewrite(ImcExpr expr) {
+		if (!(expr instanceof ImcCALL) || !single.contains(expr))
+			return expr;
+		ImcCALL call = (ImcCALL) expr;
+		String name = call.label.name();
+		ImcCodeChunk callee = functions.get(name);
+		if (callee == null || callee == caller || recursive.contains(name)
+				|| depths.get(name) >= MAX_DEPTH || !(callee.imcode instanceof ImcSEQ))
+			return expr;
+		ImcSEQ code = (ImcSEQ) callee.imcode;
+		if (code.stmts.isEmpty() || !returns(code.stmts.getLast(), callee.frame))
+			return expr;
+		int size = Optimizer.size(code);
+		if (size > MAX_SIZE || callerSize > MAX_CALLER_SIZE)
+			return expr;
+
+		callerSize += size;
+		String callerName = caller.frame.label.name();
+		depths.put(callerName, Math.max(depths.get(callerName), depths.get(name) + 1));
+		numInlined++;
+		changed = true;
+		return inline(call, callee);
+	}
+
+	/**
+	 * Ali stavek shrani rezultat funkcije.
+	 */
+	private static boolean returns(ImcStmt stmt, FrmFrame frame) {
+		return stmt instanceof ImcMOVE && ((ImcMOVE) stmt).dst instanceof ImcTEMP
+				&& ((ImcTEMP) ((ImcMOVE) stmt).dst).temp == frame.RV;
+	}
+
+	private ImcExpr inline(ImcCALL call, ImcCodeChunk callee) {
+		FrmFrame frame = callee.frame;
+		FrmFrame callerFrame = caller.frame;
+		temps = new HashMap<>();
+		labels = new HashMap<>();
+		words = null;
+		fp = frame.FP;
+
+		ImcSEQ code = new ImcSEQ();
+		if (words(callee.imcode)) {
+			words = new HashMap<>();
+			for (int arg = 0; arg < call.args.size(); arg++)
+				code.stmts.add(new ImcMOVE(new ImcTEMP(word(4 * arg)), call.args.get(arg)));
+			numPromoted++;
+		} else {
+			int sizePars = Math.max(frame.sizePars, 4 * call.args.size());
+			code.stmts.add(new ImcMOVE(new ImcTEMP(temp(fp)), new ImcBINOP(ImcBINOP.SUB,
+					new ImcTEMP(callerFrame.FP), new ImcCONST(callerFrame.sizeLocs + sizePars))));
+			callerFrame.sizeLocs += sizePars + frame.sizeLocs;
+			for (int arg = 0; arg < call.args.size(); arg++)
+				code.stmts.add(new ImcMOVE(new ImcMEM(new ImcBINOP(ImcBINOP.ADD,
+						new ImcTEMP(temp(fp)), new ImcCONST(4 * arg))), call.args.get(arg)));
+		}
+		// calls of the inlined code pass arguments from the frame of the caller
+		callerFrame.sizeArgs = Math.max(callerFrame.sizeArgs, frame.sizeArgs);
+		code.stmts.add(copier.copy(callee.imcode));
+		return new ImcESEQ(code, new ImcTEMP(temp(frame.RV)));
+	}
+
+	/**
+	 * Ali koda dostopa do klicnega zapisa le z branji in pisanji besed na
+	 * konstantnih odmikih.
+	 */
+	private boolean words(ImcCode code) {
+		if (code instanceof ImcTEMP)
+			return ((ImcTEMP) code).temp != fp;
+		if (code instanceof ImcMEM && offset(((ImcMEM) code).expr) != null)
+			return true;
+		for (ImcCode sub : ImcTree.children(code))
+			if (!words(sub))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Vrne odmik naslova od kazalca FP vstavljene funkcije ali null.
+	 */
+	private Integer offset(ImcExpr addr) {
+		if (addr instanceof ImcTEMP && ((ImcTEMP) addr).temp == fp)
+			return 0;
+		if (!(addr instanceof ImcBINOP) || ((ImcBINOP) addr).op != ImcBINOP.ADD)
+			return null;
+		ImcBINOP binop = (ImcBINOP) addr;
+		if (binop.limc instanceof ImcTEMP && ((ImcTEMP) binop.limc).temp == fp
+				&& binop.rimc instanceof ImcCONST)
+			return ((ImcCONST) binop.rimc).value;
+		if (binop.rimc instanceof ImcTEMP && ((ImcTEMP) binop.rimc).temp == fp
+				&& binop.limc instanceof ImcCONST)
+			return ((ImcCONST) binop.limc).value;
+		return null;
+	}
+
+	private FrmTemp word(int offset) {
+		if (!words.containsKey(offset))
+			words.put(offset, new FrmTemp());
+		return words.get(offset);
+	}
+
+	private FrmTemp temp(FrmTemp temp) {
+		if (!temps.containsKey(temp))
+			temps.put(temp, new FrmTemp());
+		return temps.get(temp);
+	}
+
+	private FrmLabel label(FrmLabel label) {
+		if (!labels.containsKey(label))
+			labels.put(label, FrmLabel.newLabel());
+		return labels.get(label);
+	}
+
+}
@@ -0,0 +1,19 @@
+package compiler.optimizer;
+
+import compiler.imcode.ImcCodeChunk;
+
+/**
+ * Optimizacija vmesne kode ene funkcije.
+ */
+public interface OptPass {
+
+	/**
+	 * Optimizira vmesno kodo funkcije.
+	 *
+	 * @param chunk
+	 *            Fragment kode.
+	 * @return Ali se je koda spremenila.
+	 */
+	public boolean optimize(ImcCodeChunk chunk);
+
+}
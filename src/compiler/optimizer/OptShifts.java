@@ -0,0 +1,97 @@
+package compiler.optimizer;
+
+import compiler.imcode.*;
+
+/**
+ * Zamenjava mnozenj in deljenj s potencami stevila 2 s pomiki.
+ * <p>
+ * Multiplication by a power of two becomes a left shift. Division and
+ * remainder by a power of two become a right shift and a bitwise and only
+ * if the dividend cannot be negative, as both round negative dividends
+ * differently than the shift does. The pass runs on linearized code after
+ * all other optimizations, which recognize address arithmetic and induction
+ * variables by their multiplications.
+ */
+public class OptShifts extends OptTreePass {
+
+	/** Stevilo zamenjanih operacij. */
+	public int numShifts = 0;
+
+	/**
+	 * Zamenja operacije v linearizirani kodi funkcije.
+	 *
+	 * @param chunk
+	 *            Linearizirana funkcija.
+	 */
+	public void reduce(ImcCodeChunk chunk) {
+		chunk.lincode = stmt(chunk.lincode);
+	}
+
+	@Override
+	protected ImcExpr rewrite(ImcExpr expr) {
+		if (!(expr instanceof ImcBINOP))
+			return expr;
+		ImcBINOP binop = (ImcBINOP) expr;
+		if (binop.op == ImcBINOP.MUL && binop.limc instanceof ImcCONST) {
+			ImcExpr limc = binop.limc;
+			binop.limc = binop.rimc;
+			binop.rimc = limc;
+		}
+		int shift = binop.rimc instanceof ImcCONST ? log2(((ImcCONST) binop.rimc).value) : -1;
+		if (shift <= 0)
+			return expr;
+		switch (binop.op) {
+		case ImcBINOP.MUL:
+			numShifts++;
+			return new ImcBINOP(ImcBINOP.SHL, binop.limc, new ImcCONST(shift));
+		case ImcBINOP.DIV:
+			if (!nonNegative(binop.limc))
+				break;
+			numShifts++;
+			return new ImcBINOP(ImcBINOP.SHR, binop.limc, new ImcCONST(shift));
+		case ImcBINOP.MOD:
+			if (!nonNegative(binop.limc))
+				break;
+			numShifts++;
+			return new ImcBINOP(ImcBINOP.BITAND, binop.limc, new ImcCONST((1 << shift) - 1));
+		}
+		return expr;
+	}
+
+	/**
+	 * Vrne eksponent potence stevila 2 ali -1.
+	 */
+	private static int log2(int value) {
+		return value > 0 && (value & (value - 1)) == 0 ? Integer.numberOfTrailingZeros(value) : -1;
+	}
+
+	/**
+	 * Ali vrednost izraza zagotovo ni negativna.
+	 */
+	private static boolean nonNegative(ImcExpr expr) {
+		if (expr instanceof ImcCONST)
+			return ((ImcCONST) expr).value >= 0;
+		if (!(expr instanceof ImcBINOP))
+			return false;
+		ImcBINOP binop = (ImcBINOP) expr;
+		switch (binop.op) {
+		case ImcBINOP.OR:
+		case ImcBINOP.AND:
+		case ImcBINOP.EQU:
+		case ImcBINOP.NEQ:
+		case ImcBINOP.LEQ:
+		case ImcBINOP.GEQ:
+		case ImcBINOP.LTH:
+		case ImcBINOP.GTH:
+			return true;
+		case ImcBINOP.BITAND:
+			return nonNegative(binop.limc) || nonNegative(binop.rimc);
+		case ImcBINOP.SHR:
+		case ImcBINOP.DIV:
+			return nonNegative(binop.limc) && binop.rimc instanceof ImcCONST
+					&& ((ImcCONST) binop.rimc).value > 0;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,127 @@
+package compiler.optimizer;
+
+import java.util.ListIterator;
+
+import compiler.imcode.*;
+
+/**
+ * Optimizacija, ki drevesa vmesne kode preoblikuje od listov proti korenu.
+ * <p>
+ * Children are rewritten first and stored back into their parent, then the
+ * parent itself is offered to {@link #rewrite(ImcExpr)} or
+ * {@link #rewrite(ImcStmt)}. The destination temporary of a move is not an
+ * use and is never offered for rewriting. Empty sequences left behind by a
+ * rewrite are dropped from the enclosing sequence.
+ */
+public abstract class OptTreePass implements OptPass {
+
+	/** Ali se je koda spremenila. */
+	protected boolean changed;
+
+	@Override
+	public boolean optimize(ImcCodeChunk chunk) {
+		changed = false;
+		chunk.imcode = stmt(chunk.imcode);
+		return changed;
+	}
+
+	/**
+	 * Preoblikuje stavek in njegove podstavke.
+	 */
+	protected ImcStmt stmt(ImcStmt stmt) {
+		if (stmt instanceof ImcSEQ) {
+			ListIterator<ImcStmt> stmts = ((ImcSEQ) stmt).stmts.listIterator();
+			while (stmts.hasNext()) {
+				ImcStmt sub = stmt(stmts.next());
+				if (sub instanceof ImcSEQ && ((ImcSEQ) sub).stmts.isEmpty())
+					stmts.remove();
+				else
+					stmts.set(sub);
+			}
+		} else if (stmt instanceof ImcMOVE) {
+			ImcMOVE move = (ImcMOVE) stmt;
+			if (move.dst instanceof ImcMEM)
+				((ImcMEM) move.dst).expr = expr(((ImcMEM) move.dst).expr);
+			else if (!(move.dst instanceof ImcTEMP))
+				move.dst = expr(move.dst);
+			move.src = expr(move.src);
+		} else if (stmt instanceof ImcCJUMP) {
+			((ImcCJUMP) stmt).cond = expr(((ImcCJUMP) stmt).cond);
+		} else if (stmt instanceof ImcEXP) {
+			((ImcEXP) stmt).expr = expr(((ImcEXP) stmt).expr);
+		}
+		return rewrite(stmt);
+	}
+
+	/**
+	 * Preoblikuje izraz in njegove podizraze.
+	 */
+	protected ImcExpr expr(ImcExpr expr) {
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			binop.limc = expr(binop.limc);
+			binop.rimc = expr(binop.rimc);
+		} else if (expr instanceof ImcCALL) {
+			ListIterator<ImcExpr> args = ((ImcCALL) expr).args.listIterator();
+			while (args.hasNext())
+				args.set(expr(args.next()));
+		} else if (expr instanceof ImcMEM) {
+			((ImcMEM) expr).expr = expr(((ImcMEM) expr).expr);
+		} else if (expr instanceof ImcESEQ) {
+			ImcESEQ eseq = (ImcESEQ) expr;
+			eseq.stmt = stmt(eseq.stmt);
+			eseq.expr = expr(eseq.expr);
+		}
+		return rewrite(expr);
+	}
+
+	/**
+	 * Preoblikuje stavek, katerega podstavki in podizrazi so ze preoblikovani.
+	 *
+	 * @param stmt
+	 *            Stavek.
+	 * @return Nov ali isti stavek.
+	 */
+	protected ImcStmt rewrite(ImcStmt stmt) {
+		return stmt;
+	}
+
+	/**
+	 * Preoblikuje izraz, katerega podizrazi so ze preoblikovani.
+	 *
+	 * @param expr
+	 *            Izraz.
+	 * @return Nov ali isti izraz.
+	 */
+	protected ImcExpr rewrite(ImcExpr expr) {
+		return expr;
+	}
+
+	/**
+	 * Ali je izraz brez stranskih ucinkov, tako da ga je mogoce izpustiti.
+	 */
+	public static boolean pure(ImcExpr expr) {
+		if (expr instanceof ImcCONST || expr instanceof ImcTEMP
+				|| expr instanceof ImcNAME)
+			return true;
+		if (expr instanceof ImcMEM)
+			return pure(((ImcMEM) expr).expr);
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			// division by zero stops the program
+			if ((binop.op == ImcBINOP.DIV || binop.op == ImcBINOP.MOD)
+					&& !(binop.rimc instanceof ImcCONST && ((ImcCONST) binop.rimc).value != 0))
+				return false;
+			return pure(binop.limc) && pure(binop.rimc);
+		}
+		return false;
+	}
+
+	/**
+	 * Ali je izraz konstanta z dano vrednostjo.
+	 */
+	protected static boolean isConst(ImcExpr expr, int value) {
+		return expr instanceof ImcCONST && ((ImcCONST) expr).value == value;
+	}
+
+}
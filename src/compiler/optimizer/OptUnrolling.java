@@ -0,0 +1,300 @@
+package compiler.optimizer;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import compiler.frames.FrmLabel;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+
+/**
+ * Odvijanje zank for s konstantnim stevilom ponovitev.
+ * <p>
+ * The code of a {@code for} loop whose bounds and step have been folded to
+ * constants runs a known number of times. A loop of at most
+ * {@link #MAX_TRIPS} iterations whose copies fit into {@link #MAX_SIZE}
+ * nodes is unrolled fully: each copy of the body reads the counter as a
+ * constant, and the counter gets its final value after the last one. A
+ * larger loop whose body fits {@link Optimizer#unrollFactor} times into the
+ * same size runs that many copies per iteration, and the iterations that do
+ * not fill a whole round follow the loop unrolled fully. The counter is
+ * still stored before each copy, as the body may read it through another
+ * address; stores nobody reads are removed after linearization. The
+ * decision is noted on the sequence of the loop, so it shows in the dump of
+ * optimized code.
+ * <p>
+ * Either way the body must not change the counter. A temporary counter is
+ * safe if the body does not assign it. A counter in the frame is safe if
+ * the frame pointer is used only to load from and store to words of the
+ * frame, so no other code can reach them, and the body does not store to
+ * it. A global counter is safe in a body without calls that stores only to
+ * the stack and to other global variables.
+ */
+public class OptUnrolling extends OptTreePass {
+
+	/** Najvecje stevilo ponovitev zanke, ki se odvije v celoti. */
+	private static final int MAX_TRIPS = 16;
+
+	/** Najvecje stevilo vozlisc kopij telesa odvite zanke. */
+	private static final int MAX_SIZE = 300;
+
+	/** Stevilo v celoti odvitih zank. */
+	public int numFull = 0;
+
+	/** Stevilo delno odvitih zank. */
+	public int numPartial = 0;
+
+	/** Funkcija, katere zanke se odvijajo. */
+	private ImcCodeChunk chunk;
+
+	/** Imena oznak zank, o katerih je ze odloceno. */
+	private final HashSet<String> decided = new HashSet<>();
+
+	/** Nove oznake kopije telesa po imenih oznak telesa. */
+	private HashMap<String, FrmLabel> labels;
+
+	@Override
+	public boolean optimize(ImcCodeChunk chunk) {
+		this.chunk = chunk;
+		return super.optimize(chunk);
+	}
+
+	@Override
+	protected ImcStmt rewrite(ImcStmt stmt) {
+		if (!(stmt instanceof ImcSEQ) || ((ImcSEQ) stmt).stmts.size() < 7)
+			return stmt;
+		// MOVE(i, lo) l1: CJUMP(i < hi, l2, l3) l2: body MOVE(i, i + step) JUMP(l1) l3:
+		LinkedList<ImcStmt> stmts = ((ImcSEQ) stmt).stmts;
+		int size = stmts.size();
+		if (!(stmts.get(0) instanceof ImcMOVE) || !(stmts.get(1) instanceof ImcLABEL)
+				|| !(stmts.get(2) instanceof ImcCJUMP) || !(stmts.get(3) instanceof ImcLABEL)
+				|| !(stmts.get(size - 3) instanceof ImcMOVE) || !(stmts.get(size - 2) instanceof ImcJUMP)
+				|| !(stmts.get(size - 1) instanceof ImcLABEL))
+			return stmt;
+		ImcMOVE init = (ImcMOVE) stmts.get(0);
+		FrmLabel l1 = ((ImcLABEL) stmts.get(1)).label;
+		ImcCJUMP test = (ImcCJUMP) stmts.get(2);
+		FrmLabel l2 = ((ImcLABEL) stmts.get(3)).label;
+		ImcMOVE next = (ImcMOVE) stmts.get(size - 3);
+		FrmLabel l3 = ((ImcLABEL) stmts.get(size - 1)).label;
+		if (decided.contains(l1.name()) || !((ImcJUMP) stmts.get(size - 2)).label.equals(l1)
+				|| !test.trueLabel.equals(l2) || !test.falseLabel.equals(l3))
+			return stmt;
+		ImcExpr count = init.dst;
+		if (!(test.cond instanceof ImcBINOP) || ((ImcBINOP) test.cond).op != ImcBINOP.LTH
+				|| !ImcTree.same(((ImcBINOP) test.cond).limc, count) || !ImcTree.same(next.dst, count)
+				|| !(next.src instanceof ImcBINOP) || ((ImcBINOP) next.src).op != ImcBINOP.ADD
+				|| !ImcTree.same(((ImcBINOP) next.src).limc, count))
+			return stmt;
+		if (!(init.src instanceof ImcCONST) || !(((ImcBINOP) test.cond).rimc instanceof ImcCONST)
+				|| !(((ImcBINOP) next.src).rimc instanceof ImcCONST))
+			return stmt;
+		long lo = ((ImcCONST) init.src).value;
+		long hi = ((ImcCONST) ((ImcBINOP) test.cond).rimc).value;
+		long step = ((ImcCONST) ((ImcBINOP) next.src).rimc).value;
+		if (step <= 0)
+			return stmt;
+		long trips = lo < hi ? (hi - lo + step - 1) / step : 0;
+		if (lo + trips * step > Integer.MAX_VALUE)
+			return stmt;
+
+		ImcSEQ body = new ImcSEQ();
+		body.stmts.addAll(stmts.subList(4, size - 3));
+		if (!invariant(count, body))
+			return stmt;
+		decided.add(l1.name());
+
+		int bodySize = Optimizer.size(body);
+		ImcSEQ unrolled = new ImcSEQ();
+		if (trips <= MAX_TRIPS && trips * bodySize <= MAX_SIZE) {
+			for (int trip = 0; trip < trips; trip++)
+				trip(unrolled, body, count, (int) (lo + trip * step));
+			unrolled.note = "unrolled=full,trips=" + trips;
+			numFull++;
+		} else if (Optimizer.unrollFactor > 1 && Optimizer.unrollFactor * bodySize <= MAX_SIZE) {
+			int factor = Optimizer.unrollFactor;
+			long rounds = trips / factor;
+			long limit = lo + rounds * factor * step;
+			if (rounds > 0) {
+				unrolled.stmts.add(new ImcMOVE(ImcTree.copyOf(count), new ImcCONST((int) lo)));
+				unrolled.stmts.add(new ImcLABEL(l1));
+				unrolled.stmts.add(new ImcCJUMP(new ImcBINOP(ImcBINOP.LTH, ImcTree.copyOf(count),
+						new ImcCONST((int) limit)), l2, l3));
+				unrolled.stmts.add(new ImcLABEL(l2));
+				for (int copy = 0; copy < factor; copy++) {
+					unrolled.stmts.add(copy(body, count, count));
+					unrolled.stmts.add(new ImcMOVE(ImcTree.copyOf(count), new ImcBINOP(ImcBINOP.ADD,
+							ImcTree.copyOf(count), new ImcCONST((int) step))));
+				}
+				unrolled.stmts.add(new ImcJUMP(l1));
+				unrolled.stmts.add(new ImcLABEL(l3));
+			}
+			for (long trip = rounds * factor; trip < trips; trip++)
+				trip(unrolled, body, count, (int) (lo + trip * step));
+			unrolled.note = "unrolled=" + factor + ",trips=" + trips + ",remainder=" + (trips - rounds * factor);
+			numPartial++;
+		} else {
+			((ImcSEQ) stmt).note = "unrolled=no,trips=" + trips;
+			return stmt;
+		}
+		unrolled.stmts.add(new ImcMOVE(ImcTree.copyOf(count), new ImcCONST((int) (lo + trips * step))));
+		changed = true;
+		return unrolled;
+	}
+
+	/**
+	 * Doda ponovitev, ki stevcu priredi dano vrednost in jo bere kot
+	 * konstanto.
+	 */
+	private void trip(ImcSEQ unrolled, ImcSEQ body, ImcExpr count, int value) {
+		unrolled.stmts.add(new ImcMOVE(ImcTree.copyOf(count), new ImcCONST(value)));
+		unrolled.stmts.add(copy(body, count, new ImcCONST(value)));
+	}
+
+	/**
+	 * Ali telo zanke zagotovo ne spremeni stevca.
+	 */
+	private boolean invariant(ImcExpr count, ImcSEQ body) {
+		if (count instanceof ImcTEMP)
+			return !assigns(body, ((ImcTEMP) count).temp);
+		if (!(count instanceof ImcMEM))
+			return false;
+		ImcExpr addr = ((ImcMEM) count).expr;
+		if (frameWord(addr))
+			return !escapes(chunk.imcode) && !stores(body, addr);
+		if (global(addr))
+			return !calls(body) && storesApart(body, addr);
+		return false;
+	}
+
+	/**
+	 * Ali je naslov beseda klicnega zapisa funkcije.
+	 */
+	private boolean frameWord(ImcExpr addr) {
+		if (!(addr instanceof ImcBINOP) || ((ImcBINOP) addr).op != ImcBINOP.ADD)
+			return false;
+		ImcBINOP binop = (ImcBINOP) addr;
+		return binop.limc instanceof ImcTEMP && ((ImcTEMP) binop.limc).temp == chunk.frame.FP
+				&& binop.rimc instanceof ImcCONST;
+	}
+
+	/**
+	 * Ali je naslov globalna spremenljivka.
+	 */
+	private static boolean global(ImcExpr addr) {
+		if (addr instanceof ImcNAME)
+			return true;
+		return addr instanceof ImcBINOP && ((ImcBINOP) addr).op == ImcBINOP.ADD
+				&& ((ImcBINOP) addr).limc instanceof ImcNAME && ((ImcBINOP) addr).rimc instanceof ImcCONST;
+	}
+
+	/**
+	 * Ali je naslov na skladu: beseda tega klicnega zapisa ali klicnega
+	 * zapisa, dosegljivega po verigi staticnih povezav.
+	 */
+	private boolean stack(ImcExpr addr) {
+		if (addr instanceof ImcBINOP && ((ImcBINOP) addr).op == ImcBINOP.ADD
+				&& ((ImcBINOP) addr).rimc instanceof ImcCONST)
+			addr = ((ImcBINOP) addr).limc;
+		while (addr instanceof ImcMEM)
+			addr = ((ImcMEM) addr).expr;
+		return addr instanceof ImcTEMP && ((ImcTEMP) addr).temp == chunk.frame.FP;
+	}
+
+	/**
+	 * Ali koda uporabi kazalec na klicni zapis drugace kot za branje ali
+	 * pisanje njegove besede, na primer kot staticno povezavo ali v kodi
+	 * vstavljene gnezdene funkcije.
+	 */
+	private boolean escapes(ImcCode code) {
+		if (code instanceof ImcTEMP)
+			return ((ImcTEMP) code).temp == chunk.frame.FP;
+		if (code instanceof ImcMEM && frameWord(((ImcMEM) code).expr))
+			return false;
+		for (ImcCode sub : ImcTree.children(code))
+			if (escapes(sub))
+				return true;
+		return false;
+	}
+
+	private static boolean assigns(ImcCode code, FrmTemp temp) {
+		if (code instanceof ImcMOVE && ((ImcMOVE) code).dst instanceof ImcTEMP
+				&& ((ImcTEMP) ((ImcMOVE) code).dst).temp == temp)
+			return true;
+		for (ImcCode sub : ImcTree.children(code))
+			if (assigns(sub, temp))
+				return true;
+		return false;
+	}
+
+	private static boolean stores(ImcCode code, ImcExpr addr) {
+		if (code instanceof ImcMOVE && ((ImcMOVE) code).dst instanceof ImcMEM
+				&& ImcTree.same(((ImcMEM) ((ImcMOVE) code).dst).expr, addr))
+			return true;
+		for (ImcCode sub : ImcTree.children(code))
+			if (stores(sub, addr))
+				return true;
+		return false;
+	}
+
+	private static boolean calls(ImcCode code) {
+		if (code instanceof ImcCALL)
+			return true;
+		for (ImcCode sub : ImcTree.children(code))
+			if (calls(sub))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Ali koda shranjuje le na sklad in v druge globalne spremenljivke.
+	 */
+	private boolean storesApart(ImcCode code, ImcExpr addr) {
+		if (code instanceof ImcMOVE && ((ImcMOVE) code).dst instanceof ImcMEM) {
+			ImcExpr dst = ((ImcMEM) ((ImcMOVE) code).dst).expr;
+			if (!stack(dst) && !(global(dst) && !ImcTree.same(dst, addr)))
+				return false;
+		}
+		for (ImcCode sub : ImcTree.children(code))
+			if (!storesApart(sub, addr))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Vrne kopijo telesa, ki namesto stevca bere dano vrednost; oznake
+	 * telesa so preimenovane.
+	 */
+	private ImcStmt copy(ImcSEQ body, ImcExpr count, ImcExpr value) {
+		labels = new HashMap<>();
+		rename(body);
+		return new ImcTree() {
+			@Override
+			protected FrmLabel label(FrmLabel label) {
+				return labels.getOrDefault(label.name(), label);
+			}
+
+			@Override
+			protected ImcExpr replace(ImcExpr expr) {
+				return ImcTree.same(expr, count) ? ImcTree.copyOf(value) : null;
+			}
+		}.copy(body);
+	}
+
+	/**
+	 * Doloci nova imena oznak, ki jih koda definira; zanke, o katerih je ze
+	 * odloceno, ostanejo odlocene tudi v kopiji.
+	 */
+	private void rename(ImcCode code) {
+		if (code instanceof ImcLABEL) {
+			FrmLabel label = FrmLabel.newLabel();
+			labels.put(((ImcLABEL) code).label.name(), label);
+			if (decided.contains(((ImcLABEL) code).label.name()))
+				decided.add(label.name());
+		}
+		for (ImcCode sub : ImcTree.children(code))
+			rename(sub);
+	}
+
+}
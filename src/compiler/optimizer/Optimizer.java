@@ -0,0 +1,220 @@
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+import compiler.cfg.*;
+import compiler.imcode.*;
+import compiler.ssa.*;
+
+/**
+ * Izvajanje optimizacij vmesne kode.
+ * <p>
+ * The optimizer runs on the code chunks produced by {@link ImcCodeGen},
+ * before they are linearized. Level 1 folds constants and applies algebraic
+ * identities; level 2 first inlines calls of small functions, also
+ * propagates constants through temporaries and unrolls {@code for} loops
+ * with constant bounds. The passes of a level are
+ * repeated on each function until none of them changes its code. From level 1 on, the control flow of linearized code is
+ * simplified as well; level 2 then converts it to SSA form to propagate
+ * constants along executable paths, reuse computed values and remove dead
+ * statements, and afterwards moves invariant computations out of loops and
+ * replaces multiplications of induction variables with additions. The
+ * remaining multiplications by powers of two finally become shifts.
+ */
+public class Optimizer {
+
+	/** Nivo optimizacije: 0, 1 ali 2. */
+	public static int level = 0;
+
+	/** Stevilo kopij telesa delno odvite zanke; 1 izklopi delno odvijanje. */
+	public static int unrollFactor = 4;
+
+	/** Najvecje stevilo ponovitev optimizacij na eni funkciji. */
+	private static final int MAX_ROUNDS = 8;
+
+	/** Stevilo vozlisc vmesne kode pred optimizacijo. */
+	private static int numNodesBefore = 0;
+
+	/** Stevilo vozlisc vmesne kode po optimizaciji. */
+	private static int numNodesAfter = 0;
+
+	/**
+	 * Optimizira fragmente kode, ki se niso linearizirani.
+	 *
+	 * @param chunks
+	 *            Fragmenti vmesne kode.
+	 */
+	public static void optimize(LinkedList<ImcChunk> chunks) {
+		if (level == 0)
+			return;
+		ArrayList<OptPass> passes = passes();
+		for (ImcChunk chunk : chunks)
+			if (chunk instanceof ImcCodeChunk && ((ImcCodeChunk) chunk).imcode != null)
+				numNodesBefore += size(((ImcCodeChunk) chunk).imcode);
+		if (level >= 2)
+			inlining.inline(chunks);
+		for (ImcChunk chunk : chunks) {
+			if (!(chunk instanceof ImcCodeChunk)
+					|| ((ImcCodeChunk) chunk).imcode == null)
+				continue;
+			ImcCodeChunk fn = (ImcCodeChunk) chunk;
+			for (int round = 0; round < MAX_ROUNDS; round++) {
+				boolean changed = false;
+				for (OptPass pass : passes)
+					changed |= pass.optimize(fn);
+				if (!changed)
+					break;
+			}
+			numNodesAfter += size(fn.imcode);
+		}
+	}
+
+	/** Odvijanje zank for. */
+	private static final OptUnrolling unrolling = new OptUnrolling();
+
+	/** Vstavljanje klicev majhnih funkcij. */
+	private static final OptInlining inlining = new OptInlining();
+
+	/** Poenostavljanje grafa pretoka linearizirane kode. */
+	private static final CfgSimplifier simplifier = new CfgSimplifier();
+
+	/** Sirjenje konstant v obliki SSA. */
+	private static final SsaConstPropagation constPropagation = new SsaConstPropagation();
+
+	/** Stevilcenje vrednosti v obliki SSA. */
+	private static final SsaValueNumbering valueNumbering = new SsaValueNumbering();
+
+	/** Odstranjevanje mrtve kode v obliki SSA. */
+	private static final SsaDeadCode deadCode = new SsaDeadCode();
+
+	/** Odstranjevanje odvecnih premikov. */
+	private static final CfgMoveElimination moveElimination = new CfgMoveElimination();
+
+	/** Optimizacija zank. */
+	private static final CfgLoopOptimizer loopOptimizer = new CfgLoopOptimizer();
+
+	/** Zamenjava mnozenj in deljenj s pomiki. */
+	private static final OptShifts shifts = new OptShifts();
+
+	/** Stevilo postavljenih funkcij phi. */
+	private static int numPhis = 0;
+
+	/**
+	 * Poenostavi pretok linearizirane kode funkcije.
+	 *
+	 * @param chunk
+	 *            Linearizirana funkcija.
+	 */
+	public static void optimizeLinear(ImcCodeChunk chunk) {
+		if (level == 0)
+			return;
+		CfgGraph graph = new CfgGraph((ImcSEQ) chunk.lincode);
+		simplifier.simplify(graph);
+		if (level >= 2) {
+			SsaForm ssa = new SsaForm(graph);
+			numPhis += ssa.numPhis;
+			constPropagation.propagate(ssa);
+			valueNumbering.number(ssa);
+			deadCode.eliminate(ssa);
+			ssa.destruct();
+		}
+		moveElimination.eliminate(graph, chunk.frame.label.name());
+		if (level >= 2 && loopOptimizer.optimize(graph, chunk.frame))
+			moveElimination.eliminate(graph, chunk.frame.label.name());
+		simplifier.simplify(graph);
+		chunk.lincode = graph.linear();
+		shifts.reduce(chunk);
+	}
+
+	private static ArrayList<OptPass> passes() {
+		ArrayList<OptPass> passes = new ArrayList<>();
+		if (level >= 2)
+			passes.add(new OptConstPropagation());
+		passes.add(new OptConstFolding());
+		passes.add(new OptAlgebraic());
+		if (level >= 2)
+			passes.add(unrolling);
+		return passes;
+	}
+
+	public static int numNodesBefore() {
+		return numNodesBefore;
+	}
+
+	public static int numNodesAfter() {
+		return numNodesAfter;
+	}
+
+	public static OptInlining inlining() {
+		return inlining;
+	}
+
+	public static OptUnrolling unrolling() {
+		return unrolling;
+	}
+
+	public static OptShifts shifts() {
+		return shifts;
+	}
+
+	public static CfgSimplifier simplifier() {
+		return simplifier;
+	}
+
+	public static SsaConstPropagation constPropagation() {
+		return constPropagation;
+	}
+
+	public static SsaValueNumbering valueNumbering() {
+		return valueNumbering;
+	}
+
+	public static SsaDeadCode deadCode() {
+		return deadCode;
+	}
+
+	public static CfgLoopOptimizer loopOptimizer() {
+		return loopOptimizer;
+	}
+
+	public static CfgMoveElimination moveElimination() {
+		return moveElimination;
+	}
+
+	public static int numPhis() {
+		return numPhis;
+	}
+
+	/**
+	 * Presteje vozlisca vmesne kode.
+	 *
+	 * @param code
+	 *            Vmesna koda.
+	 * @return Stevilo vozlisc.
+	 */
+	public static int size(ImcCode code) {
+		int size = 1;
+		if (code instanceof ImcSEQ) {
+			for (ImcStmt stmt : ((ImcSEQ) code).stmts)
+				size += size(stmt);
+		} else if (code instanceof ImcMOVE) {
+			size += size(((ImcMOVE) code).dst) + size(((ImcMOVE) code).src);
+		} else if (code instanceof ImcCJUMP) {
+			size += size(((ImcCJUMP) code).cond);
+		} else if (code instanceof ImcEXP) {
+			size += size(((ImcEXP) code).expr);
+		} else if (code instanceof ImcBINOP) {
+			size += size(((ImcBINOP) code).limc) + size(((ImcBINOP) code).rimc);
+		} else if (code instanceof ImcCALL) {
+			for (ImcExpr arg : ((ImcCALL) code).args)
+				size += size(arg);
+		} else if (code instanceof ImcMEM) {
+			size += size(((ImcMEM) code).expr);
+		} else if (code instanceof ImcESEQ) {
+			size += size(((ImcESEQ) code).stmt) + size(((ImcESEQ) code).expr);
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Optimizacija vmesne kode.
+ */
+package compiler.optimizer;
@@ -0,0 +1,613 @@
+package compiler.seman;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import compiler.abstr.*;
+import compiler.abstr.tree.*;
+import compiler.frames.*;
+import compiler.imcode.*;
+import compiler.lexan.LexAn;
+import compiler.seman.type.*;
+import compiler.synan.SynAn;
+
+/**
+ * Vmesnik uvozenega modula.
+ * <p>
+ * The interface of a module file holds the types of its type definitions,
+ * global variables and functions together with the linear code and data of
+ * the whole module. It is written next to the module source on the first
+ * import and is valid as long as both the hash of the source it was built
+ * from and the version of the compiler that built it match. An importer then
+ * declares the definitions of the module without lexing, parsing or checking
+ * its source and links the chunks reachable from the definitions it uses.
+ * <p>
+ * Modules that import other modules are not summarized and are imported
+ * from source.
+ */
+public class ModuleInterface {
+
+	/** Ali se uvozeni moduli nalagajo iz vmesnikov. */
+	public static boolean enabled = false;
+
+	/** Glava datoteke z vmesnikom. */
+	private static final String MAGIC = "PINSI";
+
+	/**
+	 * Razlicica zapisa in generirane kode v vmesniku. Poveca se ob vsaki
+	 * spremembi zapisa ali kode, ki jo ustvari generator vmesne kode, sicer
+	 * se uporabljajo zastareli vmesniki.
+	 */
+	private static final int VERSION = 4;
+
+	/** Vmesniki uvozov. */
+	private static final NodeAttribute<ModuleInterface> interfaces = new NodeAttribute<>();
+
+	/** Stevilo nalozenih vmesnikov. */
+	private static int numLoaded = 0;
+
+	/** Stevilo zapisanih vmesnikov. */
+	private static int numWritten = 0;
+
+	/** Definicije modula po imenih. */
+	public final LinkedHashMap<String, AbsDef> definitions = new LinkedHashMap<>();
+
+	/** Kosi kode in podatkov modula. */
+	private final LinkedList<ImcChunk> chunks = new LinkedList<>();
+
+	/** Kosi modula po imenih oznak. */
+	private final HashMap<String, ImcChunk> chunksByLabel = new HashMap<>();
+
+	/** Imena oznak, na katere se sklicuje koda posameznega kosa. */
+	private final HashMap<ImcChunk, HashSet<String>> references = new HashMap<>();
+
+	/** Oznake spremenljivk in funkcij modula. */
+	private final LinkedHashMap<AbsDef, String> roots = new LinkedHashMap<>();
+
+	/** Oznake, preslikane iz imen v vmesniku. */
+	private final HashMap<String, FrmLabel> labels = new HashMap<>();
+
+	/** Zacasne spremenljivke, preslikane iz imen v vmesniku. */
+	private final HashMap<String, FrmTemp> temps = new HashMap<>();
+
+	/** Imena tipov modula. */
+	private final HashMap<String, SemTypeName> typeNames = new HashMap<>();
+
+	/** Simboli vrstice, ki se bere. */
+	private String[] tokens;
+
+	/** Naslednji simbol vrstice. */
+	private int next;
+
+	/** Oznake, na katere se sklicuje koda, ki se bere. */
+	private HashSet<String> refs;
+
+	private ModuleInterface() {
+	}
+
+	/**
+	 * Nalozi vmesnik modula; ce vmesnik ne obstaja ali ne ustreza izvorni
+	 * datoteki, ga najprej zgradi in zapise.
+	 *
+	 * @param sourceName
+	 *            Ime izvorne datoteke modula.
+	 * @return Vmesnik ali null, ce se modul uvaza iz izvorne datoteke.
+	 */
+	public static ModuleInterface load(String sourceName) {
+		Path interfacePath = Paths.get(sourceName.replaceFirst("\\.pins$", "") + ".pinsi");
+
+		String hash;
+		List<String> lines = null;
+		try {
+			hash = hash(Files.readAllBytes(Paths.get(sourceName)));
+			if (Files.exists(interfacePath))
+				lines = Files.readAllLines(interfacePath, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return null;
+		}
+
+		ModuleInterface module = null;
+		if (lines != null && !lines.isEmpty() && lines.get(0).equals(header(hash)))
+			module = parse(lines);
+		if (module == null) {
+			lines = summarize(sourceName, hash);
+			if (lines == null)
+				return null;
+			write(interfacePath, lines);
+			module = new ModuleInterface();
+			module.read(lines);
+		}
+		numLoaded++;
+		return module;
+	}
+
+	/**
+	 * Prebere vmesnik iz datoteke ali vrne null, ce je datoteka okvarjena in
+	 * jo je treba zgraditi znova.
+	 */
+	private static ModuleInterface parse(List<String> lines) {
+		ModuleInterface module = new ModuleInterface();
+		try {
+			module.read(lines);
+			return module;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Zapise vmesnik prek zacasne datoteke v istem imeniku, da socasni
+	 * prevajalnik nikoli ne prebere napol zapisanega vmesnika.
+	 */
+	private static void write(Path interfacePath, List<String> lines) {
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(interfacePath.toAbsolutePath().getParent(),
+					interfacePath.getFileName().toString(), ".tmp");
+			Files.write(temp, lines, StandardCharsets.UTF_8);
+			Files.move(temp, interfacePath, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			numWritten++;
+		} catch (IOException e) {
+			// the interface is still used for this compilation
+			try {
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Poveze uvoz z vmesnikom modula.
+	 */
+	public static void set(AbsImportDef importDef, ModuleInterface module) {
+		interfaces.set(importDef, module);
+	}
+
+	/**
+	 * Vrne vmesnik modula, iz katerega se uvazajo definicije, ali null.
+	 */
+	public static ModuleInterface get(AbsImportDef importDef) {
+		return interfaces.get(importDef);
+	}
+
+	public static int numLoaded() {
+		return numLoaded;
+	}
+
+	public static int numWritten() {
+		return numWritten;
+	}
+
+	/**
+	 * Vrne kose kode in podatkov, dosegljive iz uporabljenih definicij
+	 * modula, v vrstnem redu vmesnika.
+	 *
+	 * @param reachability
+	 *            Dosegljivost definicij ali null za vse kose.
+	 * @return Kosi z linearno kodo.
+	 */
+	public LinkedList<ImcChunk> chunks(Reachability reachability) {
+		HashSet<ImcChunk> used = new HashSet<>();
+		ArrayList<String> pending = new ArrayList<>();
+		for (Map.Entry<AbsDef, String> root : roots.entrySet())
+			if (reachability == null || reachability.isReachable(root.getKey()))
+				pending.add(root.getValue());
+		while (!pending.isEmpty()) {
+			ImcChunk chunk = chunksByLabel.get(pending.remove(pending.size() - 1));
+			if (chunk != null && used.add(chunk))
+				pending.addAll(references.get(chunk));
+		}
+
+		LinkedList<ImcChunk> reachable = new LinkedList<>();
+		for (ImcChunk chunk : chunks)
+			if (used.contains(chunk))
+				reachable.add(chunk);
+		return reachable;
+	}
+
+	/**
+	 * Prevede modul in vrne vrstice njegovega vmesnika.
+	 */
+	private static List<String> summarize(String sourceName, String hash) {
+		SynAn synAn = new SynAn(new LexAn(sourceName, false), false);
+		AbsDefs source = (AbsDefs) synAn.parse();
+		for (int def = 0; def < source.numDefs(); def++)
+			if (source.def(def) instanceof AbsImportDef)
+				return null;
+
+		source.accept(new PassManager(new NameChecker(), new TypeChecker(),
+				new FrmEvaluator()));
+		ImcCodeGen imcodegen = new ImcCodeGen();
+		source.accept(imcodegen);
+
+		ArrayList<String> lines = new ArrayList<>();
+		lines.add(header(hash));
+		for (int def = 0; def < source.numDefs(); def++) {
+			AbsDef definition = source.def(def);
+			StringBuilder line = new StringBuilder();
+			if (definition instanceof AbsTypeDef) {
+				SemTypeName type = (SemTypeName) SymbDesc.getType(definition);
+				line.append("typ ").append(type.name);
+				writeType(type.getType(), line);
+			} else if (definition instanceof AbsVarDef) {
+				FrmVarAccess access = (FrmVarAccess) FrmDesc.getAccess(definition);
+				line.append("var ").append(access.var.name).append(' ')
+						.append(access.label.name());
+				writeType(SymbDesc.getType(definition), line);
+			} else if (definition instanceof AbsFunDef) {
+				FrmFrame frame = FrmDesc.getFrame(definition);
+				line.append("fun ").append(frame.fun.name).append(' ')
+						.append(frame.label.name());
+				writeType(SymbDesc.getType(definition), line);
+			}
+			lines.add(line.toString());
+		}
+		for (ImcChunk chunk : imcodegen.chunks) {
+			StringBuilder line = new StringBuilder();
+			if (chunk instanceof ImcCodeChunk) {
+				FrmFrame frame = ((ImcCodeChunk) chunk).frame;
+				line.append("code ").append(frame.fun.name).append(' ')
+						.append(frame.label.name()).append(' ')
+						.append(frame.level).append(' ')
+						.append(frame.numPars).append(' ')
+						.append(frame.sizePars).append(' ')
+						.append(frame.sizeLocs).append(' ')
+						.append(frame.sizeArgs).append(' ')
+						.append(frame.sizeTmps).append(' ')
+						.append(frame.sizeRegs).append(' ')
+						.append(frame.FP.name()).append(' ')
+						.append(frame.RV.name());
+				writeCode(((ImcCodeChunk) chunk).imcode.linear(), line);
+			} else {
+				ImcDataChunk data = (ImcDataChunk) chunk;
+				line.append("data ").append(data.label.name()).append(' ')
+						.append(data.size);
+				// string constants hold printable characters only
+				if (data.data != null)
+					line.append(" =").append(data.data);
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	private static void writeType(SemType type, StringBuilder line) {
+		if (type instanceof SemTypeName)
+			line.append(" @").append(((SemTypeName) type).name);
+		else if (type instanceof SemAtomType) {
+			switch (((SemAtomType) type).type) {
+			case SemAtomType.LOG: line.append(" logical"); break;
+			case SemAtomType.INT: line.append(" integer"); break;
+			case SemAtomType.STR: line.append(" string"); break;
+			case SemAtomType.VOID: line.append(" void"); break;
+			}
+		} else if (type instanceof SemArrType) {
+			line.append(" arr ").append(((SemArrType) type).size);
+			writeType(((SemArrType) type).type, line);
+		} else if (type instanceof SemPtrType) {
+			line.append(" ptr");
+			writeType(((SemPtrType) type).type, line);
+		} else if (type instanceof SemStructType) {
+			SemStructType struct = (SemStructType) type;
+			line.append(" struct ")
+					.append(struct.getName() == null ? "-" : struct.getName())
+					.append(' ').append(struct.getMembers().size());
+			for (Map.Entry<String, SemType> member : struct.getMembers().entrySet()) {
+				line.append(' ').append(member.getKey());
+				writeType(member.getValue(), line);
+			}
+		} else if (type instanceof SemFunType) {
+			SemFunType fun = (SemFunType) type;
+			line.append(" fun ").append(fun.getNumPars());
+			for (int par = 0; par < fun.getNumPars(); par++)
+				writeType(fun.getParType(par), line);
+			writeType(fun.resultType, line);
+		}
+	}
+
+	private static void writeCode(ImcCode code, StringBuilder line) {
+		if (code instanceof ImcSEQ) {
+			ImcSEQ seq = (ImcSEQ) code;
+			line.append(" SEQ ").append(seq.stmts.size());
+			for (ImcStmt stmt : seq.stmts)
+				writeCode(stmt, line);
+		} else if (code instanceof ImcMOVE) {
+			line.append(" MOVE");
+			writeCode(((ImcMOVE) code).dst, line);
+			writeCode(((ImcMOVE) code).src, line);
+		} else if (code instanceof ImcLABEL) {
+			line.append(" LABEL ").append(((ImcLABEL) code).label.name());
+		} else if (code instanceof ImcJUMP) {
+			line.append(" JUMP ").append(((ImcJUMP) code).label.name());
+		} else if (code instanceof ImcCJUMP) {
+			ImcCJUMP cjump = (ImcCJUMP) code;
+			line.append(" CJUMP");
+			writeCode(cjump.cond, line);
+			line.append(' ').append(cjump.trueLabel.name()).append(' ')
+					.append(cjump.falseLabel.name());
+		} else if (code instanceof ImcEXP) {
+			line.append(" EXP");
+			writeCode(((ImcEXP) code).expr, line);
+		} else if (code instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) code;
+			line.append(" BINOP ").append(binop.op);
+			writeCode(binop.limc, line);
+			writeCode(binop.rimc, line);
+		} else if (code instanceof ImcCALL) {
+			ImcCALL call = (ImcCALL) code;
+			line.append(" CALL ").append(call.label.name()).append(' ')
+					.append(call.args.size());
+			for (ImcExpr arg : call.args)
+				writeCode(arg, line);
+		} else if (code instanceof ImcCONST) {
+			line.append(" CONST ").append(((ImcCONST) code).value);
+		} else if (code instanceof ImcESEQ) {
+			line.append(" ESEQ");
+			writeCode(((ImcESEQ) code).stmt, line);
+			writeCode(((ImcESEQ) code).expr, line);
+		} else if (code instanceof ImcMEM) {
+			line.append(" MEM");
+			writeCode(((ImcMEM) code).expr, line);
+		} else if (code instanceof ImcNAME) {
+			line.append(" NAME ").append(((ImcNAME) code).label.name());
+		} else if (code instanceof ImcTEMP) {
+			line.append(" TEMP ").append(((ImcTEMP) code).temp.name());
+		}
+	}
+
+	/**
+	 * Prebere vmesnik: deklarira definicije modula in zgradi kose kode.
+	 */
+	private void read(List<String> lines) {
+		// type names first, types may refer to each other
+		for (String line : lines.subList(1, lines.size())) {
+			tokens = line.split(" ");
+			if (tokens[0].equals("typ"))
+				typeNames.put(tokens[1], new SemTypeName(tokens[1]));
+		}
+
+		for (String line : lines.subList(1, lines.size())) {
+			tokens = line.split(" ");
+			next = 2;
+			switch (tokens[0]) {
+			case "typ": {
+				SemTypeName type = typeNames.get(tokens[1]);
+				type.setType(readType());
+				AbsTypeDef def = new AbsTypeDef(null, tokens[1], placeholder());
+				SymbDesc.setType(def, type);
+				definitions.put(tokens[1], def);
+				break;
+			}
+			case "var": {
+				next = 3;
+				AbsVarDef def = new AbsVarDef(null, tokens[1], placeholder());
+				SymbDesc.setType(def, readType());
+				FrmVarAccess access = new FrmVarAccess(def);
+				FrmDesc.setAccess(def, access);
+				labels.put(tokens[2], access.label);
+				definitions.put(tokens[1], def);
+				roots.put(def, tokens[2]);
+				break;
+			}
+			case "fun": {
+				next = 3;
+				AbsFunDef def = stub(tokens[1]);
+				SymbDesc.setType(def, readType());
+				FrmFrame frame = new FrmFrame(def, 1);
+				frame.label = label(tokens[2]);
+				FrmDesc.setFrame(def, frame);
+				definitions.put(tokens[1], def);
+				roots.put(def, tokens[2]);
+				break;
+			}
+			case "code": {
+				int level = Integer.parseInt(tokens[3]);
+				FrmFrame frame = level == 1 ? FrmDesc.getFrame(definitions.get(tokens[1])) : null;
+				if (frame == null) {
+					frame = new FrmFrame(stub(tokens[1]), level);
+					frame.label = label(tokens[2]);
+				}
+				frame.numPars = Integer.parseInt(tokens[4]);
+				frame.sizePars = Integer.parseInt(tokens[5]);
+				frame.sizeLocs = Integer.parseInt(tokens[6]);
+				frame.sizeArgs = Integer.parseInt(tokens[7]);
+				frame.sizeTmps = Integer.parseInt(tokens[8]);
+				frame.sizeRegs = Integer.parseInt(tokens[9]);
+				temps.put(tokens[10], frame.FP);
+				temps.put(tokens[11], frame.RV);
+
+				next = 12;
+				refs = new HashSet<>();
+				ImcCodeChunk chunk = new ImcCodeChunk(frame, null);
+				chunk.lincode = (ImcStmt) readCode();
+				add(tokens[2], chunk, refs);
+				break;
+			}
+			case "data": {
+				ImcDataChunk chunk = new ImcDataChunk(label(tokens[1]),
+						Integer.parseInt(tokens[2]));
+				int data = line.indexOf(" =");
+				if (data >= 0)
+					chunk.data = line.substring(data + 2);
+				add(tokens[1], chunk, new HashSet<String>());
+				break;
+			}
+			default:
+				throw new IllegalArgumentException(line);
+			}
+			if (next < tokens.length && !tokens[0].equals("data"))
+				throw new IllegalArgumentException(line);
+		}
+		for (String label : roots.values())
+			if (!chunksByLabel.containsKey(label))
+				throw new IllegalArgumentException(label);
+		tokens = null;
+		refs = null;
+	}
+
+	private void add(String label, ImcChunk chunk, HashSet<String> refs) {
+		chunks.add(chunk);
+		chunksByLabel.put(label, chunk);
+		references.put(chunk, refs);
+	}
+
+	private SemType readType() {
+		String kind = tokens[next++];
+		switch (kind) {
+		case "logical": return SemAtomType.get(SemAtomType.LOG);
+		case "integer": return SemAtomType.get(SemAtomType.INT);
+		case "string": return SemAtomType.get(SemAtomType.STR);
+		case "void": return SemAtomType.get(SemAtomType.VOID);
+		case "arr": {
+			int size = Integer.parseInt(tokens[next++]);
+			return SemArrType.get(size, readType());
+		}
+		case "ptr":
+			return SemPtrType.get(readType());
+		case "struct": {
+			String name = tokens[next++];
+			int members = Integer.parseInt(tokens[next++]);
+			ArrayList<String> names = new ArrayList<>();
+			ArrayList<SemType> types = new ArrayList<>();
+			for (int member = 0; member < members; member++) {
+				names.add(tokens[next++]);
+				types.add(readType());
+			}
+			return new SemStructType(name.equals("-") ? null : name, names, types);
+		}
+		case "fun": {
+			int pars = Integer.parseInt(tokens[next++]);
+			Vector<SemType> parTypes = new Vector<>();
+			for (int par = 0; par < pars; par++)
+				parTypes.add(readType());
+			return new SemFunType(parTypes, readType());
+		}
+		default:
+			return typeNames.get(kind.substring(1));
+		}
+	}
+
+	private ImcCode readCode() {
+		switch (tokens[next++]) {
+		case "SEQ": {
+			ImcSEQ seq = new ImcSEQ();
+			int stmts = Integer.parseInt(tokens[next++]);
+			for (int stmt = 0; stmt < stmts; stmt++)
+				seq.stmts.add((ImcStmt) readCode());
+			return seq;
+		}
+		case "MOVE": {
+			ImcExpr dst = (ImcExpr) readCode();
+			return new ImcMOVE(dst, (ImcExpr) readCode());
+		}
+		case "LABEL":
+			return new ImcLABEL(label(tokens[next++]));
+		case "JUMP":
+			return new ImcJUMP(label(tokens[next++]));
+		case "CJUMP": {
+			ImcExpr cond = (ImcExpr) readCode();
+			FrmLabel trueLabel = label(tokens[next++]);
+			return new ImcCJUMP(cond, trueLabel, label(tokens[next++]));
+		}
+		case "EXP":
+			return new ImcEXP((ImcExpr) readCode());
+		case "BINOP": {
+			int op = Integer.parseInt(tokens[next++]);
+			ImcExpr limc = (ImcExpr) readCode();
+			return new ImcBINOP(op, limc, (ImcExpr) readCode());
+		}
+		case "CALL": {
+			refs.add(tokens[next]);
+			ImcCALL call = new ImcCALL(label(tokens[next++]));
+			int args = Integer.parseInt(tokens[next++]);
+			for (int arg = 0; arg < args; arg++)
+				call.args.add((ImcExpr) readCode());
+			return call;
+		}
+		case "CONST":
+			return new ImcCONST(Integer.parseInt(tokens[next++]));
+		case "ESEQ": {
+			ImcStmt stmt = (ImcStmt) readCode();
+			return new ImcESEQ(stmt, (ImcExpr) readCode());
+		}
+		case "MEM":
+			return new ImcMEM((ImcExpr) readCode());
+		case "NAME":
+			refs.add(tokens[next]);
+			return new ImcNAME(label(tokens[next++]));
+		default:
+			return new ImcTEMP(temp(tokens[next++]));
+		}
+	}
+
+	private FrmLabel label(String name) {
+		FrmLabel label = labels.get(name);
+		if (label == null) {
+			label = name.startsWith("_") ? FrmLabel.newLabel(name.substring(1))
+					: FrmLabel.newLabel();
+			labels.put(name, label);
+		}
+		return label;
+	}
+
+	private FrmTemp temp(String name) {
+		FrmTemp temp = temps.get(name);
+		if (temp == null) {
+			temp = new FrmTemp();
+			temps.put(name, temp);
+		}
+		return temp;
+	}
+
+	/**
+	 * Funkcija brez jedra, katere koda je ze v vmesniku.
+	 */
+	private static AbsFunDef stub(String name) {
+		return new AbsFunDef(null, name, new Vector<AbsPar>(), placeholder(),
+				new AbsExpr(null) {
+					@Override
+					public void accept(Visitor visitor) {
+					}
+				});
+	}
+
+	/**
+	 * Opis tipa za definicije iz vmesnika; njihov tip je podan s semanticnim
+	 * tipom.
+	 */
+	private static AbsType placeholder() {
+		return new AbsAtomType(null, AbsAtomType.INT);
+	}
+
+	private static String header(String hash) {
+		return MAGIC + " " + VERSION + " " + hash;
+	}
+
+	private static String hash(byte[] source) {
+		try {
+			StringBuilder hash = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(source))
+				hash.append(String.format("%02x", b));
+			return hash.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
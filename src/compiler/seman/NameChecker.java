@@ -1,5 +1,12 @@
 package compiler.seman;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Stack;
 import java.util.Vector;
 
 import compiler.Report;
@@ -17,29 +24,56 @@ import compiler.synan.SynAn;
 
 /**
  * Preverjanje in razresevanje imen (razen imen komponent).
+ * <p>
+ * As a {@link Pass}, names of types, variables and functions of a nesting
+ * level are inserted in the signature stage; names in function bodies are
+ * resolved on entering the nodes.
  * 
  * @author sliva
  * @implementation Toni Kocjan
  */
-public class NameChecker implements Visitor {
+public class NameChecker implements Visitor, Pass {
 
 	private enum TraversalState {
-		ETS_imports, ETS_types, ETS_prototypes, ETS_functions
+		ETS_types, ETS_prototypes, ETS_functions
 	}
 
-	private TraversalState currentState;
+	private TraversalState currentState = TraversalState.ETS_functions;
 	private AbsFunDef main = null;
+	private final SymbTable symbTable;
+
+	/**
+	 * Imena komponent, ki se ne razresujejo kot spremenljivke; vsak operator
+	 * DOT doda svoje, saj se gnezdeni dostopi obiscejo pred njegovim imenom.
+	 */
+	private final HashSet<AbsExpr> members = new HashSet<>();
+
+	/** Imena datotek, iz katerih se vkljucujejo definicije. */
+	private final Stack<String> fileNames = new Stack<>();
+
+	/** Izvorne datoteke modulov, iz katerih se vkljucujejo definicije. */
+	private final Stack<String> sourceNames = new Stack<>();
+
+	/**
+	 * Imeniki, v katerih se iscejo moduli, ki jih ni v imeniku uvazajoce
+	 * datoteke.
+	 */
+	public static final ArrayList<String> modulePath = new ArrayList<>();
+	static {
+		modulePath.add("test");
+	}
 
 	public AbsFunDef getMain() {
 		return main;
 	}
 
 	public NameChecker() {
+		symbTable = new SymbTable();
 		try {
 			{
 				Vector<AbsPar> pars = new Vector<>();
 				Vector<SemType> parTypes = new Vector<>();
-				parTypes.add(new SemAtomType(SemAtomType.INT));
+				parTypes.add(SemAtomType.get(SemAtomType.INT));
 
 				pars.add(new AbsPar(null, "x", new AbsAtomType(null,
 						AbsAtomType.INT)));
@@ -51,9 +85,9 @@ public class NameChecker implements Visitor {
 							public void accept(Visitor visitor) {
 							}
 						});
-				SymbTable.ins("putInt", putInt);
+				symbTable.ins("putInt", putInt);
 				SymbDesc.setType(putInt, new SemFunType(parTypes,
-						new SemAtomType(SemAtomType.INT)));
+						SemAtomType.get(SemAtomType.INT)));
 
 				FrmFrame frame = new FrmFrame(putInt, 1);
 				frame.numPars = 1;
@@ -64,7 +98,7 @@ public class NameChecker implements Visitor {
 			{
 				Vector<AbsPar> pars = new Vector<>();
 				Vector<SemType> parTypes = new Vector<>();
-				parTypes.add(new SemPtrType(new SemAtomType(SemAtomType.INT)));
+				parTypes.add(SemPtrType.get(SemAtomType.get(SemAtomType.INT)));
 				pars.add(new AbsPar(null, "x", new AbsAtomType(null,
 						AbsAtomType.INT)));
 				AbsFunDef putInt = new AbsFunDef(null, "getInt", pars,
@@ -74,9 +108,9 @@ public class NameChecker implements Visitor {
 							public void accept(Visitor visitor) {
 							}
 						});
-				SymbTable.ins("getInt", putInt);
+				symbTable.ins("getInt", putInt);
 				SymbDesc.setType(putInt, new SemFunType(parTypes,
-						new SemAtomType(SemAtomType.INT)));
+						SemAtomType.get(SemAtomType.INT)));
 
 				FrmFrame frame = new FrmFrame(putInt, 1);
 				frame.numPars = 1;
@@ -87,7 +121,7 @@ public class NameChecker implements Visitor {
 			{
 				Vector<AbsPar> pars = new Vector<>();
 				Vector<SemType> parTypes = new Vector<>();
-				parTypes.add(new SemAtomType(SemAtomType.STR));
+				parTypes.add(SemAtomType.get(SemAtomType.STR));
 				pars.add(new AbsPar(null, "x", new AbsAtomType(null,
 						AbsAtomType.STR)));
 				AbsFunDef putInt = new AbsFunDef(null, "putString", pars,
@@ -97,9 +131,9 @@ public class NameChecker implements Visitor {
 							public void accept(Visitor visitor) {
 							}
 						});
-				SymbTable.ins("putString", putInt);
+				symbTable.ins("putString", putInt);
 				SymbDesc.setType(putInt, new SemFunType(parTypes,
-						new SemAtomType(SemAtomType.INT)));
+						SemAtomType.get(SemAtomType.INT)));
 
 				FrmFrame frame = new FrmFrame(putInt, 1);
 				frame.numPars = 1;
@@ -110,7 +144,7 @@ public class NameChecker implements Visitor {
 			{
 				Vector<AbsPar> pars = new Vector<>();
 				Vector<SemType> parTypes = new Vector<>();
-				parTypes.add(new SemPtrType(new SemAtomType(SemAtomType.STR)));
+				parTypes.add(SemPtrType.get(SemAtomType.get(SemAtomType.STR)));
 				pars.add(new AbsPar(null, "x", new AbsAtomType(null,
 						AbsAtomType.STR)));
 				AbsFunDef putInt = new AbsFunDef(null, "getString", pars,
@@ -120,9 +154,9 @@ public class NameChecker implements Visitor {
 							public void accept(Visitor visitor) {
 							}
 						});
-				SymbTable.ins("getString", putInt);
+				symbTable.ins("getString", putInt);
 				SymbDesc.setType(putInt, new SemFunType(parTypes,
-						new SemAtomType(SemAtomType.STR)));
+						SemAtomType.get(SemAtomType.STR)));
 
 				FrmFrame frame = new FrmFrame(putInt, 1);
 				frame.numPars = 1;
@@ -134,6 +168,43 @@ public class NameChecker implements Visitor {
 		}
 	}
 
+	/**
+	 * Ustvari preverjanje imen nad pogledom na dano simbolno tabelo.
+	 */
+	private NameChecker(SymbTable symbTable) {
+		this.symbTable = symbTable;
+	}
+
+	@Override
+	public Pass fork() {
+		SymbDesc.ensureCapacity(AbsTree.numNodes());
+		return new NameChecker(new SymbTable(symbTable));
+	}
+
+	@Override
+	public void join() {
+	}
+
+	@Override
+	public void signatures(AbsDefs defs) {
+		defs.accept(this);
+	}
+
+	@Override
+	public void enter(AbsTree node) {
+		node.accept(this);
+	}
+
+	@Override
+	public void leave(AbsTree node) {
+		if (node instanceof AbsFunDef || node instanceof AbsWhere)
+			symbTable.oldScope();
+		else if (node instanceof AbsImportDef) {
+			Report.fileName = fileNames.pop();
+			sourceNames.pop();
+		}
+	}
+
 	@Override
 	public void visit(AbsArrType acceptor) {
 		acceptor.type.accept(this);
@@ -147,9 +218,9 @@ public class NameChecker implements Visitor {
 	@Override
 	public void visit(AbsStructType acceptor) {
 		TraversalState tmp = currentState;
-		SymbTable.newScope();
+		symbTable.newScope();
 		acceptor.getDefinitions().accept(this);
-		SymbTable.oldScope();
+		symbTable.oldScope();
 		currentState = tmp;
 	}
 
@@ -165,51 +236,39 @@ public class NameChecker implements Visitor {
 
 	@Override
 	public void visit(AbsBinExpr acceptor) {
-		acceptor.expr1.accept(this);
-
-		if (acceptor.oper != AbsBinExpr.DOT)
-			acceptor.expr2.accept(this);
+		if (acceptor.oper == AbsBinExpr.DOT)
+			members.add(acceptor.expr2);
 	}
 
 	@Override
 	public void visit(AbsDefs acceptor) {
 		for (TraversalState state : TraversalState.values()) {
+			if (state == TraversalState.ETS_functions)
+				break;
 			currentState = state;
 			for (int def = 0; def < acceptor.numDefs(); def++)
 				acceptor.def(def).accept(this);
 		}
+		currentState = TraversalState.ETS_functions;
 	}
 
 	@Override
 	public void visit(AbsExprs acceptor) {
-		for (int expr = 0; expr < acceptor.numExprs(); expr++)
-			acceptor.expr(expr).accept(this);
 	}
 
 	@Override
 	public void visit(AbsFor acceptor) {
-		acceptor.count.accept(this);
-		acceptor.lo.accept(this);
-		acceptor.hi.accept(this);
-		acceptor.step.accept(this);
-		acceptor.body.accept(this);
 	}
 
 	@Override
 	public void visit(AbsFunCall acceptor) {
-		if (currentState != TraversalState.ETS_functions)
-			return;
-
-		AbsDef definition = SymbTable.fnd(acceptor.name);
+		AbsDef definition = symbTable.fnd(acceptor.name);
 
 		if (definition == null)
 			Report.error(acceptor.position, "Error, function \""
 					+ acceptor.name + "\" is undefined");
 
 		SymbDesc.setNameDef(acceptor, definition);
-
-		for (int arg = 0; arg < acceptor.numArgs(); arg++)
-			acceptor.arg(arg).accept(this);
 	}
 
 	@Override
@@ -219,54 +278,51 @@ public class NameChecker implements Visitor {
 
 		if (currentState == TraversalState.ETS_prototypes) {
 			try {
-				SymbTable.ins(acceptor.name, acceptor);
+				symbTable.ins(acceptor.name, acceptor);
 			} catch (SemIllegalInsertException e) {
 				Report.error(acceptor.position, "Duplicate method \""
 						+ acceptor.name + "\"");
 			}
+			for (int par = 0; par < acceptor.numPars(); par++)
+				acceptor.par(par).accept(this);
+			acceptor.type.accept(this);
 		}
 
 		else if (currentState == TraversalState.ETS_functions) {
-			SymbTable.newScope();
+			symbTable.newScope();
 
 			for (int par = 0; par < acceptor.numPars(); par++)
 				acceptor.par(par).accept(this);
-			acceptor.type.accept(this);
-			acceptor.expr.accept(this);
-
-			SymbTable.oldScope();
 		}
 	}
 
 	@Override
 	public void visit(AbsIfThen acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.thenBody.accept(this);
 	}
 
 	@Override
 	public void visit(AbsIfThenElse acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.thenBody.accept(this);
-		acceptor.elseBody.accept(this);
 	}
 
 	@Override
 	public void visit(AbsPar acceptor) {
+		if (currentState == TraversalState.ETS_prototypes) {
+			acceptor.type.accept(this);
+			return;
+		}
 		try {
-			SymbTable.ins(acceptor.name, acceptor);
+			symbTable.ins(acceptor.name, acceptor);
 		} catch (SemIllegalInsertException e) {
 			Report.error(acceptor.position, "Duplicate parameter \""
 					+ acceptor.name + "\"");
 		}
-		acceptor.type.accept(this);
 	}
 
 	@Override
 	public void visit(AbsTypeDef acceptor) {
 		if (currentState == TraversalState.ETS_types) {
 			try {
-				SymbTable.ins(acceptor.name, acceptor);
+				symbTable.ins(acceptor.name, acceptor);
 			} catch (SemIllegalInsertException e) {
 				Report.error(acceptor.position, "Type definition \""
 						+ acceptor.name + "\" already exists");
@@ -278,7 +334,7 @@ public class NameChecker implements Visitor {
 
 	@Override
 	public void visit(AbsTypeName acceptor) {
-		AbsDef definition = SymbTable.fnd(acceptor.name);
+		AbsDef definition = symbTable.fnd(acceptor.name);
 
 		if (definition == null)
 			Report.error(acceptor.position, "Type \"" + acceptor.name
@@ -289,14 +345,13 @@ public class NameChecker implements Visitor {
 
 	@Override
 	public void visit(AbsUnExpr acceptor) {
-		acceptor.expr.accept(this);
 	}
 
 	@Override
 	public void visit(AbsVarDef acceptor) {
 		if (currentState == TraversalState.ETS_prototypes) {
 			try {
-				SymbTable.ins(acceptor.name, acceptor);
+				symbTable.ins(acceptor.name, acceptor);
 				acceptor.type.accept(this);
 			} catch (SemIllegalInsertException e) {
 				Report.error(acceptor.position, "Duplicate variable \""
@@ -307,10 +362,11 @@ public class NameChecker implements Visitor {
 
 	@Override
 	public void visit(AbsVarName acceptor) {
-		if (currentState != TraversalState.ETS_functions)
+		// components are resolved by the type checker
+		if (members.remove(acceptor))
 			return;
 
-		AbsDef definition = SymbTable.fnd(acceptor.name);
+		AbsDef definition = symbTable.fnd(acceptor.name);
 		if (definition == null)
 			Report.error(acceptor.position, "Error, variable \""
 					+ acceptor.name + "\" is undefined");
@@ -320,55 +376,89 @@ public class NameChecker implements Visitor {
 
 	@Override
 	public void visit(AbsWhere acceptor) {
-		SymbTable.newScope();
-
-		acceptor.defs.accept(this);
-		acceptor.expr.accept(this);
-
-		SymbTable.oldScope();
+		symbTable.newScope();
 	}
 
 	@Override
 	public void visit(AbsWhile acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.body.accept(this);
 	}
 
 	@Override
 	public void visit(AbsImportDef acceptor) {
-		if (currentState == TraversalState.ETS_imports) {
-			String tmp = Report.fileName;
-			Report.fileName = acceptor.fileName;
-			
-			// parse the file
-			// TODO hardcodano notr test/
-			SynAn synAn = new SynAn(new LexAn("test/" + acceptor.fileName + ".pins", false), false);
-			AbsDefs source = (AbsDefs) synAn.parse();
-			
-			if (acceptor.definitions.size() > 0) {
-				Vector<AbsDef> definitions = new Vector<>();
-				for (int i = 0; i < source.numDefs(); i++) {
-					String name = null;
-					AbsDef d = source.def(i);
-					
-					if (d instanceof AbsVarDef)  name = ((AbsVarDef)  d).name;
-					if (d instanceof AbsTypeDef) name = ((AbsTypeDef) d).name;
-					if (d instanceof AbsFunDef)  name = ((AbsFunDef)  d).name;
-					
-					if (acceptor.definitions.contains(name))
-						definitions.add(d);
-				}
+		if (currentState != TraversalState.ETS_functions)
+			return;
 
-				acceptor.imports = new AbsDefs(source.position, definitions);
-				acceptor.imports.accept(this);
-			}
-			else {
-				acceptor.imports = (AbsDefs) source;
-				acceptor.imports.accept(this);
+		String sourceName = sourceName(sourceNames.isEmpty() ? Report.fileName
+				: sourceNames.peek(), acceptor.fileName);
+		fileNames.push(Report.fileName);
+		sourceNames.push(sourceName);
+		Report.fileName = acceptor.fileName;
+
+		if (ModuleInterface.enabled) {
+			ModuleInterface module = ModuleInterface.load(sourceName);
+			if (module != null) {
+				ModuleInterface.set(acceptor, module);
+				for (Map.Entry<String, AbsDef> def : module.definitions.entrySet()) {
+					if (acceptor.definitions.size() > 0
+							&& !acceptor.definitions.contains(def.getKey()))
+						continue;
+					try {
+						symbTable.ins(def.getKey(), def.getValue());
+					} catch (SemIllegalInsertException e) {
+						Report.error(acceptor.position, "Duplicate definition \""
+								+ def.getKey() + "\"");
+					}
+				}
+				return;
 			}
+		}
 			
-			currentState = TraversalState.ETS_imports;
-			Report.fileName = tmp;
+		// parse the file
+		SynAn synAn = new SynAn(new LexAn(sourceName, false), false);
+		AbsDefs source = (AbsDefs) synAn.parse();
+			
+		if (acceptor.definitions.size() > 0) {
+			Vector<AbsDef> definitions = new Vector<>();
+			for (int i = 0; i < source.numDefs(); i++) {
+				String name = null;
+				AbsDef d = source.def(i);
+				
+				if (d instanceof AbsVarDef)  name = ((AbsVarDef)  d).name;
+				if (d instanceof AbsTypeDef) name = ((AbsTypeDef) d).name;
+				if (d instanceof AbsFunDef)  name = ((AbsFunDef)  d).name;
+				
+				if (acceptor.definitions.contains(name))
+					definitions.add(d);
+			}
+
+			acceptor.imports = new AbsDefs(source.position, definitions);
+		}
+		else
+			acceptor.imports = source;
+	}
+
+	/**
+	 * Vrne ime izvorne datoteke modula: modul se najprej isce v imeniku
+	 * uvazajoce datoteke, nato v imenikih poti modulov.
+	 *
+	 * @param importer
+	 *            Ime uvazajoce izvorne datoteke.
+	 * @param module
+	 *            Ime modula.
+	 * @return Ime izvorne datoteke modula.
+	 */
+	public static String sourceName(String importer, String module) {
+		String fileName = module + ".pins";
+		Path dir = Paths.get(importer).getParent();
+		Path local = dir == null ? Paths.get(fileName) : dir.resolve(fileName);
+		if (Files.exists(local))
+			return local.toString();
+		for (String path : modulePath) {
+			Path found = Paths.get(path, fileName);
+			if (Files.exists(found))
+				return found.toString();
 		}
+		// reported as missing by the lexer
+		return local.toString();
 	}
 }
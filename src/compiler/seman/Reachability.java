@@ -0,0 +1,244 @@
+package compiler.seman;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import compiler.abstr.*;
+import compiler.abstr.tree.*;
+
+/**
+ * Dosegljivost definicij iz glavne funkcije.
+ * <p>
+ * Starting from {@code main}, bodies of reachable functions are searched
+ * for names of functions, variables and types, which are reachable in turn.
+ * The language has no exported definitions, so {@code main} is the only
+ * root. Code and data are generated only for reachable definitions, which
+ * drops most of an imported library that is used only in part.
+ */
+public class Reachability implements Visitor {
+
+	/** Dosegljive definicije, oznacene z oznakami vozlisc. */
+	private final BitSet reachable = new BitSet();
+
+	/** Dosegljive definicije, ki se niso bile pregledane. */
+	private final ArrayList<AbsDef> pending = new ArrayList<>();
+
+	/** Stevilo definicij na najvisjem nivoju programa in uvozenih datotek. */
+	private int numDefs = 0;
+
+	/** Stevilo nedosegljivih definicij na najvisjem nivoju. */
+	private int numPruned = 0;
+
+	/**
+	 * Izracuna dosegljivost definicij programa.
+	 *
+	 * @param source
+	 *            Definicije programa.
+	 * @param main
+	 *            Glavna funkcija.
+	 */
+	public Reachability(AbsDefs source, AbsFunDef main) {
+		reach(main);
+		while (!pending.isEmpty()) {
+			AbsDef def = pending.remove(pending.size() - 1);
+			if (def instanceof AbsFunDef) {
+				AbsFunDef fun = (AbsFunDef) def;
+				for (int par = 0; par < fun.numPars(); par++)
+					fun.par(par).type.accept(this);
+				fun.type.accept(this);
+				fun.expr.accept(this);
+			} else if (def instanceof AbsVarDef)
+				((AbsVarDef) def).type.accept(this);
+			else if (def instanceof AbsTypeDef)
+				((AbsTypeDef) def).type.accept(this);
+			else if (def instanceof AbsPar)
+				((AbsPar) def).type.accept(this);
+		}
+		count(source);
+	}
+
+	/**
+	 * Ali je definicija dosegljiva iz glavne funkcije.
+	 *
+	 * @param def
+	 *            Definicija.
+	 * @return Ali je definicija dosegljiva.
+	 */
+	public boolean isReachable(AbsDef def) {
+		return reachable.get(def.id);
+	}
+
+	/**
+	 * Vrne stevilo definicij na najvisjem nivoju programa in uvozenih datotek.
+	 *
+	 * @return Stevilo definicij.
+	 */
+	public int numDefs() {
+		return numDefs;
+	}
+
+	/**
+	 * Vrne stevilo nedosegljivih definicij na najvisjem nivoju programa in
+	 * uvozenih datotek.
+	 *
+	 * @return Stevilo nedosegljivih definicij.
+	 */
+	public int numPruned() {
+		return numPruned;
+	}
+
+	private void reach(AbsDef def) {
+		if (def == null || reachable.get(def.id))
+			return;
+		reachable.set(def.id);
+		pending.add(def);
+	}
+
+	private void count(AbsDefs defs) {
+		for (int i = 0; i < defs.numDefs(); i++) {
+			AbsDef def = defs.def(i);
+			if (def instanceof AbsImportDef) {
+				AbsImportDef importDef = (AbsImportDef) def;
+				if (importDef.imports != null)
+					count(importDef.imports);
+				else if (ModuleInterface.get(importDef) != null)
+					for (AbsDef imported : ModuleInterface.get(importDef).definitions.values()) {
+						numDefs++;
+						if (!isReachable(imported))
+							numPruned++;
+					}
+				continue;
+			}
+			numDefs++;
+			if (!isReachable(def))
+				numPruned++;
+		}
+	}
+
+	@Override
+	public void visit(AbsArrType acceptor) {
+		acceptor.type.accept(this);
+	}
+
+	@Override
+	public void visit(AbsPtrType acceptor) {
+		acceptor.type.accept(this);
+	}
+
+	@Override
+	public void visit(AbsStructType acceptor) {
+		acceptor.getDefinitions().accept(this);
+	}
+
+	@Override
+	public void visit(AbsAtomConst acceptor) {
+
+	}
+
+	@Override
+	public void visit(AbsAtomType acceptor) {
+
+	}
+
+	@Override
+	public void visit(AbsBinExpr acceptor) {
+		acceptor.expr1.accept(this);
+		acceptor.expr2.accept(this);
+	}
+
+	@Override
+	public void visit(AbsDefs acceptor) {
+		for (int def = 0; def < acceptor.numDefs(); def++)
+			acceptor.def(def).accept(this);
+	}
+
+	@Override
+	public void visit(AbsExprs acceptor) {
+		for (int expr = 0; expr < acceptor.numExprs(); expr++)
+			acceptor.expr(expr).accept(this);
+	}
+
+	@Override
+	public void visit(AbsFor acceptor) {
+		acceptor.count.accept(this);
+		acceptor.lo.accept(this);
+		acceptor.hi.accept(this);
+		acceptor.step.accept(this);
+		acceptor.body.accept(this);
+	}
+
+	@Override
+	public void visit(AbsFunCall acceptor) {
+		reach(SymbDesc.getNameDef(acceptor));
+		for (int arg = 0; arg < acceptor.numArgs(); arg++)
+			acceptor.arg(arg).accept(this);
+	}
+
+	@Override
+	public void visit(AbsFunDef acceptor) {
+		// local functions are reached through calls
+	}
+
+	@Override
+	public void visit(AbsIfThen acceptor) {
+		acceptor.cond.accept(this);
+		acceptor.thenBody.accept(this);
+	}
+
+	@Override
+	public void visit(AbsIfThenElse acceptor) {
+		acceptor.cond.accept(this);
+		acceptor.thenBody.accept(this);
+		acceptor.elseBody.accept(this);
+	}
+
+	@Override
+	public void visit(AbsPar acceptor) {
+		acceptor.type.accept(this);
+	}
+
+	@Override
+	public void visit(AbsTypeDef acceptor) {
+
+	}
+
+	@Override
+	public void visit(AbsTypeName acceptor) {
+		reach(SymbDesc.getNameDef(acceptor));
+	}
+
+	@Override
+	public void visit(AbsUnExpr acceptor) {
+		acceptor.expr.accept(this);
+	}
+
+	@Override
+	public void visit(AbsVarDef acceptor) {
+		// components of structures and local variables
+		acceptor.type.accept(this);
+	}
+
+	@Override
+	public void visit(AbsVarName acceptor) {
+		// components have no definition
+		reach(SymbDesc.getNameDef(acceptor));
+	}
+
+	@Override
+	public void visit(AbsWhere acceptor) {
+		acceptor.defs.accept(this);
+		acceptor.expr.accept(this);
+	}
+
+	@Override
+	public void visit(AbsWhile acceptor) {
+		acceptor.cond.accept(this);
+		acceptor.body.accept(this);
+	}
+
+	@Override
+	public void visit(AbsImportDef acceptor) {
+
+	}
+
+}
@@ -389,6 +389,8 @@ public class SemAn implements Visitor {
 			if (typ != null)
 				Report.dump(indent + 2, "#typed as " + typ.toString());
 		}
-		indent += 2; importDef.imports.accept(this); indent -= 2;
+		if (importDef.imports != null) {
+			indent += 2; importDef.imports.accept(this); indent -= 2;
+		}
 	}
 }
@@ -12,8 +12,8 @@ import compiler.seman.type.*;
  */
 public class SymbDesc {
 
-	/** Nivo vidnosti. */
-	private static HashMap<AbsTree, Integer> scope = new HashMap<AbsTree, Integer>();
+	/** Nivo vidnosti; -1, ce nivo ni dolocen. */
+	private static int[] scope = new int[0];
 
 	/**
 	 * Doloci globino nivoja vidnosti za dano definicijo imena.
@@ -24,7 +24,13 @@ public class SymbDesc {
 	 *            Globina nivoja vidnosti.
 	 */
 	public static void setScope(AbsTree node, int nodeScope) {
-		scope.put(node, new Integer(nodeScope));
+		if (node.id >= scope.length) {
+			int length = scope.length;
+			scope = Arrays.copyOf(scope,
+					Math.max(node.id + 1, Math.max(64, 2 * length)));
+			Arrays.fill(scope, length, scope.length, -1);
+		}
+		scope[node.id] = nodeScope;
 	}
 
 	/**
@@ -35,12 +41,13 @@ public class SymbDesc {
 	 * @return Globina nivoja vidnosti.
 	 */
 	public static Integer getScope(AbsTree node) {
-		Integer nodeScope = scope.get(node);
-		return nodeScope;
+		if (node == null || node.id >= scope.length || scope[node.id] < 0)
+			return null;
+		return scope[node.id];
 	}
 
 	/** Definicija imena. */
-	private static HashMap<AbsTree, AbsDef> nameDef = new HashMap<AbsTree, AbsDef>();
+	private static NodeAttribute<AbsDef> nameDef = new NodeAttribute<AbsDef>();
 
 	/**
 	 * Poveze vozlisce drevesa z definicijo imena.
@@ -51,7 +58,7 @@ public class SymbDesc {
 	 *            Definicija imena.
 	 */
 	public static void setNameDef(AbsTree node, AbsDef def) {
-		nameDef.put(node, def);
+		nameDef.set(node, def);
 	}
 
 	/**
@@ -67,7 +74,7 @@ public class SymbDesc {
 	}
 
 	/** Tipizacija vozlisc drevesa. */
-	private static HashMap<AbsTree, SemType> type = new HashMap<AbsTree, SemType>();
+	private static NodeAttribute<SemType> type = new NodeAttribute<SemType>();
 
 	/**
 	 * Poveze vozlisce drevesa z opisom tipa.
@@ -78,7 +85,7 @@ public class SymbDesc {
 	 *            Opis tipa.
 	 */
 	public static void setType(AbsTree node, SemType typ) {
-		type.put(node, typ);
+		type.set(node, typ);
 	}
 
 	/**
@@ -93,4 +100,21 @@ public class SymbDesc {
 		return typ;
 	}
 
+	/**
+	 * Pripravi opise za dano stevilo vozlisc. Dokler ni ustvarjenih vec
+	 * vozlisc, se opisi razlicnih vozlisc lahko dolocajo na vec nitih hkrati.
+	 * 
+	 * @param nodes
+	 *            Stevilo vozlisc.
+	 */
+	public static void ensureCapacity(int nodes) {
+		if (nodes > scope.length) {
+			int length = scope.length;
+			scope = Arrays.copyOf(scope, nodes);
+			Arrays.fill(scope, length, nodes, -1);
+		}
+		nameDef.ensureCapacity(nodes);
+		type.ensureCapacity(nodes);
+	}
+
 }
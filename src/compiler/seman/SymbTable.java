@@ -5,40 +5,85 @@ import java.util.*;
 import compiler.*;
 import compiler.abstr.tree.*;
 
+/**
+ * Simbolna tabela.
+ * <p>
+ * Every name maps to a stack of its definitions, innermost on top. Names
+ * inserted on each nesting level are recorded in an undo log, so leaving a
+ * level only removes the definitions made on that level.
+ * <p>
+ * A table may also be a view over another table that is no longer changed,
+ * such as the global scope while function bodies are checked in parallel:
+ * definitions are inserted into the view only and names the view does not
+ * know are looked up in the underlying table.
+ */
 public class SymbTable {
 
 	/** Simbolna tabela. */
-	private static HashMap<String, LinkedList<AbsDef>> mapping = new HashMap<String, LinkedList<AbsDef>>();
+	private final HashMap<String, ArrayList<AbsDef>> mapping = new HashMap<String, ArrayList<AbsDef>>();
+
+	/** Imena, vstavljena na vseh odprtih nivojih gnezdenja. */
+	private final ArrayList<String> inserted = new ArrayList<String>();
+
+	/** Zacetki posameznih nivojev gnezdenja v seznamu vstavljenih imen. */
+	private int[] scopeStarts = new int[16];
 
 	/** Trenutna globina nivoja gnezdenja. */
-	private static int scope = 0;
+	private int scope = 0;
+
+	/** Tabela, nad katero je ta tabela pogled, ali null. */
+	private final SymbTable global;
+
+	/**
+	 * Ustvari novo simbolno tabelo.
+	 */
+	public SymbTable() {
+		this.global = null;
+	}
+
+	/**
+	 * Ustvari pogled na simbolno tabelo, ki se med zivljenjem pogleda ne
+	 * spreminja. Pogled zacne na njenem trenutnem nivoju gnezdenja.
+	 *
+	 * @param global
+	 *            Simbolna tabela.
+	 */
+	public SymbTable(SymbTable global) {
+		this.global = global;
+		this.scope = global.scope;
+		if (scope >= scopeStarts.length)
+			scopeStarts = new int[scope + 16];
+	}
 
 	/**
 	 * Preide na naslednji nivo gnezdenja.
 	 */
-	public static void newScope() {
+	public void newScope() {
 		scope++;
+		if (scope == scopeStarts.length)
+			scopeStarts = Arrays.copyOf(scopeStarts, 2 * scope);
+		scopeStarts[scope] = inserted.size();
 	}
 
 	/**
 	 * Odstrani vse definicije na trenutnem nivoju gnezdenja in preide na
 	 * predhodni nivo gnezdenja.
 	 */
-	public static void oldScope() {
-		LinkedList<String> allNames = new LinkedList<String>();
-		allNames.addAll(mapping.keySet());
-		for (String name : allNames) {
-			try {
-				SymbTable.del(name);
-			} catch (SemIllegalDeleteException __) {
-			}
+	public void oldScope() {
+		int start = scope > 0 ? scopeStarts[scope] : 0;
+		for (int i = inserted.size() - 1; i >= start; i--) {
+			String name = inserted.remove(i);
+			ArrayList<AbsDef> allNameDefs = mapping.get(name);
+			allNameDefs.remove(allNameDefs.size() - 1);
+			if (allNameDefs.size() == 0)
+				mapping.remove(name);
 		}
 		scope--;
 	}
 
 	/**
 	 * Vstavi novo definicijo imena na trenutni nivo gnezdenja.
-	 * 
+	 *
 	 * @param name
 	 *            Ime.
 	 * @param newDef
@@ -46,67 +91,70 @@ public class SymbTable {
 	 * @throws SemIllegalInsertException
 	 *             Ce definicija imena na trenutnem nivoju gnezdenja ze obstaja.
 	 */
-	public static void ins(String name, AbsDef newDef)
+	public void ins(String name, AbsDef newDef)
 			throws SemIllegalInsertException {
-		LinkedList<AbsDef> allNameDefs = mapping.get(name);
+		ArrayList<AbsDef> allNameDefs = mapping.get(name);
 		if (allNameDefs == null) {
-			allNameDefs = new LinkedList<AbsDef>();
-			allNameDefs.addFirst(newDef);
-			SymbDesc.setScope(newDef, scope);
+			AbsDef outerDef = global == null ? null : global.fnd(name);
+			if (outerDef != null && SymbDesc.getScope(outerDef) == scope)
+				throw new SemIllegalInsertException();
+			allNameDefs = new ArrayList<AbsDef>(2);
 			mapping.put(name, allNameDefs);
-			return;
-		}
-		if ((allNameDefs.size() == 0)
-				|| (SymbDesc.getScope(allNameDefs.getFirst()) == null)) {
-			Thread.dumpStack();
-			Report.error("Internal error.");
-			return;
+		} else {
+			Integer topScope = SymbDesc.getScope(allNameDefs
+					.get(allNameDefs.size() - 1));
+			if (topScope == null) {
+				Thread.dumpStack();
+				Report.error("Internal error.");
+				return;
+			}
+			if (topScope == scope)
+				throw new SemIllegalInsertException();
 		}
-		if (SymbDesc.getScope(allNameDefs.getFirst()) == scope)
-			throw new SemIllegalInsertException();
-		allNameDefs.addFirst(newDef);
+		allNameDefs.add(newDef);
+		inserted.add(name);
 		SymbDesc.setScope(newDef, scope);
 	}
 
 	/**
 	 * Odstrani definicijo imena s trenutnega nivoja gnezdenja.
-	 * 
+	 *
 	 * @param name
 	 *            Ime.
 	 * @throws SemIllegalDeleteException
 	 *             Ce definicije imena na trenutnem nivoju gnezdenja ni.
 	 */
-	public static void del(String name) throws SemIllegalDeleteException {
-		LinkedList<AbsDef> allNameDefs = mapping.get(name);
+	public void del(String name) throws SemIllegalDeleteException {
+		ArrayList<AbsDef> allNameDefs = mapping.get(name);
 		if (allNameDefs == null)
 			throw new SemIllegalDeleteException();
-		if ((allNameDefs.size() == 0)
-				|| (SymbDesc.getScope(allNameDefs.getFirst()) == null)) {
+		Integer topScope = SymbDesc.getScope(allNameDefs
+				.get(allNameDefs.size() - 1));
+		if (topScope == null) {
 			Thread.dumpStack();
 			Report.error("Internal error.");
 			return;
 		}
-		if (SymbDesc.getScope(allNameDefs.getFirst()) < scope)
+		if (topScope < scope)
 			throw new SemIllegalDeleteException();
-		allNameDefs.removeFirst();
+		allNameDefs.remove(allNameDefs.size() - 1);
 		if (allNameDefs.size() == 0)
 			mapping.remove(name);
+		inserted.remove(inserted.lastIndexOf(name));
 	}
 
 	/**
 	 * Vrne definicijo imena.
-	 * 
+	 *
 	 * @param name
 	 *            Ime.
 	 * @return Definicija imena ali null, ce definicija imena ne obstaja.
 	 */
-	public static AbsDef fnd(String name) {
-		LinkedList<AbsDef> allNameDefs = mapping.get(name);
+	public AbsDef fnd(String name) {
+		ArrayList<AbsDef> allNameDefs = mapping.get(name);
 		if (allNameDefs == null)
-			return null;
-		if (allNameDefs.size() == 0)
-			return null;
-		return allNameDefs.getFirst();
+			return global == null ? null : global.fnd(name);
+		return allNameDefs.get(allNameDefs.size() - 1);
 	}
 
 }
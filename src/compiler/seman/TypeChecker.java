@@ -9,29 +9,57 @@ import compiler.seman.type.*;
 
 /**
  * Preverjanje tipov.
+ * <p>
+ * As a {@link Pass}, types of definitions are computed in the signature
+ * stage and types of expressions on leaving the nodes, when the types of
+ * their subexpressions are already known.
  * 
  * @author sliva
  * @implementation Toni Kocjan
  */
-public class TypeChecker implements Visitor {
+public class TypeChecker implements Visitor, Pass {
 
 	/**
 	 *  
 	 *
 	 */
 	private enum TraversalState {
-		ETS_imports, ETS_typeNames, ETS_typeDefs, ETS_variables, ETS_prototypes, ETS_functions
+		ETS_typeNames, ETS_typeDefs, ETS_variables, ETS_prototypes, ETS_functions
 	}
 
 	/**
 	 * Current traversal state.
 	 */
-	TraversalState currentState;
+	TraversalState currentState = TraversalState.ETS_functions;
+
+	@Override
+	public Pass fork() {
+		SymbDesc.ensureCapacity(AbsTree.numNodes());
+		return new TypeChecker();
+	}
+
+	@Override
+	public void join() {
+	}
+
+	@Override
+	public void signatures(AbsDefs defs) {
+		defs.accept(this);
+	}
+
+	@Override
+	public void enter(AbsTree node) {
+	}
+
+	@Override
+	public void leave(AbsTree node) {
+		node.accept(this);
+	}
 
 	@Override
 	public void visit(AbsArrType acceptor) {
 		acceptor.type.accept(this);
-		SemArrType type = new SemArrType(acceptor.length,
+		SemArrType type = SemArrType.get(acceptor.length,
 				SymbDesc.getType(acceptor.type));
 		SymbDesc.setType(acceptor, type);
 	}
@@ -39,7 +67,7 @@ public class TypeChecker implements Visitor {
 	@Override
 	public void visit(AbsPtrType acceptor) {
 		acceptor.type.accept(this);
-		SemPtrType type = new SemPtrType(SymbDesc.getType(acceptor.type));
+		SemPtrType type = SemPtrType.get(SymbDesc.getType(acceptor.type));
 		SymbDesc.setType(acceptor, type);
 	}
 
@@ -65,24 +93,21 @@ public class TypeChecker implements Visitor {
 
 	@Override
 	public void visit(AbsAtomConst acceptor) {
-		SymbDesc.setType(acceptor, new SemAtomType(acceptor.type));
+		SymbDesc.setType(acceptor, SemAtomType.get(acceptor.type));
 	}
 
 	@Override
 	public void visit(AbsAtomType acceptor) {
-		SymbDesc.setType(acceptor, new SemAtomType(acceptor.type));
+		SymbDesc.setType(acceptor, SemAtomType.get(acceptor.type));
 	}
 
 	@Override
 	public void visit(AbsBinExpr acceptor) {
-		acceptor.expr1.accept(this);
-		acceptor.expr2.accept(this);
-
 		SemType t1 = SymbDesc.getType(acceptor.expr1);
 		SemType t2 = SymbDesc.getType(acceptor.expr2);
 
-		SemType integer = new SemAtomType(SemAtomType.INT);
-		SemType logical = new SemAtomType(SemAtomType.LOG);
+		SemType integer = SemAtomType.get(SemAtomType.INT);
+		SemType logical = SemAtomType.get(SemAtomType.LOG);
 
 		int oper = acceptor.oper;
 
@@ -202,37 +227,31 @@ public class TypeChecker implements Visitor {
 	@Override
 	public void visit(AbsDefs acceptor) {
 		for (TraversalState state : TraversalState.values()) {
+			if (state == TraversalState.ETS_functions)
+				break;
 			currentState = state;
 			for (int def = 0; def < acceptor.numDefs(); def++)
 				acceptor.def(def).accept(this);
 		}
+		currentState = TraversalState.ETS_functions;
 	}
 
 	@Override
 	public void visit(AbsExprs acceptor) {
-		for (int expr = 0; expr < acceptor.numExprs(); expr++)
-			acceptor.expr(expr).accept(this);
-
 		SymbDesc.setType(acceptor,
 				SymbDesc.getType(acceptor.expr(acceptor.numExprs() - 1)));
 	}
 
 	@Override
 	public void visit(AbsFor acceptor) {
-		acceptor.count.accept(this);
-		acceptor.lo.accept(this);
-		acceptor.hi.accept(this);
-		acceptor.step.accept(this);
-		acceptor.body.accept(this);
-
-		SemType integer = new SemAtomType(SemAtomType.INT);
+		SemType integer = SemAtomType.get(SemAtomType.INT);
 		SemType lo_ = SymbDesc.getType(acceptor.lo);
 		SemType hi_ = SymbDesc.getType(acceptor.hi);
 		SemType step_ = SymbDesc.getType(acceptor.step);
 
 		if (lo_.sameStructureAs(integer) && lo_.sameStructureAs(hi_)
 				&& lo_.sameStructureAs(step_))
-			SymbDesc.setType(acceptor, new SemAtomType(SemAtomType.VOID));
+			SymbDesc.setType(acceptor, SemAtomType.get(SemAtomType.VOID));
 		else
 			Report.error(acceptor.position,
 					"Lower bound, upper bound and step expressions must be of type INTEGER");
@@ -249,11 +268,10 @@ public class TypeChecker implements Visitor {
 							+ acceptor.name + "\"");
 
 		for (int arg = 0; arg < acceptor.numArgs(); arg++) {
-			acceptor.arg(arg).accept(this);
 			SemType parType = SymbDesc.getType(acceptor.arg(arg));
 			
 			if (parType instanceof SemArrType)
-				parType = new SemPtrType(((SemArrType) parType).type);
+				parType = SemPtrType.get(((SemArrType) parType).type);
 
 			if (!type.getParType(arg).sameStructureAs(parType))
 				Report.error(acceptor.arg(arg).position,
@@ -276,7 +294,6 @@ public class TypeChecker implements Visitor {
 			SymbDesc.setType(acceptor,
 					new SemFunType(parameters, SymbDesc.getType(acceptor.type)));
 		} else if (currentState == TraversalState.ETS_functions) {
-			acceptor.expr.accept(this);
 			SemType returnType = SymbDesc.getType(acceptor.expr);
 			SemFunType funType = (SemFunType) SymbDesc.getType(acceptor);
 
@@ -289,12 +306,9 @@ public class TypeChecker implements Visitor {
 
 	@Override
 	public void visit(AbsIfThen acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.thenBody.accept(this);
-
 		if (SymbDesc.getType(acceptor.cond).sameStructureAs(
-				new SemAtomType(SemAtomType.LOG)))
-			SymbDesc.setType(acceptor, new SemAtomType(SemAtomType.VOID));
+				SemAtomType.get(SemAtomType.LOG)))
+			SymbDesc.setType(acceptor, SemAtomType.get(SemAtomType.VOID));
 		else
 			Report.error(acceptor.cond.position,
 					"Condition must be of type LOGICAL");
@@ -302,13 +316,9 @@ public class TypeChecker implements Visitor {
 
 	@Override
 	public void visit(AbsIfThenElse acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.thenBody.accept(this);
-		acceptor.elseBody.accept(this);
-
 		if (SymbDesc.getType(acceptor.cond).sameStructureAs(
-				new SemAtomType(SemAtomType.LOG)))
-			SymbDesc.setType(acceptor, new SemAtomType(SemAtomType.VOID));
+				SemAtomType.get(SemAtomType.LOG)))
+			SymbDesc.setType(acceptor, SemAtomType.get(SemAtomType.VOID));
 		else
 			Report.error(acceptor.cond.position,
 					"Condition must be of type LOGICAL");
@@ -320,7 +330,7 @@ public class TypeChecker implements Visitor {
 		SemType type = SymbDesc.getType(acceptor.type);
 
 		if (type instanceof SemArrType)
-			SymbDesc.setType(acceptor, new SemPtrType(((SemArrType) type).type));
+			SymbDesc.setType(acceptor, SemPtrType.get(((SemArrType) type).type));
 		else
 			SymbDesc.setType(acceptor, type);
 	}
@@ -353,25 +363,24 @@ public class TypeChecker implements Visitor {
 
 	@Override
 	public void visit(AbsUnExpr acceptor) {
-		acceptor.expr.accept(this);
 		SemType type = SymbDesc.getType(acceptor.expr);
 
 		if (acceptor.oper == AbsUnExpr.NOT) {
-			if (type.sameStructureAs(new SemAtomType(SemAtomType.LOG)))
-				SymbDesc.setType(acceptor, new SemAtomType(SemAtomType.LOG));
+			if (type.sameStructureAs(SemAtomType.get(SemAtomType.LOG)))
+				SymbDesc.setType(acceptor, SemAtomType.get(SemAtomType.LOG));
 			else
 				Report.error(acceptor.position,
 						"Operator \"!\" is not defined for type " + type);
 		} else if (acceptor.oper == AbsUnExpr.ADD
 				|| acceptor.oper == AbsUnExpr.SUB) {
-			if (type.sameStructureAs(new SemAtomType(SemAtomType.INT)))
-				SymbDesc.setType(acceptor, new SemAtomType(SemAtomType.INT));
+			if (type.sameStructureAs(SemAtomType.get(SemAtomType.INT)))
+				SymbDesc.setType(acceptor, SemAtomType.get(SemAtomType.INT));
 			else
 				Report.error(acceptor.position,
 						"Operators \"+\" and \"-\" are not defined for type "
 								+ type);
 		} else if (acceptor.oper == AbsUnExpr.MEM) {
-			SymbDesc.setType(acceptor, new SemPtrType(type));
+			SymbDesc.setType(acceptor, SemPtrType.get(type));
 		} else if (acceptor.oper == AbsUnExpr.VAL) {
 			if (!(type instanceof SemPtrType) && !(type instanceof SemArrType))
 				Report.error(acceptor.position,
@@ -399,19 +408,14 @@ public class TypeChecker implements Visitor {
 
 	@Override
 	public void visit(AbsWhere acceptor) {
-		acceptor.defs.accept(this);
-		acceptor.expr.accept(this);
 		SymbDesc.setType(acceptor, SymbDesc.getType(acceptor.expr));
 	}
 
 	@Override
 	public void visit(AbsWhile acceptor) {
-		acceptor.cond.accept(this);
-		acceptor.body.accept(this);
-
 		if (SymbDesc.getType(acceptor.cond).sameStructureAs(
-				new SemAtomType(SemAtomType.LOG)))
-			SymbDesc.setType(acceptor, new SemAtomType(SemAtomType.VOID));
+				SemAtomType.get(SemAtomType.LOG)))
+			SymbDesc.setType(acceptor, SemAtomType.get(SemAtomType.VOID));
 		else
 			Report.error(acceptor.cond.position,
 					"Condition must be of type LOGICAL");
@@ -419,19 +423,7 @@ public class TypeChecker implements Visitor {
 
 	@Override
 	public void visit(AbsImportDef importDef) {
-		if (currentState == TraversalState.ETS_imports) {
-			String tmp = Report.fileName;
-			Report.fileName = importDef.fileName;
-
-			for (TraversalState state : TraversalState.values()) {
-				currentState = state;
-				for (int def = 0; def < importDef.imports.numDefs(); def++)
-					importDef.imports.def(def).accept(this);
-			}
 
-			currentState = TraversalState.ETS_imports;
-			Report.fileName = tmp;
-		}
 	}
 
 }
@@ -1,5 +1,7 @@
 package compiler.seman.type;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Opis tabelaricnega tipa.
  * 
@@ -13,6 +15,12 @@ public class SemArrType extends SemType {
 	/** Velikost tabele. */
 	public final int size;
 
+	/** Razporeditev tabele; dolocena ob prvi uporabi. */
+	private volatile SemLayout layout = null;
+
+	/** Opisi tabelaricnih tipov, indeksirani z oznako tipa elementa. */
+	private static final ConcurrentHashMap<Long, SemArrType> types = new ConcurrentHashMap<>();
+
 	/**
 	 * Ustvari nov opis tabelaricnega tipa.
 	 * 
@@ -21,13 +29,36 @@ public class SemArrType extends SemType {
 	 * @param size
 	 *            Velikost tabele.
 	 */
-	public SemArrType(int size, SemType type) {
+	private SemArrType(int size, SemType type) {
 		this.type = type;
 		this.size = size;
 	}
 
+	/**
+	 * Vrne opis tabelaricnega tipa.
+	 * 
+	 * @param size
+	 *            Velikost tabele.
+	 * @param type
+	 *            Tip elementa tabele.
+	 * @return Opis tabelaricnega tipa.
+	 */
+	public static SemArrType get(int size, SemType type) {
+		if (type == null)
+			return new SemArrType(size, type);
+		Long key = ((long) type.id << 32) | (size & 0xFFFFFFFFL);
+		SemArrType arrType = types.get(key);
+		if (arrType == null) {
+			arrType = new SemArrType(size, type);
+			SemArrType old = types.putIfAbsent(key, arrType);
+			if (old != null)
+				arrType = old;
+		}
+		return arrType;
+	}
+
 	@Override
-	public boolean sameStructureAs(SemType type) {
+	protected boolean matches(SemType type) {
 		if (type.actualType() instanceof SemArrType) {
 			SemArrType arrayType = (SemArrType) (type.actualType());
 			return (arrayType.size == size)
@@ -41,8 +72,20 @@ public class SemArrType extends SemType {
 		return "ARR(" + size + "," + type.toString() + ")";
 	}
 
+	/**
+	 * Vrne razporeditev tabele v pomnilniku.
+	 * 
+	 * @return Razporeditev tabele.
+	 */
+	public SemLayout layout() {
+		SemLayout layout = this.layout;
+		if (layout == null)
+			this.layout = layout = new SemLayout(size, type);
+		return layout;
+	}
+
 	@Override
 	public int size() {
-		return size * type.size();
+		return layout().size;
 	}
 }
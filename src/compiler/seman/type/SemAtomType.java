@@ -17,18 +17,33 @@ public class SemAtomType extends SemType {
 	/* Tip. */
 	public final int type;
 
+	/** Opisi vseh atomarnih tipov. */
+	private static final SemAtomType[] types = { new SemAtomType(LOG),
+			new SemAtomType(INT), new SemAtomType(STR), new SemAtomType(VOID) };
+
 	/**
 	 * Ustvari nov opis atomarnega tipa.
 	 * 
 	 * @param type
 	 *            Atomarni tip.
 	 */
-	public SemAtomType(int type) {
+	private SemAtomType(int type) {
 		this.type = type;
 	}
 
+	/**
+	 * Vrne opis atomarnega tipa.
+	 * 
+	 * @param type
+	 *            Atomarni tip.
+	 * @return Opis atomarnega tipa.
+	 */
+	public static SemAtomType get(int type) {
+		return types[type];
+	}
+
 	@Override
-	public boolean sameStructureAs(SemType type) {
+	protected boolean matches(SemType type) {
 		if (type.actualType() instanceof SemAtomType) {
 			SemAtomType atomType = (SemAtomType) (type.actualType());
 			return this.type == atomType.type;
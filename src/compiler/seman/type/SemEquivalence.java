@@ -0,0 +1,113 @@
+package compiler.seman.type;
+
+import java.util.Arrays;
+
+/**
+ * Memo of structural equivalence of pairs of types.
+ * <p>
+ * Final results are stored in an open-addressing table keyed by the ids of
+ * both types. Pairs which are being compared on the current thread are kept
+ * on a stack; meeting such a pair again means the types are recursive and the
+ * pair is assumed to be equivalent. A negative result is final even under
+ * such assumptions, a positive one only once the outermost comparison is
+ * done.
+ */
+class SemEquivalence {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte SAME = 1;
+	private static final byte DIFFERENT = 2;
+
+	/** Keys of the memo table; 0 marks an empty slot. */
+	private static long[] keys = new long[1024];
+
+	/** Results of the memo table. */
+	private static byte[] results = new byte[1024];
+
+	/** Number of stored results. */
+	private static int size = 0;
+
+	/** Pairs being compared on the current thread. */
+	private static final ThreadLocal<long[]> comparing = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			// first element is the depth of the stack
+			return new long[16];
+		}
+	};
+
+	/**
+	 * Ugotovi, ali sta tipa strukturno enaka.
+	 * 
+	 * @param type1
+	 *            Prvi tip.
+	 * @param type2
+	 *            Drugi tip.
+	 * @return Ali je drugi tip strukturno enak prvemu.
+	 */
+	static boolean sameStructure(SemType type1, SemType type2) {
+		long key = ((long) (type1.id + 1) << 32) | (type2.id + 1);
+
+		byte result = get(key);
+		if (result != UNKNOWN)
+			return result == SAME;
+
+		long[] stack = comparing.get();
+		int depth = (int) stack[0];
+		for (int i = 1; i <= depth; i++)
+			if (stack[i] == key)
+				return true;
+
+		if (depth + 1 == stack.length) {
+			stack = Arrays.copyOf(stack, 2 * stack.length);
+			comparing.set(stack);
+		}
+		stack[++depth] = key;
+		stack[0] = depth;
+
+		boolean same = type1.matches(type2);
+
+		stack = comparing.get();
+		stack[0] = depth - 1;
+		if (!same || depth == 1)
+			put(key, same ? SAME : DIFFERENT);
+		return same;
+	}
+
+	private static synchronized byte get(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return results[i];
+			if (keys[i] == 0)
+				return UNKNOWN;
+		}
+	}
+
+	private static synchronized void put(long key, byte result) {
+		if (2 * (size + 1) > keys.length) {
+			long[] oldKeys = keys;
+			byte[] oldResults = results;
+			keys = new long[2 * oldKeys.length];
+			results = new byte[2 * oldKeys.length];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++)
+				if (oldKeys[i] != 0)
+					put(oldKeys[i], oldResults[i]);
+		}
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != 0 && keys[i] != key)
+			i = (i + 1) & mask;
+		if (keys[i] == 0)
+			size++;
+		keys[i] = key;
+		results[i] = result;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
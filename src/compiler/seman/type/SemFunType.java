@@ -51,7 +51,7 @@ public class SemFunType extends SemType {
 	}
 
 	@Override
-	public boolean sameStructureAs(SemType type) {
+	protected boolean matches(SemType type) {
 		if (type.actualType() instanceof SemFunType) {
 			SemFunType funType = (SemFunType) (type.actualType());
 			if (this.getNumPars() != funType.getNumPars())
@@ -0,0 +1,111 @@
+package compiler.seman.type;
+
+import java.util.HashMap;
+
+/**
+ * Razporeditev podatkovnega tipa v pomnilniku.
+ * <p>
+ * Immutable descriptor computed once per struct or array type. All atomic
+ * types occupy one word, so fields are laid out one after another without
+ * padding and every layout is word aligned.
+ */
+public final class SemLayout {
+
+	/** Velikost besede v bytih. */
+	public static final int WORD = 4;
+
+	/** Velikost tipa v bytih. */
+	public final int size;
+
+	/** Poravnava tipa v bytih. */
+	public final int alignment;
+
+	/** Velikost elementa tabele v bytih; 0 za strukture. */
+	public final int elementSize;
+
+	/** Odmiki komponent strukture po vrsti. */
+	private final int[] offsets;
+
+	/** Indeksi komponent strukture po imenih. */
+	private final HashMap<String, Integer> indices;
+
+	/**
+	 * Ustvari razporeditev strukture.
+	 * 
+	 * @param names
+	 *            Imena komponent.
+	 * @param types
+	 *            Tipi komponent.
+	 */
+	SemLayout(String[] names, SemType[] types) {
+		this.offsets = new int[types.length];
+		this.indices = new HashMap<>(2 * types.length);
+		int size = 0;
+		for (int i = 0; i < types.length; i++) {
+			offsets[i] = size;
+			indices.put(names[i], i);
+			size += types[i].size();
+		}
+		this.size = size;
+		this.alignment = WORD;
+		this.elementSize = 0;
+	}
+
+	/**
+	 * Ustvari razporeditev tabele.
+	 * 
+	 * @param length
+	 *            Stevilo elementov.
+	 * @param elementType
+	 *            Tip elementa.
+	 */
+	SemLayout(int length, SemType elementType) {
+		this.offsets = new int[0];
+		this.indices = null;
+		this.elementSize = elementType.size();
+		this.size = length * elementSize;
+		this.alignment = WORD;
+	}
+
+	/**
+	 * Vrne stevilo komponent strukture.
+	 * 
+	 * @return Stevilo komponent.
+	 */
+	public int numFields() {
+		return offsets.length;
+	}
+
+	/**
+	 * Vrne odmik komponente strukture.
+	 * 
+	 * @param index
+	 *            Indeks komponente.
+	 * @return Odmik komponente v bytih.
+	 */
+	public int offset(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * Vrne indeks komponente strukture.
+	 * 
+	 * @param name
+	 *            Ime komponente.
+	 * @return Indeks komponente ali -1, ce komponente ni.
+	 */
+	public int index(String name) {
+		Integer index = indices == null ? null : indices.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Vrne stevilo besed, ki jih zaseda tip.
+	 * 
+	 * @return Stevilo besed.
+	 */
+	public int numWords() {
+		return (size + WORD - 1) / WORD;
+	}
+
+}
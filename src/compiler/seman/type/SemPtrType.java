@@ -4,12 +4,33 @@ public class SemPtrType extends SemType {
 	/** Tip kamor kaže. */
 	public final SemType type;
 	
-	public SemPtrType(SemType type) {
+	private SemPtrType(SemType type) {
 		this.type = type;
 	}
 
+	/**
+	 * Vrne opis kazalca na dani tip.
+	 * 
+	 * @param type
+	 *            Tip, kamor kaze kazalec.
+	 * @return Opis kazalca.
+	 */
+	public static SemPtrType get(SemType type) {
+		if (type == null)
+			return new SemPtrType(type);
+		SemPtrType ptrType = type.pointer;
+		if (ptrType == null) {
+			synchronized (type) {
+				ptrType = type.pointer;
+				if (ptrType == null)
+					type.pointer = ptrType = new SemPtrType(type);
+			}
+		}
+		return ptrType;
+	}
+
 	@Override
-	public boolean sameStructureAs(SemType type) {
+	protected boolean matches(SemType type) {
 		if (!(type instanceof SemPtrType))
 			return false;
 		if (((SemPtrType)type).type.sameStructureAs(this.type))
@@ -2,7 +2,6 @@ package compiler.seman.type;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import compiler.Report;
@@ -10,8 +9,9 @@ import compiler.Report;
 public class SemStructType extends SemType {
 
 	private final LinkedHashMap<String, SemType> members = new LinkedHashMap<>();
+	private final SemType[] memberTypes;
 	private final String name;
-	private final int size;
+	private final SemLayout layout;
 
 	/**
 	 * Ustvari nov opis strukture.
@@ -24,12 +24,11 @@ public class SemStructType extends SemType {
 		if (names.size() != types.size())
 			Report.error("Internal error :: compiler.seman.type.SemStructType: names size not equal types size");
 
-		int size = 0;
-		for (int i = 0; i < names.size(); i++) {
+		for (int i = 0; i < names.size(); i++)
 			members.put(names.get(i), types.get(i));
-			size += types.get(i).size();
-		}
-		this.size = size;
+		this.memberTypes = members.values().toArray(new SemType[members.size()]);
+		this.layout = new SemLayout(members.keySet().toArray(
+				new String[members.size()]), memberTypes);
 		this.name = name;
 	}
 	
@@ -38,14 +37,17 @@ public class SemStructType extends SemType {
 	}
 	
 	public int offsetOf(String name) {
-		int offset = 0;
-		
-		for (Map.Entry<String, SemType> entry : members.entrySet()) {
-			if (name.equals(entry.getKey())) break;
-			offset += entry.getValue().size();
-		}
-		
-		return offset;
+		int index = layout.index(name);
+		return index < 0 ? layout.size : layout.offset(index);
+	}
+
+	/**
+	 * Vrne razporeditev strukture v pomnilniku.
+	 * 
+	 * @return Razporeditev strukture.
+	 */
+	public SemLayout layout() {
+		return layout;
 	}
 	
 	public String getName() {
@@ -53,20 +55,17 @@ public class SemStructType extends SemType {
 	}
 
 	@Override
-	public boolean sameStructureAs(SemType type) {
+	protected boolean matches(SemType type) {
 		if (!(type instanceof SemStructType))
 			return false;
 		
 		SemStructType type_ = (SemStructType) type;
 		
-		if (members.size() != type_.members.size())
+		if (memberTypes.length != type_.memberTypes.length)
 			return false;
 		
-		List<SemType> this_ = new ArrayList<>(members.values());
-		List<SemType> o_ = new ArrayList<>(type_.members.values());
-		
-		for (int i = 0; i < this_.size(); i++) {
-			if (!this_.get(i).sameStructureAs(o_.get(i)))
+		for (int i = 0; i < memberTypes.length; i++) {
+			if (!memberTypes[i].sameStructureAs(type_.memberTypes[i]))
 				return false;
 		}
 		return true;
@@ -87,7 +86,7 @@ public class SemStructType extends SemType {
 
 	@Override
 	public int size() {
-		return size;
+		return layout.size;
 	}
 
 }
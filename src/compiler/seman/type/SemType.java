@@ -1,10 +1,27 @@
 package compiler.seman.type;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Opis podatkovnega tipa.
+ * <p>
+ * Atomic, pointer and array types are canonical: structurally equal types
+ * built from the same component types are the same object and are obtained
+ * through factory methods. Results of structural comparisons are memoized per
+ * ordered pair of types; comparisons of recursive types assume equivalence of
+ * pairs which are already being compared.
  */
 public abstract class SemType {
 
+	/** Stevec tipov. */
+	private static final AtomicInteger types = new AtomicInteger();
+
+	/** Enolicna oznaka tipa. */
+	public final int id = types.getAndIncrement();
+
+	/** Kazalec na ta tip, ce je ze bil ustvarjen. */
+	volatile SemPtrType pointer = null;
+
 	/** Vrne konkretno predstavitev tega tipa. */
 	public SemType actualType() {
 		return this;
@@ -17,7 +34,22 @@ public abstract class SemType {
 	 *            Podani tip.
 	 * @return Ali je podani tip strukturno enak temu tipu.
 	 */
-	public abstract boolean sameStructureAs(SemType type);
+	public boolean sameStructureAs(SemType type) {
+		if (this == type)
+			return true;
+		return SemEquivalence.sameStructure(this, type);
+	}
+
+	/**
+	 * Compare structure of this type with the given type. Component types are
+	 * compared with {@link #sameStructureAs(SemType)}, so their comparisons are
+	 * memoized too.
+	 * 
+	 * @param type
+	 *            given type
+	 * @return true if given type has the same structure as this type
+	 */
+	protected abstract boolean matches(SemType type);
 	
 	/**
 	 * Vrne velikost podatkovnega tipa v bytih.
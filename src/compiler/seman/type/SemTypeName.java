@@ -15,6 +15,9 @@ public class SemTypeName extends SemType {
 	/** Opis tipa. */
 	private SemType type;
 
+	/** Konkretna predstavitev tipa, ko je enkrat dolocena. */
+	private SemType actualType = null;
+
 	/**
 	 * Ustvari nov opis imena tipa.
 	 * 
@@ -55,11 +58,13 @@ public class SemTypeName extends SemType {
 
 	@Override
 	public SemType actualType() {
-		return type.actualType();
+		if (actualType == null)
+			actualType = type.actualType();
+		return actualType;
 	}
 
 	@Override
-	public boolean sameStructureAs(SemType type) {
+	protected boolean matches(SemType type) {
 		return this.actualType().sameStructureAs(type.actualType());
 	}
 
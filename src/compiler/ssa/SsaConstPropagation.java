@@ -0,0 +1,304 @@
+package compiler.ssa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.ListIterator;
+
+import compiler.cfg.*;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+import compiler.optimizer.OptConstFolding;
+
+/**
+ * Redko pogojno sirjenje konstant (Wegman in Zadeck).
+ * <p>
+ * Every version starts as undefined and can only be lowered to a constant
+ * and then to an unknown value. Blocks are evaluated only once an edge into
+ * them is found executable, and a conditional jump on a constant makes only
+ * one of its edges executable, so constants flowing around loops and past
+ * branches that are never taken are found. Afterwards uses of constant
+ * versions become constants, conditional jumps on constants become jumps
+ * and blocks that were never reached are removed.
+ */
+public class SsaConstPropagation {
+
+	/** Vrednost, ki ni konstanta. */
+	private static final Object UNKNOWN = new Object();
+
+	/** Stevilo uporab, nadomescenih s konstantami. */
+	public int numConstants = 0;
+
+	/** Stevilo pogojnih skokov, nadomescenih z brezpogojnimi. */
+	public int numBranches = 0;
+
+	/** Stevilo odstranjenih blokov, ki se nikoli ne izvedejo. */
+	public int numRemoved = 0;
+
+	private SsaForm ssa;
+
+	/** Vrednosti razlicic; razlicica brez vrednosti je nedefinirana. */
+	private HashMap<FrmTemp, Object> values;
+
+	/** Razlicice, definirane v kodi. */
+	private HashSet<FrmTemp> defined;
+
+	/** Stavki, skoki in funkcije phi, ki uporabljajo razlicice. */
+	private HashMap<FrmTemp, ArrayList<Object>> users;
+
+	/** Bloki stavkov, skokov in funkcij phi. */
+	private HashMap<Object, CfgBlock> blockOf;
+
+	private boolean[] executable;
+	private HashSet<Long> executableEdges;
+	private ArrayList<CfgBlock[]> pendingEdges;
+	private ArrayList<FrmTemp> pendingTemps;
+
+	/**
+	 * Razsiri konstante po grafu v obliki SSA.
+	 *
+	 * @param ssa
+	 *            Graf v obliki SSA.
+	 */
+	public void propagate(SsaForm ssa) {
+		this.ssa = ssa;
+		CfgGraph graph = ssa.graph;
+		values = new HashMap<>();
+		defined = new HashSet<>();
+		users = new HashMap<>();
+		blockOf = new HashMap<>();
+		executable = new boolean[graph.blocks.size()];
+		executableEdges = new HashSet<>();
+		pendingEdges = new ArrayList<>();
+		pendingTemps = new ArrayList<>();
+		collectUsers(graph);
+
+		executable[graph.entry().index] = true;
+		evaluate(graph.entry());
+		while (!pendingEdges.isEmpty() || !pendingTemps.isEmpty()) {
+			while (!pendingEdges.isEmpty()) {
+				CfgBlock[] edge = pendingEdges.remove(pendingEdges.size() - 1);
+				long key = (long) edge[0].index * graph.blocks.size() + edge[1].index;
+				if (!executableEdges.add(key))
+					continue;
+				if (executable[edge[1].index]) {
+					for (SsaPhi phi : ssa.phis(edge[1]))
+						evaluate(phi, edge[1]);
+				} else {
+					executable[edge[1].index] = true;
+					evaluate(edge[1]);
+				}
+			}
+			while (!pendingTemps.isEmpty()) {
+				FrmTemp temp = pendingTemps.remove(pendingTemps.size() - 1);
+				if (!users.containsKey(temp))
+					continue;
+				for (Object user : users.get(temp)) {
+					CfgBlock block = blockOf.get(user);
+					if (!executable[block.index])
+						continue;
+					if (user instanceof SsaPhi)
+						evaluate((SsaPhi) user, block);
+					else if (user == block.jump)
+						evaluateJump(block);
+					else
+						evaluate((ImcStmt) user);
+				}
+			}
+		}
+
+		rewrite(graph);
+	}
+
+	private void collectUsers(CfgGraph graph) {
+		ArrayList<FrmTemp> uses = new ArrayList<>();
+		for (CfgBlock block : graph.blocks) {
+			for (SsaPhi phi : ssa.phis(block)) {
+				defined.add(phi.temp);
+				addUser(phi, block, phi.args);
+			}
+			for (ImcStmt stmt : block.stmts) {
+				if (CfgGraph.def(stmt) != null)
+					defined.add(CfgGraph.def(stmt));
+				uses.clear();
+				CfgGraph.uses(stmt, uses);
+				addUser(stmt, block, uses);
+			}
+			if (block.jump != null) {
+				uses.clear();
+				CfgGraph.uses(block.jump, uses);
+				addUser(block.jump, block, uses);
+			}
+		}
+	}
+
+	private void addUser(Object user, CfgBlock block, ArrayList<FrmTemp> uses) {
+		blockOf.put(user, block);
+		for (FrmTemp use : uses) {
+			if (!users.containsKey(use))
+				users.put(use, new ArrayList<Object>());
+			ArrayList<Object> useUsers = users.get(use);
+			if (useUsers.isEmpty() || useUsers.get(useUsers.size() - 1) != user)
+				useUsers.add(user);
+		}
+	}
+
+	private void evaluate(CfgBlock block) {
+		for (SsaPhi phi : ssa.phis(block))
+			evaluate(phi, block);
+		for (ImcStmt stmt : block.stmts)
+			evaluate(stmt);
+		evaluateJump(block);
+	}
+
+	private void evaluate(SsaPhi phi, CfgBlock block) {
+		Object value = null;
+		for (int pred = 0; pred < block.preds.size(); pred++) {
+			long key = (long) block.preds.get(pred).index * executable.length + block.index;
+			if (executableEdges.contains(key))
+				value = meet(value, value(phi.args.get(pred)));
+		}
+		lower(phi.temp, value);
+	}
+
+	private void evaluate(ImcStmt stmt) {
+		FrmTemp def = CfgGraph.def(stmt);
+		if (def != null)
+			lower(def, value(((ImcMOVE) stmt).src));
+	}
+
+	private void evaluateJump(CfgBlock block) {
+		CfgGraph graph = ssa.graph;
+		if (block.jump == null) {
+			if (graph.next(block) != null)
+				pendingEdges.add(new CfgBlock[] { block, graph.next(block) });
+		} else if (block.jump instanceof ImcJUMP) {
+			CfgBlock target = graph.block(((ImcJUMP) block.jump).label);
+			if (target != null)
+				pendingEdges.add(new CfgBlock[] { block, target });
+		} else {
+			ImcCJUMP cjump = (ImcCJUMP) block.jump;
+			Object cond = value(cjump.cond);
+			if (cond == null)
+				return;
+			if (cond == UNKNOWN || (Integer) cond != 0) {
+				CfgBlock target = graph.block(cjump.trueLabel);
+				if (target != null)
+					pendingEdges.add(new CfgBlock[] { block, target });
+			}
+			if (cond == UNKNOWN || (Integer) cond == 0) {
+				CfgBlock target = graph.block(cjump.falseLabel);
+				if (target != null)
+					pendingEdges.add(new CfgBlock[] { block, target });
+			}
+		}
+	}
+
+	private void lower(FrmTemp temp, Object value) {
+		Object old = values.get(temp);
+		if (value == null || old == UNKNOWN || value.equals(old))
+			return;
+		values.put(temp, old == null ? value : UNKNOWN);
+		pendingTemps.add(temp);
+	}
+
+	private static Object meet(Object v1, Object v2) {
+		if (v1 == null)
+			return v2;
+		if (v2 == null)
+			return v1;
+		return v1.equals(v2) ? v1 : UNKNOWN;
+	}
+
+	/**
+	 * Vrne vrednost izraza: null, ce je nedefinirana, konstanto ali UNKNOWN.
+	 */
+	private Object value(ImcExpr expr) {
+		if (expr instanceof ImcCONST)
+			return ((ImcCONST) expr).value;
+		if (expr instanceof ImcTEMP)
+			return value(((ImcTEMP) expr).temp);
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			Object l = value(binop.limc);
+			Object r = value(binop.rimc);
+			if (l == UNKNOWN || r == UNKNOWN)
+				return UNKNOWN;
+			if (l == null || r == null)
+				return null;
+			Integer value = OptConstFolding.fold(binop.op, (Integer) l, (Integer) r);
+			return value == null ? UNKNOWN : value;
+		}
+		return UNKNOWN;
+	}
+
+	private Object value(FrmTemp temp) {
+		// the original temporaries hold values from outside the code
+		return defined.contains(temp) ? values.get(temp) : UNKNOWN;
+	}
+
+	private void rewrite(CfgGraph graph) {
+		int size = graph.blocks.size();
+		graph.blocks.removeIf(block -> !executable[block.index]);
+		numRemoved += size - graph.blocks.size();
+
+		for (CfgBlock block : graph.blocks) {
+			ListIterator<ImcStmt> stmts = block.stmts.listIterator();
+			while (stmts.hasNext()) {
+				ImcStmt stmt = stmts.next();
+				if (stmt instanceof ImcMOVE) {
+					ImcMOVE move = (ImcMOVE) stmt;
+					Object value = CfgGraph.def(stmt) == null ? null : value(move.src);
+					if (value instanceof Integer && !(move.src instanceof ImcCONST))
+						move.src = new ImcCONST((Integer) value);
+					else
+						move.src = substitute(move.src);
+					if (move.dst instanceof ImcMEM)
+						((ImcMEM) move.dst).expr = substitute(((ImcMEM) move.dst).expr);
+				} else if (stmt instanceof ImcEXP)
+					((ImcEXP) stmt).expr = substitute(((ImcEXP) stmt).expr);
+			}
+			if (block.jump instanceof ImcCJUMP) {
+				ImcCJUMP cjump = (ImcCJUMP) block.jump;
+				Object cond = value(cjump.cond);
+				if (cond instanceof Integer) {
+					block.jump = new ImcJUMP((Integer) cond != 0 ? cjump.trueLabel : cjump.falseLabel);
+					numBranches++;
+				} else
+					cjump.cond = substitute(cjump.cond);
+			}
+		}
+		graph.connect();
+	}
+
+	/**
+	 * Nadomesti uporabe konstantnih razlicic s konstantami.
+	 */
+	private ImcExpr substitute(ImcExpr expr) {
+		if (expr instanceof ImcTEMP) {
+			Object value = value(((ImcTEMP) expr).temp);
+			if (value instanceof Integer) {
+				numConstants++;
+				return new ImcCONST((Integer) value);
+			}
+		} else if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			binop.limc = substitute(binop.limc);
+			binop.rimc = substitute(binop.rimc);
+			if (binop.limc instanceof ImcCONST && binop.rimc instanceof ImcCONST) {
+				Integer value = OptConstFolding.fold(binop.op,
+						((ImcCONST) binop.limc).value, ((ImcCONST) binop.rimc).value);
+				if (value != null)
+					return new ImcCONST(value);
+			}
+		} else if (expr instanceof ImcMEM) {
+			((ImcMEM) expr).expr = substitute(((ImcMEM) expr).expr);
+		} else if (expr instanceof ImcCALL) {
+			ListIterator<ImcExpr> args = ((ImcCALL) expr).args.listIterator();
+			while (args.hasNext())
+				args.set(substitute(args.next()));
+		}
+		return expr;
+	}
+
+}
@@ -0,0 +1,90 @@
+package compiler.ssa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import compiler.cfg.*;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+import compiler.optimizer.OptTreePass;
+
+/**
+ * Odstranjevanje mrtve kode v obliki SSA.
+ * <p>
+ * Stores to memory, calls, jumps and expressions that may stop the program
+ * are live. So is the statement the function ends with, as its value is
+ * the value of the call. Definitions reached from live code through uses
+ * are live as well; all other moves and expression statements are removed.
+ */
+public class SsaDeadCode {
+
+	/** Stevilo odstranjenih stavkov. */
+	public int numRemoved = 0;
+
+	/**
+	 * Odstrani mrtve stavke grafa v obliki SSA.
+	 *
+	 * @param ssa
+	 *            Graf v obliki SSA.
+	 */
+	public void eliminate(SsaForm ssa) {
+		CfgGraph graph = ssa.graph;
+		HashMap<FrmTemp, Object> defs = new HashMap<>();
+		for (CfgBlock block : graph.blocks) {
+			for (SsaPhi phi : ssa.phis(block))
+				defs.put(phi.temp, phi);
+			for (ImcStmt stmt : block.stmts)
+				if (CfgGraph.def(stmt) != null)
+					defs.put(CfgGraph.def(stmt), stmt);
+		}
+
+		HashSet<Object> live = new HashSet<>();
+		ArrayList<Object> pending = new ArrayList<>();
+		for (CfgBlock block : graph.blocks) {
+			for (ImcStmt stmt : block.stmts)
+				if (!removable(stmt) && live.add(stmt))
+					pending.add(stmt);
+			if (block.jump != null && live.add(block.jump))
+				pending.add(block.jump);
+		}
+		for (ImcStmt stmt : graph.resultStmts())
+			if (live.add(stmt))
+				pending.add(stmt);
+
+		ArrayList<FrmTemp> uses = new ArrayList<>();
+		while (!pending.isEmpty()) {
+			Object code = pending.remove(pending.size() - 1);
+			uses.clear();
+			if (code instanceof SsaPhi)
+				uses.addAll(((SsaPhi) code).args);
+			else
+				CfgGraph.uses((ImcCode) code, uses);
+			for (FrmTemp use : uses) {
+				Object def = defs.get(use);
+				if (def != null && live.add(def))
+					pending.add(def);
+			}
+		}
+
+		for (CfgBlock block : graph.blocks) {
+			Iterator<ImcStmt> stmts = block.stmts.iterator();
+			while (stmts.hasNext())
+				if (!live.contains(stmts.next())) {
+					stmts.remove();
+					numRemoved++;
+				}
+			ssa.phis(block).removeIf(phi -> !live.contains(phi));
+		}
+	}
+
+	private static boolean removable(ImcStmt stmt) {
+		if (stmt instanceof ImcEXP)
+			return OptTreePass.pure(((ImcEXP) stmt).expr);
+		if (CfgGraph.def(stmt) != null)
+			return OptTreePass.pure(((ImcMOVE) stmt).src);
+		return false;
+	}
+
+}
@@ -0,0 +1,279 @@
+package compiler.ssa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+import compiler.cfg.*;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+
+/**
+ * Oblika SSA grafa pretoka.
+ * <p>
+ * Phi functions are placed at the iterated dominance frontiers of the
+ * definitions of every temporary that is used in some block before that
+ * block defines it. Renaming walks the dominator tree and gives each
+ * definition a fresh temporary. A use that no definition reaches, such as
+ * the frame pointer, keeps the original temporary.
+ * <p>
+ * The passes on this form only replace uses by constants and remove code,
+ * so the versions of one temporary are never live at the same time. Leaving
+ * the form therefore coalesces every phi web back into its original
+ * temporary and no copies are needed.
+ */
+public class SsaForm {
+
+	/** Graf pretoka. */
+	public final CfgGraph graph;
+
+	/** Prvotne zacasne spremenljivke razlicic. */
+	private final HashMap<FrmTemp, FrmTemp> originals = new HashMap<>();
+
+	/** Funkcije phi po blokih. */
+	private final HashMap<CfgBlock, ArrayList<SsaPhi>> phis = new HashMap<>();
+
+	/** Trenutne razlicice prvotnih zacasnih spremenljivk med preimenovanjem. */
+	private final HashMap<FrmTemp, LinkedList<FrmTemp>> versions = new HashMap<>();
+
+	/** Stevilo postavljenih funkcij phi. */
+	public int numPhis = 0;
+
+	/**
+	 * Pretvori graf pretoka v obliko SSA.
+	 *
+	 * @param graph
+	 *            Graf pretoka.
+	 */
+	public SsaForm(CfgGraph graph) {
+		this.graph = graph;
+		CfgDominators dominators = new CfgDominators(graph);
+		placePhis(dominators);
+		rename(dominators);
+	}
+
+	/**
+	 * Vrne funkcije phi bloka.
+	 */
+	public List<SsaPhi> phis(CfgBlock block) {
+		ArrayList<SsaPhi> blockPhis = phis.get(block);
+		return blockPhis == null ? new ArrayList<SsaPhi>() : blockPhis;
+	}
+
+	private void placePhis(CfgDominators dominators) {
+		List<CfgBlock> blocks = dominators.reversePostorder();
+
+		// temporaries live across blocks and the blocks defining them
+		HashSet<FrmTemp> globals = new HashSet<>();
+		LinkedHashMap<FrmTemp, ArrayList<CfgBlock>> defBlocks = new LinkedHashMap<>();
+		for (CfgBlock block : blocks) {
+			HashSet<FrmTemp> defined = new HashSet<>();
+			ArrayList<FrmTemp> uses = new ArrayList<>();
+			for (ImcStmt stmt : block.stmts) {
+				uses.clear();
+				CfgGraph.uses(stmt, uses);
+				for (FrmTemp use : uses)
+					if (!defined.contains(use))
+						globals.add(use);
+				FrmTemp def = CfgGraph.def(stmt);
+				if (def != null && defined.add(def)) {
+					if (!defBlocks.containsKey(def))
+						defBlocks.put(def, new ArrayList<CfgBlock>());
+					defBlocks.get(def).add(block);
+				}
+			}
+			uses.clear();
+			CfgGraph.uses(block.jump, uses);
+			for (FrmTemp use : uses)
+				if (!defined.contains(use))
+					globals.add(use);
+		}
+
+		ArrayList<ArrayList<CfgBlock>> frontiers = frontiers(dominators);
+		for (FrmTemp temp : defBlocks.keySet()) {
+			if (!globals.contains(temp))
+				continue;
+			HashSet<CfgBlock> hasPhi = new HashSet<>();
+			HashSet<CfgBlock> queued = new HashSet<>(defBlocks.get(temp));
+			ArrayList<CfgBlock> pending = new ArrayList<>(defBlocks.get(temp));
+			while (!pending.isEmpty()) {
+				CfgBlock block = pending.remove(pending.size() - 1);
+				for (CfgBlock frontier : frontiers.get(block.index)) {
+					if (!hasPhi.add(frontier))
+						continue;
+					if (!phis.containsKey(frontier))
+						phis.put(frontier, new ArrayList<SsaPhi>());
+					phis.get(frontier).add(new SsaPhi(temp, frontier.preds.size()));
+					numPhis++;
+					if (queued.add(frontier))
+						pending.add(frontier);
+				}
+			}
+		}
+	}
+
+	private ArrayList<ArrayList<CfgBlock>> frontiers(CfgDominators dominators) {
+		ArrayList<ArrayList<CfgBlock>> frontiers = new ArrayList<>();
+		for (int block = 0; block < graph.blocks.size(); block++)
+			frontiers.add(new ArrayList<CfgBlock>());
+		for (CfgBlock block : dominators.reversePostorder()) {
+			if (block.preds.size() < 2)
+				continue;
+			for (CfgBlock pred : block.preds) {
+				if (!dominators.isReachable(pred))
+					continue;
+				CfgBlock runner = pred;
+				while (runner != null && runner != dominators.idom(block)) {
+					ArrayList<CfgBlock> frontier = frontiers.get(runner.index);
+					if (!frontier.contains(block))
+						frontier.add(block);
+					runner = dominators.idom(runner);
+				}
+			}
+		}
+		return frontiers;
+	}
+
+	private void rename(CfgDominators dominators) {
+		// iterative walk of the dominator tree, functions can be long
+		ArrayList<CfgBlock> stack = new ArrayList<>();
+		ArrayList<ArrayList<FrmTemp>> defined = new ArrayList<>();
+		stack.add(graph.entry());
+		defined.add(null);
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			CfgBlock block = stack.get(top);
+			if (defined.get(top) == null) {
+				defined.set(top, enter(block));
+				for (CfgBlock child : dominators.children(block)) {
+					stack.add(child);
+					defined.add(null);
+				}
+			} else {
+				for (FrmTemp original : defined.get(top))
+					versions.get(original).pop();
+				stack.remove(top);
+				defined.remove(top);
+			}
+		}
+	}
+
+	/**
+	 * Preimenuje definicije in uporabe bloka ter argumente funkcij phi
+	 * naslednikov.
+	 *
+	 * @return Prvotne zacasne spremenljivke, katerih razlicice je blok
+	 *         definiral.
+	 */
+	private ArrayList<FrmTemp> enter(CfgBlock block) {
+		ArrayList<FrmTemp> defined = new ArrayList<>();
+		for (SsaPhi phi : phis(block)) {
+			phi.temp = define(phi.original);
+			defined.add(phi.original);
+		}
+
+		ListIterator<ImcStmt> stmts = block.stmts.listIterator();
+		while (stmts.hasNext()) {
+			ImcStmt stmt = stmts.next();
+			if (stmt instanceof ImcMOVE) {
+				ImcMOVE move = (ImcMOVE) stmt;
+				ImcExpr src = use(move.src);
+				if (move.dst instanceof ImcTEMP) {
+					FrmTemp original = ((ImcTEMP) move.dst).temp;
+					stmts.set(new ImcMOVE(new ImcTEMP(define(original)), src));
+					defined.add(original);
+				} else
+					stmts.set(new ImcMOVE(use(move.dst), src));
+			} else if (stmt instanceof ImcEXP)
+				stmts.set(new ImcEXP(use(((ImcEXP) stmt).expr)));
+		}
+		if (block.jump instanceof ImcCJUMP) {
+			ImcCJUMP cjump = (ImcCJUMP) block.jump;
+			block.jump = new ImcCJUMP(use(cjump.cond), cjump.trueLabel, cjump.falseLabel);
+		}
+
+		for (CfgBlock succ : block.succs)
+			for (SsaPhi phi : phis(succ))
+				phi.args.set(succ.preds.indexOf(block), current(phi.original));
+		return defined;
+	}
+
+	private FrmTemp define(FrmTemp original) {
+		FrmTemp version = new FrmTemp();
+		originals.put(version, original);
+		if (!versions.containsKey(original))
+			versions.put(original, new LinkedList<FrmTemp>());
+		versions.get(original).push(version);
+		return version;
+	}
+
+	private FrmTemp current(FrmTemp original) {
+		LinkedList<FrmTemp> stack = versions.get(original);
+		return stack == null || stack.isEmpty() ? original : stack.peek();
+	}
+
+	/**
+	 * Vrne kopijo izraza, v kateri so uporabe preimenovane.
+	 */
+	private ImcExpr use(ImcExpr expr) {
+		if (expr instanceof ImcTEMP)
+			return new ImcTEMP(current(((ImcTEMP) expr).temp));
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			return new ImcBINOP(binop.op, use(binop.limc), use(binop.rimc));
+		}
+		if (expr instanceof ImcMEM)
+			return new ImcMEM(use(((ImcMEM) expr).expr));
+		if (expr instanceof ImcCALL) {
+			ImcCALL call = new ImcCALL(((ImcCALL) expr).label);
+			for (ImcExpr arg : ((ImcCALL) expr).args)
+				call.args.add(use(arg));
+			return call;
+		}
+		if (expr instanceof ImcCONST)
+			return new ImcCONST(((ImcCONST) expr).value);
+		if (expr instanceof ImcNAME)
+			return new ImcNAME(((ImcNAME) expr).label);
+		return expr;
+	}
+
+	/**
+	 * Zapusti obliko SSA: razlicice postanejo spet prvotne zacasne
+	 * spremenljivke, funkcije phi pa so odstranjene.
+	 */
+	public void destruct() {
+		for (CfgBlock block : graph.blocks) {
+			for (ImcStmt stmt : block.stmts)
+				restore(stmt);
+			restore(block.jump);
+		}
+		phis.clear();
+	}
+
+	private void restore(ImcCode code) {
+		if (code instanceof ImcTEMP) {
+			ImcTEMP temp = (ImcTEMP) code;
+			if (originals.containsKey(temp.temp))
+				temp.temp = originals.get(temp.temp);
+		} else if (code instanceof ImcMOVE) {
+			restore(((ImcMOVE) code).dst);
+			restore(((ImcMOVE) code).src);
+		} else if (code instanceof ImcEXP)
+			restore(((ImcEXP) code).expr);
+		else if (code instanceof ImcCJUMP)
+			restore(((ImcCJUMP) code).cond);
+		else if (code instanceof ImcBINOP) {
+			restore(((ImcBINOP) code).limc);
+			restore(((ImcBINOP) code).rimc);
+		} else if (code instanceof ImcMEM)
+			restore(((ImcMEM) code).expr);
+		else if (code instanceof ImcCALL)
+			for (ImcExpr arg : ((ImcCALL) code).args)
+				restore(arg);
+	}
+
+}
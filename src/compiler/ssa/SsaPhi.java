@@ -0,0 +1,39 @@
+package compiler.ssa;
+
+import java.util.ArrayList;
+
+import compiler.frames.FrmTemp;
+
+/**
+ * Funkcija phi na zacetku osnovnega bloka.
+ * <p>
+ * The arguments are listed in the order of the predecessors of the block.
+ * An argument that no definition reaches is the original temporary itself.
+ */
+public class SsaPhi {
+
+	/** Prvotna zacasna spremenljivka. */
+	public final FrmTemp original;
+
+	/** Razlicica, ki jo phi definira. */
+	public FrmTemp temp;
+
+	/** Razlicice po predhodnikih bloka. */
+	public final ArrayList<FrmTemp> args = new ArrayList<>();
+
+	/**
+	 * Ustvari novo funkcijo phi.
+	 *
+	 * @param original
+	 *            Prvotna zacasna spremenljivka.
+	 * @param numPreds
+	 *            Stevilo predhodnikov bloka.
+	 */
+	public SsaPhi(FrmTemp original, int numPreds) {
+		this.original = original;
+		this.temp = original;
+		for (int pred = 0; pred < numPreds; pred++)
+			args.add(original);
+	}
+
+}
@@ -0,0 +1,368 @@
+package compiler.ssa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import compiler.cfg.*;
+import compiler.frames.FrmTemp;
+import compiler.imcode.*;
+import compiler.optimizer.OptTreePass;
+import compiler.optimizer.Optimizer;
+
+/**
+ * Globalno stevilcenje vrednosti v obliki SSA.
+ * <p>
+ * Expressions are keyed by their structure, with operands of commutative
+ * operators ordered and temporaries replaced by the keys of the values
+ * they were assigned, so equal values get equal keys. Walking the
+ * dominator tree, an expression whose key was computed in a dominating
+ * block is replaced by a temporary that the first computation is stored
+ * to. Storing to a temporary costs the interpreter a move and a lookup per
+ * use, so a first pass estimates what reusing each computation saves,
+ * counting a block ten times for every loop it is nested in, and only
+ * computations that save more than they cost get a temporary.
+ * <p>
+ * Expressions that load from memory are only reused within a block or in
+ * its successors with no other predecessor. Calls invalidate them all. A
+ * store invalidates every load that may read the stored word; only loads
+ * at a different constant offset from the same base are known not to.
+ */
+public class SsaValueNumbering {
+
+	/** Stevilo izracunov, nadomescenih z zacasnimi spremenljivkami. */
+	public int numReused = 0;
+
+	/** Stevilo novih zacasnih spremenljivk. */
+	public int numTemps = 0;
+
+	/** Izracunana vrednost izraza. */
+	private static class Value {
+
+		/** Prvi izracun vrednosti. */
+		final ImcExpr expr;
+
+		/** Naslovi branj iz pomnilnika, od katerih je vrednost odvisna. */
+		final ArrayList<Address> loads;
+
+		/** Zacasna spremenljivka z vrednostjo ali null. */
+		FrmTemp temp = null;
+
+		/** Ocena cene shranjevanja vrednosti v zacasno spremenljivko. */
+		double cost = 0;
+
+		/** Ocena prihranka ponovnih uporab vrednosti. */
+		double savings = 0;
+
+		Value(ImcExpr expr, ArrayList<Address> loads) {
+			this.expr = expr;
+			this.loads = loads;
+		}
+
+	}
+
+	/** Naslov kot vsota osnove in odmika. */
+	private static class Address {
+
+		final String base;
+		final int offset;
+
+		Address(String base, int offset) {
+			this.base = base;
+			this.offset = offset;
+		}
+
+		boolean mayAlias(Address that) {
+			return !base.equals(that.base) || offset == that.offset;
+		}
+
+	}
+
+	private SsaForm ssa;
+	private CfgDominators dominators;
+	private CfgLoops loops;
+
+	/** Ali drugi prehod shranjuje ponovno uporabljene vrednosti. */
+	private boolean rewrite;
+
+	/** Prvi izracuni, ki so ponovno uporabljeni. */
+	private HashSet<ImcExpr> reused;
+
+	/** Prvi izracuni vrednosti v prvem prehodu. */
+	private ArrayList<Value> firsts;
+
+	/** Kljuci vrednosti razlicic. */
+	private HashMap<FrmTemp, String> tempKeys;
+
+	/** Izrazi, katerih vrednosti so shranjene v razlicicah. */
+	private HashMap<FrmTemp, ImcExpr> tempExprs;
+
+	/** Vrednosti brez branj iz pomnilnika v dominatorjih. */
+	private HashMap<String, Value> values;
+
+	/** Vrednosti z branji iz pomnilnika v trenutnem bloku. */
+	private LinkedHashMap<String, Value> loads;
+
+	/** Vrednosti z branji iz pomnilnika na koncih blokov. */
+	private HashMap<CfgBlock, LinkedHashMap<String, Value>> loadsOut;
+
+	/** Trenutni blok. */
+	private CfgBlock block;
+
+	/**
+	 * Nadomesti ponovne izracune vrednosti grafa v obliki SSA.
+	 *
+	 * @param ssa
+	 *            Graf v obliki SSA.
+	 */
+	public void number(SsaForm ssa) {
+		this.ssa = ssa;
+		dominators = new CfgDominators(ssa.graph);
+		loops = new CfgLoops(ssa.graph, dominators);
+		reused = new HashSet<>();
+		firsts = new ArrayList<>();
+		rewrite = false;
+		walk();
+		for (Value value : firsts)
+			if (value.savings > value.cost)
+				reused.add(value.expr);
+		if (reused.isEmpty())
+			return;
+		rewrite = true;
+		walk();
+	}
+
+	private void walk() {
+		tempKeys = new HashMap<>();
+		tempExprs = new HashMap<>();
+		values = new HashMap<>();
+		loadsOut = new HashMap<>();
+
+		// iterative walk of the dominator tree, functions can be long
+		ArrayList<CfgBlock> stack = new ArrayList<>();
+		ArrayList<ArrayList<String>> added = new ArrayList<>();
+		stack.add(ssa.graph.entry());
+		added.add(null);
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			CfgBlock block = stack.get(top);
+			if (added.get(top) == null) {
+				added.set(top, enter(block));
+				for (CfgBlock child : dominators.children(block)) {
+					stack.add(child);
+					added.add(null);
+				}
+			} else {
+				for (String key : added.get(top))
+					values.remove(key);
+				stack.remove(top);
+				added.remove(top);
+			}
+		}
+	}
+
+	/**
+	 * Obdela stavke bloka.
+	 *
+	 * @return Kljuci vrednosti, dodanih v bloku.
+	 */
+	private ArrayList<String> enter(CfgBlock block) {
+		this.block = block;
+		ArrayList<String> added = new ArrayList<>();
+		CfgBlock idom = dominators.idom(block);
+		if (idom != null && block.preds.size() == 1 && block.preds.get(0) == idom)
+			loads = new LinkedHashMap<>(loadsOut.get(idom));
+		else
+			loads = new LinkedHashMap<>();
+
+		ArrayList<ImcStmt> stmts = new ArrayList<>(block.stmts);
+		if (rewrite)
+			block.stmts.clear();
+		for (ImcStmt stmt : stmts) {
+			if (stmt instanceof ImcMOVE) {
+				ImcMOVE move = (ImcMOVE) stmt;
+				if (move.dst instanceof ImcMEM) {
+					ImcMEM dst = (ImcMEM) move.dst;
+					dst.expr = visit(dst.expr, added);
+					move.src = visit(move.src, added);
+					store(address(dst.expr));
+				} else if (move.src instanceof ImcCALL) {
+					loads.clear();
+				} else {
+					move.src = visit(move.src, added);
+					FrmTemp temp = ((ImcTEMP) move.dst).temp;
+					if (OptTreePass.pure(move.src) && loads(move.src).isEmpty()) {
+						tempKeys.put(temp, key(move.src));
+						if (!(move.src instanceof ImcCONST))
+							tempExprs.put(temp, move.src);
+					}
+				}
+			} else if (stmt instanceof ImcEXP) {
+				ImcEXP exp = (ImcEXP) stmt;
+				if (exp.expr instanceof ImcCALL)
+					loads.clear();
+				else
+					exp.expr = visit(exp.expr, added);
+			}
+			if (rewrite)
+				block.stmts.add(stmt);
+		}
+		if (block.jump instanceof ImcCJUMP) {
+			ImcCJUMP cjump = (ImcCJUMP) block.jump;
+			cjump.cond = visit(cjump.cond, added);
+		}
+		loadsOut.put(block, loads);
+		return added;
+	}
+
+	/**
+	 * Obdela izraz od korena proti listom.
+	 *
+	 * @param expr
+	 *            Izraz.
+	 * @param added
+	 *            Kljuci vrednosti, dodanih v bloku.
+	 * @return Nov ali isti izraz.
+	 */
+	private ImcExpr visit(ImcExpr expr, ArrayList<String> added) {
+		if (!(expr instanceof ImcBINOP || expr instanceof ImcMEM))
+			return expr;
+		boolean candidate = Optimizer.size(expr) >= 3 && OptTreePass.pure(expr);
+		String key = candidate ? key(expr) : null;
+		if (candidate) {
+			Value value = values.containsKey(key) ? values.get(key) : loads.get(key);
+			if (value != null) {
+				if (!rewrite) {
+					value.savings += frequency() * (Optimizer.size(expr) - 1);
+					return expr;
+				}
+				numReused++;
+				return new ImcTEMP(value.temp);
+			}
+		}
+
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			binop.limc = visit(binop.limc, added);
+			binop.rimc = visit(binop.rimc, added);
+		} else {
+			ImcMEM mem = (ImcMEM) expr;
+			mem.expr = visit(mem.expr, added);
+		}
+		if (!candidate || (rewrite && !reused.contains(expr)))
+			return expr;
+
+		Value value = new Value(expr, loads(expr));
+		if (!rewrite) {
+			// a move and a lookup
+			value.cost = frequency() * 3;
+			firsts.add(value);
+		}
+		if (value.loads.isEmpty()) {
+			values.put(key, value);
+			added.add(key);
+		} else
+			loads.put(key, value);
+		if (!rewrite)
+			return expr;
+
+		// the computation is reused, keep its value
+		value.temp = new FrmTemp();
+		tempKeys.put(value.temp, key);
+		tempExprs.put(value.temp, expr);
+		block.stmts.add(new ImcMOVE(new ImcTEMP(value.temp), expr));
+		numTemps++;
+		return new ImcTEMP(value.temp);
+	}
+
+	/**
+	 * Oceni, kolikokrat se izvede trenutni blok.
+	 */
+	private double frequency() {
+		return Math.pow(10, Math.min(loops.depth(block), 6));
+	}
+
+	/**
+	 * Vrne kljuc vrednosti izraza.
+	 */
+	private String key(ImcExpr expr) {
+		if (expr instanceof ImcCONST)
+			return "#" + ((ImcCONST) expr).value;
+		if (expr instanceof ImcNAME)
+			return "@" + ((ImcNAME) expr).label.name();
+		if (expr instanceof ImcTEMP) {
+			FrmTemp temp = ((ImcTEMP) expr).temp;
+			return tempKeys.containsKey(temp) ? tempKeys.get(temp) : temp.name();
+		}
+		if (expr instanceof ImcMEM)
+			return "[" + key(((ImcMEM) expr).expr) + "]";
+		if (expr instanceof ImcBINOP) {
+			ImcBINOP binop = (ImcBINOP) expr;
+			String l = key(binop.limc);
+			String r = key(binop.rimc);
+			if (commutative(binop.op) && l.compareTo(r) > 0) {
+				String tmp = l;
+				l = r;
+				r = tmp;
+			}
+			return "(" + binop.op + " " + l + " " + r + ")";
+		}
+		return expr.toString();
+	}
+
+	private static boolean commutative(int op) {
+		return op == ImcBINOP.ADD || op == ImcBINOP.MUL || op == ImcBINOP.EQU
+				|| op == ImcBINOP.NEQ || op == ImcBINOP.AND || op == ImcBINOP.OR
+				|| op == ImcBINOP.BITAND;
+	}
+
+	/**
+	 * Vrne naslove branj iz pomnilnika, od katerih je vrednost izraza
+	 * odvisna.
+	 */
+	private ArrayList<Address> loads(ImcExpr expr) {
+		ArrayList<Address> addresses = new ArrayList<>();
+		loads(expr, addresses);
+		return addresses;
+	}
+
+	private void loads(ImcExpr expr, ArrayList<Address> addresses) {
+		if (expr instanceof ImcTEMP && tempExprs.containsKey(((ImcTEMP) expr).temp))
+			loads(tempExprs.get(((ImcTEMP) expr).temp), addresses);
+		else if (expr instanceof ImcMEM) {
+			addresses.add(address(((ImcMEM) expr).expr));
+			loads(((ImcMEM) expr).expr, addresses);
+		} else if (expr instanceof ImcBINOP) {
+			loads(((ImcBINOP) expr).limc, addresses);
+			loads(((ImcBINOP) expr).rimc, addresses);
+		}
+	}
+
+	/**
+	 * Razstavi naslov na osnovo in konstanten odmik.
+	 */
+	private Address address(ImcExpr expr) {
+		while (expr instanceof ImcTEMP && tempExprs.containsKey(((ImcTEMP) expr).temp))
+			expr = tempExprs.get(((ImcTEMP) expr).temp);
+		if (expr instanceof ImcBINOP && ((ImcBINOP) expr).op == ImcBINOP.ADD
+				&& ((ImcBINOP) expr).rimc instanceof ImcCONST)
+			return new Address(key(((ImcBINOP) expr).limc), ((ImcCONST) ((ImcBINOP) expr).rimc).value);
+		return new Address(key(expr), 0);
+	}
+
+	/**
+	 * Razveljavi vrednosti, ki so morda prebrale shranjeno besedo.
+	 */
+	private void store(Address address) {
+		Iterator<Value> values = loads.values().iterator();
+		while (values.hasNext())
+			for (Address load : values.next().loads)
+				if (load.mayAlias(address)) {
+					values.remove();
+					break;
+				}
+	}
+
+}
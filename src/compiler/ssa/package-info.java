@@ -0,0 +1,4 @@
+/**
+ * Oblika SSA linearizirane vmesne kode.
+ */
+package compiler.ssa;
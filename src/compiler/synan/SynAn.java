@@ -1,6 +1,9 @@
 package compiler.synan;
 
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import compiler.Position;
 import compiler.Report;
@@ -15,15 +18,65 @@ import compiler.lexan.*;
  */
 public class SynAn {
 
-	/** Leksikalni analizator. */
-	private LexAn lexAn;
+	/** Zaporedje leksikalnih simbolov. */
+	private TokenStream tokens;
 
 	/** Ali se izpisujejo vmesni rezultati. */
 	private boolean dump;
 
-	/** Current & previous symbol */
-	private Symbol symbol = null;
-	private Symbol previous = null;
+	/** Ali se definicije na najvisjem nivoju razclenjujejo vzporedno. */
+	private boolean parallel = false;
+
+	/**
+	 * Whether this parser parses a single top-level definition on a worker
+	 * thread; syntax errors are thrown instead of reported.
+	 */
+	private boolean chunk = false;
+
+	/** Maximal number of top-level definitions parsed by one task. */
+	private static final int DEFINITIONS_PER_TASK = 64;
+
+	/** Indices of current & previous symbol */
+	private int symbol = -1;
+	private int previous = -1;
+
+	/** Binding powers of binary operators. */
+	private static final int IOR_POWER = 1;
+	private static final int AND_POWER = 2;
+	private static final int CMP_POWER = 3;
+	private static final int ADD_POWER = 4;
+	private static final int MUL_POWER = 5;
+
+	/**
+	 * Binding powers of binary operators, indexed by token; 0 for tokens which
+	 * are not binary operators.
+	 */
+	private static final int[] bindingPowers = new int[Token.KW_IMPORT + 1];
+
+	/** Operators of binary expressions, indexed by token. */
+	private static final int[] binaryOperators = new int[Token.KW_IMPORT + 1];
+
+	static {
+		binaryOperator(Token.IOR, IOR_POWER, AbsBinExpr.IOR);
+		binaryOperator(Token.AND, AND_POWER, AbsBinExpr.AND);
+		binaryOperator(Token.EQU, CMP_POWER, AbsBinExpr.EQU);
+		binaryOperator(Token.NEQ, CMP_POWER, AbsBinExpr.NEQ);
+		binaryOperator(Token.LTH, CMP_POWER, AbsBinExpr.LTH);
+		binaryOperator(Token.GTH, CMP_POWER, AbsBinExpr.GTH);
+		binaryOperator(Token.LEQ, CMP_POWER, AbsBinExpr.LEQ);
+		binaryOperator(Token.GEQ, CMP_POWER, AbsBinExpr.GEQ);
+		binaryOperator(Token.ADD, ADD_POWER, AbsBinExpr.ADD);
+		binaryOperator(Token.SUB, ADD_POWER, AbsBinExpr.SUB);
+		binaryOperator(Token.MUL, MUL_POWER, AbsBinExpr.MUL);
+		binaryOperator(Token.DIV, MUL_POWER, AbsBinExpr.DIV);
+		binaryOperator(Token.MOD, MUL_POWER, AbsBinExpr.MOD);
+		binaryOperator(Token.DOT, MUL_POWER, AbsBinExpr.DOT);
+	}
+
+	private static void binaryOperator(int token, int power, int oper) {
+		bindingPowers[token] = power;
+		binaryOperators[token] = oper;
+	}
 
 	/**
 	 * Ustvari nov sintaksni analizator.
@@ -34,23 +87,178 @@ public class SynAn {
 	 *            Ali se izpisujejo vmesni rezultati.
 	 */
 	public SynAn(LexAn lexAn, boolean dump) {
-		this.lexAn = lexAn;
 		this.dump = dump;
 
-		this.symbol = this.lexAn.lexAn();
-		this.previous = this.symbol;
+		this.tokens = lexAn.tokens();
+		if (this.tokens != null) {
+			this.symbol = this.tokens.next();
+			this.previous = this.symbol;
+		}
+	}
+
+	/**
+	 * Ustvari nov sintaksni analizator.
+	 * 
+	 * @param lexAn
+	 *            Leksikalni analizator.
+	 * @param dump
+	 *            Ali se izpisujejo vmesni rezultati.
+	 * @param parallel
+	 *            Ali se definicije na najvisjem nivoju razclenjujejo
+	 *            vzporedno.
+	 */
+	public SynAn(LexAn lexAn, boolean dump, boolean parallel) {
+		this(lexAn, dump);
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Create parser for a top-level definition, which begins at given symbol.
+	 * 
+	 * @param tokens
+	 *            all symbols of the file
+	 * @param begin
+	 *            index of the first symbol of the definition
+	 */
+	private SynAn(TokenBuffer tokens, int begin) {
+		this.dump = false;
+		this.chunk = true;
+
+		this.tokens = tokens.from(begin);
+		this.symbol = this.tokens.next();
+		this.previous = begin > 0 ? begin - 1 : this.symbol;
 	}
 
 	/**
 	 * Opravi sintaksno analizo.
 	 */
 	public AbsTree parse() {
-		if (symbol == null)
+		if (tokens == null)
 			Report.error("Error accessing LexAn");
 
+		if (parallel && !dump && tokens instanceof TokenBuffer) {
+			AbsTree abstrTree = parseParallel((TokenBuffer) tokens);
+			if (abstrTree != null)
+				return abstrTree;
+		}
 		return parseSource();
 	}
 
+	/**
+	 * Parse top-level definitions in parallel. Definitions are separated by
+	 * semicolons outside of any brackets; each one is parsed by its own
+	 * parser on the common fork-join pool.
+	 * <p>
+	 * If brackets in the file are not balanced, the file contains a lexical
+	 * error or any definition fails to parse exactly up to its separator, null
+	 * is returned and the file has to be parsed sequentially, so that the
+	 * first error in the file is reported.
+	 * 
+	 * @param tokens
+	 *            all symbols of the file
+	 * @return definitions of the file or null
+	 */
+	private AbsDefs parseParallel(final TokenBuffer tokens) {
+		// Find beginnings of top-level definitions.
+		int[] begins = new int[16];
+		int count = 1;
+		int depth = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			switch (tokens.token(i)) {
+			case Token.LPARENT:
+			case Token.LBRACKET:
+			case Token.LBRACE:
+				depth++;
+				break;
+			case Token.RPARENT:
+			case Token.RBRACKET:
+			case Token.RBRACE:
+				if (--depth < 0)
+					return null;
+				break;
+			case Token.SEMIC:
+				if (depth > 0)
+					break;
+				if (count == begins.length)
+					begins = Arrays.copyOf(begins, 2 * count);
+				begins[count++] = i + 1;
+				break;
+			case Token.EOF:
+				break;
+			default:
+				// lexical error
+				if (tokens.token(i) < 0)
+					return null;
+			}
+		}
+		if (depth != 0 || count < 2)
+			return null;
+
+		final int[] definitionBegins = begins;
+		final AbsDef[] definitions = new AbsDef[count];
+		try {
+			ForkJoinPool.commonPool().invoke(
+					new ParseDefinitions(tokens, definitionBegins,
+							definitions, 0, count));
+		} catch (ChunkError e) {
+			return null;
+		}
+
+		Vector<AbsDef> absDefs = new Vector<>(count);
+		for (AbsDef definition : definitions)
+			absDefs.add(definition);
+		return new AbsDefs(new Position(absDefs.firstElement().position,
+				absDefs.lastElement().position), absDefs);
+	}
+
+	/**
+	 * Task parsing a range of top-level definitions.
+	 */
+	@SuppressWarnings("serial")
+	private static class ParseDefinitions extends RecursiveAction {
+
+		private final TokenBuffer tokens;
+		private final int[] begins;
+		private final AbsDef[] definitions;
+		private final int from, to;
+
+		ParseDefinitions(TokenBuffer tokens, int[] begins,
+				AbsDef[] definitions, int from, int to) {
+			this.tokens = tokens;
+			this.begins = begins;
+			this.definitions = definitions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > DEFINITIONS_PER_TASK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ParseDefinitions(tokens, begins, definitions,
+						from, mid), new ParseDefinitions(tokens, begins,
+						definitions, mid, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				// Definition must end exactly at the next separator.
+				int end = i + 1 < definitions.length ? begins[i + 1] - 1
+						: tokens.size() - 1;
+				SynAn synAn = new SynAn(tokens, begins[i]);
+				definitions[i] = synAn.parseDefinition();
+				if (synAn.symbol != end)
+					throw new ChunkError();
+			}
+		}
+	}
+
+	/**
+	 * Syntax error in a top-level definition parsed on a worker thread.
+	 */
+	@SuppressWarnings("serial")
+	private static class ChunkError extends RuntimeException {
+	}
+
 	/**
 	 * Parse functions.
 	 */
@@ -58,54 +266,58 @@ public class SynAn {
 		dump("source -> definitions");
 		AbsTree abstrTree = parseDefinitions();
 
-		if (symbol.token != Token.EOF)
-			Report.error(symbol.position, "Syntax error on token \""
-					+ previous.lexeme + "\"");
+		if (token() != Token.EOF)
+			error(position(), "Syntax error on token \""
+					+ previousLexeme() + "\"");
 
 		return abstrTree;
 	}
 
 	private AbsDefs parseDefinitions() {
 		dump("definitions -> definition definitions'");
-		AbsDef definition = parseDefinition();
+		Vector<AbsDef> absDefs = new Vector<>();
+		absDefs.add(parseDefinition());
 
-		Vector<AbsDef> absDefs = parseDefinitions_();
-		absDefs.add(0, definition);
+		parseDefinitions_(absDefs);
 		return new AbsDefs(new Position(absDefs.firstElement().position,
 				absDefs.lastElement().position), absDefs);
 	}
 
-	private Vector<AbsDef> parseDefinitions_() {
-		switch (symbol.token) {
-		case Token.EOF:
-			dump("definitions' -> $");
-
-			return new Vector<>();
-		case Token.RBRACE:
-			dump("definitions' -> e");
-			skip();
-
-			return new Vector<>();
-		case Token.SEMIC:
-			dump("definitions' -> ; definitions");
-			skip();
+	/**
+	 * Parse remaining definitions of a list. Definitions are parsed in a loop,
+	 * so files with many top-level definitions do not exhaust the stack.
+	 * 
+	 * @param absDefs
+	 *            parsed definitions are appended to this list
+	 */
+	private void parseDefinitions_(Vector<AbsDef> absDefs) {
+		while (true) {
+			switch (token()) {
+			case Token.EOF:
+				dump("definitions' -> $");
+				return;
+			case Token.RBRACE:
+				dump("definitions' -> e");
+				skip();
+				return;
+			case Token.SEMIC:
+				dump("definitions' -> ; definitions");
+				skip();
 
-			AbsDef definition = parseDefinition();
-			Vector<AbsDef> absDefs = parseDefinitions_();
-			absDefs.add(0, definition);
-			return absDefs;
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ previous.lexeme
-					+ "\", expected \";\" or \"}\" after this token");
+				absDefs.add(parseDefinition());
+				break;
+			default:
+				error(position(), "Syntax error on token \""
+						+ previousLexeme()
+						+ "\", expected \";\" or \"}\" after this token");
+			}
 		}
-		return null;
 	}
 
 	private AbsDef parseDefinition() {
 		AbsDef definition = null;
 
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.KW_TYP:
 			dump("definition -> type_definition");
 			definition = parseTypeDefinition();
@@ -123,41 +335,41 @@ public class SynAn {
 			definition = parseImportDefinition();
 			break;
 		default:
-			if (symbol.token != Token.EOF)
-				Report.error(symbol.position, "Syntax error on token \""
-						+ symbol.lexeme + "\", delete this token");
+			if (token() != Token.EOF)
+				error(position(), "Syntax error on token \""
+						+ lexeme() + "\", delete this token");
 			else
-				Report.error(previous.position, "Syntax error on token \""
-						+ previous.lexeme + "\", delete this token");
+				error(previousPosition(), "Syntax error on token \""
+						+ previousLexeme() + "\", delete this token");
 		}
 
 		return definition;
 	}
 
 	private AbsTypeDef parseTypeDefinition() {
-		Position startPos = symbol.position;
-		if (symbol.token == Token.KW_TYP) {
-			skip(new Symbol(Token.IDENTIFIER, "identifier", null));
+		Position startPos = position();
+		if (token() == Token.KW_TYP) {
+			skip(Token.IDENTIFIER, "identifier");
 
-			Symbol id = symbol;
-			skip(new Symbol(Token.COLON, ":", null));
+			String id = lexeme();
+			skip(Token.COLON, ":");
 			skip();
 			
 			AbsType type = null;
 			
-			if (symbol.token == Token.KW_STRUCT) {
+			if (token() == Token.KW_STRUCT) {
 				dump("type_definition -> typ identifier : struct { var_definitions }");
-				skip(new Symbol(Token.LBRACE, "{", null));
+				skip(Token.LBRACE, "{");
 				skip();
 				
 				AbsDefs definitions = parseDefinitions();
 				for (int i = 0; i < definitions.numDefs(); i++)
 					if (!(definitions.def(i) instanceof AbsVarDef))
-						Report.error(definitions.def(i).position, 
+						error(definitions.def(i).position, 
 								"Syntax error, structs only allow variable definitions");
 				
 				type = new AbsStructType(
-						id.lexeme,
+						id,
 						new Position(startPos, definitions.position), 
 						definitions);
 			}
@@ -166,20 +378,21 @@ public class SynAn {
 				type = parseType();
 			}
 			return new AbsTypeDef(new Position(startPos, type.position),
-					id.lexeme, type);
+					id, type);
 		}
 
-		Report.error(previous.position, "Syntax error on token \""
-				+ previous.lexeme + "\", expected keyword \"typ\"");
+		error(previousPosition(), "Syntax error on token \""
+				+ previousLexeme() + "\", expected keyword \"typ\"");
 		return null;
 	}
 
 	private AbsFunDef parseFunDefinition() {
-		Position startPos = symbol.position;
-		if (symbol.token == Token.KW_FUN) {
-			Symbol id = skip(new Symbol(Token.IDENTIFIER, "identifier", null));
+		Position startPos = position();
+		if (token() == Token.KW_FUN) {
+			skip(Token.IDENTIFIER, "identifier");
+			String id = lexeme();
 
-			skip(new Symbol(Token.LPARENT, "(", null));
+			skip(Token.LPARENT, "(");
 			skip();
 			dump("function_definition -> fun identifier ( parameters ) : type = expression");
 
@@ -188,8 +401,8 @@ public class SynAn {
 
 			AbsType type = null;
 
-			if (symbol.token == Token.KW_PTR) {
-				Position pos = symbol.position;
+			if (token() == Token.KW_PTR) {
+				Position pos = position();
 				skip();
 
 				AbsType t = parseType();
@@ -197,59 +410,60 @@ public class SynAn {
 			} else
 				type = parseType();
 
-			if (symbol.token != Token.ASSIGN)
-				Report.error(symbol.position, "Syntax error on token \""
-						+ previous.lexeme
+			if (token() != Token.ASSIGN)
+				error(position(), "Syntax error on token \""
+						+ previousLexeme()
 						+ "\", expected \"=\" after this token");
 			skip();
 
 			AbsExpr expr = parseExpression();
 			return new AbsFunDef(new Position(startPos, expr.position),
-					id.lexeme, params, type, expr);
+					id, params, type, expr);
 		}
-		Report.error(previous.position, "Syntax error on token \""
-				+ previous.lexeme + "\", expected keyword \"fun\"");
+		error(previousPosition(), "Syntax error on token \""
+				+ previousLexeme() + "\", expected keyword \"fun\"");
 
 		return null;
 	}
 
 	private AbsVarDef parseVarDefinition() {
-		Position startPos = symbol.position;
-		if (symbol.token == Token.KW_VAR) {
-			Symbol id = skip(new Symbol(Token.IDENTIFIER, "identifier", null));
+		Position startPos = position();
+		if (token() == Token.KW_VAR) {
+			skip(Token.IDENTIFIER, "identifier");
+			String id = lexeme();
 
-			skip(new Symbol(Token.COLON, ":", null));
+			skip(Token.COLON, ":");
 			skip();
 
-			if (symbol.token == Token.KW_PTR) {
+			if (token() == Token.KW_PTR) {
 				dump("var_definition -> var identifier : ptr ptr'");
-				Position pos = symbol.position;
+				Position pos = position();
 
 				skip();
 				AbsType type = parsePointer();
 				return new AbsVarDef(new Position(startPos, type.position),
-						id.lexeme, new AbsPtrType(new Position(pos,
+						id, new AbsPtrType(new Position(pos,
 								type.position), type));
 			} else {
 				dump("var_definition -> var identifier : type");
 
 				AbsType type = parseType();
 				return new AbsVarDef(new Position(startPos, type.position),
-						id.lexeme, type);
+						id, type);
 			}
 		}
-		Report.error(previous.position, "Syntax error on token \""
-				+ previous.lexeme + "\", expected keyword \"var\"");
+		error(previousPosition(), "Syntax error on token \""
+				+ previousLexeme() + "\", expected keyword \"var\"");
 
 		return null;
 	}
 	
 	private AbsImportDef parseImportDefinition() {
-		Position pos = symbol.position;
-		skip(new Symbol(Token.IDENTIFIER, "IDENTIFIER", null));
-		String file = symbol.lexeme;
+		Position pos = position();
+		skip(Token.IDENTIFIER, "IDENTIFIER");
+		String file = lexeme();
 		skip();
-		if (symbol.token == Token.DOT) {
+		if (token() == Token.DOT) {
 			skip();
 			return parseImportDefinition_(new AbsImportDef(pos, file));
 		}
@@ -258,22 +472,22 @@ public class SynAn {
 	}
 	
 	private AbsImportDef parseImportDefinition_(AbsImportDef def) {
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.IDENTIFIER:
-			def.definitions.add(symbol.lexeme);
+			def.definitions.add(lexeme());
 			skip();
 			return parseImportDefinition__(def);
 		default:
-			Report.error(symbol.position, "Syntax error, expected \"IDENTIFIER\"");
+			error(position(), "Syntax error, expected \"IDENTIFIER\"");
 			return null;
 		}
 	}
 	
 	private AbsImportDef parseImportDefinition__(AbsImportDef def) {
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.COMMA:
 			skip();
-			def.definitions.add(symbol.lexeme);
+			def.definitions.add(lexeme());
 			skip();
 			return parseImportDefinition__(def);
 		default:
@@ -282,8 +496,8 @@ public class SynAn {
 	}
 	
 	private AbsType parsePointer() {
-		if (symbol.token == Token.KW_PTR) {
-			Position pos = symbol.position;
+		if (token() == Token.KW_PTR) {
+			Position pos = position();
 			skip();
 			return new AbsPtrType(pos, parsePointer());
 		}
@@ -291,50 +505,49 @@ public class SynAn {
 	}
 
 	private AbsType parseType() {
-		Symbol s = symbol;
-
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.IDENTIFIER:
 			dump("type -> identifier");
 			skip();
 
-			return new AbsTypeName(s.position, s.lexeme);
+			return new AbsTypeName(previousPosition(), previousLexeme());
 		case Token.LOGICAL:
 			dump("type -> logical");
 			skip();
 
-			return new AbsAtomType(s.position, AbsAtomType.LOG);
+			return new AbsAtomType(previousPosition(), AbsAtomType.LOG);
 		case Token.INTEGER:
 			dump("type -> integer");
 			skip();
 
-			return new AbsAtomType(s.position, AbsAtomType.INT);
+			return new AbsAtomType(previousPosition(), AbsAtomType.INT);
 		case Token.STRING:
 			dump("type -> string");
 			skip();
 
-			return new AbsAtomType(s.position, AbsAtomType.STR);
+			return new AbsAtomType(previousPosition(), AbsAtomType.STR);
 		case Token.KW_ARR:
 			dump("type -> arr [ int_const ] type");
-			if (skip().token == Token.LBRACKET) {
-				if (skip().token == Token.INT_CONST) {
-					int len = Integer.parseInt(symbol.lexeme);
-					if (skip().token == Token.RBRACKET) {
+			Position pos = position();
+			if (skip() == Token.LBRACKET) {
+				if (skip() == Token.INT_CONST) {
+					int len = Integer.parseInt(lexeme());
+					if (skip() == Token.RBRACKET) {
 						skip();
 						AbsType type = parseType();
-						return new AbsArrType(new Position(s.position,
+						return new AbsArrType(new Position(pos,
 								type.position), len, type);
 					}
-					Report.error(symbol.position,
+					error(position(),
 							"Syntax error, insert \"]\" to complete Dimensions");
 				}
-				Report.error(symbol.position,
+				error(position(),
 						"Syntax error, variable must provide array dimension expression");
 			}
-			Report.error(symbol.position, "Syntax error, insert \"[\"");
+			error(position(), "Syntax error, insert \"[\"");
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", expected \"variable type\"");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", expected \"variable type\"");
 		}
 
 		return null;
@@ -352,7 +565,7 @@ public class SynAn {
 	}
 
 	private Vector<AbsPar> parseParameters_() {
-		if (symbol.token == Token.COMMA) {
+		if (token() == Token.COMMA) {
 			dump("parameters' -> parameters");
 			skip();
 
@@ -361,42 +574,43 @@ public class SynAn {
 			params.add(parameter);
 			params.addAll(parseParameters_());
 			return params;
-		} else if (symbol.token != Token.RPARENT)
-			Report.error(symbol.position,
+		} else if (token() != Token.RPARENT)
+			error(position(),
 					"Syntax error, insert \")\" to complete function declaration");
 
 		dump("parameters' -> e");
-		skip(new Symbol(Token.COLON, ":", null));
+		skip(Token.COLON, ":");
 
 		return new Vector<>();
 	}
 
 	private AbsPar parseParameter() {
-		if (symbol.token == Token.IDENTIFIER) {
-			Symbol id = symbol;
+		if (token() == Token.IDENTIFIER) {
+			Position idPos = position();
+			String id = lexeme();
 
-			skip(new Symbol(Token.COLON, ":", null));
+			skip(Token.COLON, ":");
 			skip();
 
-			if (symbol.token == Token.KW_PTR) {
+			if (token() == Token.KW_PTR) {
 				dump("parameter -> identifier : ptr type");
 
 				skip();
-				Position pos = symbol.position;
+				Position pos = position();
 
 				AbsType type = parsePointer();
-				return new AbsPar(new Position(id.position, type.position),
-						id.lexeme, new AbsPtrType(new Position(pos,
+				return new AbsPar(new Position(idPos, type.position),
+						id, new AbsPtrType(new Position(pos,
 								type.position), type));
 			}
 
 			dump("parameter -> identifier : type");
 
 			AbsType type = parseType();
-			return new AbsPar(new Position(id.position, type.position),
-					id.lexeme, type);
+			return new AbsPar(new Position(idPos, type.position),
+					id, type);
 		}
-		Report.error(symbol.position,
+		error(position(),
 				"Syntax error, expected paramater definition");
 
 		return null;
@@ -405,7 +619,7 @@ public class SynAn {
 	private Vector<AbsExpr> parseExpressions() {
 		AbsExpr e = null;
 
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.ADD:
 		case Token.SUB:
 		case Token.NOT:
@@ -426,15 +640,15 @@ public class SynAn {
 
 			return expressions;
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", delete this token");
 		}
 
 		return null;
 	}
 
 	private Vector<AbsExpr> parseExpressions_() {
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.COMMA:
 			dump("expressions' -> , expression expression'");
 			skip();
@@ -451,15 +665,15 @@ public class SynAn {
 			skip();
 			break;
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ previous.lexeme
+			error(position(), "Syntax error on token \""
+					+ previousLexeme()
 					+ "\", expected \",\" or \")\" to end expression");
 		}
 		return new Vector<>();
 	}
 
 	private AbsExpr parseExpression() {
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.ADD:
 		case Token.SUB:
 		case Token.NOT:
@@ -472,20 +686,20 @@ public class SynAn {
 		case Token.LBRACE:
 		case Token.LPARENT:
 		case Token.IDENTIFIER:
-			dump("expression -> logical_ior_expression");
-			return parseExpression_(parseIorExpression());
+			dump("expression -> binary_expression");
+			return parseExpression_(parseBinaryExpression(IOR_POWER));
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", delete this token");
 		}
 
 		return null;
 	}
 
 	private AbsExpr parseExpression_(AbsExpr e) {
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.LBRACE:
-			skip(new Symbol(Token.KW_WHERE, "where", null));
+			skip(Token.KW_WHERE, "where");
 			dump("expression' ->  { WHERE definitions }");
 			skip();
 
@@ -504,296 +718,63 @@ public class SynAn {
 			dump("expression' -> e");
 			return e;
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", delete this token");
 		}
 
 		return null;
 	}
 
-	private AbsExpr parseIorExpression() {
-		switch (symbol.token) {
-		case Token.ADD:
-		case Token.SUB:
-		case Token.NOT:
-		// AND and MUL are for pointers
-		case Token.AND:
-		case Token.MUL:
-		case Token.LOG_CONST:
-		case Token.INT_CONST:
-		case Token.STR_CONST:
-		case Token.LBRACE:
-		case Token.LPARENT:
-		case Token.IDENTIFIER:
-			dump("logical_ior_expression -> logical_and_expression logical_ior_expression'");
-
-			return parseIorExpression_(parseAndExpression());
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
-		}
-
-		return null;
-	}
-
-	private AbsExpr parseIorExpression_(AbsExpr e) {
-		switch (symbol.token) {
-		case Token.IOR:
-			dump("logical_ior_expression' -> | log_ior_expression");
-			skip();
-			AbsExpr expr = parseAndExpression();
-			return parseIorExpression_(new AbsBinExpr(new Position(e.position,
-					expr.position), AbsBinExpr.IOR, e, expr));
-		case Token.SEMIC:
-		case Token.COLON:
-		case Token.RPARENT:
-		case Token.ASSIGN:
-		case Token.RBRACE:
-		case Token.LBRACE:
-		case Token.RBRACKET:
-		case Token.KW_THEN:
-		case Token.KW_ELSE:
-		case Token.COMMA:
-//		case Token.DOT:
-		case Token.EOF:
-			dump("logical_ior_expression' -> e");
-			return e;
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
-		}
-
-		return null;
-	}
-
-	private AbsExpr parseAndExpression() {
-		switch (symbol.token) {
-		case Token.ADD:
-		case Token.SUB:
-		case Token.NOT:
-		// AND and MUL are for pointers
-		case Token.AND:
-		case Token.MUL:
-		case Token.LOG_CONST:
-		case Token.INT_CONST:
-		case Token.STR_CONST:
-		case Token.LBRACE:
-		case Token.LPARENT:
-		case Token.IDENTIFIER:
-			dump("logical_and_expression -> logical_compare_expression logical_and_expression'");
-
-			return parseAndExpression_(parseCmpExpression());
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
-		}
-
-		return null;
-	}
-
-	private AbsExpr parseAndExpression_(AbsExpr e) {
-		switch (symbol.token) {
-		case Token.AND:
-			dump("logical_and_expression' -> & logical_and_expression");
-			skip();
-
-			AbsExpr expr = parseCmpExpression();
-			return parseAndExpression_(new AbsBinExpr(new Position(e.position,
-					expr.position), AbsBinExpr.AND, e, expr));
-		case Token.IOR:
-		case Token.SEMIC:
-		case Token.COLON:
-		case Token.RPARENT:
-		case Token.ASSIGN:
-		case Token.RBRACE:
-		case Token.LBRACE:
-		case Token.RBRACKET:
-		case Token.KW_THEN:
-		case Token.KW_ELSE:
-		case Token.COMMA:
-//		case Token.DOT:
-		case Token.EOF:
-			dump("logical_and_expression' -> e");
-			return e;
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
-		}
-
-		return null;
-	}
-
-	private AbsExpr parseCmpExpression() {
-		switch (symbol.token) {
-		case Token.ADD:
-		case Token.SUB:
-		case Token.NOT:
-		// AND and MUL are for pointers
-		case Token.AND:
-		case Token.MUL:
-		case Token.LOG_CONST:
-		case Token.INT_CONST:
-		case Token.STR_CONST:
-		case Token.LBRACE:
-		case Token.LPARENT:
-		case Token.IDENTIFIER:
-			dump("compare_expression -> add_expression compare_expression'");
-
-			return parseCmpExpression_(parseAddExpression());
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
-		}
-
-		return null;
-	}
-
-	private AbsExpr parseCmpExpression_(AbsExpr e) {
-		AbsExpr expr = null;
-		int oper = -1;
-
-		switch (symbol.token) {
-		case Token.AND:
-		case Token.IOR:
-		case Token.SEMIC:
-		case Token.COLON:
-		case Token.RPARENT:
-		case Token.ASSIGN:
-		case Token.RBRACE:
-		case Token.LBRACE:
-		case Token.RBRACKET:
-		case Token.KW_THEN:
-		case Token.KW_ELSE:
-		case Token.COMMA:
-//		case Token.DOT:
-		case Token.EOF:
-			dump("compare_expression' -> e");
-			return e;
-		case Token.EQU:
-			dump("compare_expression' -> == compare_expression");
-			skip();
-
-			expr = parseAddExpression();
-			oper = AbsBinExpr.EQU;
-			break;
-		case Token.NEQ:
-			dump("compare_expression' -> != compare_expression");
-			skip();
-
-			expr = parseAddExpression();
-			oper = AbsBinExpr.NEQ;
-			break;
-		case Token.GTH:
-			dump("compare_expression' -> > compare_expression");
-			skip();
-
-			expr = parseAddExpression();
-			oper = AbsBinExpr.GTH;
-			break;
-		case Token.LTH:
-			dump("compare_expression' -> < compare_expression");
-			skip();
-
-			expr = parseAddExpression();
-			oper = AbsBinExpr.LTH;
-			break;
-		case Token.GEQ:
-			dump("compare_expression' -> >= compare_expression");
-			skip();
-
-			expr = parseAddExpression();
-			oper = AbsBinExpr.GEQ;
-			break;
-		case Token.LEQ:
-			dump("compare_expression' -> <= compare_expression");
-			skip();
-
-			expr = parseAddExpression();
-			oper = AbsBinExpr.LEQ;
-			break;
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
-		}
-
-		return new AbsBinExpr(new Position(e.position, expr.position), oper, e,
-				expr);
-	}
-
-	private AbsExpr parseAddExpression() {
-		switch (symbol.token) {
-		case Token.ADD:
-		case Token.SUB:
-		case Token.NOT:
-		// AND and MUL are for pointers
-		case Token.AND:
-		case Token.MUL:
-		case Token.LOG_CONST:
-		case Token.INT_CONST:
-		case Token.STR_CONST:
-		case Token.LBRACE:
-		case Token.LPARENT:
-		case Token.IDENTIFIER:
-			dump("add_expression -> multiplicative_expression add_expression'");
-
-			return parseAddExpression_(parseMulExpression());
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
-		}
-
-		return null;
-	}
-
-	private AbsExpr parseAddExpression_(AbsExpr e) {
-		AbsExpr expr = null;
+	/**
+	 * Parse binary expression using precedence climbing. Operands are prefix
+	 * expressions; operators are taken while their binding power is at least
+	 * minPower. All operators are left associative, comparisons are not
+	 * associative.
+	 *
+	 * @param minPower
+	 *            minimal binding power of operators in this expression
+	 * @return parsed expression
+	 */
+	private AbsExpr parseBinaryExpression(int minPower) {
+		AbsExpr e = parsePrefixExpression();
+		boolean compared = false;
+
+		while (true) {
+			int op = token();
+			int power = bindingPowers[op];
+			if (power < minPower)
+				return e;
+
+			if (power == CMP_POWER) {
+				if (compared)
+					error(position(), "Syntax error on token \""
+							+ lexeme() + "\", delete this token");
+				compared = true;
+			}
 
-		switch (symbol.token) {
-		case Token.AND:
-		case Token.IOR:
-		case Token.SEMIC:
-		case Token.COLON:
-		case Token.RPARENT:
-		case Token.ASSIGN:
-		case Token.RBRACE:
-		case Token.LBRACE:
-		case Token.RBRACKET:
-		case Token.KW_THEN:
-		case Token.KW_ELSE:
-		case Token.COMMA:
-//		case Token.DOT:
-		case Token.EOF:
-		case Token.EQU:
-		case Token.NEQ:
-		case Token.GTH:
-		case Token.LTH:
-		case Token.GEQ:
-		case Token.LEQ:
-			dump("add_expression' -> e");
-			return e;
-		case Token.ADD:
-			dump("add_expression' -> multiplicative_expression add_expresison'");
+			if (dump)
+				dump("binary_expression -> binary_expression "
+						+ lexeme() + " binary_expression");
 			skip();
 
-			expr = parseMulExpression();
-			return parseAddExpression_(new AbsBinExpr(new Position(e.position,
-					expr.position), AbsBinExpr.ADD, e, expr));
-		case Token.SUB:
-			dump("add_expression' -> - add_expression");
-			skip();
+			if ((op == Token.ADD || op == Token.SUB) && !isExpressionStart())
+				error(position(), "Syntax error on token \""
+						+ previousLexeme() + "\", expected prefix expression");
 
-			expr = parseMulExpression();
-			return parseAddExpression_(new AbsBinExpr(e.position,
-					AbsBinExpr.SUB, e, expr));
-		default:
-			Report.error(symbol.position, "Syntax error on parseAddExpression_");
+			AbsExpr expr = parseBinaryExpression(power + 1);
+			if (op == Token.SUB)
+				e = new AbsBinExpr(e.position, AbsBinExpr.SUB, e, expr);
+			else
+				e = new AbsBinExpr(new Position(e.position, expr.position),
+						binaryOperators[op], e, expr);
 		}
-
-		return null;
 	}
 
-	private AbsExpr parseMulExpression() {
-		switch (symbol.token) {
+	/**
+	 * @return true if current symbol can start an expression
+	 */
+	private boolean isExpressionStart() {
+		switch (token()) {
 		case Token.ADD:
 		case Token.SUB:
 		case Token.NOT:
@@ -806,118 +787,56 @@ public class SynAn {
 		case Token.LBRACE:
 		case Token.LPARENT:
 		case Token.IDENTIFIER:
-			dump("multiplicative_expression -> prefix_expression multiplicative_expression'");
-
-			return parseMulExpression_(parsePrefixExpression());
-		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ previous.lexeme + "\", expected prefix expression");
-		}
-
-		return null;
-	}
-
-	private AbsExpr parseMulExpression_(AbsExpr e) {
-		AbsExpr expr = null;
-		int oper = -1;
-
-		switch (symbol.token) {
-		case Token.AND:
-		case Token.IOR:
-		case Token.SEMIC:
-		case Token.COLON:
-		case Token.RPARENT:
-		case Token.ASSIGN:
-		case Token.RBRACE:
-		case Token.LBRACE:
-		case Token.RBRACKET:
-		case Token.KW_THEN:
-		case Token.KW_ELSE:
-		case Token.COMMA:
-//		case Token.DOT:
-		case Token.EOF:
-		case Token.EQU:
-		case Token.NEQ:
-		case Token.GTH:
-		case Token.LTH:
-		case Token.GEQ:
-		case Token.LEQ:
-		case Token.ADD:
-		case Token.SUB:
-			dump("multiplicative_expression' -> e");
-			return e;
-		case Token.MUL:
-			oper = AbsBinExpr.MUL;
-			dump("multiplicative_expression' -> prefix_expression multiplicative_expression'");
-			skip();
-			expr = parsePrefixExpression();
-			break;
-		case Token.DIV:
-			oper = AbsBinExpr.DIV;
-			dump("multiplicative_expression' -> prefix_expression multiplicative_expression'");
-			skip();
-			expr = parsePrefixExpression();
-			break;
-		case Token.MOD:
-			oper = AbsBinExpr.MOD;
-			dump("multiplicative_expression' -> prefix_expression multiplicative_expression'");
-			skip();
-			expr = parsePrefixExpression();
-			break;
-		case Token.DOT:
-			oper = AbsBinExpr.DOT;
-			dump("multiplicative_expression' -> prefix_expression multiplicative_expression'");
-			skip();
-			expr = parsePrefixExpression();
-			break;
+			return true;
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			return false;
 		}
-
-		return parseMulExpression_(new AbsBinExpr(new Position(e.position,
-				expr.position), oper, e, expr));
 	}
 
 	private AbsExpr parsePrefixExpression() {
 		AbsExpr e = null;
-		Symbol op = symbol;
+		Position pos = null;
 
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.ADD:
 			dump("prefix_expression -> + prefix_expression");
+			pos = position();
 			skip();
 
 			e = parsePrefixExpression();
-			return new AbsUnExpr(new Position(op.position, e.position),
+			return new AbsUnExpr(new Position(pos, e.position),
 					AbsUnExpr.ADD, e);
 		case Token.SUB:
 			dump("prefix_expression -> - prefix_expression");
+			pos = position();
 			skip();
 
 			e = parsePrefixExpression();
-			return new AbsUnExpr(new Position(op.position, e.position),
+			return new AbsUnExpr(new Position(pos, e.position),
 					AbsUnExpr.SUB, e);
 		case Token.NOT:
 			dump("prefix_expression -> ! prefix_expression");
+			pos = position();
 			skip();
 
 			e = parsePrefixExpression();
-			return new AbsUnExpr(new Position(op.position, e.position),
+			return new AbsUnExpr(new Position(pos, e.position),
 					AbsUnExpr.NOT, e);
 		case Token.AND:
 			dump("prefix_expression -> & prefix_expression");
+			pos = position();
 			skip();
 
 			e = parsePrefixExpression();
-			return new AbsUnExpr(new Position(op.position, e.position),
+			return new AbsUnExpr(new Position(pos, e.position),
 					AbsUnExpr.MEM, e);
 		case Token.MUL:
 			dump("prefix_expression -> * prefix_expression");
+			pos = position();
 			skip();
 
 			e = parsePrefixExpression();
-			return new AbsUnExpr(new Position(op.position, e.position),
+			return new AbsUnExpr(new Position(pos, e.position),
 					AbsUnExpr.VAL, e);
 		case Token.LOG_CONST:
 		case Token.INT_CONST:
@@ -928,15 +847,15 @@ public class SynAn {
 			dump("prefix_expression -> postfix_expression");
 			return parsePostfixExpression();
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", delete this token");
 		}
 
 		return null;
 	}
 
 	private AbsExpr parsePostfixExpression() {
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.LOG_CONST:
 		case Token.INT_CONST:
 		case Token.STR_CONST:
@@ -947,15 +866,15 @@ public class SynAn {
 
 			return parsePostfixExpression_(parseAtomExpression());
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", delete this token");
 		}
 
 		return null;
 	}
 
 	private AbsExpr parsePostfixExpression_(AbsExpr e) {
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.AND:
 		case Token.IOR:
 		case Token.SEMIC:
@@ -987,42 +906,40 @@ public class SynAn {
 			dump("postfix_expression' -> [ expression ] postfix_expression'");
 			skip();
 			AbsExpr expr = parseExpression();
-			if (symbol.token != Token.RBRACKET)
-				Report.error(previous.position,
+			if (token() != Token.RBRACKET)
+				error(previousPosition(),
 						"Syntax error, insert \"]\" to complete expression");
 			skip();
 			return parsePostfixExpression_(new AbsBinExpr(new Position(
 					e.position, expr.position), AbsBinExpr.ARR, e, expr));
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", delete this token");
 		}
 
 		return null;
 	}
 
 	private AbsExpr parseAtomExpression() {
-		Symbol current = symbol;
-
-		switch (symbol.token) {
+		switch (token()) {
 		case Token.LOG_CONST:
 			dump("atom_expression -> log_const");
 			skip();
 
-			return new AbsAtomConst(current.position, AbsAtomConst.LOG,
-					current.lexeme);
+			return new AbsAtomConst(previousPosition(), AbsAtomConst.LOG,
+					previousLexeme());
 		case Token.INT_CONST:
 			dump("atom_expression -> int_const");
 			skip();
 
-			return new AbsAtomConst(current.position, AbsAtomConst.INT,
-					current.lexeme);
+			return new AbsAtomConst(previousPosition(), AbsAtomConst.INT,
+					previousLexeme());
 		case Token.STR_CONST:
 			dump("atom_expression -> str_const");
 			skip();
 
-			return new AbsAtomConst(current.position, AbsAtomConst.STR,
-					current.lexeme);
+			return new AbsAtomConst(previousPosition(), AbsAtomConst.STR,
+					previousLexeme());
 		case Token.LBRACE:
 			skip();
 
@@ -1035,22 +952,24 @@ public class SynAn {
 			return new AbsExprs(new Position(exprs.firstElement().position,
 					exprs.lastElement().position), exprs);
 		case Token.IDENTIFIER:
+			Position pos = position();
+			String name = lexeme();
 			skip();
-			if (symbol.token == Token.LPARENT) {
+			if (token() == Token.LPARENT) {
 				dump("atom_expression -> identifier ( expressions )");
 				skip();
 
 				Vector<AbsExpr> absExprs = parseExpressions();
-				return new AbsFunCall(new Position(current.position,
-						absExprs.lastElement().position), current.lexeme,
+				return new AbsFunCall(new Position(pos,
+						absExprs.lastElement().position), name,
 						absExprs);
 			} else {
 				dump("atom_expression -> identifier");
-				return new AbsVarName(current.position, current.lexeme);
+				return new AbsVarName(pos, name);
 			}
 		default:
-			Report.error(symbol.position, "Syntax error on token \""
-					+ symbol.lexeme + "\", delete this token");
+			error(position(), "Syntax error on token \""
+					+ lexeme() + "\", delete this token");
 		}
 
 		return null;
@@ -1059,15 +978,15 @@ public class SynAn {
 	private AbsExpr parseAtomExprBrace() {
 		AbsExpr expr = null;
 
-		if (symbol.token == Token.KW_IF) {
+		if (token() == Token.KW_IF) {
 			dump("atom_expression -> if_expression if_expression'");
 
 			expr = parseIf();
-		} else if (symbol.token == Token.KW_WHILE) {
+		} else if (token() == Token.KW_WHILE) {
 			dump("atom_expression -> { while expression : expression }");
 
 			expr = parseWhileLoop();
-		} else if (symbol.token == Token.KW_FOR) {
+		} else if (token() == Token.KW_FOR) {
 			dump("atom_expression -> { for identifier = expression, expression, expression : expression }");
 
 			expr = parseForLoop();
@@ -1075,103 +994,105 @@ public class SynAn {
 			dump("atom_expression -> { expression = expression }");
 
 			AbsExpr e1 = parseExpression();
-			if (symbol.token == Token.ASSIGN) {
+			if (token() == Token.ASSIGN) {
 				skip();
 				AbsExpr e2 = parseExpression();
 
 				expr = new AbsBinExpr(e1.position, AbsBinExpr.ASSIGN, e1, e2);
 			} else {
-				Report.error(previous.position, "Syntax error on token \""
-						+ previous.lexeme
+				error(previousPosition(), "Syntax error on token \""
+						+ previousLexeme()
 						+ "\", expected \"=\" after this token");
 			}
 		}
-		if (symbol.token != Token.RBRACE) {
-			Report.error(previous.position, "Syntax error on token \""
-					+ previous.lexeme + "\", expected \"}\" after this token");
+		if (token() != Token.RBRACE) {
+			error(previousPosition(), "Syntax error on token \""
+					+ previousLexeme() + "\", expected \"}\" after this token");
 		}
 		skip();
 		return expr;
 	}
 
 	private AbsExpr parseForLoop() {
-		if (symbol.token == Token.KW_FOR) {
-			Position start = symbol.position;
-			Symbol count = skip(new Symbol(Token.IDENTIFIER, "identifier", null));
-			skip(new Symbol(Token.ASSIGN, "=", null));
+		if (token() == Token.KW_FOR) {
+			Position start = position();
+			skip(Token.IDENTIFIER, "identifier");
+			Position countPos = position();
+			String count = lexeme();
+			skip(Token.ASSIGN, "=");
 			skip();
 			AbsExpr e1 = parseExpression();
-			if (symbol.token == Token.COMMA) {
+			if (token() == Token.COMMA) {
 				skip();
 				AbsExpr e2 = parseExpression();
-				if (symbol.token == Token.COMMA) {
+				if (token() == Token.COMMA) {
 					skip();
 					AbsExpr e3 = parseExpression();
-					if (symbol.token == Token.COLON) {
+					if (token() == Token.COLON) {
 						skip();
 						AbsExpr e4 = parseExpression();
 
 						return new AbsFor(new Position(start, e4.position),
-								new AbsVarName(count.position, count.lexeme),
+								new AbsVarName(countPos, count),
 								e1, e2, e3, e4);
 					}
-					Report.error(previous.position, "Syntax error on token \""
-							+ previous.lexeme
+					error(previousPosition(), "Syntax error on token \""
+							+ previousLexeme()
 							+ "\", expected \":\" after this token");
 				}
-				Report.error(previous.position, "Syntax error on token \""
-						+ previous.lexeme
+				error(previousPosition(), "Syntax error on token \""
+						+ previousLexeme()
 						+ "\", expected \",\" after this token");
 			}
-			Report.error(previous.position, "Syntax error on token \""
-					+ previous.lexeme + "\", expected \",\" after this token");
+			error(previousPosition(), "Syntax error on token \""
+					+ previousLexeme() + "\", expected \",\" after this token");
 		}
-		Report.error(symbol.position, "Syntax error, expected keyword \"for\"");
+		error(position(), "Syntax error, expected keyword \"for\"");
 
 		return null;
 	}
 
 	private AbsExpr parseWhileLoop() {
-		if (symbol.token == Token.KW_WHILE) {
-			Position start = symbol.position;
+		if (token() == Token.KW_WHILE) {
+			Position start = position();
 			skip();
 			AbsExpr e1 = parseExpression();
-			if (symbol.token == Token.COLON) {
+			if (token() == Token.COLON) {
 				skip();
 				AbsExpr e2 = parseExpression();
 
 				return new AbsWhile(new Position(start, e2.position), e1, e2);
 			}
-			Report.error(previous.position, "Syntax error on token \""
-					+ previous.lexeme + "\", expected \":\" after this token");
+			error(previousPosition(), "Syntax error on token \""
+					+ previousLexeme() + "\", expected \":\" after this token");
 		}
-		Report.error(previous.position,
+		error(previousPosition(),
 				"Syntax error, expected keyword \"while\"");
 
 		return null;
 	}
 
 	private AbsExpr parseIf() {
-		if (symbol.token == Token.KW_IF) {
+		if (token() == Token.KW_IF) {
 			dump("if_expression -> if epression then expression");
 
-			Position start = symbol.position;
+			Position start = position();
 			skip();
 			AbsExpr e1 = parseExpression();
-			if (symbol.token == Token.KW_THEN) {
+			if (token() == Token.KW_THEN) {
 				skip();
 				AbsExpr e2 = parseExpression();
 				return parseIf_(new Position(start, e2.position), e1, e2);
 			}
-			Report.error(previous.position, "Syntax error on token \""
-					+ previous.lexeme
+			error(previousPosition(), "Syntax error on token \""
+					+ previousLexeme()
 					+ "\", expected keyword \"then\" after this token");
 		}
 		return null;
 	}
 
 	private AbsExpr parseIf_(Position start, AbsExpr e1, AbsExpr e2) {
-		if (symbol.token == Token.KW_ELSE) {
+		if (token() == Token.KW_ELSE) {
 			dump("if_expression' -> else expression }");
 			skip();
 			AbsExpr e3 = parseExpression();
@@ -1180,39 +1101,93 @@ public class SynAn {
 					e3);
 		}
 
-		if (symbol.token == Token.RBRACE) {
+		if (token() == Token.RBRACE) {
 			dump("if_expression' -> }");
 			return new AbsIfThen(new Position(start, e2.position), e1, e2);
 		}
 
-		Report.error(symbol.position, "Syntax error on token \""
-				+ symbol.lexeme + "\", expected \"}\"");
+		error(position(), "Syntax error on token \""
+				+ lexeme() + "\", expected \"}\"");
 
 		return null;
 	}
 
 	/**
 	 * Get next symbol from lexan.
+	 * 
+	 * @return kind of next symbol
 	 */
-	private Symbol skip() {
+	private int skip() {
 		previous = symbol;
-		symbol = lexAn.lexAn();
-		return symbol;
+		symbol = tokens.next();
+		return tokens.token(symbol);
 	}
 
 	/**
 	 * Get next symbol from lexan.
 	 * 
 	 * @param expected
-	 *            symbol which we are expecting
-	 * @return next symbol
+	 *            kind of symbol which we are expecting
+	 * @param lexeme
+	 *            representation of expected symbol, used in error report
+	 * @return kind of next symbol
 	 */
-	private Symbol skip(Symbol expected) {
-		if (skip().token != expected.token)
-			Report.error(previous.position, "Syntax error on token \""
-					+ previous.lexeme + "\", expected \"" + expected.lexeme
+	private int skip(int expected, String lexeme) {
+		if (skip() != expected)
+			error(previousPosition(), "Syntax error on token \""
+					+ previousLexeme() + "\", expected \"" + lexeme
 					+ "\" after this token");
-		return symbol;
+		return expected;
+	}
+
+	/**
+	 * @return kind of current symbol
+	 */
+	private int token() {
+		return tokens.token(symbol);
+	}
+
+	/**
+	 * @return lexeme of current symbol
+	 */
+	private String lexeme() {
+		return tokens.lexeme(symbol);
+	}
+
+	/**
+	 * @return position of current symbol
+	 */
+	private Position position() {
+		return tokens.position(symbol);
+	}
+
+	/**
+	 * @return lexeme of previous symbol
+	 */
+	private String previousLexeme() {
+		return tokens.lexeme(previous);
+	}
+
+	/**
+	 * @return position of previous symbol
+	 */
+	private Position previousPosition() {
+		return tokens.position(previous);
+	}
+
+	/**
+	 * Report syntax error. Parsers of single top-level definitions throw the
+	 * error instead, so that the file is parsed again sequentially.
+	 * 
+	 * @param pos
+	 *            position of the error
+	 * @param message
+	 *            error message
+	 */
+	private void error(Position pos, String message) {
+		if (chunk)
+			throw new ChunkError();
+		Report.error(pos, message);
 	}
 
 	/**